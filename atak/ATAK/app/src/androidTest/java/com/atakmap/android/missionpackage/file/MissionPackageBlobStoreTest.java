@@ -0,0 +1,171 @@
+
+package com.atakmap.android.missionpackage.file;
+
+import com.atakmap.android.androidtest.ATAKInstrumentedTest;
+import com.atakmap.android.androidtest.util.FileUtils;
+import com.atakmap.coremap.filesystem.FileSystemUtils;
+import com.atakmap.coremap.filesystem.HardLinks;
+import com.atakmap.filesystem.HashingUtils;
+import com.atakmap.util.zip.ZipEntry;
+import com.atakmap.util.zip.ZipFile;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipOutputStream;
+
+@RunWith(AndroidJUnit4.class)
+public class MissionPackageBlobStoreTest extends ATAKInstrumentedTest {
+
+    private static final byte[] SHARED = "shared content".getBytes(
+            FileSystemUtils.UTF8_CHARSET);
+    private static final byte[] OTHER = "other content".getBytes(
+            FileSystemUtils.UTF8_CHARSET);
+
+    private static File createZip(File dir) throws IOException {
+        File f = new File(dir, "package.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new FileOutputStream(f))) {
+            put(zos, "pkg1/a.txt", SHARED);
+            put(zos, "pkg2/b.txt", SHARED);
+            put(zos, "pkg2/c.txt", OTHER);
+        }
+        return f;
+    }
+
+    private static void put(ZipOutputStream zos, String name, byte[] data)
+            throws IOException {
+        zos.putNextEntry(new java.util.zip.ZipEntry(name));
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    private static File extract(ZipFile zip, ZipEntry entry, File dir)
+            throws IOException {
+        File f = new File(dir, entry.getName());
+        assertTrue(f.getParentFile().exists() || f.getParentFile().mkdirs());
+        try (InputStream in = zip.getInputStream(entry);
+                OutputStream out = new FileOutputStream(f)) {
+            FileSystemUtils.copyStream(in, false, out, false);
+        }
+        return f;
+    }
+
+    private static byte[] read(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] data = new byte[(int) f.length()];
+            int off = 0;
+            int len;
+            while (off < data.length
+                    && (len = in.read(data, off, data.length - off)) > 0)
+                off += len;
+            return data;
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        return HashingUtils.toHexString(MissionPackageBlobStore.newDigest()
+                .digest(data));
+    }
+
+    @Test
+    public void mutable_files_are_not_shared() {
+        assertTrue(MissionPackageBlobStore.isShareable("files/a.txt"));
+        assertTrue(MissionPackageBlobStore.isShareable("files/photo.JPG"));
+        assertFalse(MissionPackageBlobStore.isShareable("files/data.sqlite"));
+        assertFalse(MissionPackageBlobStore.isShareable("files/tiles.gpkg"));
+    }
+
+    @Test
+    public void store_dedup_and_prune() throws IOException {
+        try (FileUtils.AutoDeleteFile dir = FileUtils.AutoDeleteFile
+                .createTempDir();
+                ZipFile zip = new ZipFile(createZip(dir.file))) {
+            MissionPackageBlobStore store = new MissionPackageBlobStore(
+                    dir.getPath());
+            ZipEntry a = zip.getEntry("pkg1/a.txt");
+            ZipEntry b = zip.getEntry("pkg2/b.txt");
+            ZipEntry c = zip.getEntry("pkg2/c.txt");
+
+            // nothing stored yet
+            assertNull(store.find(zip, a));
+
+            File extracted = extract(zip, a, dir.file);
+            assertTrue(store.add(extracted, a, sha256(SHARED)));
+            assertEquals(2, HardLinks.getLinkCount(extracted));
+            // adding the same content again is a no-op
+            assertTrue(store.add(extracted, a, sha256(SHARED)));
+            assertEquals(2, HardLinks.getLinkCount(extracted));
+
+            // an entry with the same content is found and linked
+            File blob = store.find(zip, b);
+            assertNotNull(blob);
+            assertEquals(sha256(SHARED), blob.getName());
+            File linked = new File(dir.file, b.getName());
+            assertTrue(linked.getParentFile().mkdirs());
+            assertTrue(store.link(blob, linked));
+            assertEquals(3, HardLinks.getLinkCount(blob));
+            assertArrayEquals(SHARED, read(linked));
+
+            // different content is not matched
+            assertNull(store.find(zip, c));
+
+            // referenced blobs are kept
+            assertEquals(0, store.prune());
+            assertTrue(extracted.delete());
+            assertEquals(0, store.prune());
+            assertTrue(linked.delete());
+            assertEquals(1, store.prune());
+            assertFalse(blob.exists());
+            assertFalse(blob.getParentFile().exists());
+        }
+    }
+
+    @Test
+    public void unshare_copies_linked_file() throws IOException {
+        try (FileUtils.AutoDeleteFile dir = FileUtils.AutoDeleteFile
+                .createTempDir();
+                ZipFile zip = new ZipFile(createZip(dir.file))) {
+            MissionPackageBlobStore store = new MissionPackageBlobStore(
+                    dir.getPath());
+            ZipEntry a = zip.getEntry("pkg1/a.txt");
+            File extracted = extract(zip, a, dir.file);
+            assertTrue(store.add(extracted, a, sha256(SHARED)));
+            File blob = store.find(zip, a);
+            assertNotNull(blob);
+
+            File imported = new File(dir.file, "imported.txt");
+            assertTrue(HardLinks.link(extracted, imported));
+            assertTrue(MissionPackageBlobStore.unshare(imported));
+            assertEquals(1, HardLinks.getLinkCount(imported));
+            assertEquals(2, HardLinks.getLinkCount(blob));
+            assertArrayEquals(SHARED, read(imported));
+
+            // changes to the unshared file are not seen through the store
+            try (OutputStream out = new FileOutputStream(imported)) {
+                out.write(OTHER);
+            }
+            assertArrayEquals(SHARED, read(blob));
+            assertArrayEquals(SHARED, read(extracted));
+
+            // a file that is not shared is left alone
+            assertTrue(MissionPackageBlobStore.unshare(imported));
+            assertArrayEquals(OTHER, read(imported));
+        }
+    }
+}
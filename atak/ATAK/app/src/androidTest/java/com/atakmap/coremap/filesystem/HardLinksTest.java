@@ -0,0 +1,94 @@
+
+package com.atakmap.coremap.filesystem;
+
+import com.atakmap.android.androidtest.ATAKInstrumentedTest;
+import com.atakmap.android.androidtest.util.FileUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+@RunWith(AndroidJUnit4.class)
+public class HardLinksTest extends ATAKInstrumentedTest {
+
+    private static final byte[] DATA = "hard link test data".getBytes(
+            FileSystemUtils.UTF8_CHARSET);
+
+    private static File write(File dir, String name) throws IOException {
+        File f = new File(dir, name);
+        try (OutputStream out = new FileOutputStream(f)) {
+            out.write(DATA);
+        }
+        return f;
+    }
+
+    private static byte[] read(File f) throws IOException {
+        byte[] data = new byte[(int) f.length()];
+        try (InputStream in = new FileInputStream(f)) {
+            int off = 0;
+            while (off < data.length) {
+                int len = in.read(data, off, data.length - off);
+                if (len < 0)
+                    break;
+                off += len;
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void link_counts_follow_links() throws IOException {
+        try (FileUtils.AutoDeleteFile dir = FileUtils.AutoDeleteFile
+                .createTempDir()) {
+            File original = write(dir.file, "original");
+            assertEquals(1, HardLinks.getLinkCount(original));
+
+            File link1 = new File(dir.file, "link1");
+            File link2 = new File(dir.file, "link2");
+            assertTrue(HardLinks.link(original, link1));
+            assertTrue(HardLinks.link(link1, link2));
+            assertEquals(3, HardLinks.getLinkCount(original));
+            assertEquals(3, HardLinks.getLinkCount(link2));
+            assertArrayEquals(DATA, read(link2));
+
+            // an existing target is not replaced
+            assertFalse(HardLinks.link(original, link1));
+
+            assertTrue(link1.delete());
+            assertEquals(2, HardLinks.getLinkCount(original));
+            assertTrue(original.delete());
+            assertEquals(1, HardLinks.getLinkCount(link2));
+
+            assertEquals(-1, HardLinks.getLinkCount(original));
+        }
+    }
+
+    @Test
+    public void secure_delete_keeps_linked_data() throws IOException {
+        try (FileUtils.AutoDeleteFile dir = FileUtils.AutoDeleteFile
+                .createTempDir()) {
+            File original = write(dir.file, "original");
+            File link = new File(dir.file, "link");
+            assertTrue(HardLinks.link(original, link));
+
+            // only the link is removed, the data is not overwritten
+            assertTrue(SecureDelete.delete(link, null));
+            assertFalse(link.exists());
+            assertEquals(1, HardLinks.getLinkCount(original));
+            assertArrayEquals(DATA, read(original));
+        }
+    }
+}
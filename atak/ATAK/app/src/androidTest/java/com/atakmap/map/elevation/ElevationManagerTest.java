@@ -159,6 +159,61 @@ public class ElevationManagerTest extends ATAKInstrumentedTest {
         assertTrue(fetched > 0);
     }
 
+    @Test
+    public void query_context_matches_get_elevation() {
+        Collection<GeoPoint> pts = createGeopointMesh(35, -78.5, 33, -75.5,
+                9, 9);
+        ElevationQueryContext ctx = new ElevationQueryContext(
+                (ElevationManager.QueryParameters) null);
+        try {
+            for (GeoPoint p : pts) {
+                GeoPointMetaData expected = new GeoPointMetaData();
+                GeoPointMetaData actual = new GeoPointMetaData();
+                final double hae = ElevationManager.getElevation(
+                        p.getLatitude(), p.getLongitude(), null, expected);
+                assertEquals(hae, ctx.getElevation(p.getLatitude(),
+                        p.getLongitude(), actual), 0.0);
+                assertEquals(expected.getAltitudeSource(),
+                        actual.getAltitudeSource());
+            }
+        } finally {
+            ctx.dispose();
+        }
+    }
+
+    @Test
+    public void query_context_reuses_chunks() {
+        ElevationQueryContext ctx = new ElevationQueryContext(
+                (ElevationManager.QueryParameters) null);
+        try {
+            assertEquals(34567, ctx.getElevation(new GeoPoint(34.5, -77.5)),
+                    0.0);
+            assertEquals(0, ctx.getHitCount());
+            assertEquals(1, ctx.getMissCount());
+
+            // same cell
+            assertEquals(34567,
+                    ctx.getElevation(new GeoPoint(34.501, -77.501)), 0.0);
+            assertEquals(1, ctx.getHitCount());
+            assertEquals(1, ctx.getMissCount());
+
+            // adjacent cell, the chunks are already cached
+            final int cached = ctx.getCachedChunkCount();
+            assertEquals(34567, ctx.getElevation(new GeoPoint(34.6, -77.6)),
+                    0.0);
+            assertEquals(2, ctx.getMissCount());
+            assertEquals(cached, ctx.getCachedChunkCount());
+
+            ctx.invalidate();
+            assertEquals(0, ctx.getCachedChunkCount());
+            ctx.resetStatistics();
+            assertEquals(0, ctx.getHitCount());
+            assertEquals(0, ctx.getMissCount());
+        } finally {
+            ctx.dispose();
+        }
+    }
+
     @Test
     public void chunk_query_order_resolution_asc() {
         ElevationSource.QueryParameters params = new ElevationSource.QueryParameters();
@@ -0,0 +1,113 @@
+
+package com.atakmap.map.layer.feature.datastore;
+
+import com.atakmap.android.androidtest.ATAKInstrumentedTest;
+import com.atakmap.database.CursorIface;
+import com.atakmap.map.layer.feature.DataStoreException;
+import com.atakmap.map.layer.feature.Feature;
+import com.atakmap.map.layer.feature.FeatureCursor;
+import com.atakmap.map.layer.feature.FeatureDataStore2;
+import com.atakmap.map.layer.feature.FeatureSet;
+import com.atakmap.map.layer.feature.geometry.Envelope;
+import com.atakmap.map.layer.feature.geometry.Geometry;
+import com.atakmap.map.layer.feature.geometry.LineString;
+import com.atakmap.map.layer.feature.geometry.Polygon;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+public class FeatureSetDatabase2SimplifyCacheTest extends ATAKInstrumentedTest {
+
+    private static Polygon circle(double cx, double cy, double radius) {
+        LineString ring = new LineString(2);
+        for (int i = 0; i < 1000; i++) {
+            final double theta = Math.toRadians(i * 360d / 1000d);
+            ring.addPoint(cx + Math.cos(theta) * radius,
+                    cy + Math.sin(theta) * radius);
+        }
+        ring.addPoint(cx + radius, cy);
+        return new Polygon(ring);
+    }
+
+    private static Envelope querySimplified(FeatureSetDatabase2 dataStore,
+            long fid) throws DataStoreException {
+        FeatureDataStore2.FeatureQueryParameters params = new FeatureDataStore2.FeatureQueryParameters();
+        params.ids = Collections.singleton(fid);
+        params.spatialOps = Collections
+                .<FeatureDataStore2.FeatureQueryParameters.SpatialOp> singleton(
+                        new FeatureDataStore2.FeatureQueryParameters.SpatialOp.Simplify(
+                                0.01d));
+        FeatureCursor result = null;
+        try {
+            result = dataStore.queryFeatures(params);
+            Assert.assertTrue(result.moveToNext());
+            final Geometry geom = result.get().getGeometry();
+            Assert.assertNotNull(geom);
+            return geom.getEnvelope();
+        } finally {
+            if (result != null)
+                result.close();
+        }
+    }
+
+    /**
+     * @return the number of cached simplified geometries for the feature
+     */
+    private static int countCached(FeatureSetDatabase2 dataStore, long fid) {
+        CursorIface result = null;
+        try {
+            synchronized (dataStore) {
+                result = dataStore.database.query(
+                        "SELECT COUNT(1) FROM features_simplified WHERE fid = "
+                                + fid,
+                        null);
+                Assert.assertTrue(result.moveToNext());
+                return result.getInt(0);
+            }
+        } finally {
+            if (result != null)
+                result.close();
+        }
+    }
+
+    @Test
+    public void testSimplifiedGeometryCacheUpdate()
+            throws DataStoreException, InterruptedException,
+            ExecutionException {
+        FeatureSetDatabase2 retval = new FeatureSetDatabase2(null);
+
+        long fsid = retval.insertFeatureSet(new FeatureSet(
+                "test", "boundaries", "boundaries", Double.MAX_VALUE, 0d));
+        long fid = retval.insertFeature(new Feature(fsid, "boundary",
+                circle(10d, 10d, 1d), null, null));
+
+        // the first query simplifies on demand and schedules the cache
+        Assert.assertEquals(0, countCached(retval, fid));
+        Envelope simplified = querySimplified(retval, fid);
+        Assert.assertEquals(10d, (simplified.minX + simplified.maxX) / 2d,
+                0.05d);
+
+        // once populated, the cached geometry is served
+        FDB2.awaitSimplifyCache();
+        Assert.assertEquals(1, countCached(retval, fid));
+        Envelope cached = querySimplified(retval, fid);
+        Assert.assertEquals(simplified.minX, cached.minX, 1e-9d);
+        Assert.assertEquals(simplified.maxY, cached.maxY, 1e-9d);
+
+        // the cached geometry must not be served after the geometry changes
+        retval.updateFeature(fid, FeatureDataStore2.PROPERTY_FEATURE_GEOMETRY,
+                null, circle(-20d, 5d, 1d), null, null,
+                Feature.AltitudeMode.ClampToGround, 0d,
+                FeatureDataStore2.UPDATE_ATTRIBUTES_SET);
+        Assert.assertEquals(0, countCached(retval, fid));
+        Envelope updated = querySimplified(retval, fid);
+        Assert.assertEquals(-20d, (updated.minX + updated.maxX) / 2d, 0.05d);
+        Assert.assertEquals(5d, (updated.minY + updated.maxY) / 2d, 0.05d);
+
+        retval.dispose();
+    }
+}
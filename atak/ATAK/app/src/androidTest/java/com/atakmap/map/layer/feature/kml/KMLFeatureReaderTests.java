@@ -0,0 +1,134 @@
+package com.atakmap.map.layer.feature.kml;
+
+import com.atakmap.android.androidtest.ATAKInstrumentedTest;
+import com.atakmap.map.layer.feature.FeatureDataSource;
+import com.atakmap.map.layer.feature.geometry.Geometry;
+import com.atakmap.map.layer.feature.geometry.GeometryFactory;
+import com.atakmap.map.layer.feature.geometry.LineString;
+import com.atakmap.map.layer.feature.geometry.Polygon;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class KMLFeatureReaderTests extends ATAKInstrumentedTest {
+
+    private static final String KML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><name>doc</name>"
+            + "<Style id=\"line\"><LineStyle><color>ff0000ff</color><width>3</width></LineStyle></Style>"
+            + "<StyleMap id=\"map\"><Pair><key>normal</key><styleUrl>#line</styleUrl></Pair></StyleMap>"
+            + "<Placemark><name>point</name><Point><coordinates>-77.5,38.25</coordinates></Point></Placemark>"
+            + "<Folder><name>folder</name>"
+            + "<Placemark><name>line</name><styleUrl>#map</styleUrl>"
+            + "<LineString><coordinates>1,2,3 4,5,6 7,8,9</coordinates></LineString></Placemark>"
+            + "<Placemark><name>area</name><Polygon>"
+            + "<outerBoundaryIs><LinearRing><coordinates>0,0 10,0 10,10 0,10</coordinates></LinearRing></outerBoundaryIs>"
+            + "<innerBoundaryIs><LinearRing><coordinates>1,1 2,1 2,2 1,1</coordinates></LinearRing></innerBoundaryIs>"
+            + "</Polygon></Placemark>"
+            + "<Placemark><name>empty</name></Placemark>"
+            + "</Folder></Document></kml>";
+
+    private static KMLFeatureReader reader() throws IOException {
+        final byte[] kml = KML.getBytes(StandardCharsets.UTF_8);
+        return new KMLFeatureReader(new ByteArrayInputStream(kml), kml.length,
+                null);
+    }
+
+    @Test
+    public void reader_streams_placemarks() throws IOException {
+        try (KMLFeatureReader reader = reader()) {
+            Assert.assertTrue(reader.moveToNext());
+            Assert.assertEquals("point", reader.get().getName());
+            Assert.assertEquals("doc", reader.getPath());
+
+            Assert.assertTrue(reader.moveToNext());
+            Assert.assertEquals("line", reader.get().getName());
+            Assert.assertEquals("doc/folder", reader.getPath());
+            Assert.assertEquals("PEN(c:#FF0000FF,w:3px)",
+                    reader.get().getRawStyle());
+            Geometry line = GeometryFactory
+                    .parseWkb((byte[]) reader.get().getRawGeometry());
+            Assert.assertTrue(line instanceof LineString);
+            Assert.assertEquals(3, line.getDimension());
+            Assert.assertEquals(3, ((LineString) line).getNumPoints());
+
+            Assert.assertTrue(reader.moveToNext());
+            Assert.assertEquals("area", reader.get().getName());
+            Geometry area = GeometryFactory
+                    .parseWkb((byte[]) reader.get().getRawGeometry());
+            Assert.assertTrue(area instanceof Polygon);
+            Assert.assertEquals(5, ((Polygon) area).getExteriorRing()
+                    .getNumPoints());
+            Assert.assertEquals(1,
+                    ((Polygon) area).getInteriorRings().size());
+
+            // placemark without geometry is skipped
+            Assert.assertFalse(reader.moveToNext());
+        }
+    }
+
+    @Test
+    public void data_source_groups_placemarks_by_container()
+            throws IOException {
+        File file = File.createTempFile("test", ".kml");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(KML.getBytes(StandardCharsets.UTF_8));
+            }
+
+            KMLFeatureDataSource source = new KMLFeatureDataSource();
+            Assert.assertNull(source.parse(new File("test.shp")));
+
+            FeatureDataSource.Content content = source.parse(file);
+            Assert.assertNotNull(content);
+            try {
+                Assert.assertEquals(KMLFeatureDataSource.PROVIDER_NAME,
+                        content.getProvider());
+                Assert.assertEquals("kml", content.getType());
+
+                // placemarks are only available within a feature set
+                Assert.assertFalse(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE));
+
+                Assert.assertTrue(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE_SET));
+                Assert.assertEquals("doc", content.getFeatureSetName());
+                Assert.assertTrue(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE));
+                Assert.assertEquals("point", content.get().name);
+                Assert.assertFalse(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE));
+
+                Assert.assertTrue(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE_SET));
+                Assert.assertEquals("doc/folder",
+                        content.getFeatureSetName());
+                Assert.assertTrue(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE));
+                FeatureDataSource.FeatureDefinition line = content.get();
+                Assert.assertEquals("line", line.name);
+                Assert.assertEquals("PEN(c:#FF0000FF,w:3px)", line.rawStyle);
+                Assert.assertTrue(GeometryFactory.parseWkb(
+                        (byte[]) line.rawGeom) instanceof LineString);
+                Assert.assertTrue(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE));
+                Assert.assertEquals("area", content.get().name);
+                Assert.assertFalse(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE));
+
+                Assert.assertFalse(content.moveToNext(
+                        FeatureDataSource.Content.ContentPointer.FEATURE_SET));
+            } finally {
+                content.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
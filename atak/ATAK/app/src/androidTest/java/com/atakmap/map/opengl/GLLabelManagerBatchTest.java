@@ -0,0 +1,98 @@
+
+package com.atakmap.map.opengl;
+
+import com.atakmap.android.androidtest.ATAKInstrumentedTest;
+import com.atakmap.map.layer.feature.geometry.Geometry;
+import com.atakmap.map.layer.feature.geometry.GeometryFactory;
+import com.atakmap.map.layer.feature.geometry.LineString;
+import com.atakmap.map.layer.feature.geometry.Point;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GLLabelManagerBatchTest extends ATAKInstrumentedTest {
+
+    /**
+     * Decodes the geometry of the pending update for the label, as the
+     * native side does on commit.
+     */
+    private static LineString pendingGeometry(GLLabelManager labels,
+            int id) {
+        final int offset = labels.pending.find(LabelUpdateBatch.OP_POINT,
+                id);
+        assertTrue(offset >= 0);
+        ByteBuffer wkb = labels.pending.getBuffer().duplicate();
+        final int wkbSize = wkb.getInt(offset);
+        wkb.limit(offset + 4 + wkbSize);
+        wkb.position(offset + 4);
+        Geometry geom = GeometryFactory.parseWkb(wkb.slice());
+        assertTrue(geom instanceof LineString);
+        return (LineString) geom;
+    }
+
+    private static LineString lineString() {
+        LineString ls = new LineString(2);
+        ls.addPoint(10d, 20d);
+        ls.addPoint(11d, 21d);
+        return ls;
+    }
+
+    @Test
+    public void geometry_may_be_disposed_before_commit() {
+        // no native label manager, commit discards the batch
+        GLLabelManager labels = new GLLabelManager(0L, null);
+        LineString ls = lineString();
+        labels.setGeometry(1, ls);
+        ls.dispose();
+
+        LineString queued = pendingGeometry(labels, 1);
+        assertEquals(2, queued.getNumPoints());
+        assertEquals(10d, queued.getX(0), 0d);
+        assertEquals(21d, queued.getY(1), 0d);
+        queued.dispose();
+
+        labels.commit();
+        assertTrue(labels.pending.isEmpty());
+    }
+
+    @Test
+    public void geometry_is_copied_when_queued() {
+        GLLabelManager labels = new GLLabelManager(0L, null);
+        LineString ls = lineString();
+        labels.setGeometry(1, ls);
+        ls.addPoint(12d, 22d);
+        ls.dispose();
+
+        LineString queued = pendingGeometry(labels, 1);
+        assertEquals(2, queued.getNumPoints());
+        queued.dispose();
+    }
+
+    @Test
+    public void geometry_supersedes_point() {
+        GLLabelManager labels = new GLLabelManager(0L, null);
+        labels.setGeometry(1, new Point(1d, 2d));
+        LineString ls = lineString();
+        labels.setGeometry(1, ls);
+        ls.dispose();
+
+        assertEquals(LabelUpdateBatch.OP_NOP,
+                labels.pending.getBuffer().getInt(0));
+        assertEquals(1, labels.pending.getCoalescedCount());
+        assertEquals(LabelUpdateBatch.OP_GEOMETRY, labels.pending.getBuffer()
+                .getInt(LabelUpdateBatch.HEADER_SIZE + 28));
+    }
+
+    @Test
+    public void hints_are_read_without_commit() {
+        GLLabelManager labels = new GLLabelManager(0L, null);
+        labels.setHints(1, GLLabelManager.HINT_DUPLICATE_ON_SPLIT);
+        assertEquals(GLLabelManager.HINT_DUPLICATE_ON_SPLIT,
+                labels.getHints(1));
+        assertEquals(1, labels.pending.getRecordCount());
+    }
+}
@@ -225,10 +225,18 @@ public class MapComponentLoader {
         // JSON preference file serialization and reading
         JSONPreferenceControl.getInstance().initDefaults(activity.getMapView());
 
+        final StartupProfiler profiler = StartupProfiler.getInstance();
         for (Class component : mapComponents) {
             try {
-                activity.registerMapComponent(
-                        (MapComponent) component.newInstance());
+                final long start = System.nanoTime();
+                final MapComponent mc;
+                try {
+                    mc = (MapComponent) component.newInstance();
+                } finally {
+                    profiler.record(component.getSimpleName(),
+                            StartupProfiler.INSTANTIATE, start);
+                }
+                activity.registerMapComponent(mc);
             } catch (Throwable t) {
                 Log.e(TAG, "error loading: " + component, t);
             }
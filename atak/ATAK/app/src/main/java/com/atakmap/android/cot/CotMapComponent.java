@@ -555,6 +555,9 @@ public class CotMapComponent extends AbstractMapComponent implements
 
     @Override
     public void onCotEvent(final CotEvent event, final Bundle extra) {
+        final ReportingRate reportingRate = _reportingRate;
+        if (reportingRate != null)
+            reportingRate.onMessageReceived();
         processCotEvent(event, extra);
     }
 
@@ -1214,6 +1217,18 @@ public class CotMapComponent extends AbstractMapComponent implements
         return self.getMetaDouble("Speed", 0.0);
     }
 
+    @Override
+    public double getReportingCourse() {
+        Marker self = ATAKUtilities.findSelfUnplaced(_mapView);
+        if (self == null)
+            return Double.NaN;
+
+        double heading = self.getTrackHeading();
+        if (Math.abs(heading) > 3600)
+            return Double.NaN;
+        return heading;
+    }
+
     @Override
     public void report(int stale, int flags) {
         sendSelfSA(stale, flags);
@@ -0,0 +1,652 @@
+
+package com.atakmap.android.elev.dt2;
+
+import com.atakmap.app.DeveloperOptions;
+import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.log.Log;
+import com.atakmap.util.zip.IoUtils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide cache of decoded DTED elevation chunks.
+ *
+ * <P>DTED cells are memory mapped when opened (falling back on positional
+ * reads if the active IO provider does not support mapping) and are divided
+ * into square chunks of posts. Decoded chunks are held in an LRU bounded by
+ * a byte budget, so repeated queries over the same terrain, such as panning
+ * the heat map, are served without any file I/O. Chunks are keyed by the
+ * file path, length and modification time, so they outlive the cell that
+ * decoded them; only cells read through a channel count against the open
+ * cell bound, as mapped cells do not hold a file descriptor.
+ *
+ * <P>Posts are addressed by column, west to east, and row, north to south.
+ *
+ * <P>Thread-safe.
+ */
+public final class DtedChunkCache {
+
+    private static final String TAG = "DtedChunkCache";
+
+    /** offset into header where 4 char line count starts (4 char sample point follows) */
+    private static final int _NUM_LNG_LINES_OFFSET = 47;
+    private static final int _HEADER_OFFSET = 3428;
+    private static final int _DATA_RECORD_PREFIX_SIZE = 8;
+    private static final int _DATA_RECORD_SUFFIX_SIZE = 4;
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final long DEFAULT_BUDGET = 32L * 1024L * 1024L;
+    public static final int DEFAULT_MAX_OPEN_CELLS = 16;
+
+    private static DtedChunkCache _instance;
+
+    /**
+     * Snapshot of the cache statistics.
+     */
+    public static final class Statistics {
+        /** the number of chunk requests served from the cache */
+        public final long hits;
+        /** the number of chunk requests that required decoding */
+        public final long misses;
+        /** the number of chunks evicted to stay within the budget */
+        public final long evictions;
+        /** the number of chunks currently cached */
+        public final int chunks;
+        /** the number of bytes currently cached */
+        public final long bytes;
+        /** the number of cells currently open, mapped or not */
+        public final int openCells;
+
+        Statistics(long hits, long misses, long evictions, int chunks,
+                long bytes, int openCells) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.chunks = chunks;
+            this.bytes = bytes;
+            this.openCells = openCells;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "hits=%d misses=%d evictions=%d chunks=%d bytes=%d cells=%d",
+                    hits, misses, evictions, chunks, bytes, openCells);
+        }
+    }
+
+    /**
+     * An open DTED cell.
+     */
+    public static final class Cell {
+        /** the cell file */
+        public final File file;
+        /** the number of posts along the longitude axis */
+        public final int columns;
+        /** the number of posts along the latitude axis */
+        public final int rows;
+        /** the number of posts along each axis of a chunk */
+        public final int chunkSize;
+        public final int numChunksX;
+        public final int numChunksY;
+
+        final String path;
+        final long length;
+        final long lastModified;
+        final int dataRecSize;
+
+        /** the mapped file, <code>null</code> if mapping is not supported */
+        private final ByteBuffer mapped;
+        /** the channel, if the file is not mapped */
+        private FileChannel channel;
+
+        Cell(File file, int chunkSize, long length, long lastModified,
+                int columns, int rows, ByteBuffer mapped,
+                FileChannel channel) {
+            this.file = file;
+            this.path = file.getAbsolutePath();
+            this.chunkSize = chunkSize;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.columns = columns;
+            this.rows = rows;
+            this.dataRecSize = _DATA_RECORD_PREFIX_SIZE + (rows * 2)
+                    + _DATA_RECORD_SUFFIX_SIZE;
+            this.numChunksX = (columns + chunkSize - 1) / chunkSize;
+            this.numChunksY = (rows + chunkSize - 1) / chunkSize;
+            this.mapped = mapped;
+            this.channel = channel;
+        }
+
+        public int getChunkX(double leftLng, double longitude) {
+            final double xd = (longitude - leftLng) * (this.columns - 1);
+            return (int) xd / this.chunkSize;
+        }
+
+        public int getChunkY(double upperLat, double latitude) {
+            final double yd = (upperLat - latitude) * (this.rows - 1);
+            return (int) yd / this.chunkSize;
+        }
+
+        /**
+         * @return the longitude offset from the western edge of the cell
+         */
+        public double chunkPixelXToLongitude(int chunkX, double px) {
+            final double fullX = chunkX * this.chunkSize + px;
+            return fullX / (double) (this.columns - 1);
+        }
+
+        /**
+         * @return the latitude offset from the northern edge of the cell
+         */
+        public double chunkPixelYToLatitude(int chunkY, double py) {
+            final double fullY = chunkY * this.chunkSize + py;
+            return fullY / (double) (this.rows - 1);
+        }
+
+        public double chunkLongitudeToPixelX(int chunkX, double leftLng,
+                double lng) {
+            return ((this.columns - 1) * (lng - leftLng))
+                    - (chunkX * this.chunkSize);
+        }
+
+        public double chunkLatitudeToPixelY(int chunkY, double upperLat,
+                double lat) {
+            return ((this.rows - 1) * (upperLat - lat))
+                    - (chunkY * this.chunkSize);
+        }
+
+        /**
+         * Reads the raw posts of one column, north to south.
+         */
+        void readColumn(int column, int row, short[] dst, int count)
+                throws IOException {
+            // posts are stored south to north
+            final long offset = _HEADER_OFFSET
+                    + ((long) column * this.dataRecSize)
+                    + _DATA_RECORD_PREFIX_SIZE
+                    + (((long) this.rows - row - count) * 2L);
+            if (this.mapped != null) {
+                if (offset + (count * 2L) > this.mapped.capacity())
+                    throw new EOFException();
+                for (int i = 0; i < count; i++)
+                    dst[count - 1 - i] = this.mapped
+                            .getShort((int) offset + (i * 2));
+                return;
+            }
+
+            final ByteBuffer buf = ByteBuffer.allocate(count * 2);
+            buf.order(ByteOrder.BIG_ENDIAN);
+            synchronized (this) {
+                if (this.channel == null || !this.channel.isOpen())
+                    this.channel = IOProviderFactory.getChannel(this.file,
+                            "r");
+                while (buf.hasRemaining()) {
+                    if (this.channel.read(buf,
+                            offset + buf.position()) < 0)
+                        throw new EOFException();
+                }
+            }
+            for (int i = 0; i < count; i++)
+                dst[count - 1 - i] = buf.getShort(i * 2);
+        }
+
+        boolean isMapped() {
+            return this.mapped != null;
+        }
+
+        synchronized void close() {
+            IoUtils.close(this.channel);
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Identifies a chunk of a specific version of a cell file.
+     */
+    private static final class ChunkKey {
+        final String path;
+        final long length;
+        final long lastModified;
+        final int chunkX;
+        final int chunkY;
+
+        ChunkKey(Cell cell, int chunkX, int chunkY) {
+            this.path = cell.path;
+            this.length = cell.length;
+            this.lastModified = cell.lastModified;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+        }
+
+        boolean isVersionOf(Cell cell) {
+            return this.path.equals(cell.path)
+                    && this.length == cell.length
+                    && this.lastModified == cell.lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof ChunkKey))
+                return false;
+            final ChunkKey other = (ChunkKey) o;
+            return this.chunkX == other.chunkX
+                    && this.chunkY == other.chunkY
+                    && this.length == other.length
+                    && this.lastModified == other.lastModified
+                    && this.path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.path.hashCode();
+            result = 31 * result + (int) (this.length ^ (this.length >>> 32));
+            result = 31 * result + (int) (this.lastModified
+                    ^ (this.lastModified >>> 32));
+            result = 31 * result + this.chunkX;
+            result = 31 * result + this.chunkY;
+            return result;
+        }
+    }
+
+    /**
+     * A decoded block of posts. Null and invalid posts are
+     * {@link Float#NaN}.
+     */
+    public static final class Chunk {
+        public final int chunkX;
+        public final int chunkY;
+        /** the number of columns in the chunk */
+        public final int columns;
+        /** the number of rows in the chunk */
+        public final int rows;
+
+        private final float[] samples;
+
+        Chunk(int chunkX, int chunkY, int columns, int rows,
+                float[] samples) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.columns = columns;
+            this.rows = rows;
+            this.samples = samples;
+        }
+
+        /**
+         * @param column    The column, relative to the chunk
+         * @param row       The row, relative to the chunk
+         *
+         * @return the elevation, in meters MSL
+         */
+        public float getSample(int column, int row) {
+            return this.samples[(row * this.columns) + column];
+        }
+
+        long getSize() {
+            return this.samples.length * 4L;
+        }
+    }
+
+    private final int chunkSize;
+    private final long budget;
+    private final int maxOpenCells;
+
+    private final Map<String, Cell> cells = new LinkedHashMap<>(16, 0.75f,
+            true);
+    private final Map<ChunkKey, Chunk> chunks = new LinkedHashMap<>(64,
+            0.75f, true);
+    /** the number of open cells that are read through a channel */
+    private int channelCells;
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    DtedChunkCache(int chunkSize, long budget, int maxOpenCells) {
+        if (chunkSize < 2 || budget < 0L || maxOpenCells < 1)
+            throw new IllegalArgumentException();
+        this.chunkSize = chunkSize;
+        this.budget = budget;
+        this.maxOpenCells = maxOpenCells;
+    }
+
+    /**
+     * @return the process-wide cache
+     */
+    public static synchronized DtedChunkCache getInstance() {
+        if (_instance == null) {
+            final long budget = Math.max(DeveloperOptions.getIntOption(
+                    "dted.chunk-cache-mb", 32), 0) * 1024L * 1024L;
+            _instance = new DtedChunkCache(DEFAULT_CHUNK_SIZE, budget,
+                    DEFAULT_MAX_OPEN_CELLS);
+        }
+        return _instance;
+    }
+
+    /**
+     * Returns the specified cell, opening it if necessary. A cell whose
+     * file has changed since it was opened is reopened and its chunks are
+     * discarded. Chunks of a cell that is closed to stay within the open
+     * cell bound remain cached.
+     *
+     * @param file  The DTED file
+     *
+     * @return  The cell
+     *
+     * @throws IOException  If the file does not exist or its header is
+     *                      invalid
+     */
+    public Cell getCell(File file) throws IOException {
+        final String key = file.getAbsolutePath();
+        final long length = IOProviderFactory.length(file);
+        final long lastModified = IOProviderFactory.lastModified(file);
+        synchronized (this) {
+            final Cell cell = this.cells.get(key);
+            if (cell != null && cell.length == length
+                    && cell.lastModified == lastModified)
+                return cell;
+        }
+
+        if (!IOProviderFactory.exists(file))
+            throw new IOException("No such file " + key);
+
+        final Cell opened = open(file, length, lastModified);
+        synchronized (this) {
+            final Cell stale = this.cells.put(key, opened);
+            if (stale != null) {
+                closeNoSync(stale);
+                if (stale.length != length
+                        || stale.lastModified != lastModified)
+                    discardChunksNoSync(stale);
+            }
+            if (!opened.isMapped())
+                this.channelCells++;
+            final Iterator<Cell> it = this.cells.values().iterator();
+            while (this.channelCells > this.maxOpenCells && it.hasNext()) {
+                final Cell eldest = it.next();
+                if (eldest == opened || eldest.isMapped())
+                    continue;
+                it.remove();
+                closeNoSync(eldest);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Returns the specified chunk of the cell, decoding it if it is not
+     * already cached.
+     *
+     * @param cell      The cell
+     * @param chunkX    The chunk column, <code>0</code> through
+     *                  {@link Cell#numChunksX}<code>-1</code>
+     * @param chunkY    The chunk row, <code>0</code> through
+     *                  {@link Cell#numChunksY}<code>-1</code>
+     *
+     * @return  The chunk
+     *
+     * @throws IOException  If the chunk could not be read
+     */
+    public Chunk getChunk(Cell cell, int chunkX, int chunkY)
+            throws IOException {
+        if (chunkX < 0 || chunkX >= cell.numChunksX)
+            throw new IllegalArgumentException();
+        if (chunkY < 0 || chunkY >= cell.numChunksY)
+            throw new IllegalArgumentException();
+
+        final ChunkKey key = new ChunkKey(cell, chunkX, chunkY);
+        synchronized (this) {
+            final Chunk chunk = this.chunks.get(key);
+            if (chunk != null) {
+                this.hits++;
+                return chunk;
+            }
+            this.misses++;
+        }
+
+        // decode outside of the lock; concurrent misses on the same chunk
+        // may decode it more than once
+        final Chunk chunk = decode(cell, chunkX, chunkY);
+        synchronized (this) {
+            // don't cache chunks for a file that has since been modified
+            final Cell current = this.cells.get(cell.path);
+            if (current != null && (current.length != cell.length
+                    || current.lastModified != cell.lastModified))
+                return chunk;
+            final Chunk replaced = this.chunks.put(key, chunk);
+            if (replaced != null)
+                this.bytes -= replaced.getSize();
+            this.bytes += chunk.getSize();
+            trimNoSync();
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the bilinearly interpolated elevation at the specified
+     * location.
+     *
+     * @return  The elevation, in meters MSL, or {@link Float#NaN} if any of
+     *          the surrounding posts is null
+     */
+    public float getHeight(Cell cell, double latitude, double longitude)
+            throws IOException {
+        final double latRatio = (latitude - Math.floor(latitude));
+        final double lngRatio = (longitude - Math.floor(longitude));
+
+        final double xd = lngRatio * (cell.columns - 1);
+        // rows run north to south
+        final double yd = (1d - latRatio) * (cell.rows - 1);
+
+        final int x = (int) xd;
+        final int y = (int) Math.ceil(yd);
+        final int x1 = Math.min(x + 1, cell.columns - 1);
+        final int y1 = Math.max(y - 1, 0);
+
+        final float chunkLL = getPost(cell, x, y);
+        final float chunkLR = getPost(cell, x1, y);
+        final float chunkUL = getPost(cell, x, y1);
+        final float chunkUR = getPost(cell, x1, y1);
+
+        if (Float.isNaN(chunkUL)
+                || Float.isNaN(chunkUR)
+                || Float.isNaN(chunkLR)
+                || Float.isNaN(chunkLL)) {
+            return Float.NaN;
+        }
+
+        final double wR = xd - x;
+        final double wL = 1.0d - wR;
+        final double wT = y - yd;
+        final double wB = 1.0d - wT;
+
+        float val = 0.0f;
+        val += (float) ((wL * wT) * chunkUL);
+        val += (float) ((wR * wT) * chunkUR);
+        val += (float) ((wR * wB) * chunkLR);
+        val += (float) ((wL * wB) * chunkLL);
+        return val;
+    }
+
+    /**
+     * Discards all cached chunks and closes all open cells.
+     */
+    public synchronized void clear() {
+        for (Cell cell : this.cells.values())
+            cell.close();
+        this.cells.clear();
+        this.channelCells = 0;
+        this.chunks.clear();
+        this.bytes = 0L;
+    }
+
+    /**
+     * @return the cache statistics
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(this.hits, this.misses, this.evictions,
+                this.chunks.size(), this.bytes, this.cells.size());
+    }
+
+    /**
+     * @param cell      The cell
+     * @param column    The column, west to east
+     * @param row       The row, north to south
+     *
+     * @return  The elevation of the post, in meters MSL, or
+     *          {@link Float#NaN} if the post is null
+     */
+    public float getPost(Cell cell, int column, int row) throws IOException {
+        final Chunk chunk = getChunk(cell, column / cell.chunkSize,
+                row / cell.chunkSize);
+        return chunk.getSample(column % cell.chunkSize,
+                row % cell.chunkSize);
+    }
+
+    /**
+     * Reads a single post without decoding its chunk. The post is taken
+     * from the chunk if it is already cached, otherwise it is read
+     * directly from the cell and nothing is added to the cache. Suited to
+     * sparse point queries that should not displace the chunks of dense
+     * consumers such as the heat map.
+     *
+     * @param cell      The cell
+     * @param column    The column, west to east
+     * @param row       The row, north to south
+     *
+     * @return  The elevation of the post, in meters MSL, or
+     *          {@link Float#NaN} if the post is null
+     */
+    public float readPost(Cell cell, int column, int row)
+            throws IOException {
+        if (column < 0 || column >= cell.columns || row < 0
+                || row >= cell.rows)
+            throw new IllegalArgumentException();
+
+        final int chunkX = column / cell.chunkSize;
+        final int chunkY = row / cell.chunkSize;
+        synchronized (this) {
+            final Chunk chunk = this.chunks
+                    .get(new ChunkKey(cell, chunkX, chunkY));
+            if (chunk != null) {
+                this.hits++;
+                return chunk.getSample(column % cell.chunkSize,
+                        row % cell.chunkSize);
+            }
+        }
+
+        final short[] post = new short[1];
+        cell.readColumn(column, row, post, 1);
+        return (float) Dt2ElevationData.interpretSample(post[0]);
+    }
+
+    private Cell open(File file, long length, long lastModified)
+            throws IOException {
+        FileChannel channel = null;
+        try {
+            channel = IOProviderFactory.getChannel(file, "r");
+
+            final ByteBuffer header = ByteBuffer.allocate(8);
+            while (header.hasRemaining()) {
+                if (channel.read(header,
+                        _NUM_LNG_LINES_OFFSET + header.position()) < 0)
+                    throw new EOFException();
+            }
+            final int columns;
+            final int rows;
+            try {
+                columns = Integer.parseInt(new String(header.array(), 0, 4,
+                        StandardCharsets.US_ASCII));
+                rows = Integer.parseInt(new String(header.array(), 4, 4,
+                        StandardCharsets.US_ASCII));
+            } catch (NumberFormatException nfe) {
+                throw new IOException(nfe);
+            }
+            if (columns < 2 || rows < 2)
+                throw new IOException("Invalid DTED extents " + columns
+                        + "x" + rows);
+
+            ByteBuffer mapped = null;
+            final long size = channel.size();
+            if (IOProviderFactory.isDefault() && size <= Integer.MAX_VALUE) {
+                try {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            size);
+                    mapped.order(ByteOrder.BIG_ENDIAN);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Log.w(TAG, "Failed to map " + file + ", using reads");
+                }
+            }
+
+            final Cell cell = new Cell(file, this.chunkSize, length,
+                    lastModified, columns, rows, mapped,
+                    (mapped == null) ? channel : null);
+            // the mapping remains valid once the channel is closed
+            if (mapped != null)
+                IoUtils.close(channel);
+            channel = null;
+            return cell;
+        } finally {
+            IoUtils.close(channel);
+        }
+    }
+
+    private Chunk decode(Cell cell, int chunkX, int chunkY)
+            throws IOException {
+        final int dstX = chunkX * cell.chunkSize;
+        final int dstY = chunkY * cell.chunkSize;
+        final int dstW = Math.min(cell.chunkSize, cell.columns - dstX);
+        final int dstH = Math.min(cell.chunkSize, cell.rows - dstY);
+
+        final float[] samples = new float[dstW * dstH];
+        final short[] column = new short[dstH];
+        for (int x = 0; x < dstW; x++) {
+            cell.readColumn(dstX + x, dstY, column, dstH);
+            for (int y = 0; y < dstH; y++)
+                samples[(y * dstW) + x] = (float) Dt2ElevationData
+                        .interpretSample(column[y]);
+        }
+        return new Chunk(chunkX, chunkY, dstW, dstH, samples);
+    }
+
+    private void trimNoSync() {
+        final Iterator<Chunk> it = this.chunks.values().iterator();
+        while (this.bytes > this.budget && it.hasNext()) {
+            final Chunk eldest = it.next();
+            it.remove();
+            this.bytes -= eldest.getSize();
+            this.evictions++;
+        }
+    }
+
+    private void closeNoSync(Cell cell) {
+        cell.close();
+        if (!cell.isMapped())
+            this.channelCells--;
+    }
+
+    private void discardChunksNoSync(Cell cell) {
+        final Iterator<Map.Entry<ChunkKey, Chunk>> it = this.chunks
+                .entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<ChunkKey, Chunk> entry = it.next();
+            if (entry.getKey().isVersionOf(cell)) {
+                this.bytes -= entry.getValue().getSize();
+                it.remove();
+            }
+        }
+    }
+}
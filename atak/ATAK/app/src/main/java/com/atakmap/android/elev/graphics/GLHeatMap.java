@@ -2,17 +2,17 @@
 package com.atakmap.android.elev.graphics;
 
 import android.graphics.Color;
-import android.os.CancellationSignal;
 import android.os.SystemClock;
 import android.util.Pair;
 
 import com.atakmap.android.elev.HeatMapOverlay;
 import com.atakmap.android.elev.dt2.Dt2ElevationData;
 import com.atakmap.android.elev.dt2.Dt2FileWatcher;
+import com.atakmap.android.elev.dt2.DtedChunkCache;
+import com.atakmap.annotations.DeprecatedApi;
 import com.atakmap.app.DeveloperOptions;
 import com.atakmap.coremap.conversions.ConversionFactors;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
-import com.atakmap.coremap.io.IOProviderFactory;
 import com.atakmap.coremap.locale.LocaleUtil;
 import com.atakmap.coremap.log.Log;
 import com.atakmap.coremap.maps.conversion.EGM96;
@@ -41,7 +41,6 @@ import com.atakmap.math.NoninvertibleTransformException;
 import com.atakmap.math.PointD;
 import com.atakmap.opengl.GLES20FixedPipeline;
 import com.atakmap.opengl.GLTexture;
-import com.atakmap.util.zip.IoUtils;
 
 import java.io.EOFException;
 import java.io.File;
@@ -60,7 +59,8 @@ import java.util.Set;
 
 public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
         implements GLLayer, HeatMapOverlay.OnHeatMapColorChangedListener,
-        HeatMapOverlay.OnHeatMapResolutionChangedListener {
+        HeatMapOverlay.OnHeatMapResolutionChangedListener,
+        Dt2FileWatcher.Listener {
 
     private final static boolean DEBUG_QUERY_TIME = (DeveloperOptions
             .getIntOption("heatmap.debug-query-time", 0) != 0);
@@ -87,6 +87,21 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
 
     private final static int QUICK_FACTOR = 5;
 
+    /**
+     * the number of tile levels coarser than the full resolution level that
+     * are computed while the map is in motion
+     */
+    private final static int QUICK_LEVELS = 2;
+    /** the maximum time to wait on tiles for a quick pass, in milliseconds */
+    private final static long QUICK_DEADLINE = 100L;
+    /** the maximum time to wait on tiles for a full pass, in milliseconds */
+    private final static long FULL_DEADLINE = 250L;
+    /** the maximum number of heat map tiles retained */
+    private final static int TILE_CACHE_CAPACITY = 1024;
+
+    /** approximate length of a degree of latitude, in meters */
+    private final static double METERS_PER_DEGREE = 111320d;
+
     private final static Set<String> DTED_PATHS = new LinkedHashSet<>();
     static {
         DTED_PATHS.add(FileSystemUtils.getItem("DTED").getAbsolutePath()
@@ -121,7 +136,12 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
 
     private final Collection<GLMapRenderable> renderable;
 
-    private CancellationSignal querySignal;
+    private QuerySignal querySignal;
+
+    /** created on the worker thread on the first query */
+    private HeatMapTiles tiles;
+    private double[] sampleLats;
+    private double[] sampleLngs;
 
     GLHeatMap(MapRenderer renderContext, HeatMapOverlay subject) {
         this.renderContext = renderContext;
@@ -169,6 +189,24 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                 GLHeatMap.this.quickResolutionY = Math.max(
                         GLHeatMap.this.fullResolutionY / QUICK_FACTOR, 10);
 
+                // the DTED resource selected for a tile depends on the
+                // sample resolution
+                GLHeatMap.this.clearTiles();
+
+                GLHeatMap.this.invalidate();
+            }
+        });
+    }
+
+    /**************************************************************************/
+    // Dt2 File Watcher Listener
+
+    @Override
+    public void onDtedFilesUpdated() {
+        this.clearTiles();
+        this.renderContext.queueEvent(new Runnable() {
+            @Override
+            public void run() {
                 GLHeatMap.this.invalidate();
             }
         });
@@ -364,13 +402,10 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
         }
         result.drawVersion = state.drawVersion;
 
-        if (!result.quick) {
-            result.xSampleResolution = this.fullResolutionX;
-            result.ySampleResolution = this.fullResolutionY;
-        } else {
-            result.xSampleResolution = this.quickResolutionX;
-            result.ySampleResolution = this.quickResolutionY;
-        }
+        // the image is always resampled at full resolution; the quick pass
+        // samples coarser tiles
+        result.xSampleResolution = this.fullResolutionX;
+        result.ySampleResolution = this.fullResolutionY;
 
         // record the ROI that we are querying
         if (state.crossesIDL) {
@@ -391,14 +426,6 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
             result.lowerLeft.set(state.lowerLeft);
         }
 
-        final double distance;
-        GeoPoint gp1, gp2;
-
-        gp1 = result.lowerLeft;
-        gp2 = result.upperRight;
-
-        distance = GeoCalculations.distanceTo(gp1, gp2);
-
         // obtain the elevation data
         if (result.elevationData == null
                 || result.elevationData.length < (result.xSampleResolution
@@ -406,21 +433,23 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
             result.elevationData = new float[(result.xSampleResolution
                     * result.ySampleResolution)];
 
-        if (state.drawMapResolution > 1000)
-            Arrays.fill(result.elevationData, Float.NaN);
-
         // Connect to active query
         synchronized (this) {
             querySignal = result.querySignal;
         }
 
-        queryGridImpl(result, distance);
+        final boolean complete = this.queryTiles(result);
 
         // Disconnect from active query
         synchronized (this) {
             querySignal = null;
         }
 
+        // if tiles were still being computed when the deadline elapsed,
+        // refine the result once they are available
+        if (!complete && !result.querySignal.isCanceled())
+            result.needsRefresh = true;
+
         // generate the RGBA data from the elevation values
         if (result.rgbaData == null
                 || result.rgbaData.length < (4 * result.xSampleResolution
@@ -431,6 +460,128 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
         this.updateRGBA((HeatMapState) state, result);
     }
 
+    /**
+     * Computes the heat map tiles covering the ROI of the result, in
+     * parallel, and resamples them into the elevation data of the result.
+     * Tiles computed for previous queries are reused.
+     *
+     * @return  <code>true</code> if all tiles at the level appropriate for
+     *          the result were available, <code>false</code> if some of the
+     *          elevation data was filled in from coarser tiles or is missing
+     */
+    private boolean queryTiles(HeatMapParams result) {
+        final int width = result.xSampleResolution;
+        final int height = result.ySampleResolution;
+        final int count = width * height;
+
+        // compute the location of each pixel
+        if (this.sampleLats == null || this.sampleLats.length < count) {
+            this.sampleLats = new double[count];
+            this.sampleLngs = new double[count];
+        }
+        try {
+            final Matrix geo2img = Matrix.mapQuads(
+                    result.upperLeft.getLongitude(),
+                    result.upperLeft.getLatitude(),
+                    result.upperRight.getLongitude(),
+                    result.upperRight.getLatitude(),
+                    result.lowerRight.getLongitude(),
+                    result.lowerRight.getLatitude(),
+                    result.lowerLeft.getLongitude(),
+                    result.lowerLeft.getLatitude(),
+                    0, 0,
+                    width, 0,
+                    width, height,
+                    0, height);
+            if (geo2img == null)
+                throw new NoninvertibleTransformException(
+                        "null source geo2img");
+            final Matrix img2geo = geo2img.createInverse();
+            final PointD img = new PointD(0d, 0d);
+            final PointD geo = new PointD(0d, 0d);
+            for (int i = 0; i < count; i++) {
+                img.x = i % width;
+                img.y = i / width;
+                img2geo.transform(img, geo);
+                this.sampleLats[i] = geo.y;
+                this.sampleLngs[i] = geo.x;
+            }
+        } catch (NoninvertibleTransformException e) {
+            result.valid = false;
+            Arrays.fill(result.elevationData, Float.NaN);
+            return true;
+        }
+
+        final double minLat = result.getMinLatitude();
+        final double minLng = result.getMinLongitude();
+        final double maxLat = result.getMaxLatitude();
+        final double maxLng = result.getMaxLongitude();
+
+        // select the coarsest level whose posts are at least as dense as the
+        // pixels
+        final double spacing = Math.min((maxLng - minLng) / width,
+                (maxLat - minLat) / height);
+        int level = HeatMapTiles.selectLevel(spacing);
+        if (result.quick)
+            level = Math.max(level - QUICK_LEVELS, 0);
+        level = HeatMapTiles.limitLevel(minLat, minLng, maxLat, maxLng,
+                level);
+
+        final HeatMapTiles heatMapTiles = this.getTiles();
+        final boolean computed = heatMapTiles.compute(minLat, minLng, maxLat,
+                maxLng, level, result.quick ? QUICK_DEADLINE : FULL_DEADLINE,
+                result.querySignal);
+        final int coarse = heatMapTiles.sample(this.sampleLats,
+                this.sampleLngs, count, level, result);
+        if (DEBUG_QUERY_TIME)
+            Log.d(TAG, "heat map level " + level + " (quick=" + result.quick
+                    + ", complete=" + computed + ", coarse=" + coarse
+                    + ", tiles=" + heatMapTiles.getTileCount() + ")");
+        return computed && (coarse == 0);
+    }
+
+    private synchronized HeatMapTiles getTiles() {
+        if (this.tiles == null) {
+            this.tiles = new HeatMapTiles(new HeatMapTiles.Source() {
+                @Override
+                public void query(HeatMapParams tile, int level) {
+                    // select the DTED resource as if the tile posts were
+                    // viewport pixels
+                    queryGridImpl(tile, HeatMapTiles.getPostSpacing(level)
+                            * METERS_PER_DEGREE
+                            * Math.hypot(GLHeatMap.this.fullResolutionX,
+                                    GLHeatMap.this.fullResolutionY));
+                }
+            }, TILE_CACHE_CAPACITY,
+                    Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+            final Dt2FileWatcher watcher = Dt2FileWatcher.getInstance();
+            if (watcher != null)
+                watcher.addListener(this);
+        }
+        return this.tiles;
+    }
+
+    private synchronized void clearTiles() {
+        if (this.tiles != null)
+            this.tiles.clear();
+    }
+
+    @Override
+    protected void releaseImpl() {
+        if (this.tiles != null) {
+            final Dt2FileWatcher watcher = Dt2FileWatcher.getInstance();
+            if (watcher != null)
+                watcher.removeListener(this);
+            this.tiles.dispose();
+            this.tiles = null;
+        }
+        this.sampleLats = null;
+        this.sampleLngs = null;
+
+        super.releaseImpl();
+    }
+
     /**
      * Maintains the corner coordinates for the heatmap texture. This class is
      * a double buffer. The {@link #get(int)} method provides read-only access
@@ -773,7 +924,7 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
     // queryGridCachePoints() methods to reduce the copy-paste
     // between them
     private static class GridCache implements
-            CancellationSignal.OnCancelListener {
+            QuerySignal.OnCancelListener {
 
         private final HeatMapParams result;
 
@@ -795,9 +946,8 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
         private int imgMaxY;
         private double x0, x1, x2, x3;
         private double y0, y1, y2, y3;
-        private FileChannel channel;
         private int imgIdx;
-        private final Dted dted;
+        private final DtedChunkCache dtedCache;
         private boolean canceled;
 
         GridCache(HeatMapParams result, double coverageArea)
@@ -845,7 +995,7 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
             this.p = new StringBuilder();
             this.img = new PointD(0.0d, 0.0d);
             this.geo = new PointD(0.0d, 0.0d);
-            this.dted = new Dted(512);
+            this.dtedCache = DtedChunkCache.getInstance();
         }
 
         void queryChunks() {
@@ -912,20 +1062,17 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                             cellMaxLng = Math.min(cellMaxLng,
                                     result.getMaxLongitude());
 
-                            channel = null;
                             boolean missingElev = false;
                             try {
                                 File file = new File(dtedPath, Dt2FileWatcher
                                         .getRelativePath(level, lat, lng));
-                                channel = IOProviderFactory.getChannel(file,
-                                        "r");
-
-                                dted.readHeader(
-                                        channel,
-                                        Math.ceil(result.getMaxLatitude()
-                                                - celly),
-                                        Math.floor(result.getMinLongitude()
-                                                + cellx));
+                                final DtedChunkCache.Cell dted = dtedCache
+                                        .getCell(file);
+                                final double cellUpperLat = Math
+                                        .ceil(result.getMaxLatitude() - celly);
+                                final double cellLeftLng = Math
+                                        .floor(result.getMinLongitude()
+                                                + cellx);
 
                                 chunkXMin = dted.getChunkX(
                                         Math.floor(cellMinLng),
@@ -942,7 +1089,8 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
 
                                 for (int cy = chunkYMin; cy <= chunkYMax; cy++) {
                                     for (int cx = chunkXMin; cx <= chunkXMax; cx++) {
-                                        dted.loadChunk(channel, cx, cy);
+                                        final DtedChunkCache.Chunk chunk = dtedCache
+                                                .getChunk(dted, cx, cy);
 
                                         chunkMaxLat = Math.ceil(cellMaxLat)
                                                 - dted.chunkPixelYToLatitude(
@@ -953,11 +1101,11 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                         chunkMinLat = Math.ceil(cellMaxLat)
                                                 - dted.chunkPixelYToLatitude(
                                                         cy,
-                                                        dted.chunkRows);
+                                                        chunk.rows);
                                         chunkMaxLng = Math.floor(cellMinLng)
                                                 + dted.chunkPixelXToLongitude(
                                                         cx,
-                                                        dted.chunkCols);
+                                                        chunk.columns);
 
                                         chunkMaxLat = MathUtils.clamp(
                                                 chunkMaxLat,
@@ -1046,17 +1194,19 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                                         .clamp(dted
                                                                 .chunkLongitudeToPixelX(
                                                                         cx,
+                                                                        cellLeftLng,
                                                                         geo.x),
                                                                 0,
-                                                                dted.chunkCols
+                                                                chunk.columns
                                                                         - 1);
                                                 double chunkY = MathUtils
                                                         .clamp(
                                                                 dted.chunkLatitudeToPixelY(
                                                                         cy,
+                                                                        cellUpperLat,
                                                                         geo.y),
                                                                 0,
-                                                                dted.chunkRows
+                                                                chunk.rows
                                                                         - 1);
 
                                                 int chunkLx = (int) chunkX;
@@ -1066,34 +1216,18 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                                 int chunkBy = (int) Math
                                                         .ceil(chunkY);
 
-                                                float chunkUL = getDtedHeight(
-                                                        dted.chunk
-                                                                .getShort(
-                                                                        (chunkTy * 2
-                                                                                * dted.chunkCols)
-                                                                                + chunkLx
-                                                                                        * 2));
-                                                float chunkUR = getDtedHeight(
-                                                        dted.chunk
-                                                                .getShort(
-                                                                        (chunkTy * 2
-                                                                                * dted.chunkCols)
-                                                                                + chunkRx
-                                                                                        * 2));
-                                                float chunkLR = getDtedHeight(
-                                                        dted.chunk
-                                                                .getShort(
-                                                                        (chunkBy * 2
-                                                                                * dted.chunkCols)
-                                                                                + chunkRx
-                                                                                        * 2));
-                                                float chunkLL = getDtedHeight(
-                                                        dted.chunk
-                                                                .getShort(
-                                                                        (chunkBy * 2
-                                                                                * dted.chunkCols)
-                                                                                + chunkLx
-                                                                                        * 2));
+                                                float chunkUL = chunk
+                                                        .getSample(chunkLx,
+                                                                chunkTy);
+                                                float chunkUR = chunk
+                                                        .getSample(chunkRx,
+                                                                chunkTy);
+                                                float chunkLR = chunk
+                                                        .getSample(chunkRx,
+                                                                chunkBy);
+                                                float chunkLL = chunk
+                                                        .getSample(chunkLx,
+                                                                chunkBy);
 
                                                 if (Float.isNaN(chunkUL)
                                                         || Float.isNaN(chunkUR)
@@ -1146,8 +1280,6 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                 // an IO error occurred, skip this cell and try the next
                                 // extension
                                 continue;
-                            } finally {
-                                IoUtils.close(channel);
                             }
                             if (!missingElev)
                                 break outer;
@@ -1253,16 +1385,12 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                             y3)),
                                     0, result.ySampleResolution - 1);
 
-                            channel = null;
                             boolean missingElev = false;
                             try {
                                 File file = new File(dtedPath, Dt2FileWatcher
                                         .getRelativePath(level, lat, lng));
-                                channel = IOProviderFactory.getChannel(file,
-                                        "r");
-
-                                dted.readHeader(channel, cellMaxLat,
-                                        cellMinLng);
+                                final DtedChunkCache.Cell dted = dtedCache
+                                        .getCell(file);
 
                                 for (int y = imgMinY; y <= imgMaxY; y++) {
                                     for (int x = imgMinX; x <= imgMaxX; x++) {
@@ -1282,8 +1410,8 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                         if (!Float.isNaN(altGrid[imgIdx]))
                                             continue;
 
-                                        altGrid[imgIdx] = dted.getHeight(
-                                                channel,
+                                        altGrid[imgIdx] = dtedCache.getHeight(
+                                                dted,
                                                 geo.y, geo.x);
 
                                         // identify min/max
@@ -1305,8 +1433,6 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
                                 // an IO error occurred, skip this cell and try the next
                                 // extension
                                 continue;
-                            } finally {
-                                IoUtils.close(channel);
                             }
                             if (!missingElev)
                                 break outer;
@@ -1524,6 +1650,12 @@ public class GLHeatMap extends GLAsynchronousMapRenderable<HeatMapParams>
         }
     }
 
+    /**
+     * @deprecated use {@link DtedChunkCache}, which shares decoded chunks
+     *             across queries and consumers
+     */
+    @Deprecated
+    @DeprecatedApi(since = "4.5", forRemoval = true, removeAt = "4.8")
     public static class Dted {
         private final byte[] array;
         private final ByteBuffer buffer;
@@ -1,8 +1,6 @@
 
 package com.atakmap.android.elev.graphics;
 
-import android.os.CancellationSignal;
-
 import com.atakmap.coremap.maps.coords.GeoPoint;
 import com.atakmap.math.MathUtils;
 
@@ -33,7 +31,7 @@ class HeatMapParams {
     float lutSaturation;
     float lutValue;
 
-    final CancellationSignal querySignal = new CancellationSignal();
+    final QuerySignal querySignal = new QuerySignal();
 
     double getMaxLatitude() {
         return MathUtils.max(
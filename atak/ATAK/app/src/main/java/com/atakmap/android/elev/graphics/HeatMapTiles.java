@@ -0,0 +1,468 @@
+
+package com.atakmap.android.elev.graphics;
+
+import com.atakmap.coremap.concurrent.NamedThreadFactory;
+import com.atakmap.coremap.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Computes heat map elevation samples over a pyramid of fixed geographic
+ * tiles. Tiles are computed in parallel on a pool of worker threads and are
+ * retained in an LRU, so panning only computes the tiles that have come
+ * into view. The heat map image is resampled from the tiles, with tiles that
+ * have not been computed at the requested level filled in from coarser
+ * levels.
+ *
+ * <P>At level <code>L</code>, tiles span <code>180 / 2^L</code> degrees on
+ * each axis; columns are counted east from the antimeridian and rows south
+ * from the north pole. Each tile holds a square grid of posts, with the
+ * outermost posts on the tile edges.
+ */
+final class HeatMapTiles {
+
+    private static final String TAG = "HeatMapTiles";
+
+    /** the number of post intervals along each axis of a tile */
+    static final int TILE_INTERVALS = 16;
+    /** the number of posts along each axis of a tile */
+    static final int TILE_POSTS = TILE_INTERVALS + 1;
+    static final int MAX_LEVEL = 24;
+    /**
+     * the number of coarser levels that may stand in for tiles that have not
+     * been computed
+     */
+    static final int MAX_FALLBACK_LEVELS = 4;
+    /** the maximum number of tiles computed for a single query */
+    static final int MAX_TILES_PER_QUERY = 256;
+
+    /**
+     * Source of elevation samples for a tile.
+     */
+    interface Source {
+        /**
+         * Fills <code>tile.elevationData</code> with the elevation, in
+         * meters MSL, at each pixel of the tile. Pixel <code>(0, 0)</code> is
+         * the upper-left corner of the tile and the pixels are spaced so that
+         * the last row and column lie beyond its edges; samples that could
+         * not be resolved are {@link Float#NaN}.
+         *
+         * @param tile  The tile parameters
+         * @param level The tile level
+         */
+        void query(HeatMapParams tile, int level);
+    }
+
+    static final class Tile {
+        final int level;
+        final int x;
+        final int y;
+        final float[] posts;
+
+        Tile(int level, int x, int y, float[] posts) {
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.posts = posts;
+        }
+    }
+
+    private final Source source;
+    private final int capacity;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<Long, Tile> tiles;
+    private final Map<Long, Future<?>> pending = new HashMap<>();
+    private final Set<QuerySignal> active = new HashSet<>();
+    /** the tiles requested by the most recent query */
+    private Set<Long> wanted = Collections.emptySet();
+    /** incremented when the cached tiles are invalidated */
+    private int generation;
+
+    /**
+     * @param source    The source of tile samples
+     * @param capacity  The maximum number of tiles retained
+     * @param threads   The number of worker threads
+     */
+    HeatMapTiles(Source source, int capacity, int threads) {
+        this.source = source;
+        this.capacity = capacity;
+        this.tiles = new LinkedHashMap<>(capacity, 0.75f, true);
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory("HeatMapTile"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the span of a tile at the specified level, in degrees
+     */
+    static double getTileSpan(int level) {
+        return 180d / (double) (1L << level);
+    }
+
+    /**
+     * @return the spacing between posts at the specified level, in degrees
+     */
+    static double getPostSpacing(int level) {
+        return getTileSpan(level) / TILE_INTERVALS;
+    }
+
+    /**
+     * @param spacing   The desired post spacing, in degrees
+     *
+     * @return the coarsest level whose posts are at least as dense as the
+     *         specified spacing
+     */
+    static int selectLevel(double spacing) {
+        int level = 0;
+        while (level < MAX_LEVEL && getPostSpacing(level) > spacing)
+            level++;
+        return level;
+    }
+
+    /**
+     * @return the finest level, no finer than the specified level, at which
+     *         at most {@link #MAX_TILES_PER_QUERY} tiles intersect the region
+     */
+    static int limitLevel(double minLat, double minLng, double maxLat,
+            double maxLng, int level) {
+        while (level > 0) {
+            final double span = getTileSpan(level);
+            final double numTilesX = Math.floor((maxLng + 180d) / span)
+                    - Math.floor((minLng + 180d) / span) + 1d;
+            final double numTilesY = Math.floor((90d - minLat) / span)
+                    - Math.floor((90d - maxLat) / span) + 1d;
+            if (numTilesX * numTilesY <= MAX_TILES_PER_QUERY)
+                break;
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * Computes the tiles at the level that intersect the region, and that
+     * have not been computed previously, in parallel. Tiles nearest the
+     * center of the region are computed first. Tiles requested by a prior
+     * invocation that are no longer wanted are skipped.
+     *
+     * <P>If the tiles are not all available before the deadline, the
+     * remaining tiles continue to be computed in the background and will be
+     * available to a subsequent invocation.
+     *
+     * @param minLat    The southern bound of the region
+     * @param minLng    The western bound of the region
+     * @param maxLat    The northern bound of the region
+     * @param maxLng    The eastern bound of the region
+     * @param level     The tile level
+     * @param timeout   The maximum time to wait, in milliseconds
+     * @param signal    Cancels the query
+     *
+     * @return  <code>true</code> if all tiles are available,
+     *          <code>false</code> if the deadline elapsed or the query was
+     *          canceled first
+     */
+    boolean compute(double minLat, double minLng, double maxLat,
+            double maxLng, int level, long timeout,
+            final QuerySignal signal) {
+        final double span = getTileSpan(level);
+        final int minX = (int) Math.floor((minLng + 180d) / span);
+        final int maxX = (int) Math.floor((maxLng + 180d) / span);
+        final int minY = (int) Math.max(Math.floor((90d - maxLat) / span), 0);
+        final int maxY = (int) Math.min(Math.floor((90d - minLat) / span),
+                (1L << level) - 1);
+
+        // order the tiles by distance from the center of the region
+        final double cx = (minX + maxX) / 2d;
+        final double cy = (minY + maxY) / 2d;
+        final List<int[]> order = new ArrayList<>();
+        for (int y = minY; y <= maxY; y++)
+            for (int x = minX; x <= maxX; x++)
+                order.add(new int[] {
+                        x, y
+                });
+        Collections.sort(order, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return Double.compare(
+                        (a[0] - cx) * (a[0] - cx) + (a[1] - cy) * (a[1] - cy),
+                        (b[0] - cx) * (b[0] - cx) + (b[1] - cy) * (b[1] - cy));
+            }
+        });
+
+        final List<Future<?>> waitOn = new ArrayList<>(order.size());
+        synchronized (this) {
+            final Set<Long> requested = new HashSet<>();
+            for (int[] xy : order) {
+                final int x = wrapColumn(xy[0], level);
+                final long key = key(level, x, xy[1]);
+                if (!requested.add(key) || this.tiles.containsKey(key))
+                    continue;
+                Future<?> f = this.pending.get(key);
+                if (f == null) {
+                    f = this.executor.submit(new TileTask(level, x, xy[1],
+                            this.generation));
+                    this.pending.put(key, f);
+                }
+                waitOn.add(f);
+            }
+            this.wanted = requested;
+        }
+
+        signal.setOnCancelListener(new QuerySignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                synchronized (HeatMapTiles.this) {
+                    for (QuerySignal s : HeatMapTiles.this.active)
+                        s.cancel();
+                }
+            }
+        });
+        try {
+            final long deadline = System.currentTimeMillis() + timeout;
+            for (Future<?> f : waitOn) {
+                if (signal.isCanceled())
+                    return false;
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L)
+                    return false;
+                try {
+                    f.get(remaining, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    return false;
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Failed to compute heat map tile", e);
+                } catch (CancellationException ignored) {
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return !signal.isCanceled();
+        } finally {
+            signal.setOnCancelListener(null);
+        }
+    }
+
+    /**
+     * Resamples the tiles at the level into the elevation data of the
+     * result. Where a tile at the level has not been computed, the finest
+     * available coarser tile is used. Updates the elevation range and
+     * number of samples of the result.
+     *
+     * @param lats      The latitude of each pixel
+     * @param lngs      The longitude of each pixel
+     * @param count     The number of pixels
+     * @param level     The tile level
+     * @param result    The result
+     *
+     * @return  the number of pixels that were filled from coarser tiles
+     */
+    synchronized int sample(double[] lats, double[] lngs, int count,
+            int level, HeatMapParams result) {
+        final float[] elevations = result.elevationData;
+        final int minLevel = Math.max(level - MAX_FALLBACK_LEVELS, 0);
+        final Tile[] last = new Tile[level + 1];
+
+        int coarse = 0;
+        result.numSamples = 0;
+        for (int i = 0; i < count; i++) {
+            float elev = Float.NaN;
+            for (int l = level; l >= minLevel; l--) {
+                final double span = getTileSpan(l);
+                final double u = (lngs[i] + 180d) / span;
+                // the poles sample the outermost row of posts
+                final double v = (90d - Math.max(-90d, Math.min(lats[i], 90d)))
+                        / span;
+                final int tx = (int) Math.floor(u);
+                final int ty = (int) Math.min(Math.floor(v), (1L << l) - 1L);
+                if (ty < 0 || ty >= (1L << l))
+                    continue;
+                Tile tile = last[l];
+                final int x = wrapColumn(tx, l);
+                if (tile == null || tile.x != x || tile.y != ty) {
+                    tile = this.tiles.get(key(l, x, ty));
+                    if (tile == null)
+                        continue;
+                    last[l] = tile;
+                }
+                elev = interpolate(tile.posts, (u - tx) * TILE_INTERVALS,
+                        (v - ty) * TILE_INTERVALS);
+                if (l != level)
+                    coarse++;
+                break;
+            }
+
+            elevations[i] = elev;
+            if (!Float.isNaN(elev)) {
+                if (result.numSamples == 0) {
+                    result.minElev = elev;
+                    result.maxElev = elev;
+                } else if (elev < result.minElev) {
+                    result.minElev = elev;
+                } else if (elev > result.maxElev) {
+                    result.maxElev = elev;
+                }
+                result.numSamples++;
+            }
+        }
+        return coarse;
+    }
+
+    /**
+     * Discards all tiles, including any that are being computed.
+     */
+    synchronized void clear() {
+        this.generation++;
+        this.tiles.clear();
+        for (Future<?> f : this.pending.values())
+            f.cancel(false);
+        this.pending.clear();
+        for (QuerySignal s : this.active)
+            s.cancel();
+    }
+
+    /**
+     * Discards all tiles and stops the worker threads.
+     */
+    void dispose() {
+        this.clear();
+        this.executor.shutdownNow();
+    }
+
+    synchronized int getTileCount() {
+        return this.tiles.size();
+    }
+
+    /**
+     * Bilinearly interpolates the posts of a tile; falls back on the nearest
+     * post if any of the surrounding posts is null.
+     */
+    private static float interpolate(float[] posts, double px, double py) {
+        final double x = Math.max(0d, Math.min(px, TILE_INTERVALS));
+        final double y = Math.max(0d, Math.min(py, TILE_INTERVALS));
+        final int x0 = Math.min((int) x, TILE_INTERVALS - 1);
+        final int y0 = Math.min((int) y, TILE_INTERVALS - 1);
+        final double wR = x - x0;
+        final double wB = y - y0;
+
+        final float ul = posts[(y0 * TILE_POSTS) + x0];
+        final float ur = posts[(y0 * TILE_POSTS) + x0 + 1];
+        final float ll = posts[((y0 + 1) * TILE_POSTS) + x0];
+        final float lr = posts[((y0 + 1) * TILE_POSTS) + x0 + 1];
+        if (Float.isNaN(ul) || Float.isNaN(ur) || Float.isNaN(ll)
+                || Float.isNaN(lr)) {
+            return posts[((int) Math.round(y) * TILE_POSTS)
+                    + (int) Math.round(x)];
+        }
+        return (float) ((ul * (1d - wR) * (1d - wB))
+                + (ur * wR * (1d - wB))
+                + (ll * (1d - wR) * wB)
+                + (lr * wR * wB));
+    }
+
+    /**
+     * @return the column, wrapped across the antimeridian
+     */
+    private static int wrapColumn(int x, int level) {
+        final int numTilesX = 2 << level;
+        x %= numTilesX;
+        return (x < 0) ? x + numTilesX : x;
+    }
+
+    private static long key(int level, int x, int y) {
+        return ((long) level << 56L) | ((long) x << 28L) | (long) y;
+    }
+
+    private final class TileTask implements Runnable {
+        private final int level;
+        private final int x;
+        private final int y;
+        private final int generation;
+
+        TileTask(int level, int x, int y, int generation) {
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            final long key = key(this.level, this.x, this.y);
+            final HeatMapParams params = new HeatMapParams();
+            synchronized (HeatMapTiles.this) {
+                // skip tiles that have scrolled out of view before being
+                // computed
+                if (this.generation != HeatMapTiles.this.generation
+                        || !HeatMapTiles.this.wanted.contains(key)) {
+                    HeatMapTiles.this.pending.remove(key);
+                    return;
+                }
+                HeatMapTiles.this.active.add(params.querySignal);
+            }
+
+            boolean computed = false;
+            try {
+                final double span = getTileSpan(this.level);
+                // the last row and column of pixels lie beyond the tile so
+                // that the posts land on the tile edges
+                final double extent = span * TILE_POSTS / TILE_INTERVALS;
+                final double west = -180d + (this.x * span);
+                final double north = 90d - (this.y * span);
+                final double east = west + extent;
+                // not clamped to the pole, that would compress the posts of
+                // the southernmost tiles; the last row of posts lies on the
+                // pole and sample() clamps to it
+                final double south = north - extent;
+
+                params.upperLeft.set(north, west);
+                params.upperRight.set(north, east);
+                params.lowerRight.set(south, east);
+                params.lowerLeft.set(south, west);
+                params.xSampleResolution = TILE_POSTS;
+                params.ySampleResolution = TILE_POSTS;
+                params.elevationData = new float[TILE_POSTS * TILE_POSTS];
+
+                source.query(params, this.level);
+                computed = !params.querySignal.isCanceled();
+            } finally {
+                synchronized (HeatMapTiles.this) {
+                    HeatMapTiles.this.active.remove(params.querySignal);
+                    HeatMapTiles.this.pending.remove(key);
+                    if (computed && (this.generation == HeatMapTiles.this
+                            .generation)) {
+                        HeatMapTiles.this.tiles.put(key, new Tile(this.level,
+                                this.x, this.y, params.elevationData));
+                        trimNoSync();
+                    }
+                }
+            }
+        }
+    }
+
+    private void trimNoSync() {
+        final Iterator<Tile> it = this.tiles.values().iterator();
+        while (this.tiles.size() > this.capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
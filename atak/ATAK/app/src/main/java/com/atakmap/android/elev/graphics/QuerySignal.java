@@ -0,0 +1,53 @@
+
+package com.atakmap.android.elev.graphics;
+
+/**
+ * Cancellation signal for heat map queries. Provides the subset of
+ * {@link android.os.CancellationSignal} used by the heat map without
+ * depending on the Android framework, so that {@link HeatMapTiles} may be
+ * exercised by unit tests.
+ */
+final class QuerySignal {
+
+    interface OnCancelListener {
+        void onCancel();
+    }
+
+    private boolean canceled;
+    private OnCancelListener listener;
+
+    synchronized boolean isCanceled() {
+        return this.canceled;
+    }
+
+    /**
+     * Cancels the query and notifies the listener, if any. Has no effect if
+     * the query was already canceled.
+     */
+    void cancel() {
+        final OnCancelListener l;
+        synchronized (this) {
+            if (this.canceled)
+                return;
+            this.canceled = true;
+            l = this.listener;
+        }
+        if (l != null)
+            l.onCancel();
+    }
+
+    /**
+     * Sets the listener to be notified when the query is canceled. If the
+     * query was already canceled, the listener is notified immediately.
+     *
+     * @param listener  The listener, may be <code>null</code>
+     */
+    void setOnCancelListener(OnCancelListener listener) {
+        synchronized (this) {
+            this.listener = listener;
+            if (!this.canceled || listener == null)
+                return;
+        }
+        listener.onCancel();
+    }
+}
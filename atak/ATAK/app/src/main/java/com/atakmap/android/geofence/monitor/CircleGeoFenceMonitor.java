@@ -2,17 +2,15 @@
 package com.atakmap.android.geofence.monitor;
 
 import com.atakmap.android.drawing.mapItems.DrawingCircle;
-import com.atakmap.android.geofence.alert.GeoFenceAlerting;
 import com.atakmap.android.geofence.data.GeoFence;
 import com.atakmap.android.maps.MapView;
-import com.atakmap.android.maps.Marker;
 import com.atakmap.android.maps.PointMapItem;
+import com.atakmap.android.maps.Shape;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
 import com.atakmap.coremap.log.Log;
 import com.atakmap.coremap.maps.coords.GeoCalculations;
 import com.atakmap.coremap.maps.coords.GeoPoint;
 import com.atakmap.coremap.maps.coords.GeoPointMetaData;
-import com.atakmap.coremap.maps.time.CoordinatedTime;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -29,95 +27,50 @@ class CircleGeoFenceMonitor extends GeoFenceMonitor {
     CircleGeoFenceMonitor(MapView view, GeoFence fence, DrawingCircle item) {
         super(view, fence, item);
         _circle = item;
+        _circle.addOnPointsChangedListener(_areaChanged);
+        _circle.addOnRadiusChangedListener(_areaChanged);
     }
 
     @Override
-    protected List<GeoFenceAlerting.Alert> check(GeoFence.Trigger trigger,
-            List<PointMapItem> items, boolean bCheckPrevious) {
-        List<GeoFenceAlerting.Alert> ret = new ArrayList<>();
+    public void dispose() {
+        super.dispose();
+        _circle.removeOnPointsChangedListener(_areaChanged);
+        _circle.removeOnRadiusChangedListener(_areaChanged);
+    }
 
-        if (FileSystemUtils.isEmpty(items)) {
-            Log.w(TAG, "No items to track: " + toString());
-            return ret;
-        }
+    private final AreaChangedListener _areaChanged = new AreaChangedListener();
 
-        GeoPointMetaData center = _circle.getCenter();
-        if (center == null) {
-            Log.w(TAG, "check center point item not valid: " + toString());
-            return ret;
+    private class AreaChangedListener implements Shape.OnPointsChangedListener,
+            DrawingCircle.OnRadiusChangedListener {
+        @Override
+        public void onPointsChanged(Shape shape) {
+            onAreaChanged();
         }
 
-        //check if close or further based on trigger
-        int numRings = _circle.getNumRings();
-        if (numRings < 1 || numRings > DrawingCircle.MAX_RINGS) {
-            Log.w(TAG, "Changing default number of rings to 1 from: "
-                    + numRings);
-            numRings = 1;
+        @Override
+        public void onRadiusChanged(DrawingCircle circle, double oldRadius) {
+            onAreaChanged();
         }
+    }
 
-        //get radius of outer circle
-        double radiusMeters = _circle.getRadius() * numRings;
-        Marker centerMarker = _circle.getCenterMarker();
-        Marker radiusMarker = _circle.getRadiusMarker();
-
-        //get timestamp once, for efficiency, even though we get each points location at slightly future times...
-        long timestamp = new CoordinatedTime().getMilliseconds();
-        //sync on 'this' for use of _uidsLastState
-        synchronized (this) {
-            for (PointMapItem item : items) {
-                // Skip center marker
-                if (item == centerMarker || item == radiusMarker)
-                    continue;
-
-                if (item == null) {
-                    Log.w(TAG, "check point item not valid");
-                    continue;
-                }
-
-                GeoPoint point = item.getPoint();
-                if (point == null) {
-                    Log.w(TAG, "check item point item not valid");
-                    continue;
-                }
-
-                if (checkDismissed(item)) {
-                    continue;
-                }
-
-                //get distance of point from circle center
-                double distanceMeters = GeoCalculations.distanceTo(center.get(),
-                        point);
-                boolean bInside = inElevationRange(point)
-                        && distanceMeters <= radiusMeters;
-
-                //now check if we should alert based on trigger
-                if (bCheckPrevious) {
-                    //get previous state
-                    boolean bPreviouslyInside = getLastState(item.getUID());
-
-                    if (checkTrigger(trigger, bInside, bPreviouslyInside)) {
-                        //                        Log.d(TAG, "ALERT Point " + item.getUID()
-                        //                                + " distance " + distanceMeters + "m, radius: "
-                        //                                + radiusMeters + "m, for fence: " + toString());
-                        ret.add(new GeoFenceAlerting.Alert(this, item,
-                                timestamp, new GeoPoint(point), bInside));
-                    }
-
-                    //only update state if bCheckPrevious
-                    _uidsLastState.put(item.getUID(), bInside);
-                } else {
-                    if (checkTrigger(trigger, bInside)) {
-                        //                        Log.d(TAG, "ALERT Point " + item.getUID()
-                        //                                + " distance " + distanceMeters + "m, radius: "
-                        //                                + radiusMeters + "m, for fence: " + toString());
-                        ret.add(new GeoFenceAlerting.Alert(this, item,
-                                timestamp, new GeoPoint(point), bInside));
-                    }
-                }
-            } //end items loop
+    @Override
+    protected boolean isFenceItem(PointMapItem item) {
+        // Skip center marker
+        return item == _circle.getCenterMarker()
+                || item == _circle.getRadiusMarker();
+    }
+
+    @Override
+    protected boolean contains(GeoPoint point) {
+        GeoPointMetaData center = _circle.getCenter();
+        if (center == null) {
+            Log.w(TAG, "check center point item not valid: " + toString());
+            return false;
         }
 
-        return ret;
+        //get distance of point from circle center
+        return GeoCalculations.distanceTo(center.get(),
+                point) <= getfurthestPointRange();
     }
 
     @Override
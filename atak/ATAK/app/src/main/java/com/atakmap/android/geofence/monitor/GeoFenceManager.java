@@ -35,12 +35,18 @@ import com.atakmap.android.util.ATAKUtilities;
 import com.atakmap.app.R;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
 import com.atakmap.coremap.log.Log;
-import com.atakmap.spatial.SpatialCalculator;
+import com.atakmap.coremap.maps.coords.GeoBounds;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+import com.atakmap.coremap.maps.coords.MutableGeoBounds;
+import com.atakmap.math.PointD;
+import com.atakmap.util.Quadtree;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import com.atakmap.coremap.locale.LocaleUtil;
 import java.util.Map;
@@ -50,12 +56,22 @@ import java.util.TimerTask;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- *
+ * Fences are evaluated as tracked items move. Each point change marks the
+ * item dirty and schedules a pass on the monitor thread, which checks the item
+ * against only those fences whose bounds contain it (via a spatial index), or
+ * contained it at its last position so that exits are detected. Fences are
+ * fully re-checked when added or when their shape changes.
  */
 public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
         MapEventDispatcher.MapEventDispatchListener,
-        MapItem.OnGroupChangedListener {
+        MapItem.OnGroupChangedListener,
+        PointMapItem.OnPointChangedListener {
     private static final String TAG = "GeoFenceManager";
+
+    /**
+     * Rate at which fences are validated and rescanned, items are evaluated
+     * as they move
+     */
     private static final long MONITOR_RATE = 2000; //2 seconds
 
     /**
@@ -69,7 +85,7 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
     private final MapGroup _group;
     private final GeoFenceAlerting _alerting;
     private final GeoFenceComponent _component;
-    private Timer _monitorTimer;
+    private volatile Timer _monitorTimer;
 
     /**
      * Keep count of how many iterations
@@ -77,15 +93,36 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
     private long _monitorIteration;
 
     /**
-     * Spatial Calc not thread safe, but we check all monitors on a single thread, so we resuse
-     * a single SpatialCalculator instance
+     * Map the geo fence map item's (shape) UID to the monitor
      */
-    private final SpatialCalculator _spatialCalc;
+    final Map<String, GeoFenceMonitor> _monitors;
 
     /**
-     * Map the geo fence map item's (shape) UID to the monitor
+     * Index of the monitors on the bounds of the monitored area
      */
-    final Map<String, GeoFenceMonitor> _monitors;
+    private final Quadtree<IndexedFence> _fenceIndex;
+    private final Map<GeoFenceMonitor, IndexedFence> _indexed;
+
+    /**
+     * Map item UID to the fences whose bounds contained the item when it
+     * was last evaluated
+     */
+    private final Map<String, Set<IndexedFence>> _lastCandidates;
+
+    /**
+     * Items registered for point change events
+     */
+    private final Set<PointMapItem> _observed;
+
+    /**
+     * Items which have moved and monitors whose area has changed since the
+     * last evaluation. Guarded by <code>_dirtyLock</code>, never hold
+     * <code>this</code> while acquiring
+     */
+    private final Set<PointMapItem> _dirtyItems;
+    private final Set<GeoFenceMonitor> _dirtyMonitors;
+    private boolean _evaluationScheduled;
+    private final Object _dirtyLock = new Object();
 
     /**
      * Cache list to avoid recreating every repeatedly
@@ -107,24 +144,38 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
         _component.addGeoFenceChangedListener(this);
         _toRemove = new ArrayList<>();
         _deferredAdds = new HashMap<>();
-        _spatialCalc = new SpatialCalculator(true);
+        _fenceIndex = new Quadtree<>(FENCE_BOUNDS, FENCE_INDEX_NODE_LIMIT,
+                -180d, -90d, 180d, 90d);
+        _indexed = new IdentityHashMap<>();
+        _lastCandidates = new HashMap<>();
+        _observed = Collections.newSetFromMap(
+                new IdentityHashMap<PointMapItem, Boolean>());
+        _dirtyItems = Collections.newSetFromMap(
+                new IdentityHashMap<PointMapItem, Boolean>());
+        _dirtyMonitors = Collections.newSetFromMap(
+                new IdentityHashMap<GeoFenceMonitor, Boolean>());
         _monitorIteration = 0;
         initialize();
     }
 
     public void dispose() {
-        if (_monitorTimer != null) {
-            _monitorTimer.cancel();
-            _monitorTimer.purge();
-            _monitorTimer = null;
+        final Timer timer = _monitorTimer;
+        _monitorTimer = null;
+        if (timer != null) {
+            timer.cancel();
+            timer.purge();
         }
         _view.getMapEventDispatcher().removeMapEventListener(
                 MapEvent.ITEM_REMOVED, this);
         _view.getMapEventDispatcher().removeMapEventListener(
                 MapEvent.ITEM_ADDED, this);
+        synchronized (this) {
+            for (PointMapItem item : _observed)
+                item.removeOnPointChangedListener(this);
+            _observed.clear();
+        }
         if (_alerting != null)
             _alerting.dispose();
-        _spatialCalc.dispose();
     }
 
     public GeoFenceAlerting getAlerting() {
@@ -164,7 +215,7 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
         }
 
         final GeoFenceMonitor monitor = GeoFenceMonitor.Factory.Create(_view,
-                _group, _spatialCalc, fence, item);
+                _group, fence, item);
         if (monitor == null || !monitor.isValid()) {
             Log.w(TAG, "onFenceAdded monitor invalid");
             return;
@@ -199,8 +250,10 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
                         && type.startsWith(LITMUS_TEST)) {
                     for (GeoFence.MonitoredTypes tt : GeoFence.MonitoredTypes
                             .values()) {
-                        if (tt.getFilter().onItemFunction(item))
+                        if (tt.getFilter().onItemFunction(item)) {
                             tt.add((PointMapItem) item);
+                            observe((PointMapItem) item);
+                        }
                     }
                 }
 
@@ -271,6 +324,9 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
                 tt.remove(item);
             }
         }
+        if (_observed.remove(item))
+            item.removeOnPointChangedListener(this);
+        _lastCandidates.remove(item.getUID());
 
         //remove from active monitors
         for (final GeoFenceMonitor monitor : _monitors.values()) {
@@ -301,6 +357,7 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
         for (GeoFence.MonitoredTypes tt : GeoFence.MonitoredTypes.values()) {
             if (tt.getFilter().onItemFunction(pointMapItem)) {
                 tt.add(pointMapItem);
+                observe(pointMapItem);
             }
         }
 
@@ -339,6 +396,9 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
             }
         }
 
+        if (count > 0)
+            markDirty(pointMapItem);
+
         if (count == 1 && lastAdded != null) {
             Log.d(TAG,
                     "Added " + ATAKUtilities.getDisplayName(item)
@@ -454,6 +514,17 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
 
         GeoFenceMonitor previous = _monitors.put(monitor.getMapItemUid(),
                 monitor);
+        if (previous != monitor) {
+            if (previous != null)
+                unindex(previous);
+            IndexedFence fence = new IndexedFence(monitor);
+            fence.refresh();
+            _indexed.put(monitor, fence);
+            _fenceIndex.add(fence);
+            monitor.setOnAreaChangedListener(_areaChanged);
+        }
+        markDirty(monitor);
+
         if (previous != null) {
             Log.d(TAG, "Updating monitor: " + monitor);
             dispatchMonitorChanged(monitor);
@@ -481,6 +552,7 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
         Log.d(TAG, "removeMonitor: " + uid);
         GeoFenceMonitor removed = _monitors.remove(uid);
         if (removed != null) {
+            unindex(removed);
             _alerting.dismiss(removed);
             removed.dispose();
             removed.getItem().removeOnGroupChangedListener(this);
@@ -520,19 +592,242 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
         deleteMonitor(mapItemUid);
     }
 
+    @Override
+    public void onPointChanged(PointMapItem item) {
+        markDirty(item);
+    }
+
+    private final GeoFenceMonitor.OnAreaChangedListener _areaChanged = new GeoFenceMonitor.OnAreaChangedListener() {
+        @Override
+        public void onAreaChanged(GeoFenceMonitor monitor) {
+            markDirty(monitor);
+        }
+    };
+
     /**
-     * Run periodically in a thread to monitor the GeoFences.
+     * Register for point changes of an item which may be monitored
+     * Must hold <code>this</code>
+     */
+    private void observe(PointMapItem item) {
+        if (_observed.add(item))
+            item.addOnPointChangedListener(this);
+    }
+
+    private void markDirty(PointMapItem item) {
+        synchronized (_dirtyLock) {
+            _dirtyItems.add(item);
+            scheduleEvaluation();
+        }
+    }
+
+    private void markDirty(GeoFenceMonitor monitor) {
+        synchronized (_dirtyLock) {
+            _dirtyMonitors.add(monitor);
+            scheduleEvaluation();
+        }
+    }
+
+    /**
+     * Schedule a pass over the dirty items and monitors on the monitor
+     * thread, if one is not already pending. Must hold <code>_dirtyLock</code>
+     */
+    private void scheduleEvaluation() {
+        if (_evaluationScheduled)
+            return;
+        final Timer timer = _monitorTimer;
+        if (timer == null)
+            return;
+        try {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    evaluate();
+                }
+            }, 0);
+            _evaluationScheduled = true;
+        } catch (IllegalStateException e) {
+            // timer has been cancelled
+        }
+    }
+
+    /**
+     * Evaluate the items which have moved, and the monitors whose area has
+     * changed, since the last pass
+     */
+    private void evaluate() {
+        final List<GeoFenceMonitor> monitors;
+        final List<PointMapItem> items;
+        synchronized (_dirtyLock) {
+            _evaluationScheduled = false;
+            monitors = new ArrayList<>(_dirtyMonitors);
+            items = new ArrayList<>(_dirtyItems);
+            _dirtyMonitors.clear();
+            _dirtyItems.clear();
+        }
+
+        synchronized (this) {
+            for (GeoFenceMonitor monitor : monitors)
+                evaluate(monitor);
+            for (PointMapItem item : items)
+                evaluate(item);
+        }
+    }
+
+    /**
+     * Fully check a monitor whose area has changed, or which was just added
+     * Must hold <code>this</code>
+     */
+    private void evaluate(GeoFenceMonitor monitor) {
+        final IndexedFence fence = _indexed.get(monitor);
+        if (fence == null)
+            return;
+
+        fence.refresh();
+        _fenceIndex.refresh(fence);
+
+        // the monitored area may have moved out from under items which were
+        // inside; make sure exits are detected when those items move
+        for (PointMapItem item : monitor.getItems()) {
+            GeoPoint point = item.getPoint();
+            if (point == null)
+                continue;
+            Set<IndexedFence> candidates = _lastCandidates
+                    .get(item.getUID());
+            if (fence.contains(point)) {
+                if (candidates == null) {
+                    candidates = Collections.newSetFromMap(
+                            new IdentityHashMap<IndexedFence, Boolean>());
+                    _lastCandidates.put(item.getUID(), candidates);
+                }
+                candidates.add(fence);
+            } else if (candidates != null) {
+                candidates.remove(fence);
+            }
+        }
+
+        alert(monitor, monitor.check());
+    }
+
+    /**
+     * Check an item which has moved against the fences which contain it, or
+     * contained it at its last evaluated position
+     * Must hold <code>this</code>
+     */
+    private void evaluate(PointMapItem item) {
+        GeoPoint point = item.getPoint();
+        if (point == null)
+            return;
+
+        final double lat = point.getLatitude();
+        final double lng = point.getLongitude();
+        Set<IndexedFence> candidates = Collections.newSetFromMap(
+                new IdentityHashMap<IndexedFence, Boolean>());
+        _fenceIndex.get(lng, lat, lng, lat, candidates);
+
+        Set<IndexedFence> previous = candidates.isEmpty()
+                ? _lastCandidates.remove(item.getUID())
+                : _lastCandidates.put(item.getUID(), candidates);
+
+        final Collection<PointMapItem> moved = Collections
+                .singletonList(item);
+        for (IndexedFence fence : candidates)
+            alert(fence.monitor, fence.monitor.check(moved));
+        if (previous != null) {
+            for (IndexedFence fence : previous) {
+                if (!candidates.contains(fence))
+                    alert(fence.monitor, fence.monitor.check(moved));
+            }
+        }
+    }
+
+    private void alert(GeoFenceMonitor monitor,
+            List<GeoFenceAlerting.Alert> toAlert) {
+        if (!FileSystemUtils.isEmpty(toAlert)) {
+            //TODO combine alerts for all monitors and alert all at once?
+            _alerting.alert(monitor, toAlert, false);
+            dispatchMonitorChanged(monitor);
+        }
+    }
+
+    /**
+     * Remove the monitor from the spatial index. Must hold <code>this</code>
+     */
+    private void unindex(GeoFenceMonitor monitor) {
+        monitor.setOnAreaChangedListener(null);
+        final IndexedFence fence = _indexed.remove(monitor);
+        if (fence == null)
+            return;
+        _fenceIndex.remove(fence);
+        for (Set<IndexedFence> candidates : _lastCandidates.values())
+            candidates.remove(fence);
+    }
+
+    /**
+     * Spatial index entry for a monitor. Monitors are not suitable as keys,
+     * their hash changes with the fence state
+     */
+    private static final class IndexedFence {
+        final GeoFenceMonitor monitor;
+        final PointD min = new PointD(0d, 0d);
+        final PointD max = new PointD(0d, 0d);
+
+        IndexedFence(GeoFenceMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        /**
+         * Update the bounds from the monitored area. Areas crossing the IDL,
+         * or without bounds, span all longitudes
+         */
+        void refresh() {
+            GeoBounds bounds = monitor.getBounds(new MutableGeoBounds());
+            if (bounds == null) {
+                min.x = -180d;
+                min.y = -90d;
+                max.x = 180d;
+                max.y = 90d;
+            } else if (bounds.crossesIDL()) {
+                min.x = -180d;
+                min.y = bounds.getSouth();
+                max.x = 180d;
+                max.y = bounds.getNorth();
+            } else {
+                min.x = bounds.getWest();
+                min.y = bounds.getSouth();
+                max.x = bounds.getEast();
+                max.y = bounds.getNorth();
+            }
+        }
+
+        boolean contains(GeoPoint point) {
+            final double lat = point.getLatitude();
+            final double lng = point.getLongitude();
+            return lng >= min.x && lng <= max.x && lat >= min.y
+                    && lat <= max.y;
+        }
+    }
+
+    private static final int FENCE_INDEX_NODE_LIMIT = 16;
+
+    private static final Quadtree.Function<IndexedFence> FENCE_BOUNDS = new Quadtree.Function<IndexedFence>() {
+        @Override
+        public void getBounds(IndexedFence fence, PointD min, PointD max) {
+            min.x = fence.min.x;
+            min.y = fence.min.y;
+            max.x = fence.max.x;
+            max.y = fence.max.y;
+        }
+    };
+
+    /**
+     * Run periodically in a thread to validate the GeoFences.
      * Also (less) periodically re-scans the "search space" for new/moved items which should
-     * now be monitored
+     * now be monitored. Tracked items are checked as they move, see evaluate()
      */
     private synchronized void monitor() {
         //long start = android.os.SystemClock.elapsedRealtime();
         _monitorIteration++;
 
-        //TODO we could make this a pref, but may be confusing b/c I think we'd want to never
-        //auto dismiss for "Both" trigger based on how we track "last state" and alert
-        final boolean bAutoDismissAlerts = false;
-
         for (GeoFenceMonitor monitor : _monitors.values()) {
             //indicator that dispose has been called
             if (_group == null) {
@@ -560,18 +855,6 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
             if (_monitorIteration % MONITOR_RESCAN_PERIOD == 0) {
                 rescan(monitor);
             }
-
-            List<GeoFenceAlerting.Alert> toAlert = monitor.check();
-            if (!FileSystemUtils.isEmpty(toAlert)) {
-                //TODO combine alerts for all monitors and alert all at once?
-                _alerting.alert(monitor, toAlert, bAutoDismissAlerts);
-                dispatchMonitorChanged(monitor);
-            } else if (bAutoDismissAlerts) {
-                _alerting.dismiss(monitor);
-                dispatchMonitorChanged(monitor);
-            } else {
-                //no-op, no alerts, and not auto-dismissing
-            }
         } //end monitor loop
 
         //see if any shapes were deleted but not yet removed from monitoring
@@ -644,6 +927,7 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
                     if (monitor.addItem(item)) {
                         count++;
                         lastAdded = item;
+                        markDirty(item);
                         Log.d(TAG, "Added item " + item.getUID()
                                 + " to monitor: " + monitor);
                     }
@@ -872,7 +1156,12 @@ public class GeoFenceManager implements GeoFenceComponent.GeoFenceListener,
     public synchronized void deleteAll() {
         Log.d(TAG, "Deleting all monitors");
         _alerting.dismissAll();
+        for (GeoFenceMonitor monitor : _monitors.values())
+            monitor.setOnAreaChangedListener(null);
         _monitors.clear();
+        _indexed.clear();
+        _fenceIndex.clear();
+        _lastCandidates.clear();
         _component.getDatabase().clearAll();
 
     }
@@ -12,19 +12,26 @@ import com.atakmap.android.maps.MapGroup;
 import com.atakmap.android.maps.MapItem;
 import com.atakmap.android.maps.MapView;
 import com.atakmap.android.maps.PointMapItem;
+import com.atakmap.android.maps.Shape;
 import com.atakmap.android.util.ATAKUtilities;
+import com.atakmap.annotations.DeprecatedApi;
 import com.atakmap.app.R;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
 import com.atakmap.coremap.log.Log;
 import com.atakmap.coremap.maps.conversion.EGM96;
+import com.atakmap.coremap.maps.coords.GeoBounds;
 import com.atakmap.coremap.maps.coords.GeoPoint;
 import com.atakmap.coremap.maps.coords.GeoPointMetaData;
+import com.atakmap.coremap.maps.coords.MutableGeoBounds;
+import com.atakmap.coremap.maps.time.CoordinatedTime;
 import com.atakmap.spatial.SpatialCalculator;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,9 +52,9 @@ public abstract class GeoFenceMonitor {
     protected final MapView _view;
 
     /**
-     * List of specific items to track. If empty, then use TrackedTypes.getItems()
+     * Specific items to track, keyed on UID. If empty, then use TrackedTypes.getItems()
      */
-    private List<PointMapItem> _itemsToTrack;
+    private final Map<String, PointMapItem> _itemsToTrack;
     private final List<String> _uidsToTrack;
 
     /**
@@ -62,13 +69,22 @@ public abstract class GeoFenceMonitor {
      */
     protected final Map<String, Boolean> _uidsLastState;
 
+    /**
+     * Notified when the monitored area changes
+     */
+    interface OnAreaChangedListener {
+        void onAreaChanged(GeoFenceMonitor monitor);
+    }
+
+    private OnAreaChangedListener _areaListener;
+
     public GeoFenceMonitor(MapView view, GeoFence fence, MapItem item) {
         _fence = fence;
         _item = item;
         _view = view;
         _uidsToIgnore = new HashSet<>();
         _uidsLastState = new HashMap<>();
-        _itemsToTrack = new ArrayList<>();
+        _itemsToTrack = new LinkedHashMap<>();
         _uidsToTrack = new ArrayList<>();
     }
 
@@ -116,6 +132,30 @@ public abstract class GeoFenceMonitor {
         return !FileSystemUtils.isEmpty(check(trigger, items, bCheckPrevious));
     }
 
+    /**
+     * Check if any of the specified items, which have moved, have breached
+     * the Geo Fence. Items not tracked by this monitor are ignored
+     *
+     * @param items
+     * @return  null if the fence is not being tracked
+     */
+    List<GeoFenceAlerting.Alert> check(Collection<PointMapItem> items) {
+        if (!_fence.isTracking())
+            return null;
+
+        List<PointMapItem> tracked = new ArrayList<>(items.size());
+        synchronized (this) {
+            for (PointMapItem item : items) {
+                if (_itemsToTrack.containsKey(item.getUID()))
+                    tracked.add(item);
+            }
+        }
+        if (tracked.isEmpty())
+            return null;
+
+        return check(_fence.getTrigger(), tracked, true);
+    }
+
     /**
      * Check if any tracked items have breached the Geo Fence
      * All items passed in so subclasses can optimize shape comparison math
@@ -125,9 +165,114 @@ public abstract class GeoFenceMonitor {
      * @param bCheckPrevious    if true, only alert if current state differs from previous state
      * @return
      */
-    protected abstract List<GeoFenceAlerting.Alert> check(
-            GeoFence.Trigger trigger, List<PointMapItem> items,
-            boolean bCheckPrevious);
+    protected List<GeoFenceAlerting.Alert> check(GeoFence.Trigger trigger,
+            List<PointMapItem> items, boolean bCheckPrevious) {
+        List<GeoFenceAlerting.Alert> ret = new ArrayList<>();
+
+        if (FileSystemUtils.isEmpty(items)) {
+            Log.w(TAG, "No items to track: " + toString());
+            return ret;
+        }
+
+        if (!isValid()) {
+            Log.w(TAG, "Unable to check invalid fence: " + toString());
+            return ret;
+        }
+
+        //get timestamp once, for efficiency, even though we get each points location at slightly future times...
+        long timestamp = new CoordinatedTime().getMilliseconds();
+
+        //sync on 'this' for use of _uidsLastState
+        synchronized (this) {
+            for (PointMapItem item : items) {
+                if (item == null) {
+                    Log.w(TAG, "check point item not valid");
+                    continue;
+                }
+
+                if (isFenceItem(item))
+                    continue;
+
+                GeoPoint point = item.getPoint();
+                if (point == null) {
+                    Log.w(TAG, "check item point item not valid");
+                    continue;
+                }
+
+                if (checkDismissed(item)) {
+                    continue;
+                }
+
+                boolean bInside = inElevationRange(point) && contains(point);
+
+                //now check if we should alert based on trigger
+                if (bCheckPrevious) {
+                    //get previous state
+                    boolean bPreviouslyInside = getLastState(item.getUID());
+
+                    if (checkTrigger(trigger, bInside, bPreviouslyInside)) {
+                        ret.add(new GeoFenceAlerting.Alert(this, item,
+                                timestamp, new GeoPoint(point), bInside));
+                    }
+
+                    //only update state if bCheckPrevious
+                    _uidsLastState.put(item.getUID(), bInside);
+                } else {
+                    if (checkTrigger(trigger, bInside)) {
+                        ret.add(new GeoFenceAlerting.Alert(this, item,
+                                timestamp, new GeoPoint(point), bInside));
+                    }
+                }
+            } //end items loop
+        }
+
+        return ret;
+    }
+
+    /**
+     * Test whether the point lies within the monitored area. Elevation is
+     * checked separately
+     *
+     * @param point
+     * @return
+     */
+    protected abstract boolean contains(GeoPoint point);
+
+    /**
+     * Items which make up the fence itself (e.g. center and radius markers)
+     * are never checked against the fence
+     *
+     * @param item
+     * @return
+     */
+    protected boolean isFenceItem(PointMapItem item) {
+        return false;
+    }
+
+    /**
+     * Get the bounds of the monitored area
+     *
+     * @param bounds
+     * @return  the bounds or null if not available
+     */
+    protected GeoBounds getBounds(MutableGeoBounds bounds) {
+        if (_item instanceof Shape)
+            return ((Shape) _item).getBounds(bounds);
+        return null;
+    }
+
+    void setOnAreaChangedListener(OnAreaChangedListener l) {
+        _areaListener = l;
+    }
+
+    /**
+     * Subclasses should invoke this whenever the monitored area changes
+     */
+    protected void onAreaChanged() {
+        final OnAreaChangedListener l = _areaListener;
+        if (l != null)
+            l.onAreaChanged(this);
+    }
 
     /**
      * Get center of monitored area
@@ -233,7 +378,9 @@ public abstract class GeoFenceMonitor {
      * @param items
      */
     public synchronized void setSelectItems(List<PointMapItem> items) {
-        _itemsToTrack = items;
+        _itemsToTrack.clear();
+        for (PointMapItem item : items)
+            _itemsToTrack.put(item.getUID(), item);
         _uidsToIgnore.clear();
     }
 
@@ -253,22 +400,19 @@ public abstract class GeoFenceMonitor {
 
     public synchronized boolean checkSelectedItem(PointMapItem item) {
         if (_uidsToTrack.remove(item.getUID())) {
-            _itemsToTrack.add(item);
+            _itemsToTrack.put(item.getUID(), item);
             return true;
         }
         return false;
     }
 
     public synchronized ArrayList<String> getSelectedItemUids() {
-        ArrayList<String> uids = new ArrayList<>();
-        for (PointMapItem item : _itemsToTrack)
-            uids.add(item.getUID());
-        return uids;
+        return new ArrayList<>(_itemsToTrack.keySet());
     }
 
     public synchronized boolean hasTrackedItems() {
         return !FileSystemUtils.isEmpty(_uidsToTrack)
-                || !FileSystemUtils.isEmpty(_itemsToTrack);
+                || !_itemsToTrack.isEmpty();
     }
 
     /**
@@ -279,11 +423,11 @@ public abstract class GeoFenceMonitor {
     public synchronized List<PointMapItem> getItems() {
         //Log.d(TAG, "Tracking select item count: " + _itemsToTrack.size());
         return Collections.unmodifiableList(new ArrayList<>(
-                _itemsToTrack));
+                _itemsToTrack.values()));
     }
 
     public synchronized int size() {
-        if (!FileSystemUtils.isEmpty(_itemsToTrack)) {
+        if (!_itemsToTrack.isEmpty()) {
             //Log.d(TAG, "Tracking select item count: " + _itemsToTrack.size());
             return _itemsToTrack.size();
         }
@@ -318,12 +462,10 @@ public abstract class GeoFenceMonitor {
         _uidsToIgnore.add(item.getUID());
         _uidsLastState.remove(item.getUID());
 
-        if (!FileSystemUtils.isEmpty(_itemsToTrack)) {
-            int toRemove = itemsToTrackIndex(item);
-            if (toRemove >= 0) {
+        if (!_itemsToTrack.isEmpty()) {
+            if (_itemsToTrack.remove(item.getUID()) != null) {
                 Log.d(TAG, "No longer tracking: " + item.getUID()
                         + " for fence: " + toString());
-                _itemsToTrack.remove(toRemove);
             } else {
                 Log.d(TAG, "Already not explicitly tracking: " + item.getUID()
                         + ", type: " + item.getType()
@@ -337,42 +479,20 @@ public abstract class GeoFenceMonitor {
         return false;
     }
 
-    /**
-     * Get index for item
-     * this iteration necessary b/c PointMapItem does not implement .equals so
-     * contains/remove operations may fail
-     *
-     * @param item
-     * @return  -1 if not tracked, otherwise 0-based index/position in list
-     */
-    private synchronized int itemsToTrackIndex(PointMapItem item) {
-        if (FileSystemUtils.isEmpty(_itemsToTrack))
-            return -1;
-
-        for (int i = 0; i < _itemsToTrack.size(); i++) {
-            if (_itemsToTrack.get(i).getUID().equals(item.getUID())) {
-                return i;
-            }
-        }
-
-        return -1;
-    }
-
     public synchronized boolean isMonitoring(PointMapItem item) {
-        return itemsToTrackIndex(item) >= 0;
+        return _itemsToTrack.containsKey(item.getUID());
     }
 
     public synchronized boolean addItem(PointMapItem item) {
         Log.d(TAG, "Adding monitoring for item: " + item.getUID()
                 + " for fence: " + toString());
 
-        int index = itemsToTrackIndex(item);
-        if (index >= 0) {
+        if (_itemsToTrack.containsKey(item.getUID())) {
             Log.d(TAG, "Item already monitored: " + item.getUID()
                     + " for fence: " + toString());
         } else {
             //add to tracked list
-            _itemsToTrack.add(item);
+            _itemsToTrack.put(item.getUID(), item);
         }
 
         //don't ignore if previously done so
@@ -490,8 +610,19 @@ public abstract class GeoFenceMonitor {
     public static class Factory {
         private static final String TAG = "GeoFenceMonitor.Factory";
 
+        /**
+         * @deprecated Monitors no longer use a spatial calculator, use
+         * {@link #Create(MapView, MapGroup, GeoFence, MapItem)}
+         */
+        @Deprecated
+        @DeprecatedApi(since = "4.5", forRemoval = true, removeAt = "4.8")
         public static GeoFenceMonitor Create(MapView view, MapGroup group,
                 SpatialCalculator spatialCalc, GeoFence fence, MapItem item) {
+            return Create(view, group, fence, item);
+        }
+
+        public static GeoFenceMonitor Create(MapView view, MapGroup group,
+                GeoFence fence, MapItem item) {
             if (fence == null || !fence.isValid()) {
                 Log.w(TAG, "Unable to Create monitor for invalid fence");
                 return null;
@@ -517,7 +648,7 @@ public abstract class GeoFenceMonitor {
                 return monitor;
             } else if (shape instanceof Rectangle) {
                 RectangleGeoFenceMonitor monitor = new RectangleGeoFenceMonitor(
-                        view, spatialCalc, fence, (Rectangle) shape);
+                        view, fence, (Rectangle) shape);
                 if (!monitor.isValid()) {
                     Log.w(TAG, "Invalid RectangleGeoFenceMonitor");
                     return monitor;
@@ -538,7 +669,7 @@ public abstract class GeoFenceMonitor {
                 }
 
                 ClosedShapeGeoFenceMonitor monitor = new ClosedShapeGeoFenceMonitor(
-                        view, spatialCalc, fence, freeform);
+                        view, fence, freeform);
                 if (!monitor.isValid()) {
                     Log.w(TAG, "Invalid ClosedShapeGeoFenceMonitor");
                     return monitor;
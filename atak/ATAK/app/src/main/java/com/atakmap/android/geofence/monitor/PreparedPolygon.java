@@ -0,0 +1,77 @@
+
+package com.atakmap.android.geofence.monitor;
+
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+/**
+ * Immutable copy of a fence outline, prepared for repeated point in polygon
+ * tests. The vertices are pulled out of the shape once, when the shape
+ * changes, so that each test is a bounding box reject followed by a crossing
+ * number test over primitive arrays.
+ *
+ * Outlines crossing the IDL are unwrapped into the 0..360 longitude range.
+ */
+final class PreparedPolygon {
+
+    private final double[] _lat;
+    private final double[] _lng;
+    private final boolean _unwrap;
+
+    private final double _minLat;
+    private final double _minLng;
+    private final double _maxLat;
+    private final double _maxLng;
+
+    /**
+     * @param points the outline, at least 3 points. The outline does not need
+     *               to be explicitly closed
+     */
+    PreparedPolygon(GeoPoint[] points) {
+        final int n = points.length;
+        _lat = new double[n];
+        _lng = new double[n];
+
+        boolean unwrap = false;
+        for (int i = 0; i < n; i++) {
+            _lat[i] = points[i].getLatitude();
+            _lng[i] = points[i].getLongitude();
+            if (i > 0 && Math.abs(_lng[i] - _lng[i - 1]) > 180d)
+                unwrap = true;
+        }
+        _unwrap = unwrap;
+
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            if (_unwrap && _lng[i] < 0d)
+                _lng[i] += 360d;
+            minLat = Math.min(minLat, _lat[i]);
+            maxLat = Math.max(maxLat, _lat[i]);
+            minLng = Math.min(minLng, _lng[i]);
+            maxLng = Math.max(maxLng, _lng[i]);
+        }
+        _minLat = minLat;
+        _maxLat = maxLat;
+        _minLng = minLng;
+        _maxLng = maxLng;
+    }
+
+    boolean contains(GeoPoint point) {
+        final double lat = point.getLatitude();
+        double lng = point.getLongitude();
+        if (_unwrap && lng < 0d)
+            lng += 360d;
+
+        if (lat < _minLat || lat > _maxLat || lng < _minLng || lng > _maxLng)
+            return false;
+
+        boolean inside = false;
+        for (int i = 0, j = _lat.length - 1; i < _lat.length; j = i++) {
+            if ((_lat[i] > lat) != (_lat[j] > lat)
+                    && lng < (_lng[j] - _lng[i]) * (lat - _lat[i])
+                            / (_lat[j] - _lat[i]) + _lng[i])
+                inside = !inside;
+        }
+        return inside;
+    }
+}
@@ -5,10 +5,13 @@ import com.atakmap.android.hierarchy.filters.FOVFilter;
 import com.atakmap.coremap.maps.coords.GeoBounds;
 import com.atakmap.coremap.maps.coords.GeoPoint;
 import com.atakmap.lang.Objects;
+import com.atakmap.math.PointD;
+import com.atakmap.util.Quadtree;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -63,6 +66,12 @@ public class DefaultMapGroup extends MapGroup {
         final boolean hasItemListChangedListeners = this
                 .hasItemListChangedListeners();
         _items.clear();
+        synchronized (_spatialLock) {
+            if (_spatialIndex != null) {
+                for (MapItem item : items)
+                    unindexItem(item);
+            }
+        }
         for (MapItem item : items) {
             item.onRemoved(this);
             if (hasItemListChangedListeners)
@@ -220,6 +229,10 @@ public class DefaultMapGroup extends MapGroup {
     @Override
     protected void addItemImpl(MapItem item) {
         _items.put(item.getSerialId(), item);
+        synchronized (_spatialLock) {
+            if (_spatialIndex != null)
+                indexItem(item);
+        }
 
         // Adding a new item to an invisible group
         // This will NOT turn on visibility for existing
@@ -349,6 +362,12 @@ public class DefaultMapGroup extends MapGroup {
     @Override
     protected boolean removeItemImpl(MapItem item) {
         MapItem mi = _items.remove(item.getSerialId());
+        if (mi != null) {
+            synchronized (_spatialLock) {
+                if (_spatialIndex != null)
+                    unindexItem(mi);
+            }
+        }
         return (mi != null);
     }
 
@@ -406,7 +425,7 @@ public class DefaultMapGroup extends MapGroup {
 
         MetaDataMapItemFilter filter = new MetaDataMapItemFilter(metadata);
         double distance;
-        for (MapItem i : _items.values()) {
+        for (MapItem i : getSpatialCandidates(location, threshold)) {
             distance = MapItem.computeDistance(i, location);
             if (Double.isNaN(distance) || distance > threshold)
                 continue;
@@ -432,7 +451,7 @@ public class DefaultMapGroup extends MapGroup {
             final MetaDataMapItemFilter filter = new MetaDataMapItemFilter(
                     metadata);
             double distance;
-            for (MapItem i : _items.values()) {
+            for (MapItem i : getSpatialCandidates(location, radius)) {
                 distance = MapItem.computeDistance(i, location);
                 if (Double.isNaN(distance) || distance > radius)
                     continue;
@@ -454,7 +473,7 @@ public class DefaultMapGroup extends MapGroup {
                         : new MetaDataMapItemFilter(metadata);
 
         Collection<MapItem> candidates = new LinkedList<>();
-        for (MapItem i : _items.values()) {
+        for (MapItem i : getSpatialCandidates(bounds)) {
             if (boundsfilter != null && !boundsfilter.accept(i))
                 continue;
 
@@ -481,6 +500,169 @@ public class DefaultMapGroup extends MapGroup {
         return retval;
     }
 
+    /**************************************************************************/
+    // Spatial index
+
+    /**
+     * Returns the items that may lie within <code>radius</code> meters of
+     * <code>location</code>. The caller is still responsible for the exact
+     * distance test.
+     */
+    private Collection<MapItem> getSpatialCandidates(GeoPoint location,
+            double radius) {
+        if (location == null || !location.isValid() || Double.isNaN(radius)
+                || Double.isInfinite(radius))
+            return _items.values();
+
+        // conservative extent; a degree of latitude is never shorter than
+        // ~110.57km on the ellipsoid
+        final double dLat = radius / METERS_PER_DEGREE_MIN;
+        final double north = location.getLatitude() + dLat;
+        final double south = location.getLatitude() - dLat;
+        if (north >= 90d || south <= -90d)
+            return getSpatialCandidates(Math.max(south, -90d), -180d,
+                    Math.min(north, 90d), 180d);
+
+        final double dLng = radius / (METERS_PER_DEGREE_MIN
+                * Math.cos(Math.toRadians(
+                        Math.max(Math.abs(north), Math.abs(south)))));
+        if (dLng >= 180d)
+            return getSpatialCandidates(south, -180d, north, 180d);
+
+        final double west = location.getLongitude() - dLng;
+        final double east = location.getLongitude() + dLng;
+        if (west < -180d)
+            return getSpatialCandidates(south, west + 360d, north, 180d,
+                    south, -180d, north, east);
+        else if (east > 180d)
+            return getSpatialCandidates(south, west, north, 180d,
+                    south, -180d, north, east - 360d);
+        return getSpatialCandidates(south, west, north, east);
+    }
+
+    /**
+     * Returns the items that may be accepted by a {@link FOVFilter} for the
+     * specified bounds. The caller is still responsible for filtering.
+     */
+    private Collection<MapItem> getSpatialCandidates(GeoBounds bounds) {
+        if (bounds == null)
+            return _items.values();
+        if (bounds.crossesIDL()) {
+            final double e = Math.max(bounds.getEast(), bounds.getWest());
+            final double w = Math.min(bounds.getEast(), bounds.getWest());
+            return getSpatialCandidates(bounds.getSouth(), e,
+                    bounds.getNorth(), 180d,
+                    bounds.getSouth(), -180d, bounds.getNorth(), w);
+        }
+        return getSpatialCandidates(bounds.getSouth(), bounds.getWest(),
+                bounds.getNorth(), bounds.getEast());
+    }
+
+    /**
+     * Queries the index with one or more regions, specified as
+     * <code>south, west, north, east</code> quadruples. Items that are not
+     * point based are always returned.
+     */
+    private Collection<MapItem> getSpatialCandidates(double... regions) {
+        final Collection<MapItem> retval = new ArrayList<>();
+        synchronized (_spatialLock) {
+            if (_spatialIndex == null) {
+                // only groups that are actually searched pay for the index
+                _spatialIndex = new Quadtree<>(POINT_BOUNDS,
+                        SPATIAL_INDEX_NODE_LIMIT, -180d, -90d, 180d, 90d);
+                for (MapItem item : _items.values())
+                    indexItem(item);
+            }
+
+            final Collection<PointMapItem> points;
+            if (regions.length > 4) {
+                // regions on either side of the IDL may both see a point on
+                // the anti-meridian
+                points = Collections.newSetFromMap(
+                        new IdentityHashMap<PointMapItem, Boolean>());
+            } else {
+                points = new ArrayList<>();
+            }
+            for (int i = 0; i < regions.length; i += 4)
+                _spatialIndex.get(regions[i + 1], regions[i],
+                        regions[i + 3], regions[i + 2], points);
+            retval.addAll(points);
+            retval.addAll(_unindexedItems);
+        }
+        return retval;
+    }
+
+    /**
+     * Point based items are held in the quadtree, everything else is only
+     * tracked so that it may be scanned. Must hold <code>_spatialLock</code>.
+     */
+    private void indexItem(MapItem item) {
+        if (isSpatiallyIndexed(item)) {
+            final PointMapItem point = (PointMapItem) item;
+            // the item may already have been picked up while the index was
+            // being built
+            if (!_spatialIndex.refresh(point)) {
+                _spatialIndex.add(point);
+                point.addOnPointChangedListener(_spatialIndexUpdater);
+            }
+        } else {
+            _unindexedItems.add(item);
+        }
+    }
+
+    /**
+     * Must hold <code>_spatialLock</code>.
+     */
+    private void unindexItem(MapItem item) {
+        if (isSpatiallyIndexed(item)) {
+            final PointMapItem point = (PointMapItem) item;
+            point.removeOnPointChangedListener(_spatialIndexUpdater);
+            _spatialIndex.remove(point);
+        } else {
+            _unindexedItems.remove(item);
+        }
+    }
+
+    private static boolean isSpatiallyIndexed(MapItem item) {
+        // items with custom FOV acceptance are not constrained to their point
+        return (item instanceof PointMapItem)
+                && !(item instanceof FOVFilter.Filterable);
+    }
+
+    private final PointMapItem.OnPointChangedListener _spatialIndexUpdater = new PointMapItem.OnPointChangedListener() {
+        @Override
+        public void onPointChanged(PointMapItem item) {
+            synchronized (_spatialLock) {
+                if (_spatialIndex != null)
+                    _spatialIndex.refresh(item);
+            }
+        }
+    };
+
+    private static final double METERS_PER_DEGREE_MIN = 110000d;
+    private static final int SPATIAL_INDEX_NODE_LIMIT = 32;
+
+    private static final Quadtree.Function<PointMapItem> POINT_BOUNDS = new Quadtree.Function<PointMapItem>() {
+        @Override
+        public void getBounds(PointMapItem item, PointD min, PointD max) {
+            final GeoPoint p = item.getPoint();
+            min.x = p.getLongitude();
+            min.y = p.getLatitude();
+            max.x = min.x;
+            max.y = min.y;
+        }
+    };
+
+    /**
+     * Lazily created on the first spatial query and maintained incrementally
+     * from then on. Guarded by <code>_spatialLock</code>, as is
+     * <code>_unindexedItems</code>.
+     */
+    private Quadtree<PointMapItem> _spatialIndex;
+    private final Set<MapItem> _unindexedItems = Collections
+            .newSetFromMap(new IdentityHashMap<MapItem, Boolean>());
+    private final Object _spatialLock = new Object();
+
     /**************************************************************************/
 
     public static class MetaDataMapItemFilter implements
@@ -275,6 +275,7 @@ public abstract class MapActivity extends MetricFragmentActivity {
         synchronized (lifecycleTransitionLock) {
             long s = SystemClock.elapsedRealtime();
             if (observer != null) {
+                final long start = System.nanoTime();
 
                 _observers.add(observer);
                 observer.onCreate(this, getIntent(), getMapView());
@@ -282,6 +283,9 @@ public abstract class MapActivity extends MetricFragmentActivity {
                     observer.onStart(this, getMapView());
                     //Log.d("shb", "onStart called at the delayed time: " + _observers.getClass());
                 }
+                StartupProfiler.getInstance().record(
+                        observer.getClass().getSimpleName(),
+                        StartupProfiler.CREATE, start);
             }
             if (BuildConfig.DEBUG) {
                 Log.d(TAG,
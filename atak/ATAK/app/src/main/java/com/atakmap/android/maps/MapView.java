@@ -214,11 +214,6 @@ public class MapView extends AtakMapView {
             }
         });
 
-        getMapEventDispatcher().addMapEventListener(
-                MapEvent.ITEM_ADDED, _rootGroup.getUidIndex());
-        getMapEventDispatcher().addMapEventListener(
-                MapEvent.ITEM_REMOVED, _rootGroup.getUidIndex());
-
         _mapView = this;
 
         final LayoutWidget attributionWidgetLayout = new LayoutWidget();
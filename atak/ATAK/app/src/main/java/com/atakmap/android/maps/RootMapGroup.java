@@ -11,7 +11,6 @@ import com.atakmap.map.hittest.HitTestQueryParameters;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -22,6 +21,7 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class RootMapGroup extends DefaultMapGroup
         implements DeepHitTestQuery {
@@ -40,6 +40,10 @@ public final class RootMapGroup extends DefaultMapGroup
         this.deepQueryFunctions = new IdentityHashMap<>();
         this.uidIndex = new FastUIDLookup();
         this.hitTester = new RootHitTestQuery();
+
+        // the index is maintained synchronously with the group hierarchy
+        this.addOnItemListChangedListener(this.uidIndex);
+        this.addOnGroupListChangedListener(this.uidIndex);
     }
 
     FastUIDLookup getUidIndex() {
@@ -49,23 +53,29 @@ public final class RootMapGroup extends DefaultMapGroup
     synchronized void dispose() {
         this._groups.clear();
         this._items.clear();
+        this.uidIndex.map.clear();
     }
 
     /************************************************************************/
     // DEEP QUERY FUNCTIONS
 
     /**
-     * Stock implementation of searching for a UID.
+     * Stock implementation of searching for a UID. Items belonging to the
+     * group hierarchy are resolved through the UID index without acquiring
+     * the root group lock; only a miss falls back on the deep queries.
      */
     @Override
     @ModifierApi(since = "4.5", target = "4.8", modifiers = {
             "@Nullable", "public"
     })
-    public synchronized MapItem deepFindUID(final String uid) {
+    public MapItem deepFindUID(final String uid) {
         final MapItem byUid = this.uidIndex.get(uid);
         if (byUid != null)
             return byUid;
-        return deepFindItemImpl(Collections.singletonMap("uid", uid), true);
+        synchronized (this) {
+            return deepFindItemImpl(Collections.singletonMap("uid", uid),
+                    true);
+        }
     }
 
     @Override
@@ -367,28 +377,82 @@ public final class RootMapGroup extends DefaultMapGroup
 
     /**
      * Keeps a cache of all items that have been added to the map for fast UID lookup.
+     *
+     * The index is attached directly to the group hierarchy of the root
+     * group; it receives item add/remove and group attach/detach
+     * notifications synchronously, so a lookup immediately following an
+     * {@link MapGroup#addItem(MapItem)} will find the item. Lookups do not
+     * acquire any locks.
      */
     public static class FastUIDLookup implements
-            MapEventDispatcher.MapEventDispatchListener {
-        final Map<String, MapItem> map = new HashMap<>();
+            MapEventDispatcher.MapEventDispatchListener,
+            MapGroup.OnItemListChangedListener,
+            MapGroup.OnGroupListChangedListener {
+        final Map<String, MapItem> map = new ConcurrentHashMap<>();
 
         @Override
         public void onMapEvent(final MapEvent event) {
             final String etype = event.getType();
             final MapItem mi = event.getItem();
-            final String uid = mi.getUID();
-            final boolean added = etype.equals(MapEvent.ITEM_ADDED);
-            final boolean removed = etype.equals(MapEvent.ITEM_REMOVED);
-
-            // See ATAK-10160
-            // Without synchronization some items do not get mapped properly
-            // Map events can be dispatched from any thread
-            synchronized (this) {
-                if (added)
-                    map.put(uid, mi);
-                else if (removed)
-                    map.remove(uid);
+            if (mi == null)
+                return;
+            if (etype.equals(MapEvent.ITEM_ADDED))
+                map.put(mi.getUID(), mi);
+            else if (etype.equals(MapEvent.ITEM_REMOVED))
+                map.remove(mi.getUID(), mi);
+        }
+
+        @Override
+        public void onItemAdded(MapItem item, MapGroup group) {
+            map.put(item.getUID(), item);
+        }
+
+        @Override
+        public void onItemRemoved(MapItem item, MapGroup group) {
+            // transfers between groups re-add the item immediately, keep the
+            // entry so that concurrent lookups do not miss
+            if (item.getMetaBoolean("__groupTransfer", false))
+                return;
+            // only evict if the entry still refers to the removed instance;
+            // another item may have since been registered with the same UID
+            map.remove(item.getUID(), item);
+        }
+
+        @Override
+        public void onGroupAdded(MapGroup group, MapGroup parent) {
+            attach(group);
+        }
+
+        @Override
+        public void onGroupRemoved(MapGroup group, MapGroup parent) {
+            detach(group);
+        }
+
+        private void attach(MapGroup group) {
+            // listen first so that nothing added during the walk is missed
+            group.removeOnItemListChangedListener(this);
+            group.addOnItemListChangedListener(this);
+            group.removeOnGroupListChangedListener(this);
+            group.addOnGroupListChangedListener(this);
+
+            for (MapItem item : group.getItems()) {
+                map.put(item.getUID(), item);
+                // removed while the walk was in progress
+                if (!group.containsItem(item))
+                    map.remove(item.getUID(), item);
             }
+            for (MapGroup child : group.getChildGroups())
+                attach(child);
+        }
+
+        private void detach(MapGroup group) {
+            group.removeOnItemListChangedListener(this);
+            group.removeOnGroupListChangedListener(this);
+
+            for (MapItem item : group.getItems())
+                map.remove(item.getUID(), item);
+            for (MapGroup child : group.getChildGroups())
+                detach(child);
         }
 
         /**
@@ -396,11 +460,19 @@ public final class RootMapGroup extends DefaultMapGroup
          * @return null if there is no map item.
          */
         public MapItem get(String uid) {
-            // No need to synchronize get - this seems to work as expected
+            if (uid == null)
+                return null;
             return map.get(uid);
         }
 
-        public synchronized List<MapItem> getItems() {
+        /**
+         * @return the number of indexed items
+         */
+        public int size() {
+            return map.size();
+        }
+
+        public List<MapItem> getItems() {
             return new ArrayList<>(map.values());
         }
     }
@@ -0,0 +1,212 @@
+
+package com.atakmap.android.maps;
+
+import com.atakmap.coremap.locale.LocaleUtil;
+import com.atakmap.coremap.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how long each map component takes to start up. Each component is
+ * instantiated and then created on the main thread. The main thread work is
+ * serial, so the time spent there, instantiating and creating, is the
+ * critical path of startup.
+ */
+public final class StartupProfiler {
+
+    private static final String TAG = "StartupProfiler";
+
+    /** Instantiation of the component, including class initialization */
+    public static final String INSTANTIATE = "instantiate";
+
+    /** {@link MapComponent#onCreate} */
+    public static final String CREATE = "onCreate";
+
+    /**
+     * The number of components listed as the largest contributors to the
+     * critical path
+     */
+    private static final int SLOWEST_LIMIT = 10;
+
+    private static final StartupProfiler _instance = new StartupProfiler();
+
+    /**
+     * A single recorded phase of a component
+     */
+    public static final class Span {
+        public final String name;
+        public final String phase;
+        public final String thread;
+        public final long start;
+        public final long end;
+
+        Span(String name, String phase, String thread, long start,
+                long end) {
+            this.name = name;
+            this.phase = phase;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the duration in milliseconds
+         */
+        public double getDuration() {
+            return (end - start) / 1e6d;
+        }
+    }
+
+    private final List<Span> _spans = new ArrayList<>();
+    private long _origin = System.nanoTime();
+    private long _finish;
+
+    StartupProfiler() {
+    }
+
+    public static StartupProfiler getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Clear any recorded spans and start timing from now
+     */
+    public synchronized void start() {
+        _spans.clear();
+        _origin = System.nanoTime();
+        _finish = 0;
+    }
+
+    /**
+     * Mark startup as complete. Spans recorded afterwards are ignored.
+     *
+     * @return true if startup had not already been marked complete
+     */
+    public synchronized boolean finish() {
+        if (_finish != 0)
+            return false;
+        _finish = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Record a phase of a component, which began at <code>start</code> and
+     * ends now
+     *
+     * @param name the component name
+     * @param phase the phase
+     * @param start the start time, from {@link System#nanoTime()}
+     */
+    public void record(String name, String phase, long start) {
+        record(name, phase, Thread.currentThread().getName(), start,
+                System.nanoTime());
+    }
+
+    /**
+     * Record a phase of a component
+     *
+     * @param name the component name
+     * @param phase the phase
+     * @param thread the thread the phase ran on
+     * @param start the start time, from {@link System#nanoTime()}
+     * @param end the end time, from {@link System#nanoTime()}
+     */
+    public synchronized void record(String name, String phase, String thread,
+            long start, long end) {
+        if (_finish == 0)
+            _spans.add(new Span(name, phase, thread, start, end));
+    }
+
+    /**
+     * @return the recorded spans, in order of start time
+     */
+    public synchronized List<Span> getSpans() {
+        List<Span> spans = new ArrayList<>(_spans);
+        Collections.sort(spans, new Comparator<Span>() {
+            @Override
+            public int compare(Span lhs, Span rhs) {
+                return Long.compare(lhs.start, rhs.start);
+            }
+        });
+        return spans;
+    }
+
+    /**
+     * @return a report of the startup timeline and the critical path
+     */
+    public String getReport() {
+        final List<Span> spans = getSpans();
+        final long origin, finish;
+        synchronized (this) {
+            origin = _origin;
+            finish = _finish;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        long last = origin;
+        double instantiate = 0d;
+        double create = 0d;
+        final Map<String, double[]> critical = new HashMap<>();
+        for (Span s : spans) {
+            last = Math.max(last, s.end);
+            if (s.phase.equals(INSTANTIATE))
+                instantiate += s.getDuration();
+            else
+                create += s.getDuration();
+            double[] t = critical.get(s.name);
+            if (t == null)
+                critical.put(s.name, t = new double[1]);
+            t[0] += s.getDuration();
+        }
+
+        sb.append(String.format(LocaleUtil.getCurrent(),
+                "startup timeline: %d components, %.1f ms\n",
+                critical.size(),
+                ((finish != 0 ? finish : last) - origin) / 1e6d));
+        sb.append(String.format(LocaleUtil.getCurrent(),
+                "%10s %10s  %-12s %-24s %s\n", "offset", "ms", "phase",
+                "thread", "component"));
+        for (Span s : spans) {
+            sb.append(String.format(LocaleUtil.getCurrent(),
+                    "%10.1f %10.1f  %-12s %-24s %s\n",
+                    (s.start - origin) / 1e6d, s.getDuration(), s.phase,
+                    s.thread, s.name));
+        }
+
+        sb.append(String.format(LocaleUtil.getCurrent(),
+                "critical path: %.1f ms (instantiate %.1f ms, "
+                        + "onCreate %.1f ms)\n",
+                instantiate + create, instantiate, create));
+
+        List<Map.Entry<String, double[]>> slowest = new ArrayList<>(
+                critical.entrySet());
+        Collections.sort(slowest,
+                new Comparator<Map.Entry<String, double[]>>() {
+                    @Override
+                    public int compare(Map.Entry<String, double[]> lhs,
+                            Map.Entry<String, double[]> rhs) {
+                        return Double.compare(rhs.getValue()[0],
+                                lhs.getValue()[0]);
+                    }
+                });
+        for (int i = 0; i < Math.min(SLOWEST_LIMIT, slowest.size()); i++) {
+            sb.append(String.format(LocaleUtil.getCurrent(),
+                    "%10.1f  %s\n", slowest.get(i).getValue()[0],
+                    slowest.get(i).getKey()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the report to the log
+     */
+    public void logReport() {
+        for (String line : getReport().split("\n"))
+            Log.d(TAG, line);
+    }
+}
@@ -60,6 +60,22 @@ public class DirectoryCleanup {
                 units));
     }
 
+    /**
+     * Run a custom cleanup task periodically
+     *
+     * @param task the task
+     * @param delay delay before the first run
+     * @param period period between runs
+     * @param units units of delay and period
+     */
+    public void add(Runnable task, long delay, long period, TimeUnit units) {
+        Log.d(TAG, "Adding task every " + period + " " + units.toString()
+                + " for " + task.toString());
+
+        futureTasks.add(scheduler.scheduleWithFixedDelay(task, delay, period,
+                units));
+    }
+
     public void shutdown() {
         Log.d(TAG, "shutdown");
 
@@ -0,0 +1,235 @@
+
+package com.atakmap.android.missionpackage.file;
+
+import com.atakmap.coremap.filesystem.FileSystemUtils;
+import com.atakmap.coremap.filesystem.HardLinks;
+import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.locale.LocaleUtil;
+import com.atakmap.coremap.log.Log;
+import com.atakmap.filesystem.HashingUtils;
+import com.atakmap.util.zip.ZipEntry;
+import com.atakmap.util.zip.ZipFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Content addressed store of files received in Mission Packages. Each file
+ * extracted from a package is hard linked into the store under its SHA-256.
+ * When a later package contains the same file, the stored copy is linked to
+ * the new location rather than being written again.
+ *
+ * Blobs are grouped by the CRC-32 and size recorded in the zip directory, so
+ * that candidates for an entry can be found without reading it:
+ * <pre>
+ *     files/.blobs/&lt;crc32&gt;-&lt;size&gt;/&lt;sha256&gt;
+ * </pre>
+ * A candidate is only used once the SHA-256 of the entry has been verified.
+ *
+ * A hard link shares the file itself, not a copy, so a change made in place
+ * through any link is seen through all of them. Blobs are therefore only
+ * linked into package directories, which are read-only by contract; files
+ * extracted or imported anywhere else are given their own copy, see
+ * {@link #unshare(File)}.
+ *
+ * A blob whose only remaining link is the store itself is no longer
+ * referenced by any extracted package and is removed by {@link #prune()}.
+ */
+final class MissionPackageBlobStore {
+
+    private static final String TAG = "MissionPackageBlobStore";
+
+    static final String DIRNAME = ".blobs";
+
+    /**
+     * Files which are commonly opened for writing even where they were
+     * extracted, e.g. databases opened by another application, so they are
+     * never shared
+     */
+    private static final Set<String> MUTABLE_EXTENSIONS = new HashSet<>(
+            Arrays.asList("sqlite", "sqlite3", "db", "gpkg", "mbtiles",
+                    "sqlite-journal", "db-journal"));
+
+    private final File _dir;
+
+    /**
+     * @param filesPath the Mission Package files path
+     * @see MissionPackageFileIO#getMissionPackageFilesPath(String)
+     */
+    MissionPackageBlobStore(String filesPath) {
+        _dir = new File(filesPath, DIRNAME);
+    }
+
+    /**
+     * Hard links bypass the IO provider, so the store is only used with the
+     * default provider
+     *
+     * @return true if the store may be used
+     */
+    static boolean isSupported() {
+        return IOProviderFactory.isDefault();
+    }
+
+    /**
+     * @param name the zip entry name
+     * @return true if the entry may be shared with other packages
+     */
+    static boolean isShareable(String name) {
+        return !MUTABLE_EXTENSIONS.contains(FileSystemUtils.getExtension(
+                new File(name), false, false)
+                .toLowerCase(LocaleUtil.getCurrent()));
+    }
+
+    /**
+     * Find a stored copy of a zip entry
+     *
+     * @param zip the package
+     * @param entry the entry
+     * @return the blob with the same content as the entry, or null if none
+     *         is stored
+     */
+    File find(ZipFile zip, ZipEntry entry) {
+        File[] candidates = IOProviderFactory.listFiles(getGroup(entry));
+        if (candidates == null || candidates.length == 0)
+            return null;
+
+        String sha256 = null;
+        for (File blob : candidates) {
+            if (IOProviderFactory.length(blob) != entry.getSize())
+                continue;
+            if (sha256 == null) {
+                // hash the entry in memory, nothing is written
+                try (InputStream in = zip.getInputStream(entry)) {
+                    sha256 = digest(in);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to hash entry: " + entry.getName(), e);
+                    return null;
+                }
+            }
+            if (sha256.equals(blob.getName()))
+                return blob;
+        }
+        return null;
+    }
+
+    /**
+     * Add an extracted file to the store
+     *
+     * @param file the extracted file
+     * @param entry the zip entry the file was extracted from
+     * @param sha256 the SHA-256 of the file content
+     * @return true if the file is now stored
+     */
+    boolean add(File file, ZipEntry entry, String sha256) {
+        File group = getGroup(entry);
+        File blob = new File(group, sha256);
+        if (IOProviderFactory.exists(blob))
+            return true;
+        if (!IOProviderFactory.exists(group)
+                && !IOProviderFactory.mkdirs(group)) {
+            Log.w(TAG, "Failed to create blob directory: " + group);
+            return false;
+        }
+        return HardLinks.link(file, blob);
+    }
+
+    /**
+     * Link a stored blob to a new location
+     *
+     * @param blob the blob
+     * @param target the new location, which must not exist
+     * @return true if the blob was linked
+     */
+    boolean link(File blob, File target) {
+        return HardLinks.link(blob, target);
+    }
+
+    /**
+     * Give a file its own copy of its content if the content is shared
+     * through a hard link. The file is copied alongside and the copy renamed
+     * over it.
+     *
+     * @param file the file
+     * @return true if the file is not shared
+     */
+    static boolean unshare(File file) {
+        if (HardLinks.getLinkCount(file) <= 1)
+            return true;
+
+        File tmp = new File(file.getParentFile(),
+                "." + file.getName() + ".unshare");
+        try {
+            FileSystemUtils.copyFile(file, tmp);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to copy shared file: " + file, e);
+            FileSystemUtils.delete(tmp);
+            return false;
+        }
+        if (!IOProviderFactory.renameTo(tmp, file)) {
+            Log.w(TAG, "Failed to replace shared file: " + file);
+            FileSystemUtils.delete(tmp);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove blobs which are no longer linked from any extracted package
+     *
+     * @return the number of blobs removed
+     */
+    int prune() {
+        File[] groups = IOProviderFactory.listFiles(_dir);
+        if (groups == null)
+            return 0;
+
+        int pruned = 0;
+        for (File group : groups) {
+            File[] blobs = IOProviderFactory.listFiles(group);
+            if (blobs != null) {
+                for (File blob : blobs) {
+                    if (HardLinks.getLinkCount(blob) == 1
+                            && FileSystemUtils.deleteFile(blob))
+                        pruned++;
+                }
+            }
+            String[] remaining = IOProviderFactory.list(group);
+            if (remaining == null || remaining.length == 0)
+                FileSystemUtils.delete(group);
+        }
+        if (pruned > 0)
+            Log.d(TAG, "Pruned " + pruned + " unreferenced blobs");
+        return pruned;
+    }
+
+    private File getGroup(ZipEntry entry) {
+        return new File(_dir, String.format(LocaleUtil.getCurrent(),
+                "%08x-%d", entry.getCrc(), entry.getSize()));
+    }
+
+    /**
+     * @return a SHA-256 digest, for hashing entries as they are extracted
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String digest(InputStream in) throws IOException {
+        MessageDigest md = newDigest();
+        byte[] buffer = new byte[FileSystemUtils.BUF_SIZE];
+        int len;
+        while ((len = in.read(buffer)) > 0)
+            md.update(buffer, 0, len);
+        return HashingUtils.toHexString(md.digest());
+    }
+}
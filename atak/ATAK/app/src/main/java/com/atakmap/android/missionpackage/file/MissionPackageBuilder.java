@@ -1,12 +1,15 @@
 
 package com.atakmap.android.missionpackage.file;
 
+import android.os.SystemClock;
+
 import com.atakmap.android.importexport.CotEventFactory;
 import com.atakmap.android.maps.MapGroup;
 import com.atakmap.android.maps.MapItem;
 import com.atakmap.coremap.cot.event.CotEvent;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
 import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.locale.LocaleUtil;
 import com.atakmap.coremap.log.Log;
 
 import java.io.BufferedInputStream;
@@ -35,6 +38,14 @@ public class MissionPackageBuilder {
     static final String MANIFEST_XML = MANIFEST_PATH + File.separator
             + "manifest.xml";
 
+    /**
+     * Number of threads used to compress file contents, and the number of
+     * contents that may be compressed ahead of those being written
+     */
+    private static final int NUM_THREADS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_PENDING = NUM_THREADS * 2;
+
     /**
      * Interface for callback during building of a Mission Package
      * 
@@ -50,6 +61,7 @@ public class MissionPackageBuilder {
 
     private final List<String> _warnings;
     private ZipOutputStream _zos;
+    private MissionPackageZipWriter _writer;
     private final Progress _progress;
     private final MissionPackageManifest _contents;
     private final MapGroup _mapGroup;
@@ -85,6 +97,8 @@ public class MissionPackageBuilder {
     public String build() {
         // TODO if a ZipEntry fails, the manifest _may_ be out of sync with actual contents
         File tmpCopy = null;
+        boolean built = false;
+        long start = SystemClock.elapsedRealtime();
         try {
             _totalBytes = _contents.getTotalSize();
             _writtenBytes = 0;
@@ -105,28 +119,54 @@ public class MissionPackageBuilder {
                 }
             }
 
+            List<MissionPackageContent> contents = _contents._contents
+                    .getContents();
             FileOutputStream fos = IOProviderFactory
                     .getOutputStream(new File(_contents.getPath()));
-            _zos = new ZipOutputStream(new BufferedOutputStream(fos));
+            if (MissionPackageZipWriter.fits(_totalBytes,
+                    contents.size() + 1)) {
+                // compress file contents in parallel
+                _writer = new MissionPackageZipWriter(fos,
+                        new File(FileSystemUtils.getItemOnSameRoot(f, "tmp"),
+                                f.getName() + ".parts"),
+                        NUM_THREADS);
+            } else {
+                // too large for the parallel writer, which has no Zip64
+                // support
+                _zos = new ZipOutputStream(new BufferedOutputStream(fos));
+            }
 
             Log.d(TAG, "Building package: " + _contents.getPath());
             // store manifest. Note in case of otherwise empty Mission Package, this
             // will be only file in .zip. If manifest fails, package creation fails
-            AddManifest(_zos, _contents);
+            if (_writer != null) {
+                _writer.setComment(GetComment(_contents));
+                _writer.putEntry(MANIFEST_XML, GetManifestData(_contents));
+            } else {
+                AddManifest(_zos, _contents);
+            }
             _wroteManifest = true;
 
             if (!submitProgress(0))
                 return null;
 
             // loop and compress all contents
-            for (MissionPackageContent content : _contents._contents
-                    .getContents()) {
+            for (MissionPackageContent content : contents) {
                 _writtenBytes += AddContent(content);
 
                 // after each content, check for cancel, and update progress
-                if (!submitProgress(0))
+                if (!submitProgress(0) || !flushPending(MAX_PENDING))
                     return null;
             }
+
+            if (_writer != null) {
+                if (!flushPending(0))
+                    return null;
+                _writer.finish();
+                for (String uid : _writer.getFailed())
+                    _warnings.add("Skipping, Zip Error for File: " + uid);
+            }
+            built = true;
         } catch (Exception e) {
             Log.e(TAG, "Failed to create zip file", e);
             if (_progress != null)
@@ -134,11 +174,26 @@ public class MissionPackageBuilder {
         } finally {
             IoUtils.close(_zos, TAG, "Failed to close Mission Package zip: "
                     + (_contents == null ? "" : _contents.getPath()));
+            IoUtils.close(_writer, TAG,
+                    "Failed to close Mission Package zip: "
+                            + (_contents == null ? ""
+                                    : _contents.getPath()));
             IoUtils.close(_existing);
             if (tmpCopy != null)
                 FileSystemUtils.delete(tmpCopy);
         }
 
+        if (built) {
+            long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+            long length = IOProviderFactory.length(new File(_contents
+                    .getPath()));
+            Log.d(TAG, String.format(LocaleUtil.getCurrent(),
+                    "Built %s: %.2f MB (%.2f MB input) in %d ms, %.2f MB/s",
+                    _contents.getName(), length / 1048576d,
+                    _totalBytes / 1048576d, elapsed,
+                    (_totalBytes / 1048576d) / (elapsed / 1000d)));
+        }
+
         if (_progress != null)
             _progress.publish(99);
 
@@ -165,27 +220,33 @@ public class MissionPackageBuilder {
     public static void AddManifest(ZipOutputStream zos,
             MissionPackageManifest contents)
             throws IOException {
-        String xml = contents.toXml(false);
-        if (FileSystemUtils.isEmpty(xml)) {
-            throw new IOException("Failed to serialize manifest");
-        }
+        byte[] contentData = GetManifestData(contents);
+        zos.setComment(GetComment(contents));
+        AddManifestEntry(zos, contentData);
+    }
 
-        zos.setComment("Created by ATAK. Mission Package version "
-                + contents.getVersion());
-        AddManifestEntry(zos, xml);
+    private static String GetComment(MissionPackageManifest contents) {
+        return "Created by ATAK. Mission Package version "
+                + contents.getVersion();
     }
 
-    private static void AddManifestEntry(ZipOutputStream zos, String content)
+    private static byte[] GetManifestData(MissionPackageManifest contents)
             throws IOException {
-
-        if (FileSystemUtils.isEmpty(content)) {
-            throw new IOException("Failed to serialize Manifest content");
+        String xml = contents.toXml(false);
+        if (FileSystemUtils.isEmpty(xml)) {
+            throw new IOException("Failed to serialize manifest");
         }
 
-        byte[] contentData = content.getBytes(FileSystemUtils.UTF8_CHARSET);
+        byte[] contentData = xml.getBytes(FileSystemUtils.UTF8_CHARSET);
         if (FileSystemUtils.isEmpty(contentData)) {
             throw new IOException("Failed to serialize Manifest Data");
         }
+        return contentData;
+    }
+
+    private static void AddManifestEntry(ZipOutputStream zos,
+            byte[] contentData)
+            throws IOException {
 
         // create new zip entry
         java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry(MANIFEST_XML);
@@ -268,6 +329,13 @@ public class MissionPackageBuilder {
             }
             long fileSize = IOProviderFactory.length(f);
 
+            if (_writer != null) {
+                // compressed on a worker thread, progress is reported as the
+                // workers read the file
+                _writer.putFile(content.getManifestUid(), f, tmpCopy);
+                return 0;
+            }
+
             // create new zip entry
             java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry(
                     content.getManifestUid());
@@ -332,9 +400,14 @@ public class MissionPackageBuilder {
                     InputStream is = null;
                     try {
                         is = _existing.getInputStream(entry);
-                        _zos.putNextEntry(entry.toJavaZipEntry());
-                        write(is, false);
-                        _zos.closeEntry();
+                        if (_writer != null) {
+                            // streamed to a part file, not held in memory
+                            _writer.putStream(entry.getName(), is);
+                        } else {
+                            _zos.putNextEntry(entry.toJavaZipEntry());
+                            write(is, false);
+                            _zos.closeEntry();
+                        }
                     } catch (Exception e) {
                         Log.e(TAG, "Failed to copy MP entry: " + entry, e);
                         _warnings.add("Failed to copy entry: " + uid);
@@ -391,6 +464,10 @@ public class MissionPackageBuilder {
             // set ZIPEXTRA action sp receiver knows how to process this ZipEntry
             Log.d(TAG, "Adding: " + entry.getName() + " with size: "
                     + eventData.length);
+            if (_writer != null) {
+                _writer.putEntry(entry.getName(), eventData);
+                return eventData.length;
+            }
             _zos.putNextEntry(entry);
 
             // stream data into zipstream
@@ -420,8 +497,10 @@ public class MissionPackageBuilder {
                 progress += 5;
 
             // Files and map items (estimated) is next 94%
-            progress += 94
-                    * ((double) (_writtenBytes + newBytes) / _totalBytes);
+            long written = _writtenBytes + newBytes;
+            if (_writer != null)
+                written += _writer.getReadBytes();
+            progress += 94 * ((double) written / _totalBytes);
 
             // 1% left over for finalization
 
@@ -431,6 +510,26 @@ public class MissionPackageBuilder {
         return true;
     }
 
+    /**
+     * Write the completed contents of the parallel writer, waiting while more
+     * than the specified number of contents are still pending
+     *
+     * @param maxPending the number of contents that may remain pending
+     * @return false if the build was cancelled while waiting
+     */
+    private boolean flushPending(int maxPending)
+            throws IOException, InterruptedException {
+        if (_writer == null)
+            return true;
+        _writer.flush(0);
+        while (_writer.getPendingCount() > maxPending) {
+            _writer.flush(250);
+            if (!submitProgress(0))
+                return false;
+        }
+        return true;
+    }
+
     private boolean write(InputStream in, boolean reportProgress)
             throws IOException {
         try {
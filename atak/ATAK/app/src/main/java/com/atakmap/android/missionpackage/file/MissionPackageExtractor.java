@@ -3,6 +3,7 @@ package com.atakmap.android.missionpackage.file;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import com.atakmap.android.cot.CotMapComponent;
 import com.atakmap.android.importfiles.sort.ImportCotSort;
@@ -14,6 +15,7 @@ import com.atakmap.comms.CommsMapComponent.ImportResult;
 import com.atakmap.coremap.cot.event.CotEvent;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
 import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.locale.LocaleUtil;
 import com.atakmap.coremap.log.Log;
 import com.atakmap.util.zip.ZipEntry;
 import com.atakmap.util.zip.ZipFile;
@@ -63,9 +65,15 @@ public class MissionPackageExtractor implements IMissionPackageExtractor {
         manifest.setPath(inFile.getAbsolutePath());
 
         List<String> cotXml = new ArrayList<>();
-        ZipFile zipFile = null;
+        StagedZipFile zipFile = null;
+        long start = SystemClock.elapsedRealtime();
         try {
-            zipFile = new ZipFile(inFile);
+            String filesPath = MissionPackageFileIO
+                    .getMissionPackageFilesPath(atakRoot.getAbsolutePath());
+            zipFile = new StagedZipFile(inFile, filesPath, manifest.getUID(),
+                    MissionPackageBlobStore.isSupported()
+                            ? new MissionPackageBlobStore(filesPath)
+                            : null);
             List<MissionPackageContent> contents = manifest._contents
                     .getContents();
             if (contents == null || contents.size() < 1) {
@@ -73,6 +81,11 @@ public class MissionPackageExtractor implements IMissionPackageExtractor {
                 return manifest;
             }
 
+            // inflate file contents in parallel, resuming from any earlier
+            // interrupted extraction of this package and linking files
+            // already received in other packages
+            zipFile.stage(contents);
+
             // create importer once rather for each file
             List<ImportResolver> sorters = new ArrayList<>();
             if (bImport) {
@@ -138,6 +151,9 @@ public class MissionPackageExtractor implements IMissionPackageExtractor {
                 }
             } // end content loop
 
+            // shared content is only kept linked in the package directory
+            zipFile.unshareImported(contents);
+
             // 1st pass - import CoT events
             List<String> deferred = new ArrayList<>();
             for (String eventXml : cotXml) {
@@ -167,6 +183,17 @@ public class MissionPackageExtractor implements IMissionPackageExtractor {
                 }
             }
 
+            zipFile.discardStaging();
+
+            long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+            long length = IOProviderFactory.length(inFile);
+            Log.d(TAG, String.format(LocaleUtil.getCurrent(),
+                    "Extracted %s: %.2f MB (%.2f MB inflated, %.2f MB shared)"
+                            + " in %d ms, %.2f MB/s",
+                    manifest.getName(), length / 1048576d,
+                    zipFile.getInflatedBytes() / 1048576d,
+                    zipFile.getSharedBytes() / 1048576d, elapsed,
+                    (length / 1048576d) / (elapsed / 1000d)));
         } catch (Exception e) {
             Log.e(TAG, "Failed to extract: " + inFile.getAbsolutePath(), e);
         } finally {
@@ -239,6 +266,27 @@ public class MissionPackageExtractor implements IMissionPackageExtractor {
         }
 
         Log.d(TAG, "Unzipping file to: " + filepath);
+        if (zis instanceof StagedZipFile.StagedInputStream) {
+            // entry was already inflated, move it into place unless its
+            // content is shared with other packages and the target is not
+            // read-only
+            StagedZipFile.StagedInputStream staged =
+                    (StagedZipFile.StagedInputStream) zis;
+            File target = new File(filepath);
+            // never write through an existing link
+            if (IOProviderFactory.exists(target))
+                FileSystemUtils.delete(target);
+            if (staged.canMoveTo(target)) {
+                zis.close();
+                if (IOProviderFactory.renameTo(staged.file, target))
+                    return;
+                zis = IOProviderFactory.getInputStream(staged.file);
+            }
+            FileOutputStream dest = IOProviderFactory.getOutputStream(target);
+            FileSystemUtils.copyStream(zis, true, dest, true, buffer);
+            return;
+        }
+
         FileOutputStream dest = IOProviderFactory
                 .getOutputStream(new File(filepath));
         FileSystemUtils.copyStream(zis, false, dest, true, buffer);
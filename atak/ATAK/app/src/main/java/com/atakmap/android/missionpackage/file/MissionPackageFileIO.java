@@ -35,6 +35,7 @@ import java.util.HashSet;
 import java.util.List;
 import com.atakmap.coremap.locale.LocaleUtil;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * File IO support for Mission Package Tool
@@ -99,6 +100,18 @@ public class MissionPackageFileIO {
                 + "files";
     }
 
+    /**
+     * Remove files received in Mission Packages which are no longer
+     * referenced by any extracted package
+     *
+     * @param atakMapDataPath the root directory
+     */
+    public static void pruneSharedFiles(String atakMapDataPath) {
+        if (MissionPackageBlobStore.isSupported())
+            new MissionPackageBlobStore(
+                    getMissionPackageFilesPath(atakMapDataPath)).prune();
+    }
+
     public String getMissionPackageTransferPath() {
         return _primaryMissionPackagePath + File.separatorChar + "transfer";
     }
@@ -191,6 +204,29 @@ public class MissionPackageFileIO {
                             + dir.getAbsolutePath());
             }
 
+            // missionPackageDir/files/.blobs, files shared between packages,
+            // and missionPackageDir/files/<uid>.staging, interrupted
+            // extractions, periodically remove those no longer needed
+            final String filesPath = dir.getAbsolutePath();
+            _directoryCleanup.add(new Runnable() {
+                @Override
+                public void run() {
+                    // staging first, so the blobs it links are released
+                    StagedZipFile.pruneStaging(new File(filesPath),
+                            StagedZipFile.STALE_STAGING_AGE_MILLIS,
+                            System.currentTimeMillis());
+                    if (MissionPackageBlobStore.isSupported())
+                        new MissionPackageBlobStore(filesPath).prune();
+                }
+
+                @Override
+                public String toString() {
+                    return filesPath + File.separatorChar
+                            + MissionPackageBlobStore.DIRNAME;
+                }
+            }, DirectoryCleanup.DEFAULT_INTIAL_DELAY_SECONDS,
+                    DirectoryCleanup.DEFAULT_PERIOD_SECONDS, TimeUnit.SECONDS);
+
             // missionPackageDir/incoming, no watch, auto clean up (even though .zips deleted after
             // unzipped and verified)
             dir = new File(
@@ -552,6 +588,7 @@ public class MissionPackageFileIO {
                 item.removeContent();
             }
             MissionPackageFileIO.deletePackageFile(new File(path));
+            pruneSharedFiles(FileSystemUtils.getRoot().getAbsolutePath());
         } else {
             Log.w(TAG, "Failed to find package with path: " + path);
         }
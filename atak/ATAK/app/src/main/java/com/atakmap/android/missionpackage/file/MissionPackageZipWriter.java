@@ -0,0 +1,539 @@
+
+package com.atakmap.android.missionpackage.file;
+
+import com.atakmap.coremap.concurrent.NamedThreadFactory;
+import com.atakmap.coremap.filesystem.FileSystemUtils;
+import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.locale.LocaleUtil;
+import com.atakmap.coremap.log.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Zip writer used to build Mission Packages. File entries are compressed on a
+ * pool of worker threads, each into its own temporary part file, and are
+ * written to the package in the order they were added as they complete.
+ * Files that are already compressed (imagery, video, archives) and files that
+ * do not shrink when deflated are stored rather than compressed.
+ *
+ * The writer does not support Zip64; callers should check {@link #fits}
+ * before using it and otherwise fall back to
+ * {@link java.util.zip.ZipOutputStream}.
+ */
+final class MissionPackageZipWriter implements Closeable {
+
+    private static final String TAG = "MissionPackageZipWriter";
+
+    /**
+     * Limits of the zip format without the Zip64 extensions. Some headroom is
+     * left for the local and central directory headers
+     */
+    private static final long MAX_ARCHIVE_SIZE = 0xFFFFFFFFL - (64L << 20);
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    /**
+     * Extensions of files that are already compressed and gain nothing from
+     * being deflated again
+     */
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(
+            Arrays.asList("jpg", "jpeg", "png", "gif", "webp", "mp4", "m4v",
+                    "mov", "mkv", "3gp", "mp3", "aac", "m4a", "ogg", "zip",
+                    "kmz", "gz", "tgz", "bz2", "xz", "7z", "jp2", "j2k",
+                    "sid"));
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    // general purpose flag, file names are UTF-8
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION = 20;
+
+    private final CountingOutputStream _out;
+    private final File _tmpDir;
+    private final ExecutorService _pool;
+    private final ArrayDeque<Pending> _pending = new ArrayDeque<>();
+    private final List<Part> _written = new ArrayList<>();
+    private final List<String> _failed = new ArrayList<>();
+    private final AtomicLong _readBytes = new AtomicLong();
+    private final int _dosTime;
+    private final int _dosDate;
+    private byte[] _comment = new byte[0];
+    private int _partCount;
+
+    /**
+     * @param out the package output stream, closed with the writer
+     * @param tmpDir directory for compressed part files, created if
+     *            necessary and removed on close
+     * @param numThreads number of compression threads
+     */
+    MissionPackageZipWriter(OutputStream out, File tmpDir, int numThreads) {
+        _out = new CountingOutputStream(new BufferedOutputStream(out,
+                FileSystemUtils.BUF_SIZE * 8));
+        _tmpDir = tmpDir;
+        _pool = Executors.newFixedThreadPool(Math.max(1, numThreads),
+                new NamedThreadFactory("MissionPackageBuild"));
+
+        Calendar c = Calendar.getInstance();
+        int year = c.get(Calendar.YEAR);
+        if (year < 1980) {
+            _dosDate = (1 << 5) | 1;
+            _dosTime = 0;
+        } else {
+            _dosDate = ((year - 1980) << 9)
+                    | ((c.get(Calendar.MONTH) + 1) << 5)
+                    | c.get(Calendar.DAY_OF_MONTH);
+            _dosTime = (c.get(Calendar.HOUR_OF_DAY) << 11)
+                    | (c.get(Calendar.MINUTE) << 5)
+                    | (c.get(Calendar.SECOND) >> 1);
+        }
+    }
+
+    /**
+     * @param totalSize the uncompressed size of all entries
+     * @param numEntries the number of entries
+     * @return true if a package of the given size can be written without
+     *         Zip64
+     */
+    static boolean fits(long totalSize, int numEntries) {
+        return totalSize >= 0 && totalSize < MAX_ARCHIVE_SIZE
+                && numEntries < MAX_ENTRIES;
+    }
+
+    /**
+     * @param f the file
+     * @return true if the file is stored rather than deflated, based on its
+     *         extension
+     */
+    static boolean isCompressed(File f) {
+        return STORED_EXTENSIONS.contains(FileSystemUtils.getExtension(f,
+                false, false).toLowerCase(LocaleUtil.getCurrent()));
+    }
+
+    void setComment(String comment) {
+        _comment = comment == null ? new byte[0]
+                : comment.getBytes(FileSystemUtils.UTF8_CHARSET);
+        if (_comment.length > 0xFFFF)
+            _comment = Arrays.copyOf(_comment, 0xFFFF);
+    }
+
+    /**
+     * Add an entry held in memory. The entry is compressed on the calling
+     * thread and is written after any pending entries.
+     *
+     * @param name the entry name
+     * @param data the entry data
+     */
+    void putEntry(String name, byte[] data) throws IOException {
+        Part part = new Part(name);
+        part.size = data.length;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        part.crc = crc.getValue();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                data.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bytes,
+                deflater)) {
+            dos.write(data, 0, data.length);
+        } finally {
+            deflater.end();
+        }
+        if (bytes.size() < data.length) {
+            part.method = METHOD_DEFLATED;
+            part.bytes = bytes.toByteArray();
+        } else {
+            part.method = METHOD_STORED;
+            part.bytes = data;
+        }
+        part.compressedSize = part.bytes.length;
+        _pending.add(new Pending(name, part, null));
+    }
+
+    /**
+     * Add a file entry. The file is compressed on a worker thread and is
+     * written once it and all entries added before it have completed.
+     *
+     * @param name the entry name
+     * @param file the file
+     * @param deleteSource true to delete the file once it has been written
+     */
+    void putFile(final String name, final File file,
+            final boolean deleteSource) {
+        putFile(name, file, deleteSource, isCompressed(file));
+    }
+
+    /**
+     * Add an entry read from a stream, such as an entry of an existing
+     * package. The stream is copied to a temporary file on the calling
+     * thread, so memory use does not depend on the size of the entry, and is
+     * then compressed on a worker thread like a file entry.
+     *
+     * @param name the entry name
+     * @param in the entry data, not closed
+     */
+    void putStream(String name, InputStream in) throws IOException {
+        mkdirs();
+        final File src = new File(_tmpDir, (_partCount++) + ".src");
+        byte[] buffer = new byte[FileSystemUtils.BUF_SIZE];
+        try (OutputStream out = IOProviderFactory.getOutputStream(src)) {
+            int len;
+            while ((len = in.read(buffer)) > 0)
+                out.write(buffer, 0, len);
+        } catch (IOException e) {
+            FileSystemUtils.delete(src);
+            throw e;
+        }
+        putFile(name, src, true, isCompressed(new File(name)));
+    }
+
+    private void putFile(final String name, final File file,
+            final boolean deleteSource, final boolean store) {
+        final File partFile = new File(_tmpDir, (_partCount++) + ".part");
+        _pending.add(new Pending(name, null, _pool.submit(new Callable<Part>() {
+            @Override
+            public Part call() throws IOException {
+                return compress(name, file, deleteSource, store, partFile);
+            }
+        })));
+    }
+
+    /**
+     * @return the number of entries that have been added but not yet written
+     */
+    int getPendingCount() {
+        return _pending.size();
+    }
+
+    /**
+     * @return the number of uncompressed bytes of file entries that have been
+     *         read by the workers
+     */
+    long getReadBytes() {
+        return _readBytes.get();
+    }
+
+    /**
+     * @return the names of file entries that could not be read, and were
+     *         left out of the package
+     */
+    List<String> getFailed() {
+        return _failed;
+    }
+
+    /**
+     * Write completed entries to the package, in order.
+     *
+     * @param timeoutMillis time to wait for the next pending entry to
+     *            complete, 0 to write only those entries already complete
+     * @return true if there are no pending entries left
+     */
+    boolean flush(long timeoutMillis) throws IOException, InterruptedException {
+        while (!_pending.isEmpty()) {
+            Pending head = _pending.peek();
+            Part part = head.part;
+            if (part == null) {
+                try {
+                    if (timeoutMillis <= 0 && !head.future.isDone())
+                        return false;
+                    part = head.future.get(Math.max(timeoutMillis, 0),
+                            TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    return false;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Failed to compress: " + head.name,
+                            e.getCause());
+                    _failed.add(head.name);
+                    _pending.remove();
+                    continue;
+                }
+            }
+            _pending.remove();
+            write(part);
+        }
+        return true;
+    }
+
+    /**
+     * Write any pending entries followed by the central directory. The writer
+     * must still be closed.
+     */
+    void finish() throws IOException, InterruptedException {
+        flush(Long.MAX_VALUE);
+
+        long cdOffset = _out.count;
+        for (Part part : _written) {
+            byte[] name = part.name.getBytes(FileSystemUtils.UTF8_CHARSET);
+            writeInt(0x02014b50);
+            writeShort(VERSION);
+            writeShort(VERSION);
+            writeShort(FLAG_UTF8);
+            writeShort(part.method);
+            writeShort(_dosTime);
+            writeShort(_dosDate);
+            writeInt(part.crc);
+            writeInt(part.compressedSize);
+            writeInt(part.size);
+            writeShort(name.length);
+            writeShort(0); // extra
+            writeShort(0); // comment
+            writeShort(0); // disk number
+            writeShort(0); // internal attributes
+            writeInt(0); // external attributes
+            writeInt(part.offset);
+            _out.write(name);
+        }
+        long cdSize = _out.count - cdOffset;
+        if (_out.count > 0xFFFFFFFFL)
+            throw new IOException("Package exceeds maximum zip size");
+
+        writeInt(0x06054b50);
+        writeShort(0);
+        writeShort(0);
+        writeShort(_written.size());
+        writeShort(_written.size());
+        writeInt(cdSize);
+        writeInt(cdOffset);
+        writeShort(_comment.length);
+        _out.write(_comment);
+        _out.flush();
+    }
+
+    /**
+     * Stop the workers, discard any pending entries and close the package
+     * stream. Safe to call more than once.
+     */
+    @Override
+    public void close() throws IOException {
+        _pool.shutdownNow();
+        try {
+            _pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _pending.clear();
+        try {
+            _out.close();
+        } finally {
+            if (IOProviderFactory.exists(_tmpDir))
+                FileSystemUtils.deleteDirectory(_tmpDir, false);
+        }
+    }
+
+    private Part compress(String name, File file, boolean deleteSource,
+            boolean store, File partFile) throws IOException {
+        Part part = new Part(name);
+        part.source = file;
+        part.deleteSource = deleteSource;
+        part.size = IOProviderFactory.length(file);
+
+        if (!store)
+            mkdirs();
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[FileSystemUtils.BUF_SIZE];
+        long read = 0;
+        Deflater deflater = store ? null
+                : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (InputStream in = IOProviderFactory.getInputStream(file);
+                OutputStream out = store ? null
+                        : new DeflaterOutputStream(
+                                IOProviderFactory.getOutputStream(partFile),
+                                deflater, FileSystemUtils.BUF_SIZE)) {
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new IOException("Interrupted compressing: " + name);
+                crc.update(buffer, 0, len);
+                if (out != null)
+                    out.write(buffer, 0, len);
+                read += len;
+                _readBytes.addAndGet(len);
+            }
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+
+        // file changed while being read
+        if (read != part.size)
+            part.size = read;
+        part.crc = crc.getValue();
+
+        long compressed = store ? part.size
+                : IOProviderFactory.length(partFile);
+        if (!store && compressed < part.size) {
+            part.method = METHOD_DEFLATED;
+            part.data = partFile;
+            part.compressedSize = compressed;
+        } else {
+            if (!store)
+                FileSystemUtils.delete(partFile);
+            part.method = METHOD_STORED;
+            part.data = file;
+            part.compressedSize = part.size;
+        }
+        return part;
+    }
+
+    private void mkdirs() throws IOException {
+        if (!IOProviderFactory.exists(_tmpDir)
+                && !IOProviderFactory.mkdirs(_tmpDir)
+                && !IOProviderFactory.exists(_tmpDir))
+            throw new IOException("Unable to create directory: " + _tmpDir);
+    }
+
+    private void write(Part part) throws IOException {
+        if (_out.count + part.compressedSize > 0xFFFFFFFFL
+                || _written.size() >= MAX_ENTRIES)
+            throw new IOException("Package exceeds maximum zip size");
+
+        byte[] name = part.name.getBytes(FileSystemUtils.UTF8_CHARSET);
+        part.offset = _out.count;
+        writeInt(0x04034b50);
+        writeShort(VERSION);
+        writeShort(FLAG_UTF8);
+        writeShort(part.method);
+        writeShort(_dosTime);
+        writeShort(_dosDate);
+        writeInt(part.crc);
+        writeInt(part.compressedSize);
+        writeInt(part.size);
+        writeShort(name.length);
+        writeShort(0); // extra
+        _out.write(name);
+
+        try {
+            if (part.bytes != null) {
+                _out.write(part.bytes);
+            } else {
+                long copied = 0;
+                byte[] buffer = new byte[FileSystemUtils.BUF_SIZE];
+                try (InputStream in = IOProviderFactory
+                        .getInputStream(part.data)) {
+                    int len;
+                    while (copied < part.compressedSize
+                            && (len = in.read(buffer, 0, (int) Math.min(
+                                    buffer.length,
+                                    part.compressedSize - copied))) > 0) {
+                        _out.write(buffer, 0, len);
+                        copied += len;
+                    }
+                }
+                if (copied != part.compressedSize)
+                    throw new IOException("Entry changed while writing: "
+                            + part.name);
+            }
+        } finally {
+            if (part.data != null && part.data != part.source)
+                FileSystemUtils.delete(part.data);
+            if (part.deleteSource && part.source != null)
+                FileSystemUtils.deleteFile(part.source);
+        }
+        _written.add(part);
+    }
+
+    private void writeShort(int v) throws IOException {
+        _out.write(v & 0xFF);
+        _out.write((v >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long v) throws IOException {
+        writeShort((int) (v & 0xFFFF));
+        writeShort((int) ((v >>> 16) & 0xFFFF));
+    }
+
+    /**
+     * A compressed entry, ready to be written
+     */
+    private static final class Part {
+        final String name;
+        int method;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+
+        // compressed data, either in memory or in a file
+        byte[] bytes;
+        File data;
+
+        File source;
+        boolean deleteSource;
+
+        Part(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * An entry that has been added, either already compressed or being
+     * compressed by a worker
+     */
+    private static final class Pending {
+        final String name;
+        final Part part;
+        final Future<Part> future;
+
+        Pending(String name, Part part, Future<Part> future) {
+            this.name = name;
+            this.part = part;
+            this.future = future;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream _impl;
+        long count;
+
+        CountingOutputStream(OutputStream impl) {
+            _impl = impl;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _impl.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _impl.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _impl.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _impl.close();
+        }
+    }
+}
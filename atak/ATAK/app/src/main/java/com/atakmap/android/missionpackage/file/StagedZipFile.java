@@ -0,0 +1,410 @@
+
+package com.atakmap.android.missionpackage.file;
+
+import com.atakmap.coremap.concurrent.NamedThreadFactory;
+import com.atakmap.coremap.filesystem.FileSystemUtils;
+import com.atakmap.coremap.filesystem.HardLinks;
+import com.atakmap.filesystem.HashingUtils;
+import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.log.Log;
+import com.atakmap.util.zip.ZipEntry;
+import com.atakmap.util.zip.ZipFile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mission Package zip whose file entries are inflated up front, in parallel,
+ * into a staging directory. Extraction handlers read the package through
+ * {@link #getInputStream(ZipEntry)} as usual; staged entries are served from
+ * the staging directory and
+ * {@link MissionPackageExtractor#UnzipFile(InputStream, File, boolean, byte[])}
+ * moves them into place rather than copying.
+ *
+ * Each staged entry is recorded in a checkpoint file in the staging
+ * directory. If extraction is interrupted the staging directory is kept, and
+ * the next extraction of the same package only inflates the entries that
+ * were not completed. Staging directories that are not resumed are
+ * eventually removed by {@link #pruneStaging(File, long, long)}.
+ *
+ * If a {@link MissionPackageBlobStore} is provided, entries already present in
+ * the store are linked into the staging directory rather than inflated, and
+ * newly inflated entries are added to the store. Linked entries are only
+ * moved into the package directory, which is read-only by contract; anywhere
+ * else they are copied so that changes made in place are not shared.
+ */
+final class StagedZipFile extends ZipFile {
+
+    private static final String TAG = "StagedZipFile";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * Extension of the staging directories in the Mission Package files
+     * directory
+     */
+    static final String STAGING_EXTENSION = ".staging";
+
+    /**
+     * Staging directories not touched for this long belong to packages that
+     * are not expected to be received again
+     */
+    static final long STALE_STAGING_AGE_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * Number of threads used to inflate entries
+     */
+    private static final int NUM_THREADS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private final File _stagingDir;
+    private final File _packageDir;
+    private final MissionPackageBlobStore _store;
+    private final Map<String, File> _staged = new HashMap<>();
+    private final AtomicLong _inflatedBytes = new AtomicLong();
+    private final AtomicLong _sharedBytes = new AtomicLong();
+
+    /**
+     * @param zip the Mission Package
+     * @param filesPath the Mission Package files directory. Entries are
+     *            inflated into a staging directory specific to the package
+     *            UID so that a later extraction can resume
+     * @param uid the UID of the package
+     * @param store store of previously received files, may be null
+     */
+    StagedZipFile(File zip, String filesPath, String uid,
+            MissionPackageBlobStore store) throws IOException {
+        super(zip);
+        _stagingDir = getStagingDir(filesPath, uid);
+        _packageDir = new File(filesPath, uid);
+        _store = store;
+    }
+
+    /**
+     * Get the staging directory for a Mission Package
+     *
+     * @param filesPath the Mission Package files directory
+     * @param uid the UID of the package
+     * @return the staging directory
+     */
+    static File getStagingDir(String filesPath, String uid) {
+        return new File(filesPath, uid + STAGING_EXTENSION);
+    }
+
+    /**
+     * Remove the staging directories of interrupted extractions that have
+     * not been resumed within the given age
+     *
+     * @param filesDir the Mission Package files directory
+     * @param ageMillis minimum time since the staging directory was last
+     *            modified
+     * @param now the current time, in milliseconds since the epoch
+     * @return the number of staging directories removed
+     */
+    static int pruneStaging(File filesDir, long ageMillis, long now) {
+        File[] dirs = IOProviderFactory.listFiles(filesDir);
+        if (dirs == null)
+            return 0;
+
+        int removed = 0;
+        for (File dir : dirs) {
+            if (!dir.getName().endsWith(STAGING_EXTENSION)
+                    || !IOProviderFactory.isDirectory(dir))
+                continue;
+
+            // the checkpoint is appended to as each entry is staged
+            long modified = Math.max(IOProviderFactory.lastModified(dir),
+                    IOProviderFactory.lastModified(
+                            new File(dir, CHECKPOINT)));
+            if (now - modified < ageMillis)
+                continue;
+
+            Log.d(TAG, "Removing stale staging directory: " + dir);
+            FileSystemUtils.deleteDirectory(dir, false);
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Inflate the file entries of the package into the staging directory.
+     * Entries already staged by an earlier, interrupted, extraction are kept.
+     *
+     * @param contents the manifest contents to stage. CoT and ignored
+     *            contents are skipped
+     */
+    void stage(List<MissionPackageContent> contents) throws IOException {
+        if (!IOProviderFactory.exists(_stagingDir)
+                && !IOProviderFactory.mkdirs(_stagingDir))
+            throw new IOException("Unable to create directory: "
+                    + _stagingDir);
+
+        final Map<String, String> checkpoint = readCheckpoint();
+        final List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < contents.size(); i++) {
+            MissionPackageContent content = contents.get(i);
+            if (content == null || !content.isValid() || content.isIgnore()
+                    || content.isCoT())
+                continue;
+            ZipEntry entry = getEntry(content.getManifestUid());
+            if (entry == null)
+                continue;
+
+            File staged = new File(_stagingDir, String.valueOf(i));
+            synchronized (_staged) {
+                _staged.put(entry.getName(), staged);
+            }
+            if (key(entry).equals(checkpoint.get(String.valueOf(i)))
+                    && IOProviderFactory.length(staged) == entry.getSize()) {
+                Log.d(TAG, "Resuming with staged entry: " + entry.getName());
+                continue;
+            }
+            // not served until staged again
+            if (IOProviderFactory.exists(staged))
+                FileSystemUtils.delete(staged);
+            pending.add(i);
+        }
+        if (pending.isEmpty())
+            return;
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(NUM_THREADS, pending.size()),
+                new NamedThreadFactory("MissionPackageExtract"));
+        try (OutputStream log = IOProviderFactory.getOutputStream(
+                new File(_stagingDir, CHECKPOINT), true)) {
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            for (final Integer i : pending) {
+                final ZipEntry entry = getEntry(
+                        contents.get(i).getManifestUid());
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        inflate(i, entry, log);
+                    }
+                }));
+            }
+            for (Future<?> f : futures)
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting", e);
+        } catch (ExecutionException e) {
+            // individual entry failures are handled in inflate
+            Log.e(TAG, "Failed to stage entries", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void inflate(int index, ZipEntry entry, OutputStream log) {
+        File tmp = new File(_stagingDir, index + ".tmp");
+        File staged = new File(_stagingDir, String.valueOf(index));
+
+        final boolean share = _store != null
+                && MissionPackageBlobStore.isShareable(entry.getName());
+        if (share) {
+            File blob = _store.find(this, entry);
+            if (blob != null && _store.link(blob, staged)) {
+                Log.d(TAG, "Linked stored entry: " + entry.getName());
+                _sharedBytes.addAndGet(entry.getSize());
+                checkpoint(index, entry, log);
+                return;
+            }
+        }
+
+        MessageDigest digest = share ? MissionPackageBlobStore.newDigest()
+                : null;
+        byte[] buffer = new byte[FileSystemUtils.BUF_SIZE];
+        try (InputStream in = super.getInputStream(entry);
+                OutputStream out = share
+                        ? new DigestOutputStream(
+                                IOProviderFactory.getOutputStream(tmp),
+                                digest)
+                        : IOProviderFactory.getOutputStream(tmp)) {
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+                _inflatedBytes.addAndGet(len);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to stage entry: " + entry.getName(), e);
+            FileSystemUtils.delete(tmp);
+            return;
+        }
+
+        if (!IOProviderFactory.renameTo(tmp, staged)) {
+            Log.e(TAG, "Failed to stage entry: " + entry.getName());
+            FileSystemUtils.delete(tmp);
+            return;
+        }
+
+        if (share)
+            _store.add(staged, entry,
+                    HashingUtils.toHexString(digest.digest()));
+        checkpoint(index, entry, log);
+    }
+
+    private static void checkpoint(int index, ZipEntry entry,
+            OutputStream log) {
+        byte[] line = (index + "\t" + key(entry) + "\n")
+                .getBytes(FileSystemUtils.UTF8_CHARSET);
+        synchronized (log) {
+            try {
+                log.write(line);
+                log.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to record checkpoint: " + entry.getName(),
+                        e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes inflated by {@link #stage(List)}, excluding
+     *         entries resumed from a previous extraction
+     */
+    long getInflatedBytes() {
+        return _inflatedBytes.get();
+    }
+
+    /**
+     * @return the number of bytes linked from the store rather than inflated
+     */
+    long getSharedBytes() {
+        return _sharedBytes.get();
+    }
+
+    /**
+     * Remove the staging directory, along with any staged entries that were
+     * not claimed by an extraction handler
+     */
+    void discardStaging() {
+        synchronized (_staged) {
+            _staged.clear();
+        }
+        FileSystemUtils.deleteDirectory(_stagingDir, false);
+    }
+
+    /**
+     * Give each extracted file that an import handler moved out of the
+     * package directory its own copy of any content it shares with the
+     * store. Imported files may be modified in place by their importer or by
+     * the user.
+     *
+     * @param contents the manifest contents, after extraction
+     */
+    void unshareImported(List<MissionPackageContent> contents) {
+        if (_store == null)
+            return;
+        for (MissionPackageContent content : contents) {
+            if (content == null || content.isCoT())
+                continue;
+            String path = content.getParameterValue(
+                    MissionPackageContent.PARAMETER_LOCALPATH);
+            if (FileSystemUtils.isEmpty(path))
+                continue;
+            File f = new File(path);
+            if (!isWithin(_packageDir, f) && IOProviderFactory.isFile(f)
+                    && !MissionPackageBlobStore.unshare(f))
+                Log.w(TAG, "Failed to unshare imported file: " + f);
+        }
+    }
+
+    /**
+     * @param dir a directory
+     * @param f a file
+     * @return true if the file is within the directory
+     */
+    static boolean isWithin(File dir, File f) {
+        return f.getAbsolutePath().startsWith(
+                dir.getAbsolutePath() + File.separator);
+    }
+
+    @Override
+    public InputStream getInputStream(ZipEntry entry) throws IOException {
+        File staged;
+        synchronized (_staged) {
+            staged = _staged.get(entry.getName());
+        }
+        if (staged != null && IOProviderFactory.exists(staged)
+                && IOProviderFactory.length(staged) == entry.getSize())
+            return new StagedInputStream(staged,
+                    _store != null ? _packageDir : null);
+        return super.getInputStream(entry);
+    }
+
+    private Map<String, String> readCheckpoint() {
+        Map<String, String> retval = new HashMap<>();
+        File f = new File(_stagingDir, CHECKPOINT);
+        if (!IOProviderFactory.exists(f))
+            return retval;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(IOProviderFactory.getInputStream(f),
+                        FileSystemUtils.UTF8_CHARSET))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0)
+                    retval.put(line.substring(0, tab),
+                            line.substring(tab + 1));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read checkpoint: " + f, e);
+        }
+        return retval;
+    }
+
+    private static String key(ZipEntry entry) {
+        return entry.getCrc() + "\t" + entry.getSize() + "\t"
+                + entry.getName();
+    }
+
+    /**
+     * Stream over an entry that has already been inflated into the staging
+     * directory. The staged file was written through the
+     * {@link IOProviderFactory}, so it is read back through it as well.
+     */
+    static final class StagedInputStream extends FilterInputStream {
+        final File file;
+        private final File _packageDir;
+
+        /**
+         * @param file the staged file
+         * @param packageDir the package directory if the staged file may be
+         *            linked to the blob store, otherwise null
+         */
+        StagedInputStream(File file, File packageDir) throws IOException {
+            super(IOProviderFactory.getInputStream(file));
+            this.file = file;
+            _packageDir = packageDir;
+        }
+
+        /**
+         * @param target the extraction target
+         * @return true if the staged file may be moved to the target, false
+         *         if it shares its content with other packages and must be
+         *         copied
+         */
+        boolean canMoveTo(File target) {
+            return _packageDir == null || isWithin(_packageDir, target)
+                    || HardLinks.getLinkCount(file) == 1;
+        }
+    }
+}
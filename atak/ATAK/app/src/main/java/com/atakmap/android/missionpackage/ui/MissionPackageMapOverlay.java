@@ -525,6 +525,8 @@ public class MissionPackageMapOverlay extends AbstractMapOverlay2 implements
             File dir = new File(filesDir, group.getManifest().getUID());
             if (IOProviderFactory.exists(dir))
                 FileSystemUtils.deleteDirectory(dir, false);
+            MissionPackageFileIO.pruneSharedFiles(FileSystemUtils.getRoot()
+                    .getAbsolutePath());
             if (bToast)
                 toast(R.string.deleting_mission_package);
         } else {
@@ -11,6 +11,7 @@ import com.atakmap.coremap.maps.coords.GeoPoint;
 import com.atakmap.coremap.maps.coords.GeoPointMetaData;
 import com.atakmap.coremap.maps.coords.UTMPoint;
 import com.atakmap.map.elevation.ElevationManager;
+import com.atakmap.map.elevation.ElevationQueryContext;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -215,47 +216,58 @@ public class RouteElevationService {
             // Find altitudes between source and target points
             GeoPoint newPoint;
             double currentDistance = 0;
-            do {
-                double bearing = DistanceCalculations
-                        .bearingFromSourceToTarget(
-                                newSource.get(), newTarget.get());
-                newPoint = DistanceCalculations.metersFromAtBearing(
-                        newSource.get(), incrementInMeters, bearing);
-
-                /**
-                 * roll in the altitude, but only if a valid altitude is found.
-                 */
-                double alt = GeoPoint.UNKNOWN;
-                //see if we can interpolate
-                if (bInterpolateAltitudes && totalAltChange != null) {
-                    //Log.d(TAG, "Interpolating alt");
-                    currentDistance += GeoCalculations
-                            .distanceTo(newSource.get(), newPoint);
-                    double currentDistanceFraction = currentDistance
-                            / totalDistance;
-                    alt = sourceAlt.get().getAltitude()
-                            + (totalAltChange * currentDistanceFraction);
-
-                }
-
-                //see if we can get alt from DTED (HAE)
-                if (!GeoPoint.isAltitudeValid(alt)) {
-                    //Log.d(TAG, "Using DTED alt");
-                    alt = ElevationManager.getElevation(newPoint, null);
-                }
-
-                if (GeoPoint.isAltitudeValid(alt)) {
-                    newPoint = new GeoPoint(newPoint.getLatitude(),
-                            newPoint.getLongitude(),
-                            alt);
-                }
-
-                geoPointVec.add(GeoPointMetaData.wrap(newPoint));
-                distVec.add(i);
-                i += incrementInFeet;
-                newSource = GeoPointMetaData.wrap(newPoint);
-            } while (GeoCalculations.distanceTo(newPoint,
-                    newTarget.get()) > incrementInMeters);
+            // successive points are close together, reuse the elevation
+            // source query and loaded chunks between them
+            ElevationQueryContext elevation = null;
+            try {
+                do {
+                    double bearing = DistanceCalculations
+                            .bearingFromSourceToTarget(
+                                    newSource.get(), newTarget.get());
+                    newPoint = DistanceCalculations.metersFromAtBearing(
+                            newSource.get(), incrementInMeters, bearing);
+
+                    /**
+                     * roll in the altitude, but only if a valid altitude is found.
+                     */
+                    double alt = GeoPoint.UNKNOWN;
+                    //see if we can interpolate
+                    if (bInterpolateAltitudes && totalAltChange != null) {
+                        //Log.d(TAG, "Interpolating alt");
+                        currentDistance += GeoCalculations
+                                .distanceTo(newSource.get(), newPoint);
+                        double currentDistanceFraction = currentDistance
+                                / totalDistance;
+                        alt = sourceAlt.get().getAltitude()
+                                + (totalAltChange * currentDistanceFraction);
+
+                    }
+
+                    //see if we can get alt from DTED (HAE)
+                    if (!GeoPoint.isAltitudeValid(alt)) {
+                        //Log.d(TAG, "Using DTED alt");
+                        if (elevation == null)
+                            elevation = new ElevationQueryContext(
+                                    (ElevationManager.QueryParameters) null);
+                        alt = elevation.getElevation(newPoint);
+                    }
+
+                    if (GeoPoint.isAltitudeValid(alt)) {
+                        newPoint = new GeoPoint(newPoint.getLatitude(),
+                                newPoint.getLongitude(),
+                                alt);
+                    }
+
+                    geoPointVec.add(GeoPointMetaData.wrap(newPoint));
+                    distVec.add(i);
+                    i += incrementInFeet;
+                    newSource = GeoPointMetaData.wrap(newPoint);
+                } while (GeoCalculations.distanceTo(newPoint,
+                        newTarget.get()) > incrementInMeters);
+            } finally {
+                if (elevation != null)
+                    elevation.dispose();
+            }
 
             // adjust i, it's more than increment count
             i -= incrementInFeet
@@ -659,5 +659,9 @@ public class BreadcrumbReceiver extends BroadcastReceiver implements
         prefs.unregisterOnSharedPreferenceChangeListener(this);
         _disposed = true;
         _createTracks.dispose(false);
+
+        // commit any crumbs still waiting and stop the write-behind thread
+        if (crumbDatabase != null)
+            crumbDatabase.dispose();
     }
 }
@@ -41,8 +41,13 @@ import com.ekito.simpleKML.model.Track;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -139,10 +144,47 @@ public class CrumbDatabase {
     public final static long STALE = CoordinatedTime.currentDate().getTime()
             - (31 * 24L * 60L * 60L * 1000L);
 
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+    private static final int DEFAULT_FLUSH_SIZE = 64;
+
+    private static final String INSERT_CRUMB_SQL = "INSERT INTO "
+            + BREADCRUMB_TABLE_NAME2 +
+            "(" + COLUMN_SEGMENT_ID + ", " +
+            COLUMN_TIMESTAMP + ", " +
+            COLUMN_LAT + ", " +
+            COLUMN_LON + ", " +
+            COLUMN_ALT + ", " +
+            COLUMN_CE + ", " +
+            COLUMN_LE + ", " +
+            COLUMN_BEARING + ", " +
+            COLUMN_SPEED + ", " +
+            COLUMN_POINT_SOURCE + ", " +
+            COLUMN_ALTITUDE_SOURCE + ", " +
+            COLUMN_POINT_GEOM + ") " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, MakePoint(?,?,4326))";
+
     private DatabaseIface crumbdb;
 
     private static CrumbDatabase instance;
 
+    /**
+     * Crumbs waiting to be written by the write-behind thread, merged into
+     * query results until written. Guarded by <code>_pendingLock</code>.
+     * When both are needed, the monitor on <code>this</code> is acquired
+     * first.
+     */
+    private final Object _pendingLock = new Object();
+    private List<PendingCrumb> _pending = new ArrayList<>();
+    private Thread _writer;
+    private long _flushInterval = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private int _flushSize = DEFAULT_FLUSH_SIZE;
+
+    /**
+     * current segment ID by user UID, for the live persist path. Guarded by
+     * <code>_pendingLock</code>
+     */
+    private final Map<String, Integer> _currentSegments = new HashMap<>();
+
     public static synchronized CrumbDatabase instance() {
         if (instance == null) {
             instance = new CrumbDatabase();
@@ -190,6 +232,7 @@ public class CrumbDatabase {
 
         // swap only after the newCrumbDb is good to go.
         crumbdb = newCrumbDb;
+        discardPending(-1);
 
         try {
             if (oldCrumbDb != null)
@@ -492,6 +535,7 @@ public class CrumbDatabase {
     }
 
     private synchronized void deleteAll(DatabaseIface db) {
+        discardPending(-1);
         if (db != null) {
             Log.d(TAG, "dropping the database tables");
 
@@ -553,12 +597,15 @@ public class CrumbDatabase {
     }
 
     /**
-     * Writes the crumb for a PointMapItem to the database.
+     * Writes the crumb for a PointMapItem to the database. The crumb is
+     * queued and committed with others in a single transaction by a
+     * background thread; queries merge the queue with the database, so it
+     * is visible to them immediately.
      * @param m
      * @param timestamp
      * @param prefs
      */
-    public synchronized void persist(final PointMapItem m,
+    public void persist(final PointMapItem m,
             final long timestamp, final SharedPreferences prefs) {
 
         double speed = m.getMetaDouble("Speed", Double.NaN);
@@ -578,12 +625,325 @@ public class CrumbDatabase {
         if (Double.isNaN(bearing))
             bearing = VALUE_UNKNOWN;
 
-        persist(m.getPoint(), m.getUID(), title, timestamp, speed, bearing, -1,
-                m.getMetaString(GeoPointMetaData.GEOPOINT_SOURCE,
-                        GeoPointMetaData.UNKNOWN),
-                m.getMetaString(GeoPointMetaData.ALTITUDE_SOURCE,
-                        GeoPointMetaData.UNKNOWN),
-                prefs);
+        final String userUid = m.getUID();
+        final GeoPoint gp = m.getPoint();
+        final String geopointSource = m.getMetaString(
+                GeoPointMetaData.GEOPOINT_SOURCE, GeoPointMetaData.UNKNOWN);
+        final String altitudeSource = m.getMetaString(
+                GeoPointMetaData.ALTITUDE_SOURCE, GeoPointMetaData.UNKNOWN);
+
+        // the segment lookup and the enqueue are atomic with respect to
+        // segment removal, so a crumb is never queued for a deleted segment
+        int trackId = -1;
+        synchronized (_pendingLock) {
+            final Integer cached = _currentSegments.get(userUid);
+            if (cached != null) {
+                trackId = cached;
+                enqueue(new PendingCrumb(gp, userUid, trackId, timestamp,
+                        speed, bearing, geopointSource, altitudeSource));
+            }
+        }
+        if (trackId < 0) {
+            synchronized (this) {
+                try {
+                    trackId = getCurrentSegmentId(userUid,
+                            SEG_COLUMN_TIMESTAMP);
+                    if (trackId < 0 && prefs != null)
+                        trackId = createSegment(timestamp, title, userUid,
+                                prefs);
+                } catch (Exception e) {
+                    Log.w(TAG, "error occurred saving breadcrumb: "
+                            + timestamp, e);
+                    return;
+                }
+                synchronized (_pendingLock) {
+                    if (trackId >= 0)
+                        _currentSegments.put(userUid, trackId);
+                    enqueue(new PendingCrumb(gp, userUid, trackId, timestamp,
+                            speed, bearing, geopointSource, altitudeSource));
+                }
+            }
+        }
+
+        Crumb c = new Crumb(gp, UUID.randomUUID().toString());
+        c.setDirection(bearing);
+        c.timestamp = timestamp;
+        c.speed = (float) speed;
+        c.bearing = (float) bearing;
+        c.trackDBID = trackId;
+
+        // Notify listeners
+        fireOnCrumbAdded(trackId, c);
+    }
+
+    /**
+     * Sets the write-behind parameters for {@link #persist(PointMapItem,
+     * long, SharedPreferences)}.
+     *
+     * @param flushIntervalMillis the maximum time a crumb is held before
+     *                            being written
+     * @param flushSize the number of pending crumbs that triggers an
+     *                  immediate write
+     */
+    public void setWriteBehind(long flushIntervalMillis, int flushSize) {
+        if (flushIntervalMillis <= 0 || flushSize < 1)
+            throw new IllegalArgumentException();
+        synchronized (_pendingLock) {
+            _flushInterval = flushIntervalMillis;
+            _flushSize = flushSize;
+            _pendingLock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the write-behind thread once it has written the crumbs queued so
+     * far, blocking until complete. A crumb persisted afterwards starts a new
+     * writer.
+     */
+    public void dispose() {
+        final Thread writer;
+        synchronized (_pendingLock) {
+            writer = _writer;
+            _writer = null;
+            _pendingLock.notifyAll();
+        }
+        if (writer == null)
+            return;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Must be invoked while holding <code>_pendingLock</code>
+     */
+    private void enqueue(PendingCrumb crumb) {
+        _pending.add(crumb);
+        if (_writer == null) {
+            _writer = new Thread(TAG + "-writer") {
+                @Override
+                public void run() {
+                    writeBehind();
+                }
+            };
+            _writer.setDaemon(true);
+            _writer.setPriority(Thread.NORM_PRIORITY);
+            _writer.start();
+        }
+        if (_pending.size() == 1 || _pending.size() >= _flushSize)
+            _pendingLock.notifyAll();
+    }
+
+    private void writeBehind() {
+        final Thread self = Thread.currentThread();
+        while (true) {
+            final boolean stopped;
+            synchronized (_pendingLock) {
+                try {
+                    while (_pending.isEmpty() && _writer == self)
+                        _pendingLock.wait();
+                    // give the batch a chance to fill up
+                    if (_writer == self && _pending.size() < _flushSize)
+                        _pendingLock.wait(_flushInterval);
+                } catch (InterruptedException ignored) {
+                }
+                stopped = _writer != self;
+            }
+            try {
+                writePending();
+            } catch (Exception e) {
+                Log.w(TAG, "error occurred writing breadcrumbs", e);
+            }
+            if (stopped)
+                return;
+        }
+    }
+
+    /**
+     * Writes all pending crumbs in a single transaction. Only invoked by the
+     * write-behind thread. The batch is taken and committed while holding
+     * the monitor on <code>this</code>, so a query always finds each crumb
+     * either in the queue or in the database.
+     */
+    private synchronized void writePending() {
+        final List<PendingCrumb> batch;
+        synchronized (_pendingLock) {
+            if (_pending.isEmpty())
+                return;
+            batch = _pending;
+            _pending = new ArrayList<>(batch.size());
+        }
+
+        final DatabaseIface db = crumbdb;
+        if (db == null) {
+            Log.w(TAG, "database closed, discarding " + batch.size()
+                    + " breadcrumbs");
+            return;
+        }
+
+        StatementIface insertStmt = null;
+        db.beginTransaction();
+        try {
+            insertStmt = db.compileStatement(INSERT_CRUMB_SQL);
+            for (PendingCrumb c : batch) {
+                insertStmt.clearBindings();
+                bindCrumb(insertStmt, c.trackId, c.timestamp, c.point,
+                        c.bearing, c.speed, c.geopointSource,
+                        c.altitudeSource);
+                insertStmt.execute();
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.w(TAG, "error occurred saving " + batch.size()
+                    + " breadcrumbs", e);
+        } finally {
+            if (insertStmt != null)
+                insertStmt.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Drops the cached current segment and any pending crumbs for a segment
+     * that is being deleted
+     *
+     * @param trackDbId the segment ID, or -1 for all segments
+     */
+    private void discardPending(int trackDbId) {
+        synchronized (_pendingLock) {
+            if (trackDbId < 0) {
+                _currentSegments.clear();
+                _pending.clear();
+                return;
+            }
+            _currentSegments.values().removeAll(
+                    Collections.singleton(trackDbId));
+            Iterator<PendingCrumb> iter = _pending.iterator();
+            while (iter.hasNext()) {
+                if (iter.next().trackId == trackDbId)
+                    iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @param trackDbId the segment ID
+     * @return the pending crumbs in the segment, ordered by timestamp
+     */
+    private List<PendingCrumb> getPending(int trackDbId) {
+        List<PendingCrumb> retval = new ArrayList<>();
+        synchronized (_pendingLock) {
+            for (PendingCrumb c : _pending) {
+                if (c.trackId == trackDbId)
+                    retval.add(c);
+            }
+        }
+        Collections.sort(retval, PENDING_TIME_ORDER);
+        return retval;
+    }
+
+    /**
+     * @param uid the user UID
+     * @param startTime the start of the time range
+     * @param endTime the end of the time range, ignored if not positive
+     * @return the pending crumbs for the user in the time range, ordered by
+     *         timestamp
+     */
+    private List<PendingCrumb> getPending(String uid, long startTime,
+            long endTime) {
+        List<PendingCrumb> retval = new ArrayList<>();
+        synchronized (_pendingLock) {
+            for (PendingCrumb c : _pending) {
+                if (c.trackId >= 0 && c.userUid.equals(uid)
+                        && c.timestamp >= startTime
+                        && (endTime <= 0 || c.timestamp <= endTime))
+                    retval.add(c);
+            }
+        }
+        Collections.sort(retval, PENDING_TIME_ORDER);
+        return retval;
+    }
+
+    private static void bindCrumb(StatementIface insertStmt, int trackId,
+            long timestamp, GeoPoint gp, double bearing, double speed,
+            String geopointSource, String altitudeSource) {
+        insertStmt.bind(1, trackId);
+        insertStmt.bind(2, timestamp);
+        insertStmt.bind(3, gp.getLatitude());
+        insertStmt.bind(4, gp.getLongitude());
+        insertStmt.bind(5, gp.getAltitude());
+        insertStmt.bind(6, gp.getCE());
+        insertStmt.bind(7, gp.getLE());
+        insertStmt.bind(8, bearing);
+        insertStmt.bind(9, speed);
+        insertStmt.bind(10, geopointSource);
+        insertStmt.bind(11, altitudeSource);
+        insertStmt.bind(12, gp.getLongitude());
+        insertStmt.bind(13, gp.getLatitude());
+    }
+
+    private static final Comparator<PendingCrumb> PENDING_TIME_ORDER = new Comparator<PendingCrumb>() {
+        @Override
+        public int compare(PendingCrumb lhs, PendingCrumb rhs) {
+            return Long.compare(lhs.timestamp, rhs.timestamp);
+        }
+    };
+
+    private static final Comparator<CrumbPoint> POINT_TIME_ORDER = new Comparator<CrumbPoint>() {
+        @Override
+        public int compare(CrumbPoint lhs, CrumbPoint rhs) {
+            return Long.compare(lhs.timestamp, rhs.timestamp);
+        }
+    };
+
+    private static final Comparator<Crumb> CRUMB_TIME_ORDER = new Comparator<Crumb>() {
+        @Override
+        public int compare(Crumb lhs, Crumb rhs) {
+            return Long.compare(lhs.timestamp, rhs.timestamp);
+        }
+    };
+
+    private static final class PendingCrumb {
+        final GeoPoint point;
+        final String userUid;
+        final int trackId;
+        final long timestamp;
+        final double speed;
+        final double bearing;
+        final String geopointSource;
+        final String altitudeSource;
+
+        PendingCrumb(GeoPoint point, String userUid, int trackId,
+                long timestamp, double speed, double bearing,
+                String geopointSource, String altitudeSource) {
+            this.point = point;
+            this.userUid = userUid;
+            this.trackId = trackId;
+            this.timestamp = timestamp;
+            this.speed = speed;
+            this.bearing = bearing;
+            this.geopointSource = geopointSource;
+            this.altitudeSource = altitudeSource;
+        }
+
+        CrumbPoint toCrumbPoint() {
+            return new CrumbPoint(point, (float) speed, (float) bearing,
+                    timestamp, altitudeSource, geopointSource);
+        }
+
+        Crumb toCrumb() {
+            if (!point.isValid())
+                return null;
+            Crumb c = new Crumb(point, UUID.randomUUID().toString());
+            c.setDirection(bearing);
+            c.timestamp = timestamp;
+            c.trackDBID = trackId;
+            c.speed = (float) speed;
+            c.bearing = (float) bearing;
+            return c;
+        }
     }
 
     /**
@@ -628,35 +988,9 @@ public class CrumbDatabase {
 
             StatementIface insertStmt = null;
             try {
-                insertStmt = crumbdb.compileStatement(
-                        "INSERT INTO " + BREADCRUMB_TABLE_NAME2 +
-                                "(" + COLUMN_SEGMENT_ID + ", " +
-                                COLUMN_TIMESTAMP + ", " +
-                                COLUMN_LAT + ", " +
-                                COLUMN_LON + ", " +
-                                COLUMN_ALT + ", " +
-                                COLUMN_CE + ", " +
-                                COLUMN_LE + ", " +
-                                COLUMN_BEARING + ", " +
-                                COLUMN_SPEED + ", " +
-                                COLUMN_POINT_SOURCE + ", " +
-                                COLUMN_ALTITUDE_SOURCE + ", " +
-                                COLUMN_POINT_GEOM + ") " +
-                                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, MakePoint(?,?,4326))");
-
-                insertStmt.bind(1, trackId);
-                insertStmt.bind(2, timestamp);
-                insertStmt.bind(3, gp.getLatitude());
-                insertStmt.bind(4, gp.getLongitude());
-                insertStmt.bind(5, gp.getAltitude());
-                insertStmt.bind(6, gp.getCE());
-                insertStmt.bind(7, gp.getLE());
-                insertStmt.bind(8, bearing);
-                insertStmt.bind(9, speed);
-                insertStmt.bind(10, geopointSource);
-                insertStmt.bind(11, altitudeSource);
-                insertStmt.bind(12, gp.getLongitude());
-                insertStmt.bind(13, gp.getLatitude());
+                insertStmt = crumbdb.compileStatement(INSERT_CRUMB_SQL);
+                bindCrumb(insertStmt, trackId, timestamp, gp, bearing, speed,
+                        geopointSource, altitudeSource);
                 insertStmt.execute();
             } finally {
                 if (insertStmt != null)
@@ -752,6 +1086,9 @@ public class CrumbDatabase {
                 if (insertStmt != null)
                     insertStmt.close();
             }
+            synchronized (_pendingLock) {
+                _currentSegments.remove(userUid);
+            }
 
             if (bStitch && previousSegmentId >= 0) {
                 try {
@@ -789,6 +1126,8 @@ public class CrumbDatabase {
             return;
         }
 
+        discardPending(track_dbid);
+
         try {
             String sql = "DELETE FROM " + BREADCRUMB_TABLE_NAME2 +
                     " WHERE " + COLUMN_SEGMENT_ID + " = " + track_dbid;
@@ -815,6 +1154,11 @@ public class CrumbDatabase {
             return null;
         }
 
+        // a pending crumb is newer than any written crumb at the same time
+        List<PendingCrumb> pending = getPending(trackDbId);
+        PendingCrumb lastPending = pending.isEmpty() ? null
+                : pending.get(pending.size() - 1);
+
         String sql = "SELECT _id, _sid, timestamp, lat, lon, alt, ce, le,"
                 + " bearing, speed, ptsource, altsource " +
                 " FROM " + BREADCRUMB_TABLE_NAME2 +
@@ -824,13 +1168,17 @@ public class CrumbDatabase {
         CursorIface result = null;
         try {
             result = crumbdb.query(sql, null);
-            if (result.moveToNext())
-                return crumbPointFromCursor(result);
+            if (result.moveToNext()) {
+                CrumbPoint last = crumbPointFromCursor(result);
+                if (lastPending == null
+                        || last.timestamp > lastPending.timestamp)
+                    return last;
+            }
         } finally {
             if (result != null)
                 result.close();
         }
-        return null;
+        return lastPending != null ? lastPending.toCrumbPoint() : null;
     }
 
     /**
@@ -869,6 +1217,7 @@ public class CrumbDatabase {
                 result.close();
         }
 
+        addPending(crumbs, getPending(trackDbId));
         return crumbs;
     }
 
@@ -900,6 +1249,12 @@ public class CrumbDatabase {
                 result.close();
         }
 
+        final int count = points.size();
+        for (PendingCrumb p : getPending(trackDbId)) {
+            if (p.point.isValid())
+                points.add(p.toCrumbPoint());
+        }
+        sortAppended(points, count, POINT_TIME_ORDER);
         return points;
     }
 
@@ -916,6 +1271,10 @@ public class CrumbDatabase {
                 " WHERE " + COLUMN_SEGMENT_ID + " = " + trackDbId +
                 " ORDER BY " + COLUMN_TIMESTAMP + " ASC";
 
+        // merge the pending crumbs into the ordered results
+        final List<PendingCrumb> pending = getPending(trackDbId);
+        int p = 0;
+
         CrumbPoint last = null;
         CursorIface result = null;
         try {
@@ -923,15 +1282,18 @@ public class CrumbDatabase {
             CrumbPoint c;
             while (result.moveToNext()) {
                 c = crumbPointFromCursor(result);
-                if (c.gp.isValid()) {
-                    track.addPoint(c.gpm, false);
-                    last = c;
-                }
+                while (p < pending.size()
+                        && pending.get(p).timestamp < c.timestamp)
+                    last = addPoint(track, pending.get(p++).toCrumbPoint(),
+                            last);
+                last = addPoint(track, c, last);
             }
         } finally {
             if (result != null)
                 result.close();
         }
+        while (p < pending.size())
+            last = addPoint(track, pending.get(p++).toCrumbPoint(), last);
         if (last != null)
             track.setMetaLong("lastcrumbtime", last.timestamp);
         track.refreshPoints();
@@ -1019,6 +1381,23 @@ public class CrumbDatabase {
                 result.close();
         }
 
+        // merge the pending crumbs into each track
+        SparseArray<Integer> written = new SparseArray<>();
+        for (PendingCrumb p : getPending(uid, startTime, endTime)) {
+            List<CrumbPoint> crumbs = crumbMap.get(p.trackId);
+            if (crumbs == null) {
+                crumbs = new ArrayList<>();
+                crumbMap.put(p.trackId, crumbs);
+            }
+            if (written.get(p.trackId) == null)
+                written.put(p.trackId, crumbs.size());
+            crumbs.add(p.toCrumbPoint());
+        }
+        for (int i = 0; i < written.size(); i++) {
+            sortAppended(crumbMap.get(written.keyAt(i)), written.valueAt(i),
+                    POINT_TIME_ORDER);
+        }
+
         for (int i = 0; i < crumbMap.size(); i++) {
             int trackDBID = crumbMap.keyAt(i);
             List<CrumbPoint> crumbs = crumbMap.valueAt(i);
@@ -1102,9 +1481,48 @@ public class CrumbDatabase {
                 result.close();
         }
 
+        addPending(crumbs, getPending(uid, startTime, endTime));
         return crumbs;
     }
 
+    /**
+     * Appends pending crumbs to crumbs read from the database, keeping the
+     * list ordered by timestamp
+     */
+    private static void addPending(List<Crumb> crumbs,
+            List<PendingCrumb> pending) {
+        final int count = crumbs.size();
+        for (PendingCrumb p : pending) {
+            Crumb c = p.toCrumb();
+            if (c != null)
+                crumbs.add(c);
+        }
+        sortAppended(crumbs, count, CRUMB_TIME_ORDER);
+    }
+
+    /**
+     * Restores the order of a list to which ordered elements were appended,
+     * if the appended elements do not all follow the existing ones
+     *
+     * @param list the list
+     * @param count the number of elements before any were appended
+     * @param order the order of the list
+     */
+    private static <T> void sortAppended(List<T> list, int count,
+            Comparator<T> order) {
+        if (count > 0 && count < list.size()
+                && order.compare(list.get(count - 1), list.get(count)) > 0)
+            Collections.sort(list, order);
+    }
+
+    private static CrumbPoint addPoint(TrackPolyline track, CrumbPoint c,
+            CrumbPoint last) {
+        if (!c.gp.isValid())
+            return last;
+        track.addPoint(c.gpm, false);
+        return c;
+    }
+
     /**
      * Create Crumb from database entry
      * @param cursor Crumb cursor
@@ -1750,8 +2168,8 @@ public class CrumbDatabase {
      * @param track
      * @return
      */
-    public int setServerTrack(String callsign, String uid, long startTime,
-            Track track,
+    public synchronized int setServerTrack(String callsign, String uid,
+            long startTime, Track track,
             SharedPreferences prefs) {
         if (FileSystemUtils.isEmpty(callsign) || FileSystemUtils.isEmpty(uid)) {
             Log.w(TAG, "Cannot set server track without callsign/uid");
@@ -1795,6 +2213,7 @@ public class CrumbDatabase {
                     sql = "DELETE FROM " + SEGMENT_TABLE_NAME +
                             " WHERE " + SEG_COLUMN_ID + "=" + trackId;
                     crumbdb.execute(sql, null);
+                    discardPending(trackId);
                 }
             } else {
                 Log.d(TAG, "No previous server tracks to delete for: " + uid);
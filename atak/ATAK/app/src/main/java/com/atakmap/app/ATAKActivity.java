@@ -59,6 +59,7 @@ import com.atakmap.android.maps.MapItem;
 import com.atakmap.android.maps.MapMode;
 import com.atakmap.android.maps.MapView;
 import com.atakmap.android.maps.Marker;
+import com.atakmap.android.maps.StartupProfiler;
 import com.atakmap.android.maps.assets.AssetProtocolHandler;
 import com.atakmap.android.maps.assets.ResourceProtocolHandler;
 import com.atakmap.android.maps.conversion.UnitChangeReceiver;
@@ -149,6 +150,8 @@ public class ATAKActivity extends MapActivity implements
     @Override
     public void onCreate(final Bundle savedInstanceState) {
 
+        StartupProfiler.getInstance().start();
+
         RemovableStorageHelper.init(this);
 
         _prefs = new AtakPreferences(this);
@@ -470,6 +473,10 @@ public class ATAKActivity extends MapActivity implements
                     @Override
                     public void onReceive(Context context,
                             Intent intent) {
+                        final StartupProfiler profiler = StartupProfiler
+                                .getInstance();
+                        if (profiler.finish())
+                            profiler.logReport();
                         onNewIntent(launchIntent);
                     }
                 }, filter);
@@ -4,6 +4,7 @@ package com.atakmap.app.preferences;
 import android.app.Activity;
 import android.content.Context;
 import android.os.Bundle;
+import android.preference.CheckBoxPreference;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceCategory;
@@ -31,6 +32,8 @@ public class ReportingPreferenceFragment extends AtakPreferenceFragment {
     private PanEditTextPreference dynamicReportingRateMinReliablePref;
     private PanEditTextPreference dynamicReportingRateMaxUnreliablePref;
     private PanEditTextPreference dynamicReportingRateMaxReliablePref;
+    private CheckBoxPreference dynamicSuppressUnchangedPref;
+    private CheckBoxPreference constantSuppressUnchangedPref;
 
     private PreferenceCategory alternateContactCategory;
     private ListPreference saSipAddressAssignment;
@@ -98,6 +101,12 @@ public class ReportingPreferenceFragment extends AtakPreferenceFragment {
         dynamicReportingRateMaxReliablePref = (PanEditTextPreference) findPreference(
                 "dynamicReportingRateMaxReliable");
         dynamicReportingRateMaxReliablePref.checkValidInteger();
+        dynamicSuppressUnchangedPref = (CheckBoxPreference) findPreference(
+                "locationReportingSuppressUnchanged");
+        constantSuppressUnchangedPref = (CheckBoxPreference) findPreference(
+                "constantReportingSuppressUnchanged");
+        ((PanEditTextPreference) findPreference(
+                "locationReportingDistanceThreshold")).checkValidInteger();
 
         if (reportingStrategyPref != null) {
             String value = reportingStrategyPref.getValue();
@@ -172,9 +181,11 @@ public class ReportingPreferenceFragment extends AtakPreferenceFragment {
             publishCategory
                     .addPreference(dynamicReportingRateMaxUnreliablePref);
             publishCategory.addPreference(dynamicReportingRateMaxReliablePref);
+            publishCategory.addPreference(dynamicSuppressUnchangedPref);
             publishCategory.removePreference(constantReportingRateReliablePref);
             publishCategory
                     .removePreference(constantReportingRateUnreliablePref);
+            publishCategory.removePreference(constantSuppressUnchangedPref);
         } else if (selection.equals("Constant")) {
             _previousReportingStrategy = selection;
             reportingStrategyPref.setSummary(
@@ -194,8 +205,10 @@ public class ReportingPreferenceFragment extends AtakPreferenceFragment {
                     .removePreference(dynamicReportingRateMaxUnreliablePref);
             publishCategory
                     .removePreference(dynamicReportingRateMaxReliablePref);
+            publishCategory.removePreference(dynamicSuppressUnchangedPref);
             publishCategory.addPreference(constantReportingRateReliablePref);
             publishCategory.addPreference(constantReportingRateUnreliablePref);
+            publishCategory.addPreference(constantSuppressUnchangedPref);
         }
     }
 
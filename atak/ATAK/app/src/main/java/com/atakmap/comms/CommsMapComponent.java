@@ -61,7 +61,6 @@ import com.atakmap.android.filesharing.android.service.WebServer;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Pair;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
 import com.atakmap.commoncommo.*;
@@ -155,9 +154,12 @@ public class CommsMapComponent extends AbstractMapComponent implements
     private TAKServerListener takServerListener;
     private File httpsCertFile;
 
+    // staged parse/coalesce/apply processing of inbound CoT messages
+    private volatile CotIngestPipeline ingest;
+
     // CoT messages received before the map components finished loading
-    private boolean componentsLoaded;
-    private final List<Pair<String, String>> deferredMessages = new ArrayList<>();
+    private volatile boolean componentsLoaded;
+    private volatile DeferredCotBacklog deferredMessages;
 
     // used for recording bi-directional communications to and from the system
     // should not be used for anything more than that.
@@ -365,6 +367,9 @@ public class CommsMapComponent extends AbstractMapComponent implements
 
         prefs.registerOnSharedPreferenceChangeListener(this);
 
+        ingest = createIngestPipeline(prefs);
+        deferredMessages = createDeferredBacklog(context, prefs);
+
         if (commoNativeInitComplete && commo == null) {
 
             mapView = view;
@@ -935,6 +940,16 @@ public class CommsMapComponent extends AbstractMapComponent implements
         AtakBroadcast.getInstance()
                 .unregisterSystemReceiver(networkManagerLite);
 
+        if (ingest != null) {
+            Log.d(TAG, "inbound CoT pipeline: " + ingest.getStatistics());
+            ingest.dispose();
+            ingest = null;
+        }
+
+        final DeferredCotBacklog backlog = deferredMessages;
+        if (backlog != null)
+            backlog.dispose();
+
         // dispose of the registered loggers
         for (CommsLogger logger : loggers) {
             try {
@@ -1771,16 +1786,114 @@ public class CommsMapComponent extends AbstractMapComponent implements
 
         // Check if the map components have finished loading before processing
         if (!componentsLoaded) {
-            synchronized (deferredMessages) {
-                // Check again inside the sync block just in case it changed
-                if (!componentsLoaded) {
-                    deferredMessages.add(new Pair<>(message, rxEndpointId));
-                    return;
-                }
-            }
+            final DeferredCotBacklog backlog = deferredMessages;
+            // the backlog declines the message if it has already been replayed
+            if (backlog != null && backlog.add(message, rxEndpointId))
+                return;
+        }
+
+        // never block the thread receiving from the network
+        final CotIngestPipeline pipeline = ingest;
+        if (pipeline != null) {
+            pipeline.submit(message, rxEndpointId);
+            return;
         }
 
         CotEvent cotEvent = CotEvent.parse(message);
+        logReceived(cotEvent, rxEndpointId);
+        dispatchReceived(cotEvent, rxEndpointId);
+    }
+
+    /**
+     * Processes a CoT message received before the map components finished
+     * loading. Waits for space in the inbound pipeline rather than
+     * discarding messages.
+     */
+    private void replayDeferred(final String message,
+            final String rxEndpointId) {
+        final CotIngestPipeline pipeline = ingest;
+        if (pipeline != null) {
+            pipeline.submitAndWait(message, rxEndpointId);
+            return;
+        }
+
+        CotEvent cotEvent = CotEvent.parse(message);
+        logReceived(cotEvent, rxEndpointId);
+        dispatchReceived(cotEvent, rxEndpointId);
+    }
+
+    /**
+     * Returns a snapshot of the counters for the inbound CoT pipeline.
+     *
+     * @return the pipeline statistics or <code>null</code> if inbound
+     * messages are not being processed through the pipeline
+     */
+    public CotIngestPipeline.Statistics getIngestStatistics() {
+        final CotIngestPipeline pipeline = ingest;
+        return (pipeline != null) ? pipeline.getStatistics() : null;
+    }
+
+    /**
+     * Returns a snapshot of the counters for the CoT messages received before
+     * the map components finished loading.
+     *
+     * @return the backlog statistics or <code>null</code> if not available
+     */
+    public DeferredCotBacklog.Statistics getDeferredStatistics() {
+        final DeferredCotBacklog backlog = deferredMessages;
+        return (backlog != null) ? backlog.getStatistics() : null;
+    }
+
+    private DeferredCotBacklog createDeferredBacklog(Context context,
+            SharedPreferences prefs) {
+        final long memoryLimit = Math.max(0, getInt(prefs,
+                "cotDeferredMemoryLimitKB", 4096)) * 1024L;
+        final long spillLimit = Math.max(0, getInt(prefs,
+                "cotDeferredSpillLimitMB", 64)) * 1024L * 1024L;
+        return new DeferredCotBacklog(memoryLimit, spillLimit,
+                context.getCacheDir());
+    }
+
+    private CotIngestPipeline createIngestPipeline(SharedPreferences prefs) {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final int parseThreads = Math.max(1, getInt(prefs,
+                "cotIngestParseThreads",
+                Math.min(4, Math.max(1, cores - 1))));
+        final int queueLimit = Math.max(1, getInt(prefs,
+                "cotIngestQueueLimit", 4096));
+        CotIngestPipeline.DropPolicy dropPolicy;
+        try {
+            dropPolicy = CotIngestPipeline.DropPolicy.valueOf(prefs.getString(
+                    "cotIngestDropPolicy",
+                    CotIngestPipeline.DropPolicy.DROP_OLDEST.name()));
+        } catch (Exception e) {
+            dropPolicy = CotIngestPipeline.DropPolicy.DROP_OLDEST;
+        }
+
+        Log.d(TAG, "inbound CoT pipeline: parseThreads=" + parseThreads
+                + " queueLimit=" + queueLimit + " dropPolicy="
+                + dropPolicy);
+        return new CotIngestPipeline(parseThreads, queueLimit, dropPolicy,
+                new CotIngestPipeline.Sink() {
+                    @Override
+                    public void apply(CotEvent event, String rxEndpointId) {
+                        dispatchReceived(event, rxEndpointId);
+                    }
+                },
+                new CotIngestPipeline.ParseListener() {
+                    @Override
+                    public void onParsed(CotEvent event,
+                            String rxEndpointId) {
+                        logReceived(event, rxEndpointId);
+                    }
+                });
+    }
+
+    private void dispatchReceived(final CotEvent cotEvent,
+            final String rxEndpointId) {
+        if (cotEvent == null)
+            return;
+
         Bundle extras = new Bundle();
         extras.putString("from", cotEvent.getUID());
         if (rxEndpointId != null) {
@@ -1791,9 +1904,11 @@ public class CommsMapComponent extends AbstractMapComponent implements
             }
         }
 
-        if (cotEvent != null)
-            sendCoTInternally(cotEvent, extras);
+        sendCoTInternally(cotEvent, extras);
+    }
 
+    private void logReceived(final CotEvent cotEvent,
+            final String rxEndpointId) {
         for (CommsLogger logger : loggers) {
             try {
 
@@ -1805,7 +1920,6 @@ public class CommsMapComponent extends AbstractMapComponent implements
                 Log.e(TAG, "error occurred with a logger", err);
             }
         }
-
     }
 
     public void sendCoTInternally(final CotEvent cotEvent, Bundle extras) {
@@ -2219,24 +2333,30 @@ public class CommsMapComponent extends AbstractMapComponent implements
 
             // Get deferred messages
             componentsLoaded = true;
-            final List<Pair<String, String>> msgs;
-            synchronized (deferredMessages) {
-                msgs = new ArrayList<>(deferredMessages);
-                deferredMessages.clear();
-            }
+            final DeferredCotBacklog backlog = deferredMessages;
+            if (backlog == null)
+                return;
 
             // Nothing to process
-            if (msgs.isEmpty())
+            if (backlog.closeIfEmpty())
                 return;
 
-            // Process on separate thread to avoid UI lockup
+            // Process on separate thread to avoid UI lockup. Messages are
+            // handed to the inbound pipeline, which parses them in parallel
             Thread thr = new Thread(TAG + " Deferred CoT") {
                 @Override
                 public void run() {
-                    Log.d(TAG, "Processing " + msgs.size()
+                    Log.d(TAG, "Processing " + backlog.size()
                             + " deferred CoT messages");
-                    for (Pair<String, String> msg : msgs)
-                        cotMessageReceived(msg.first, msg.second);
+                    backlog.drain(new DeferredCotBacklog.Sink() {
+                        @Override
+                        public void replay(String message,
+                                String rxEndpointId) {
+                            replayDeferred(message, rxEndpointId);
+                        }
+                    });
+                    Log.d(TAG, "deferred CoT backlog: "
+                            + backlog.getStatistics());
                 }
             };
             thr.setPriority(Thread.NORM_PRIORITY);
@@ -0,0 +1,497 @@
+package com.atakmap.comms;
+
+import com.atakmap.coremap.cot.event.CotEvent;
+import com.atakmap.coremap.log.Log;
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged pipeline for inbound Cursor on Target messages. Raw messages are
+ * handed off from the receiving thread into a bounded queue, parsed by a pool
+ * of workers and then applied, in arrival order, by a single dedicated
+ * thread.
+ *
+ * Each message is assigned a sequence number as it leaves the FIFO intake
+ * queue. Parse workers may finish out of order; the apply thread only ever
+ * applies the event with the next sequence number, so events are applied in
+ * the order they arrived.
+ *
+ * Pending position updates are coalesced by UID so that only the newest state
+ * of a track is ever applied. A newer update replaces an older one by
+ * discarding the older one; the newer update keeps its own place in the
+ * arrival order so that it is never applied ahead of events that arrived
+ * before it. Updates that are older than what was already applied for a track
+ * (e.g. a server replaying history after a reconnect) are discarded outright.
+ *
+ * {@link #submit(String, String)} never blocks; the {@link DropPolicy}
+ * determines what happens when the producer outpaces the pipeline.
+ */
+public class CotIngestPipeline {
+
+    private static final String TAG = "CotIngestPipeline";
+
+    /**
+     * The number of UIDs for which the last applied time is remembered in
+     * order to detect stale updates
+     */
+    private static final int APPLIED_HISTORY_LIMIT = 16384;
+
+    /**
+     * Behavior of {@link #submit(String, String)} when the pipeline is full
+     */
+    public enum DropPolicy {
+        /** discard the oldest message waiting to be parsed to make room */
+        DROP_OLDEST,
+        /** discard the message being submitted */
+        DROP_NEWEST,
+    }
+
+    /**
+     * Receives the events that survive coalescing. Invoked on the apply
+     * thread only.
+     */
+    public interface Sink {
+        void apply(CotEvent event, String rxEndpointId);
+    }
+
+    /**
+     * Receives every event as soon as it is parsed, before coalescing. May be
+     * invoked concurrently from any of the parse workers.
+     */
+    public interface ParseListener {
+        void onParsed(CotEvent event, String rxEndpointId);
+    }
+
+    /**
+     * Snapshot of the pipeline counters
+     */
+    public static final class Statistics {
+        /** total messages submitted */
+        public final long received;
+        /** total messages parsed */
+        public final long parsed;
+        /** messages superseded by a newer update for the same UID */
+        public final long coalesced;
+        /** messages older than what had already been applied */
+        public final long stale;
+        /** messages discarded because the pipeline was full */
+        public final long dropped;
+        /** events applied */
+        public final long applied;
+        /** messages waiting to be parsed */
+        public final int parseQueueDepth;
+        /** events waiting to be applied */
+        public final int applyQueueDepth;
+
+        Statistics(CotIngestPipeline p) {
+            this.received = p.received.get();
+            this.parsed = p.parsed.get();
+            this.coalesced = p.coalesced.get();
+            this.stale = p.stale.get();
+            this.dropped = p.dropped.get();
+            this.applied = p.applied.get();
+            this.parseQueueDepth = p.parseQueue.size();
+            synchronized (p.pending) {
+                this.applyQueueDepth = p.pendingCount;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "received=" + received + " parsed=" + parsed
+                    + " coalesced=" + coalesced + " stale=" + stale
+                    + " dropped=" + dropped + " applied=" + applied
+                    + " parseQueue=" + parseQueueDepth
+                    + " applyQueue=" + applyQueueDepth;
+        }
+    }
+
+    private final static class RawMessage {
+        final String message;
+        final String rxEndpointId;
+
+        RawMessage(String message, String rxEndpointId) {
+            this.message = message;
+            this.rxEndpointId = rxEndpointId;
+        }
+    }
+
+    private final static class PendingEvent {
+        final long sequence;
+        final CotEvent event;
+        final String rxEndpointId;
+        /** the UID if the event is coalescable, otherwise <code>null</code> */
+        final String uid;
+        final long time;
+
+        PendingEvent(long sequence, CotEvent event, String rxEndpointId,
+                String uid, long time) {
+            this.sequence = sequence;
+            this.event = event;
+            this.rxEndpointId = rxEndpointId;
+            this.uid = uid;
+            this.time = time;
+        }
+    }
+
+    /** occupies the slot of a message that will not be applied */
+    private final static PendingEvent SKIPPED = new PendingEvent(-1L, null,
+            null, null, Long.MIN_VALUE);
+
+    private final Sink sink;
+    private final ParseListener parseListener;
+    private final DropPolicy dropPolicy;
+
+    private final BlockingQueue<RawMessage> parseQueue;
+    private final Thread[] parseWorkers;
+    private final Thread applyWorker;
+
+    /** guards assignment of sequence numbers as messages are dequeued */
+    private final Object dequeueLock = new Object();
+    /** the sequence number of the next message dequeued for parsing */
+    private long nextSequence;
+
+    /**
+     * Events awaiting the apply stage, indexed by sequence number modulo the
+     * array length. Only sequence numbers within the array length of
+     * {@link #nextApply} may be placed; parse workers wait for the apply
+     * stage to catch up otherwise. Guarded by itself.
+     */
+    private final PendingEvent[] pending;
+    /** the sequence number of the next event to be applied */
+    private long nextApply;
+    /** the number of events in {@link #pending} that will be applied */
+    private int pendingCount;
+    /** pending coalescable events, per UID. Guarded by pending. */
+    private final Map<String, PendingEvent> pendingByUid = new HashMap<>();
+
+    /** time of the last applied update, per UID. Guarded by pending. */
+    private final Map<String, Long> lastApplied = new LinkedHashMap<String, Long>(
+            64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > APPLIED_HISTORY_LIMIT;
+        }
+    };
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+
+    private volatile boolean disposed;
+
+    /**
+     * Create a new pipeline. The worker threads are started immediately.
+     *
+     * @param parseThreads the number of parse workers
+     * @param queueLimit the maximum number of messages that may be waiting
+     *                   in each of the parse and apply stages
+     * @param dropPolicy the behavior when the pipeline is full
+     * @param sink receives the events to be applied
+     * @param parseListener optional listener notified of every parsed event,
+     *                      may be <code>null</code>
+     */
+    public CotIngestPipeline(int parseThreads, int queueLimit,
+            DropPolicy dropPolicy, Sink sink, ParseListener parseListener) {
+        if (parseThreads < 1)
+            throw new IllegalArgumentException("parseThreads must be >= 1");
+        if (queueLimit < 1)
+            throw new IllegalArgumentException("queueLimit must be >= 1");
+        if (sink == null)
+            throw new IllegalArgumentException("sink may not be null");
+
+        this.sink = sink;
+        this.parseListener = parseListener;
+        this.dropPolicy = (dropPolicy != null) ? dropPolicy
+                : DropPolicy.DROP_OLDEST;
+        this.parseQueue = new ArrayBlockingQueue<>(queueLimit);
+        this.pending = new PendingEvent[queueLimit];
+
+        this.parseWorkers = new Thread[parseThreads];
+        for (int i = 0; i < parseThreads; i++) {
+            this.parseWorkers[i] = new Thread(TAG + "-parse-" + i) {
+                @Override
+                public void run() {
+                    parseLoop();
+                }
+            };
+            this.parseWorkers[i].setPriority(Thread.NORM_PRIORITY);
+            this.parseWorkers[i].start();
+        }
+
+        this.applyWorker = new Thread(TAG + "-apply") {
+            @Override
+            public void run() {
+                applyLoop();
+            }
+        };
+        this.applyWorker.setPriority(Thread.NORM_PRIORITY);
+        this.applyWorker.start();
+    }
+
+    /**
+     * Submit a raw CoT message for processing. Never blocks; if the pipeline
+     * is full a message is discarded according to the {@link DropPolicy}.
+     *
+     * @param message the CoT message
+     * @param rxEndpointId identifier of the interface the message was
+     *                     received on, may be <code>null</code>
+     * @return <code>true</code> if the message was accepted,
+     * <code>false</code> if it was dropped
+     */
+    public boolean submit(final String message, final String rxEndpointId) {
+        if (disposed)
+            return false;
+
+        received.incrementAndGet();
+        final RawMessage raw = new RawMessage(message, rxEndpointId);
+        if (dropPolicy == DropPolicy.DROP_NEWEST) {
+            if (parseQueue.offer(raw))
+                return true;
+            dropped.incrementAndGet();
+            return false;
+        }
+        while (!parseQueue.offer(raw)) {
+            if (parseQueue.poll() != null)
+                dropped.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Submit a raw CoT message for processing, waiting for space in the
+     * pipeline rather than discarding any message. Must not be invoked from
+     * the thread receiving messages from the network; intended for producers
+     * that can tolerate back pressure, such as the replay of messages
+     * received before the map finished loading.
+     *
+     * @param message the CoT message
+     * @param rxEndpointId identifier of the interface the message was
+     *                     received on, may be <code>null</code>
+     * @return <code>true</code> if the message was accepted,
+     * <code>false</code> if the pipeline was disposed or the calling thread
+     * was interrupted first
+     */
+    public boolean submitAndWait(final String message,
+            final String rxEndpointId) {
+        if (disposed)
+            return false;
+
+        received.incrementAndGet();
+        try {
+            parseQueue.put(new RawMessage(message, rxEndpointId));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * @return a snapshot of the pipeline counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(this);
+    }
+
+    /**
+     * Stops the pipeline. Messages that have not yet been applied are
+     * discarded.
+     */
+    public void dispose() {
+        disposed = true;
+        for (Thread t : parseWorkers)
+            t.interrupt();
+        applyWorker.interrupt();
+        parseQueue.clear();
+        synchronized (pending) {
+            Arrays.fill(pending, null);
+            pendingByUid.clear();
+            pendingCount = 0;
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Determines whether or not an event carries the complete state of its
+     * UID so that an older pending update may be superseded by it. By
+     * default, atoms (type <code>a-*</code>) are coalesced.
+     *
+     * @param event the event
+     * @return <code>true</code> if pending updates for the same UID may be
+     * replaced by this event
+     */
+    protected boolean isCoalescable(CotEvent event) {
+        final String type = event.getType();
+        return event.getUID() != null && type != null
+                && type.startsWith("a-");
+    }
+
+    private void parseLoop() {
+        while (!disposed) {
+            final RawMessage raw;
+            final long sequence;
+            try {
+                // the sequence number is assigned in queue order
+                synchronized (dequeueLock) {
+                    raw = parseQueue.take();
+                    sequence = nextSequence++;
+                }
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            CotEvent event = null;
+            try {
+                event = CotEvent.parse(raw.message);
+                parsed.incrementAndGet();
+            } catch (Exception e) {
+                Log.e(TAG, "error parsing message", e);
+            }
+
+            if (event != null && parseListener != null) {
+                try {
+                    parseListener.onParsed(event, raw.rxEndpointId);
+                } catch (Exception e) {
+                    Log.e(TAG, "error occurred with a parse listener", e);
+                }
+            }
+
+            try {
+                enqueue(sequence, event, raw.rxEndpointId);
+            } catch (InterruptedException ignored) {
+                // disposed
+            }
+        }
+    }
+
+    /**
+     * Places the parsed event into its slot in the apply stage.
+     *
+     * @param sequence the sequence number of the message
+     * @param event the event or <code>null</code> if the message could not
+     *              be parsed
+     */
+    private void enqueue(final long sequence, final CotEvent event,
+            final String rxEndpointId) throws InterruptedException {
+        PendingEvent p = SKIPPED;
+        if (event != null) {
+            final String uid = isCoalescable(event) ? event.getUID() : null;
+            final CoordinatedTime time = event.getTime();
+            p = new PendingEvent(sequence, event, rxEndpointId, uid,
+                    (time != null) ? time.getMilliseconds() : Long.MIN_VALUE);
+        }
+
+        synchronized (pending) {
+            // the worker holding the next sequence number never waits, so
+            // the apply stage always makes progress
+            while (sequence - nextApply >= pending.length && !disposed)
+                pending.wait();
+            if (disposed)
+                return;
+
+            if (p.uid != null)
+                p = coalesce(p);
+            if (p != SKIPPED)
+                pendingCount++;
+            pending[slot(sequence)] = p;
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Coalesces a parsed event with the pending update for the same UID, if
+     * any. Of the two, the later arrival is kept unless it is older than the
+     * earlier one. Must hold the lock on {@link #pending}.
+     *
+     * @return the event to place in the slot, or {@link #SKIPPED}
+     */
+    private PendingEvent coalesce(final PendingEvent p) {
+        final Long appliedTime = lastApplied.get(p.uid);
+        if (appliedTime != null && p.time < appliedTime) {
+            stale.incrementAndGet();
+            return SKIPPED;
+        }
+
+        final PendingEvent other = pendingByUid.get(p.uid);
+        if (other == null) {
+            pendingByUid.put(p.uid, p);
+            return p;
+        }
+
+        final PendingEvent earlier = (other.sequence < p.sequence) ? other
+                : p;
+        final PendingEvent later = (earlier == p) ? other : p;
+        final PendingEvent discard;
+        if (later.time < earlier.time) {
+            // an update that was superseded before it arrived
+            stale.incrementAndGet();
+            discard = later;
+        } else {
+            coalesced.incrementAndGet();
+            discard = earlier;
+        }
+
+        if (discard == p)
+            return SKIPPED;
+
+        // the pending update gives up its slot
+        pending[slot(other.sequence)] = SKIPPED;
+        pendingCount--;
+        pendingByUid.put(p.uid, p);
+        return p;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % pending.length);
+    }
+
+    private void applyLoop() {
+        while (!disposed) {
+            // events are taken one at a time so that updates arriving while
+            // the sink is busy can still be coalesced
+            final PendingEvent p;
+            synchronized (pending) {
+                while (pending[slot(nextApply)] == null && !disposed) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (disposed)
+                    break;
+                final int slot = slot(nextApply);
+                p = pending[slot];
+                pending[slot] = null;
+                nextApply++;
+                pending.notifyAll();
+                if (p == SKIPPED)
+                    continue;
+
+                pendingCount--;
+                if (p.uid != null) {
+                    pendingByUid.remove(p.uid);
+                    lastApplied.put(p.uid, p.time);
+                }
+            }
+
+            try {
+                sink.apply(p.event, p.rxEndpointId);
+            } catch (Exception e) {
+                Log.e(TAG, "error applying event", e);
+            }
+            applied.incrementAndGet();
+        }
+    }
+}
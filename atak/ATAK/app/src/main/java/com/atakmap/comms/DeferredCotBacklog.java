@@ -0,0 +1,487 @@
+package com.atakmap.comms;
+
+import com.atakmap.coremap.filesystem.FileSystemUtils;
+import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the raw CoT messages received before the map components have
+ * finished loading, until they can be replayed.
+ *
+ * As in {@link CotIngestPipeline}, messages for atoms (type <code>a-*</code>)
+ * are coalesced by UID so that only the newest state of a track is
+ * replayed. The newest message is replayed in its own arrival position,
+ * after any messages received between it and the message it supersedes.
+ *
+ * The messages held in memory are bounded. Once the memory limit is reached,
+ * further messages are appended to a memory mapped spill file, itself
+ * bounded, and messages are dropped once both are full. Spilled messages are
+ * replayed after the in memory messages, in arrival order.
+ */
+public class DeferredCotBacklog {
+
+    private static final String TAG = "DeferredCotBacklog";
+
+    /**
+     * The spill file is mapped in regions of this size
+     */
+    private static final int SPILL_REGION_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Estimated heap overhead of each message held in memory, in bytes
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * Receives the messages being replayed
+     */
+    public interface Sink {
+        void replay(String message, String rxEndpointId);
+    }
+
+    /**
+     * Snapshot of the backlog counters
+     */
+    public static final class Statistics {
+        /** total messages added */
+        public final long received;
+        /** messages superseded by a newer message for the same UID */
+        public final long coalesced;
+        /** messages written to the spill file */
+        public final long spilled;
+        /** messages discarded because the backlog was full */
+        public final long dropped;
+        /** messages replayed */
+        public final long replayed;
+        /** messages currently held */
+        public final int pending;
+        /** the largest number of messages held at once */
+        public final int peakPending;
+        /** estimated heap used by the messages held in memory */
+        public final long memoryBytes;
+        /** bytes written to the spill file */
+        public final long spillBytes;
+        /** time taken to replay the backlog, -1 if not yet replayed */
+        public final long drainMillis;
+
+        Statistics(DeferredCotBacklog b) {
+            this.received = b.received;
+            this.coalesced = b.coalesced;
+            this.spilled = b.spilled;
+            this.dropped = b.dropped;
+            this.replayed = b.replayed;
+            this.pending = b.pending;
+            this.peakPending = b.peakPending;
+            this.memoryBytes = b.memoryBytes;
+            this.spillBytes = b.spillPosition;
+            this.drainMillis = b.drainMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "received=" + received + " coalesced=" + coalesced
+                    + " spilled=" + spilled + " dropped=" + dropped
+                    + " replayed=" + replayed + " pending=" + pending
+                    + " peakPending=" + peakPending + " memoryBytes="
+                    + memoryBytes + " spillBytes=" + spillBytes
+                    + " drainMillis=" + drainMillis;
+        }
+    }
+
+    private final static class Entry {
+        final String message;
+        final String rxEndpointId;
+
+        Entry(String message, String rxEndpointId) {
+            this.message = message;
+            this.rxEndpointId = rxEndpointId;
+        }
+
+        long size() {
+            return ENTRY_OVERHEAD + 2L * (message.length()
+                    + (rxEndpointId != null ? rxEndpointId.length() : 0));
+        }
+    }
+
+    private final long memoryLimit;
+    private final long spillLimit;
+    private final File spillDir;
+
+    /**
+     * Messages held in memory in arrival order. Coalescable messages are
+     * keyed on their UID, everything else on a unique key.
+     */
+    private final LinkedHashMap<Object, Entry> memory = new LinkedHashMap<>();
+
+    /**
+     * Sequence number of the newest spilled message, per UID, for the UIDs
+     * whose newest message is in the spill file
+     */
+    private final Map<String, Long> spilledUids = new HashMap<>();
+
+    private File spillFile;
+    private FileChannel spillChannel;
+    private MappedByteBuffer spillRegion;
+    private long spillPosition;
+    private boolean spillFailed;
+
+    private long sequence;
+    private boolean closed;
+
+    private long received;
+    private long coalesced;
+    private long spilled;
+    private long dropped;
+    private long replayed;
+    private int pending;
+    private int peakPending;
+    private long memoryBytes;
+    private long drainMillis = -1;
+
+    /**
+     * @param memoryLimit the estimated heap, in bytes, that the messages held
+     *                    in memory may use
+     * @param spillLimit the maximum size of the spill file, in bytes
+     * @param spillDir the directory for the spill file, or <code>null</code>
+     *                 to never spill messages
+     */
+    public DeferredCotBacklog(long memoryLimit, long spillLimit,
+            File spillDir) {
+        if (memoryLimit < 0 || spillLimit < 0)
+            throw new IllegalArgumentException("limits must be >= 0");
+
+        this.memoryLimit = memoryLimit;
+        this.spillLimit = Math.min(spillLimit, Integer.MAX_VALUE);
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Add a message to the backlog
+     *
+     * @param message the CoT message
+     * @param rxEndpointId identifier of the interface the message was
+     *                     received on, may be <code>null</code>
+     * @return <code>true</code> if the message is now held by the backlog,
+     * <code>false</code> if the backlog has already been replayed and the
+     * message should be processed directly by the caller
+     */
+    public synchronized boolean add(String message, String rxEndpointId) {
+        if (closed)
+            return false;
+
+        received++;
+        final Entry entry = new Entry(message, rxEndpointId);
+        final String uid = getCoalescableUid(message);
+        // the superseded message is only removed once the new message has
+        // been placed at the tail; it is retained if the new one is dropped
+        final Entry superseded = (uid != null) ? memory.get(uid) : null;
+        final long retainedBytes = memoryBytes
+                - ((superseded != null) ? superseded.size() : 0L);
+
+        boolean replaced = (superseded != null);
+        if (retainedBytes + entry.size() <= memoryLimit
+                && spillPosition == 0) {
+            if (superseded != null)
+                memory.remove(uid);
+            memory.put(uid != null ? uid : new Object(), entry);
+            memoryBytes = retainedBytes + entry.size();
+        } else if (spill(uid, entry)) {
+            spilled++;
+            if (superseded != null) {
+                memory.remove(uid);
+                memoryBytes = retainedBytes;
+            }
+            if (uid != null && spilledUids.put(uid, sequence) != null)
+                replaced = true;
+        } else {
+            dropped++;
+            return true;
+        }
+
+        if (replaced) {
+            coalesced++;
+            return true;
+        }
+
+        pending++;
+        if (pending > peakPending)
+            peakPending = pending;
+        return true;
+    }
+
+    /**
+     * Closes the backlog if it holds no messages. A message added
+     * concurrently is either held, in which case the backlog is not closed,
+     * or declined.
+     *
+     * @return <code>true</code> if the backlog was empty and is now closed,
+     * <code>false</code> if it holds messages that should be drained
+     */
+    public synchronized boolean closeIfEmpty() {
+        if (pending > 0)
+            return false;
+        dispose();
+        return true;
+    }
+
+    /**
+     * @return the number of messages currently held
+     */
+    public synchronized int size() {
+        return pending;
+    }
+
+    /**
+     * Replay the backlog. Once this method has been invoked, the backlog no
+     * longer accepts messages. The spill file is removed once it has been
+     * replayed.
+     *
+     * @param sink receives the messages, in arrival order
+     */
+    public void drain(Sink sink) {
+        final List<Entry> entries;
+        final long spillSize;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            entries = new ArrayList<>(memory.values());
+            memory.clear();
+            memoryBytes = 0;
+            spillSize = spillPosition;
+            spillRegion = null;
+        }
+
+        final long start = System.currentTimeMillis();
+        int count = 0;
+        for (Entry e : entries) {
+            count += replay(sink, e.message, e.rxEndpointId);
+        }
+        if (spillSize > 0) {
+            try {
+                count += replaySpill(sink, spillSize);
+            } catch (IOException e) {
+                Log.e(TAG, "error replaying spilled messages", e);
+            }
+        }
+
+        synchronized (this) {
+            replayed = count;
+            pending = 0;
+            drainMillis = System.currentTimeMillis() - start;
+        }
+        dispose();
+    }
+
+    /**
+     * @return a snapshot of the backlog counters
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(this);
+    }
+
+    /**
+     * Discard the backlog and remove the spill file. The backlog no longer
+     * accepts messages.
+     */
+    public synchronized void dispose() {
+        closed = true;
+        memory.clear();
+        memoryBytes = 0;
+        spilledUids.clear();
+        spillRegion = null;
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException ignored) {
+            }
+            spillChannel = null;
+        }
+        if (spillFile != null) {
+            FileSystemUtils.deleteFile(spillFile);
+            spillFile = null;
+        }
+    }
+
+    private static int replay(Sink sink, String message,
+            String rxEndpointId) {
+        try {
+            sink.replay(message, rxEndpointId);
+            return 1;
+        } catch (Exception e) {
+            Log.e(TAG, "error replaying message", e);
+            return 0;
+        }
+    }
+
+    private int replaySpill(Sink sink, long size) throws IOException {
+        final FileChannel channel;
+        synchronized (this) {
+            channel = spillChannel;
+        }
+        if (channel == null)
+            return 0;
+
+        final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                size);
+        int count = 0;
+        while (buf.remaining() > 0) {
+            final long seq = buf.getLong();
+            final String uid = readString(buf);
+            final int messageLength = buf.getInt();
+            if (uid != null && !isNewestSpilled(uid, seq)) {
+                // superseded by a newer message for the same UID
+                buf.position(buf.position() + messageLength);
+                readString(buf);
+                continue;
+            }
+            final byte[] message = new byte[messageLength];
+            buf.get(message);
+            final String rxEndpointId = readString(buf);
+            count += replay(sink,
+                    new String(message, StandardCharsets.UTF_8),
+                    rxEndpointId);
+        }
+        return count;
+    }
+
+    private synchronized boolean isNewestSpilled(String uid, long seq) {
+        final Long newest = spilledUids.get(uid);
+        return newest != null && newest == seq;
+    }
+
+    /**
+     * Append a message to the spill file. Each record is
+     * <pre>
+     *     long    sequence
+     *     int     uid length (-1 if not coalescable), uid UTF-8
+     *     int     message length, message UTF-8
+     *     int     endpoint length (-1 if unknown), endpoint UTF-8
+     * </pre>
+     */
+    private boolean spill(String uid, Entry entry) {
+        if (spillFailed || spillDir == null || spillLimit == 0)
+            return false;
+
+        final byte[] uidBytes = getBytes(uid);
+        final byte[] messageBytes = getBytes(entry.message);
+        final byte[] rxBytes = getBytes(entry.rxEndpointId);
+        final int length = 8 + 12 + length(uidBytes) + messageBytes.length
+                + length(rxBytes);
+        if (spillPosition + length > spillLimit)
+            return false;
+
+        try {
+            if (spillChannel == null) {
+                // the spill file bypasses any encrypting IO provider
+                if (!IOProviderFactory.isDefault()) {
+                    spillFailed = true;
+                    return false;
+                }
+                if (!IOProviderFactory.exists(spillDir)
+                        && !IOProviderFactory.mkdirs(spillDir))
+                    throw new IOException("unable to create " + spillDir);
+                spillFile = IOProviderFactory.createTempFile("deferred-cot",
+                        ".bin", spillDir);
+                spillChannel = IOProviderFactory.getChannel(spillFile, "rw");
+                Log.d(TAG, "spilling deferred CoT messages to " + spillFile);
+            }
+            if (spillRegion == null || spillRegion.remaining() < length) {
+                spillRegion = spillChannel.map(FileChannel.MapMode.READ_WRITE,
+                        spillPosition, Math.max(SPILL_REGION_SIZE, length));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "unable to spill deferred CoT messages", e);
+            spillFailed = true;
+            return false;
+        }
+
+        sequence++;
+        spillRegion.putLong(sequence);
+        putBytes(spillRegion, uidBytes);
+        spillRegion.putInt(messageBytes.length);
+        spillRegion.put(messageBytes);
+        putBytes(spillRegion, rxBytes);
+        spillPosition += length;
+        return true;
+    }
+
+    private static byte[] getBytes(String s) {
+        return (s != null) ? s.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int length(byte[] b) {
+        return (b != null) ? b.length : 0;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] b) {
+        if (b == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(b.length);
+            buf.put(b);
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        final int length = buf.getInt();
+        if (length < 0)
+            return null;
+        final byte[] b = new byte[length];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the UID of a message whose pending updates may be superseded
+     * by it, without parsing the message. Consistent with
+     * {@link CotIngestPipeline#isCoalescable}, atoms are coalesced.
+     *
+     * @param message the raw CoT message
+     * @return the UID, or <code>null</code> if the message should not be
+     * coalesced
+     */
+    static String getCoalescableUid(String message) {
+        final int start = message.indexOf("<event");
+        if (start < 0)
+            return null;
+        final int end = message.indexOf('>', start);
+        if (end < 0)
+            return null;
+        final String type = getAttribute(message, "type", start, end);
+        if (type == null || !type.startsWith("a-"))
+            return null;
+        return getAttribute(message, "uid", start, end);
+    }
+
+    private static String getAttribute(String message, String name,
+            int start, int end) {
+        int i = start;
+        while ((i = message.indexOf(name, i + 1)) > 0 && i < end) {
+            final int eq = i + name.length();
+            if (!Character.isWhitespace(message.charAt(i - 1))
+                    || eq >= end || message.charAt(eq) != '=')
+                continue;
+            final char quote = message.charAt(eq + 1);
+            if (quote != '\'' && quote != '"')
+                return null;
+            final int close = message.indexOf(quote, eq + 2);
+            if (close < 0 || close > end)
+                return null;
+            return message.substring(eq + 2, close);
+        }
+        return null;
+    }
+}
@@ -24,7 +24,10 @@ import java.util.TimerTask;
  * Manages reporting rate based on device & position changes
  *  Monitors a list of preferences to trigger immediate report
  *  Monitors changes in altitude (not accounted for in device speed)
+ *  Monitors changes in course
  *  Dynamic reporting rate based on speed
+ *  Suppresses scheduled reports when self has not changed, and stretches the
+ *  reporting rate when the network is congested, see {@link SelfSARateController}
  */
 public class ReportingRate extends BroadcastReceiver implements
         SharedPreferences.OnSharedPreferenceChangeListener {
@@ -75,6 +78,11 @@ public class ReportingRate extends BroadcastReceiver implements
      */
     private static final int RELIABLE_RATE_MULTIPLIER = 2; //rate*2
 
+    /**
+     * Log report statistics this often
+     */
+    private static final long STATS_INTERVAL = 300000; //5 minutes
+
     private final SharedPreferences _preferences;
     private Timer _publishContactInfo;
     private double _lastReportedAltitudeUnreliable = Double.NaN;
@@ -84,6 +92,9 @@ public class ReportingRate extends BroadcastReceiver implements
 
     private boolean _publishSA = false;
 
+    private final SelfSARateController _controller = new SelfSARateController();
+    private long _lastStatsTime = 0;
+
     /**
      * Current reporting strategy
      */
@@ -136,6 +147,13 @@ public class ReportingRate extends BroadcastReceiver implements
 
         double getReportingSpeed();
 
+        /**
+         * @return the current course (degrees), or NaN if unknown
+         */
+        default double getReportingCourse() {
+            return Double.NaN;
+        }
+
         void report(int stale, int flags);
     }
 
@@ -267,6 +285,24 @@ public class ReportingRate extends BroadcastReceiver implements
         if (dynamicReportingRateMaxReliable < 0)
             dynamicReportingRateMaxReliable = 2000;
 
+        // a constant rate is expected to be honored, so suppression is only
+        // on by default for the dynamic strategy
+        if (constant_string.equals(locationReportingStrategy))
+            _controller.setSuppressUnchanged(_preferences.getBoolean(
+                    "constantReportingSuppressUnchanged", false));
+        else
+            _controller.setSuppressUnchanged(_preferences.getBoolean(
+                    "locationReportingSuppressUnchanged", true));
+        int distanceThreshold;
+        try {
+            distanceThreshold = Integer.parseInt(_preferences.getString(
+                    "locationReportingDistanceThreshold", "10"));
+        } catch (NumberFormatException nfe) {
+            distanceThreshold = 10;
+        }
+        if (distanceThreshold < 0)
+            distanceThreshold = 10;
+        _controller.setDistanceThreshold(distanceThreshold);
     }
 
     @Override
@@ -302,7 +338,16 @@ public class ReportingRate extends BroadcastReceiver implements
                         "dynamicReportingRateStationaryUnreliable")
                 ||
                 FileSystemUtils.isEquals(key,
-                        "dynamicReportingRateStationaryReliable")) {
+                        "dynamicReportingRateStationaryReliable")
+                ||
+                FileSystemUtils.isEquals(key,
+                        "locationReportingSuppressUnchanged")
+                ||
+                FileSystemUtils.isEquals(key,
+                        "constantReportingSuppressUnchanged")
+                ||
+                FileSystemUtils.isEquals(key,
+                        "locationReportingDistanceThreshold")) {
             initReportingRates();
         }
     }
@@ -321,6 +366,21 @@ public class ReportingRate extends BroadcastReceiver implements
 
     }
 
+    /**
+     * Notify that a CoT message has been received, used to estimate network
+     * congestion
+     */
+    public void onMessageReceived() {
+        _controller.onMessageReceived(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @return the controller which tracks sent and suppressed reports
+     */
+    public SelfSARateController getRateController() {
+        return _controller;
+    }
+
     public synchronized void setReportAsap(String reason) {
         bReportAsap = true;
         Log.d(TAG, "Report ASAP, reason=" + reason);
@@ -347,10 +407,11 @@ public class ReportingRate extends BroadcastReceiver implements
 
         final GeoPoint selfPoint = _callback.getReportingPoint();
         final double curSpeed = _callback.getReportingSpeed();
+        final double curCourse = _callback.getReportingCourse();
 
         if (getReportAsap()) {
             //Log.d(TAG, "bReportAsap is true (1)");
-            reportBothNow(selfPoint, curSpeed);
+            reportBothNow(selfPoint, curSpeed, curCourse);
             resetReportAsap();
             return;
         }
@@ -382,58 +443,63 @@ public class ReportingRate extends BroadcastReceiver implements
             setReportAsap("Speed change detected (reliable)");
         }
 
+        //check current course, if big change, then report now
+        if (_controller.hasCourseChanged(curSpeed, curCourse))
+            setReportAsap("Course change detected");
+
         final long currTime = SystemClock.elapsedRealtime();
 
-        //check again based on altitude and speed calculations
+        if (currTime - _lastStatsTime >= STATS_INTERVAL) {
+            Log.d(TAG, "Self SA reports: " + _controller);
+            _lastStatsTime = currTime;
+        }
+
+        //check again based on altitude, speed and course calculations
         if (getReportAsap()) {
             //Log.d(TAG, "bReportAsap is true (2)");
-            reportBothNow(selfPoint, curSpeed);
+            reportBothNow(selfPoint, curSpeed, curCourse);
             resetReportAsap();
             return;
         }
 
+        //stretch the reporting rate while the network is congested
+        final double congestion = _controller.getCongestionFactor(currTime);
+
         //check reporting strategy
         if (!FileSystemUtils.isEmpty(locationReportingStrategy)
                 && locationReportingStrategy.equals(constant_string)) {
             //Log.d(TAG, "Checking whether to report at constant rate");
 
             //constant reporting rate, unreliable protocols
-            long delta = currTime - lastTime_constantReportingRateUnreliable;
-            //check if time to report based on reporting rate, or if our stale time is running out
-            if (delta >= constantReportingRateUnreliable
-                    || (lastStale_constantReportingRateUnreliable
-                            - delta) <= STALE_BUFFER) {
-                // wait for 4 publications + a reasonable network delay.
-                int stale = (constantReportingRateUnreliable
-                        * UNRELIABLE_RATE_MULTIPLIER)
-                        + STALE_PADDING;
+            // wait for 4 publications + a reasonable network delay.
+            int stale = checkIfTimeToReport(false,
+                    (int) (constantReportingRateUnreliable * congestion),
+                    UNRELIABLE_RATE_MULTIPLIER, currTime,
+                    lastTime_constantReportingRateUnreliable,
+                    lastStale_constantReportingRateUnreliable, selfPoint,
+                    curSpeed, curCourse);
+            if (stale > 0) {
                 _callback.report(stale,
                         DispatchFlags.EXTERNAL | DispatchFlags.UNRELIABLE);
-                updateLastReport(currTime, curSpeed, selfPoint, stale, true,
-                        true);
+                updateLastReport(currTime, curSpeed, curCourse, selfPoint,
+                        stale, true, true);
             }
-            //else {
-            //Log.d(TAG, "not reporting constant unreliable last sent (ms): " + delta);
-            //}
 
             //constant reporting rate, reliable protocols
-            delta = currTime - lastTime_constantReportingRateReliable;
-            if (delta >= constantReportingRateReliable
-                    || (lastStale_constantReportingRateReliable
-                            - delta) <= STALE_BUFFER) {
-                // wait for two publications plus a reasonable network delay.
-                int stale = (constantReportingRateReliable
-                        * RELIABLE_RATE_MULTIPLIER)
-                        + STALE_PADDING;
-                //Log.d(TAG, "reporting constant reliable last sent (ms): " + delta + ", stale=" + stale);
+            // wait for two publications plus a reasonable network delay.
+            stale = checkIfTimeToReport(true,
+                    (int) (constantReportingRateReliable * congestion),
+                    RELIABLE_RATE_MULTIPLIER, currTime,
+                    lastTime_constantReportingRateReliable,
+                    lastStale_constantReportingRateReliable, selfPoint,
+                    curSpeed, curCourse);
+            if (stale > 0) {
+                //Log.d(TAG, "reporting constant reliable stale=" + stale);
                 _callback.report(stale, DispatchFlags.EXTERNAL
                         | DispatchFlags.RELIABLE);
-                updateLastReport(currTime, curSpeed, selfPoint, stale, true,
-                        false);
+                updateLastReport(currTime, curSpeed, curCourse, selfPoint,
+                        stale, true, false);
             }
-            //else {
-            //Log.d(TAG, "not reporting constant reliable last sent (ms): " + delta);
-            //}
         } else {
             //Log.d(TAG, "Checking whether to report at dynamic rate");
             //dynamic reporting based on speed
@@ -442,32 +508,36 @@ public class ReportingRate extends BroadcastReceiver implements
             int max = dynamicReportingRateMaxUnreliable;
             int min = dynamicReportingRateMinUnreliable;
             int stationary = dynamicReportingRateStationaryUnreliable;
-            int stale = checkIfTimeToReport(curSpeed, max, min, stationary,
-                    currTime,
+            int rate = getDynamicRate(curSpeed, max, min, stationary);
+            int stale = checkIfTimeToReport(false, (int) (rate * congestion),
+                    RELIABLE_RATE_MULTIPLIER, currTime,
                     lastTime_dynamicReportingRateUnreliable,
-                    lastStale_dynamicReportingRateUnreliable);
+                    lastStale_dynamicReportingRateUnreliable, selfPoint,
+                    curSpeed, curCourse);
             if (stale > 0) {
                 //Log.d(TAG, "reporting now dynamic unreliable stale=" + stale);
                 _callback.report(stale,
                         DispatchFlags.EXTERNAL | DispatchFlags.UNRELIABLE);
-                updateLastReport(currTime, curSpeed, selfPoint, stale, false,
-                        true);
+                updateLastReport(currTime, curSpeed, curCourse, selfPoint,
+                        stale, false, true);
             }
 
             //now report reliable
             max = dynamicReportingRateMaxReliable;
             min = dynamicReportingRateMinReliable;
             stationary = dynamicReportingRateStationaryReliable;
-            stale = checkIfTimeToReport(curSpeed, max, min, stationary,
-                    currTime,
+            rate = getDynamicRate(curSpeed, max, min, stationary);
+            stale = checkIfTimeToReport(true, (int) (rate * congestion),
+                    RELIABLE_RATE_MULTIPLIER, currTime,
                     lastTime_dynamicReportingRateReliable,
-                    lastStale_dynamicReportingRateReliable);
+                    lastStale_dynamicReportingRateReliable, selfPoint,
+                    curSpeed, curCourse);
             if (stale > 0) {
                 //Log.d(TAG, "reporting now dynamic reliable stale=" + stale);
                 _callback.report(stale, DispatchFlags.EXTERNAL
                         | DispatchFlags.RELIABLE);
-                updateLastReport(currTime, curSpeed, selfPoint, stale, false,
-                        false);
+                updateLastReport(currTime, curSpeed, curCourse, selfPoint,
+                        stale, false, false);
             }
         }
     }
@@ -476,14 +546,16 @@ public class ReportingRate extends BroadcastReceiver implements
      * Update transient variables about our last report
      * @param currTime the current time in millis since EPOCH
      * @param curSpeed the current speed
+     * @param curCourse the current course
      * @param selfPoint current point (lat, lon)
      * @param stale the stale time to use
      * @param bConstant if the reporting rate is constant or dynamic
      * @param bUnreliable if the method of transmission is reliable or unreliable
      */
     private void updateLastReport(long currTime, double curSpeed,
-            GeoPoint selfPoint, int stale,
+            double curCourse, GeoPoint selfPoint, int stale,
             boolean bConstant, boolean bUnreliable) {
+        _controller.onSent(!bUnreliable, selfPoint, curSpeed, curCourse);
         if (bConstant) {
             if (bUnreliable) {
                 lastTime_constantReportingRateUnreliable = currTime;
@@ -524,7 +596,7 @@ public class ReportingRate extends BroadcastReceiver implements
     }
 
     /**
-     * See if it is time to report based on speed
+     * Get the reporting rate based on speed
      * if speed < MIN_SPEED
      *  use stationary reporting rate
      * ele if speed >= MAX_SPEED
@@ -537,74 +609,70 @@ public class ReportingRate extends BroadcastReceiver implements
      * @param maxRate (millis)  maxRate report rate (between reports, fast moving, lower number)
      * @param minRate (millis)  minRate report rate (between reports, slow moving, higher number)
      * @param stationary (millis) reporting rate when not moving
-     * @param currTime (millis)
-     * @param lastReportTime (millis)
-     * @return  Return current stale time if time to report, Otherwise return -1
+     * @return  the reporting rate (millis)
      */
-    private static int checkIfTimeToReport(double speed, int maxRate,
-            int minRate, int stationary, long currTime, long lastReportTime,
-            long lastStaleTime) {
-        long delta = currTime - lastReportTime;
-        //Log.d(TAG, String.format(LocaleUtil.getCurrent(),
-        //        "checkIfTimeToReport speed=%f, maxRate=%d, minRate=%d, stationary=%d, currTime=%d, lastReportTime=%d, lastStaleTime=%d, delta=%d",
-        //       speed, maxRate, minRate, stationary, currTime, lastReportTime, lastStaleTime, delta));
-
-        int rate;
+    private static int getDynamicRate(double speed, int maxRate,
+            int minRate, int stationary) {
         if (Double.isNaN(speed) || speed < MIN_SPEED_MS) {
             //not moving
-            rate = stationary;
-            if (delta >= rate || (lastStaleTime - delta) <= STALE_BUFFER) {
-                //Log.d(TAG, "< MIN_SPEED_MS, reporting rate= " + rate);
-            } else {
-                //Log.d(TAG, "< MIN_SPEED_MS, not reporting delta= " + delta);
-                rate = -1;
-            }
+            return stationary;
         } else if (speed >= MAX_SPEED_MS) {
             //moving over 30MPH, use maxRate
-            rate = maxRate;
-            if (delta >= rate || (lastStaleTime - delta) <= STALE_BUFFER) {
-                //Log.d(TAG, "Moving > MAX_SPEED_MS, reporting rate= " + rate);
-            } else {
-                //Log.d(TAG, "Moving > MAX_SPEED_MS, not reporting delta= " + delta);
-                rate = -1;
-            }
-        } else {
-            //TODO error checking e.g. minRate > maxRate, and not equal, etc
-
-            //normalize speed of travel and reporting rate
-            //get speed range, normalized down to 1
-            double s2 = MAX_SPEED_MS - MIN_SPEED_MS;
-            //solve for speed scaled to range, as a percentage of the normalized range
-            double scaledspeed = MIN_SPEED_MS
-                    + (((speed - MIN_SPEED_MS) * 100D) / s2);
-
-            //get rate range, normalized down to 1
-            int r2 = minRate - maxRate;
-            //solve for rate scaled to range, as a percentage of the normalized range
-            //switch to slow rate as speed increases
-            double scaledrate = minRate - ((scaledspeed * r2) / 100D);
-
-            rate = (int) Math.round(scaledrate);
-            //Log.d(TAG, String.format(LocaleUtil.getCurrent(), "Dynamic [minspeed=%f, maxspeed=%f] scaledspeed=%f, [minrange=%d, maxrange=%d] scaledrate=%f, rate=%d", s1, s2, scaledspeed, r1, r2, scaledrate, rate));
-            if (delta >= rate || (lastStaleTime - delta) <= STALE_BUFFER) {
-                //Log.d(TAG, "Moving, reporting rate= " + rate);
-            } else {
-                //Log.d(TAG, "Moving, not reporting delta= " + delta);
-                rate = -1;
-            }
+            return maxRate;
         }
 
-        if (rate < 0) {
-            //Log.d(TAG, "Not dynamic reporting");
+        //TODO error checking e.g. minRate > maxRate, and not equal, etc
+
+        //normalize speed of travel and reporting rate
+        //get speed range, normalized down to 1
+        double s2 = MAX_SPEED_MS - MIN_SPEED_MS;
+        //solve for speed scaled to range, as a percentage of the normalized range
+        double scaledspeed = MIN_SPEED_MS
+                + (((speed - MIN_SPEED_MS) * 100D) / s2);
+
+        //get rate range, normalized down to 1
+        int r2 = minRate - maxRate;
+        //solve for rate scaled to range, as a percentage of the normalized range
+        //switch to slow rate as speed increases
+        double scaledrate = minRate - ((scaledspeed * r2) / 100D);
+
+        return (int) Math.round(scaledrate);
+    }
+
+    /**
+     * See if it is time to report. A report is due once the reporting rate
+     * has elapsed, unless self has not changed since the last report. An
+     * unchanged self is still reported once the last reported stale time
+     * divided by the multiplier has elapsed, so receivers see several
+     * reports per stale window, and always if the stale time is running out.
+     *
+     * @param reliable if the method of transmission is reliable or unreliable
+     * @param rate (millis) the reporting rate
+     * @param multiplier stale time is the rate multiplied by this
+     * @param currTime (millis)
+     * @param lastReportTime (millis)
+     * @param lastStaleTime (millis) stale time of the last report
+     * @param selfPoint current point (lat, lon)
+     * @param speed (m/s)
+     * @param course (degrees)
+     * @return  Return current stale time if time to report, Otherwise return -1
+     */
+    private int checkIfTimeToReport(boolean reliable, int rate,
+            int multiplier, long currTime, long lastReportTime,
+            long lastStaleTime, GeoPoint selfPoint, double speed,
+            double course) {
+        long delta = currTime - lastReportTime;
+        if ((lastStaleTime - delta) > STALE_BUFFER
+                && (delta < rate || (delta < lastStaleTime / multiplier
+                        && !_controller.shouldSend(reliable, selfPoint,
+                                speed, course, currTime, rate)))) {
             return -1;
         }
-
-        //use stale twice the rate, plus a 15 second buffer
-        return rate * RELIABLE_RATE_MULTIPLIER + STALE_PADDING;
+        return rate * multiplier + STALE_PADDING;
     }
 
     private void reportBothNow(final GeoPoint selfPoint,
-            final double curSpeed) {
+            final double curSpeed, final double curCourse) {
         long currTime = SystemClock.elapsedRealtime();
 
         //first report unreliable, using most current stale time
@@ -612,10 +680,12 @@ public class ReportingRate extends BroadcastReceiver implements
         if (!FileSystemUtils.isEmpty(locationReportingStrategy)
                 && locationReportingStrategy.equals(constant_string)) {
             stale = lastStale_constantReportingRateUnreliable;
-            updateLastReport(currTime, curSpeed, selfPoint, stale, true, true);
+            updateLastReport(currTime, curSpeed, curCourse, selfPoint, stale,
+                    true, true);
         } else {
             stale = lastStale_dynamicReportingRateUnreliable;
-            updateLastReport(currTime, curSpeed, selfPoint, stale, false, true);
+            updateLastReport(currTime, curSpeed, curCourse, selfPoint, stale,
+                    false, true);
         }
         if (stale < 1) {
             //we have not yet reported, so set a default stale time
@@ -632,11 +702,12 @@ public class ReportingRate extends BroadcastReceiver implements
         if (!FileSystemUtils.isEmpty(locationReportingStrategy)
                 && locationReportingStrategy.equals(constant_string)) {
             stale = lastStale_constantReportingRateReliable;
-            updateLastReport(currTime, curSpeed, selfPoint, stale, true, false);
+            updateLastReport(currTime, curSpeed, curCourse, selfPoint, stale,
+                    true, false);
         } else {
             stale = lastStale_dynamicReportingRateReliable;
-            updateLastReport(currTime, curSpeed, selfPoint, stale, false,
-                    false);
+            updateLastReport(currTime, curSpeed, curCourse, selfPoint, stale,
+                    false, false);
         }
         if (stale < 1) {
             //we have not yet reported, so set a default stale time
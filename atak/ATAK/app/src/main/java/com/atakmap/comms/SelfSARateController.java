@@ -0,0 +1,257 @@
+
+package com.atakmap.comms;
+
+import com.atakmap.coremap.locale.LocaleUtil;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+/**
+ * Decides whether a scheduled self SA report carries any new information.
+ *
+ * Other devices display self at the last reported position, so that
+ * position is the dead reckoning model. A scheduled report is suppressed
+ * while self remains within a distance threshold of the last reported
+ * position and the course has not changed. A course change while moving
+ * triggers an immediate report. Reports needed to keep self from going stale
+ * on other devices are never suppressed, see {@link ReportingRate}.
+ *
+ * The controller also estimates congestion on the network from the rate of
+ * inbound CoT messages. Reporting intervals are stretched, up to
+ * {@link #MAX_CONGESTION_FACTOR} times, while the inbound rate exceeds
+ * {@link #NOMINAL_INBOUND_RATE}.
+ */
+public class SelfSARateController {
+
+    /**
+     * Report if self has moved this far from the last reported position
+     */
+    public static final double DEFAULT_DISTANCE_THRESHOLD = 10d; // meters
+
+    /**
+     * Report if the course changes this much while moving
+     */
+    public static final double COURSE_THRESHOLD = 30d; // degrees
+
+    /**
+     * Below this speed the course is not meaningful
+     */
+    private static final double MIN_COURSE_SPEED_MS = 0.44704; // 1 MPH
+
+    /**
+     * Inbound messages per second the network carries without congestion
+     */
+    public static final double NOMINAL_INBOUND_RATE = 20d;
+
+    /**
+     * Largest factor applied to the reporting interval under congestion
+     */
+    public static final double MAX_CONGESTION_FACTOR = 4d;
+
+    /**
+     * Time constant of the inbound rate estimate
+     */
+    private static final double RATE_TIME_CONSTANT = 10d; // seconds
+
+    private static final double EARTH_RADIUS = 6378137d;
+
+    private final Channel _unreliable = new Channel();
+    private final Channel _reliable = new Channel();
+
+    private boolean _suppressUnchanged = true;
+    private double _distanceThreshold = DEFAULT_DISTANCE_THRESHOLD;
+
+    private double _inboundRate;
+    private long _inboundTime;
+
+    /**
+     * @param suppress true to suppress scheduled reports when nothing has
+     *            changed
+     */
+    public synchronized void setSuppressUnchanged(boolean suppress) {
+        _suppressUnchanged = suppress;
+    }
+
+    /**
+     * @param meters distance from the last reported position before a
+     *            scheduled report is sent
+     */
+    public synchronized void setDistanceThreshold(double meters) {
+        _distanceThreshold = meters;
+    }
+
+    /**
+     * Check whether a report that is due based on the reporting rate should
+     * be sent.
+     *
+     * @param reliable true for reliable transports, false for unreliable
+     * @param point the current self position, may be null
+     * @param speed the current speed (m/s)
+     * @param course the current course (degrees), NaN if unknown
+     * @param time the current time, SystemClock.elapsedRealtime()
+     * @param rate the reporting interval (millis), used to count each
+     *            suppressed report once
+     * @return true to send the report, false if it has been suppressed
+     */
+    public synchronized boolean shouldSend(boolean reliable, GeoPoint point,
+            double speed, double course, long time, int rate) {
+        final Channel c = reliable ? _reliable : _unreliable;
+        if (!_suppressUnchanged || !c.reported || hasMoved(c, point)
+                || hasCourseChanged(c, speed, course))
+            return true;
+
+        if (time - c.suppressedTime >= rate) {
+            c.suppressed++;
+            c.suppressedTime = time;
+        }
+        return false;
+    }
+
+    /**
+     * @param speed the current speed (m/s)
+     * @param course the current course (degrees), NaN if unknown
+     * @return true if the course has changed enough since the last report,
+     *         on either transport, that self should be reported now
+     */
+    public synchronized boolean hasCourseChanged(double speed,
+            double course) {
+        return hasCourseChanged(_unreliable, speed, course)
+                || hasCourseChanged(_reliable, speed, course);
+    }
+
+    /**
+     * Record a report
+     *
+     * @param reliable true for reliable transports, false for unreliable
+     * @param point the reported position, may be null
+     * @param speed the reported speed (m/s)
+     * @param course the reported course (degrees), NaN if unknown
+     */
+    public synchronized void onSent(boolean reliable, GeoPoint point,
+            double speed, double course) {
+        final Channel c = reliable ? _reliable : _unreliable;
+        c.reported = true;
+        c.sent++;
+        c.speed = speed;
+        c.course = course;
+        if (point != null) {
+            c.latitude = point.getLatitude();
+            c.longitude = point.getLongitude();
+        } else {
+            c.latitude = Double.NaN;
+            c.longitude = Double.NaN;
+        }
+    }
+
+    /**
+     * Record an inbound CoT message
+     *
+     * @param time the current time, SystemClock.elapsedRealtime()
+     */
+    public synchronized void onMessageReceived(long time) {
+        _inboundRate = decay(time) + 1d / RATE_TIME_CONSTANT;
+        _inboundTime = time;
+    }
+
+    /**
+     * @param time the current time, SystemClock.elapsedRealtime()
+     * @return the estimated inbound CoT messages per second
+     */
+    public synchronized double getInboundRate(long time) {
+        return decay(time);
+    }
+
+    /**
+     * @param time the current time, SystemClock.elapsedRealtime()
+     * @return the factor, in [1, {@link #MAX_CONGESTION_FACTOR}], to apply to
+     *         the reporting interval
+     */
+    public synchronized double getCongestionFactor(long time) {
+        double factor = decay(time) / NOMINAL_INBOUND_RATE;
+        return Math.max(1d, Math.min(MAX_CONGESTION_FACTOR, factor));
+    }
+
+    /**
+     * @param reliable true for reliable transports, false for unreliable
+     * @return the number of reports sent
+     */
+    public synchronized long getSentCount(boolean reliable) {
+        return (reliable ? _reliable : _unreliable).sent;
+    }
+
+    /**
+     * @param reliable true for reliable transports, false for unreliable
+     * @return the number of scheduled reports suppressed because nothing had
+     *         changed
+     */
+    public synchronized long getSuppressedCount(boolean reliable) {
+        return (reliable ? _reliable : _unreliable).suppressed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(LocaleUtil.getCurrent(),
+                "unreliable sent=%d suppressed=%d, reliable sent=%d suppressed=%d, inbound=%.1f/s",
+                _unreliable.sent, _unreliable.suppressed, _reliable.sent,
+                _reliable.suppressed, decay(_inboundTime));
+    }
+
+    private double decay(long time) {
+        if (_inboundRate == 0d)
+            return 0d;
+        double dt = Math.max(0L, time - _inboundTime) / 1000d;
+        return _inboundRate * Math.exp(-dt / RATE_TIME_CONSTANT);
+    }
+
+    private boolean hasMoved(Channel c, GeoPoint point) {
+        if (point == null)
+            return !Double.isNaN(c.latitude);
+        if (Double.isNaN(c.latitude))
+            return true;
+        return distance(c.latitude, c.longitude, point.getLatitude(),
+                point.getLongitude()) > _distanceThreshold;
+    }
+
+    private static boolean hasCourseChanged(Channel c, double speed,
+            double course) {
+        if (!c.reported || Double.isNaN(course)
+                || Double.isNaN(speed) || speed < MIN_COURSE_SPEED_MS)
+            return false;
+        // was not moving at the last report, the course was not meaningful
+        if (Double.isNaN(c.course) || Double.isNaN(c.speed)
+                || c.speed < MIN_COURSE_SPEED_MS)
+            return false;
+        double d = Math.abs(course - c.course) % 360d;
+        if (d > 180d)
+            d = 360d - d;
+        return d > COURSE_THRESHOLD;
+    }
+
+    /**
+     * Equirectangular approximation, accurate at the distances of interest
+     */
+    static double distance(double lat1, double lon1, double lat2,
+            double lon2) {
+        double dLon = lon2 - lon1;
+        if (dLon > 180d)
+            dLon -= 360d;
+        else if (dLon < -180d)
+            dLon += 360d;
+        double x = Math.toRadians(dLon)
+                * Math.cos(Math.toRadians((lat1 + lat2) / 2d));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+    }
+
+    /**
+     * Last report on one class of transport
+     */
+    private static final class Channel {
+        boolean reported;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double speed = Double.NaN;
+        double course = Double.NaN;
+        long suppressedTime;
+        long sent;
+        long suppressed;
+    }
+}
@@ -28,9 +28,10 @@ class CotContentHandler implements ContentHandler {
     private org.xml.sax.XMLReader reader;
 
     /**
-     * Makes use of internal buffers and will not be able to be threaded.
+     * Makes use of internal buffers and will not be able to be threaded. Each
+     * thread must use its own instance.
      */
-    synchronized CotEvent parseXML(final String xml) {
+    CotEvent parseXML(final String xml) {
         _detailStack.clear();
         _finishedDetail = false;
         _innerTextBuilder.setLength(0);
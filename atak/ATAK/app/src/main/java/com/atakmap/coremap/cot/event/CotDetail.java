@@ -24,6 +24,13 @@ public class CotDetail implements Parcelable {
     private String _elemName;
     private String _innerText;
 
+    /**
+     * Incremented on every modification of this tag (not its children) to
+     * detect when a retained serialization has gone stale.
+     */
+    private int _modCount;
+    private volatile CotXmlSerializer.Form _form;
+
     /**
      * Create a default detail tag
      */
@@ -200,8 +207,10 @@ public class CotDetail implements Parcelable {
      */
     public void setAttribute(String name, String value) {
         //XXX-- contract violation (does not check for name being legal XML
-        if (value != null)
+        if (value != null) {
             _attrs.put(name, value);
+            _modCount++;
+        }
     }
 
     /**
@@ -211,6 +220,7 @@ public class CotDetail implements Parcelable {
      * @return get the value removed if any
      */
     public String removeAttribute(final String name) {
+        _modCount++;
         return _attrs.remove(name);
     }
 
@@ -219,6 +229,7 @@ public class CotDetail implements Parcelable {
      */
     public void clearAttributes() {
         _attrs.clear();
+        _modCount++;
     }
 
     /**
@@ -233,6 +244,7 @@ public class CotDetail implements Parcelable {
                     + name + "')");
         }
         _elemName = name;
+        _modCount++;
     }
 
     /**
@@ -250,6 +262,7 @@ public class CotDetail implements Parcelable {
             }
             _innerText = null;
             _children.add(detail);
+            _modCount++;
         }
     }
 
@@ -268,6 +281,7 @@ public class CotDetail implements Parcelable {
                 throw new IllegalArgumentException("detail cannot be null");
             }
             _children.set(index, detail);
+            _modCount++;
         }
     }
 
@@ -278,6 +292,7 @@ public class CotDetail implements Parcelable {
         synchronized (_children) {
             firstNode.clear(); // children are changing, clear the cache.
             _children.remove(detail);
+            _modCount++;
         }
     }
 
@@ -292,6 +307,7 @@ public class CotDetail implements Parcelable {
             firstNode.clear(); // children are changing, clear the cache.
             _children.clear();
             _innerText = text;
+            _modCount++;
         }
     }
 
@@ -395,6 +411,84 @@ public class CotDetail implements Parcelable {
         }
     }
 
+    /**
+     * Write the UTF-8 encoded XML representation of the detail tag,
+     * identical to {@link #buildXml(Appendable)}. Reuses the retained
+     * serialization if neither this tag nor any of its descendants have
+     * changed.
+     */
+    void buildUtf8(final CotXmlSerializer.Output out) {
+        final CotXmlSerializer.Form form = _form;
+        final boolean unchanged = form != null && isCurrent(form);
+        if (unchanged && form.utf8 != null) {
+            out.write(form.utf8);
+            return;
+        }
+
+        final int start = out.len;
+        out.writeByte('<');
+        out.write(_elemName, false);
+        for (Map.Entry<String, String> entry : _attrs.entrySet()) {
+            out.writeByte(' ');
+            out.write(entry.getKey(), false);
+            out.writeAscii("='");
+            out.write(entry.getValue(), true);
+            out.writeByte('\'');
+        }
+        final CotXmlSerializer.Form[] childForms;
+        synchronized (_children) {
+            if (_innerText != null) {
+                out.writeByte('>');
+                out.write(_innerText, true);
+                out.writeAscii("</");
+                out.write(_elemName, false);
+                out.writeByte('>');
+                childForms = null;
+            } else if (_children.size() > 0) {
+                out.writeByte('>');
+                childForms = new CotXmlSerializer.Form[_children.size()];
+                for (int i = 0; i < childForms.length; ++i) {
+                    final CotDetail child = _children.get(i);
+                    if (child != null) {
+                        child.buildUtf8(out);
+                        childForms[i] = child._form;
+                    }
+                }
+                out.writeAscii("</");
+                out.write(_elemName, false);
+                out.writeByte('>');
+            } else {
+                out.writeAscii("/>");
+                childForms = null;
+            }
+        }
+
+        // only retain the bytes for tags that are serialized repeatedly
+        _form = new CotXmlSerializer.Form(_modCount, childForms,
+                unchanged ? out.copy(start) : null);
+    }
+
+    private boolean isCurrent(final CotXmlSerializer.Form form) {
+        if (form.modCount != _modCount)
+            return false;
+        synchronized (_children) {
+            final int count = (form.children != null) ? form.children.length
+                    : 0;
+            if (count != _children.size())
+                return false;
+            for (int i = 0; i < count; ++i) {
+                final CotDetail child = _children.get(i);
+                if (child == null)
+                    continue;
+                final CotXmlSerializer.Form childForm = child._form;
+                if (childForm == null || childForm != form.children[i]
+                        || !child.isCurrent(childForm))
+                    return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Get the number of attributes in the tag
      * 
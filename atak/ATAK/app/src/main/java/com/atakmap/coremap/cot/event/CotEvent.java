@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.OutputStreamWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 
@@ -31,7 +32,26 @@ public class CotEvent implements Parcelable {
     private final static int _OPTIONAL_ACCESS_BIT = 1 << 2;
     private final static int _OPTIONAL_QOS_BIT = 1 << 3;
 
-    final static CotContentHandler cotHandler = new CotContentHandler();
+    /**
+     * Parsing state is kept per thread so that events may be decoded
+     * concurrently without contending on a shared parser.
+     */
+    private final static ThreadLocal<CotPullParser> pullParser = new ThreadLocal<CotPullParser>() {
+        @Override
+        protected CotPullParser initialValue() {
+            return new CotPullParser();
+        }
+    };
+
+    /**
+     * SAX handler used for documents the pull parser does not support.
+     */
+    private final static ThreadLocal<CotContentHandler> cotHandler = new ThreadLocal<CotContentHandler>() {
+        @Override
+        protected CotContentHandler initialValue() {
+            return new CotContentHandler();
+        }
+    };
 
     public static final String TAG = "CotEvent";
     static PrintWriter fileWriter = null;
@@ -491,13 +511,83 @@ public class CotEvent implements Parcelable {
     }
 
     /**
-     * Parse a event from an XML string
+     * Parse a event from an XML string. This method is thread safe and may be
+     * invoked concurrently.
      * 
      * @param xml
      * @return a CoT Event that can either be valid or invalid.
      */
     public static CotEvent parse(final String xml) {
-        CotEvent e = cotHandler.parseXML(xml);
+        CotEvent e;
+        try {
+            e = pullParser.get().parse(xml);
+        } catch (CotPullParser.UnsupportedMarkupException ex) {
+            e = cotHandler.get().parseXML(xml);
+        }
+        logInvalid(e, xml);
+        return e;
+    }
+
+    /**
+     * Parse a event from UTF-8 encoded XML without first converting the
+     * message into a String. This method is thread safe and may be invoked
+     * concurrently.
+     *
+     * @param utf8 the UTF-8 encoded XML
+     * @param off the offset of the message in the array
+     * @param len the length of the message, in bytes
+     * @return a CoT Event that can either be valid or invalid.
+     */
+    public static CotEvent parse(final byte[] utf8, final int off,
+            final int len) {
+        return parse(ByteBuffer.wrap(utf8, off, len));
+    }
+
+    /**
+     * Parse a event from UTF-8 encoded XML without first converting the
+     * message into a String. The message is read from the buffer's position
+     * to its limit; the position of the buffer is not modified. This method is
+     * thread safe and may be invoked concurrently.
+     *
+     * @param utf8 the UTF-8 encoded XML
+     * @return a CoT Event that can either be valid or invalid.
+     */
+    public static CotEvent parse(final ByteBuffer utf8) {
+        CotEvent e;
+        try {
+            e = pullParser.get().parse(utf8);
+        } catch (CotPullParser.UnsupportedMarkupException ex) {
+            e = cotHandler.get().parseXML(decodeUtf8(utf8));
+        }
+        if (fileWriter != null && !e.isValid())
+            logInvalid(e, decodeUtf8(utf8));
+        return e;
+    }
+
+    /**
+     * Parse a standalone detail tag, e.g. the XML fallback carried by a TAK
+     * protocol message.
+     *
+     * @param xml the XML document with a root of <code>detail</code>
+     * @return the detail or <code>null</code> if it could not be parsed
+     */
+    static CotDetail parseDetail(final String xml) {
+        try {
+            return pullParser.get().parse(xml).getDetail();
+        } catch (CotPullParser.UnsupportedMarkupException ex) {
+            Log.w(TAG, "unsupported markup in detail", ex);
+            return null;
+        }
+    }
+
+    private static String decodeUtf8(final ByteBuffer utf8) {
+        return FileSystemUtils.UTF8_CHARSET.decode(utf8.duplicate())
+                .toString();
+    }
+
+    private static void logInvalid(final CotEvent e, final String xml) {
+        if (fileWriter == null || e.isValid())
+            return;
 
         //If the CotEvent is not valid, we should probably record it to a file if CotLogging is
         // enabled.
@@ -513,14 +603,11 @@ public class CotEvent implements Parcelable {
                 }
             }
         }
-        return e;
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        buildXml(sb);
-        return sb.toString();
+        return CotXmlSerializer.toXml(this);
     }
 
     @Override
@@ -147,6 +147,24 @@ public class CotPoint implements Parcelable {
         b.append("' />");
     }
 
+    /**
+     * Write the UTF-8 encoded XML representation of this point, identical to
+     * {@link #buildXml(Appendable)}.
+     */
+    void buildUtf8(CotXmlSerializer.Output out) {
+        out.writeAscii("<point lat='");
+        out.writeDouble(decimate(_lat, PRECISION_7));
+        out.writeAscii("' lon='");
+        out.writeDouble(decimate(_lon, PRECISION_7));
+        out.writeAscii("' hae='");
+        out.writeDouble(decimate(_hae, PRECISION_4));
+        out.writeAscii("' ce='");
+        out.writeDouble(decimate(_ce, PRECISION_1));
+        out.writeAscii("' le='");
+        out.writeDouble(decimate(_le, PRECISION_1));
+        out.writeAscii("' />");
+    }
+
     /**
      * Get the latitude
      * 
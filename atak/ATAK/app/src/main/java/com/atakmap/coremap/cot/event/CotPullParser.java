@@ -0,0 +1,757 @@
+package com.atakmap.coremap.cot.event;
+
+import com.atakmap.coremap.log.Log;
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Streaming pull parser for Cursor on Target XML. Unlike the SAX based
+ * {@link CotContentHandler}, the parser walks the message in a single pass
+ * over a reusable character buffer and builds the {@link CotEvent} directly,
+ * without going through a {@link java.io.Reader} or any global state.
+ *
+ * Instances are NOT thread safe, but are cheap to keep around; the intended
+ * use is one instance per thread (see {@link CotEvent#parse(String)}). The
+ * parser handles the subset of XML that CoT messages are made of -- elements,
+ * attributes, character and entity references, CDATA sections, comments and
+ * processing instructions. Documents that carry a DTD are rejected with an
+ * {@link UnsupportedMarkupException} so that the caller may fall back to a
+ * full XML parser.
+ */
+final class CotPullParser {
+
+    public static final String TAG = "CotPullParser";
+
+    /**
+     * Buffers larger than this are released after a parse so that one
+     * unusually large message does not pin memory for the life of a thread.
+     */
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    private static final int NAME_CACHE_SIZE = 256;
+
+    /**
+     * Thrown when the document contains markup the pull parser does not
+     * support.
+     */
+    static final class UnsupportedMarkupException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedMarkupException(String msg) {
+            super(msg);
+        }
+    }
+
+    /**
+     * Thrown when the document is not well formed.
+     */
+    private static final class MalformedXmlException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedXmlException(String msg, int pos) {
+            super(msg + " at offset " + pos);
+        }
+    }
+
+    private char[] _buf = new char[4096];
+    private int _len;
+    private int _pos;
+
+    private CharsetDecoder _decoder;
+
+    // element names of all open elements
+    private final ArrayList<String> _open = new ArrayList<>();
+    // open detail elements along with the start of their text in _text
+    private final ArrayList<CotDetail> _detailStack = new ArrayList<>();
+    private int[] _textMarks = new int[16];
+    private final StringBuilder _text = new StringBuilder();
+    private final StringBuilder _scratch = new StringBuilder();
+    private boolean _finishedDetail;
+
+    // attributes of the current start tag
+    private String[] _attrNames = new String[16];
+    private String[] _attrValues = new String[16];
+    private int _attrCount;
+
+    // element and attribute names repeat constantly across messages
+    private final String[] _nameCache = new String[NAME_CACHE_SIZE];
+
+    private CotEvent editor;
+
+    /**
+     * Parse an event from an XML string.
+     *
+     * @param xml the XML string
+     * @return a CoT Event that can either be valid or invalid.
+     * @throws UnsupportedMarkupException if the document uses markup that is
+     * not supported by this parser
+     */
+    CotEvent parse(final String xml) throws UnsupportedMarkupException {
+        final int len = (xml != null) ? xml.length() : 0;
+        ensureCapacity(len);
+        if (len > 0)
+            xml.getChars(0, len, _buf, 0);
+        _len = len;
+        return parseBuffer();
+    }
+
+    /**
+     * Parse an event from UTF-8 encoded XML. The position of the supplied
+     * buffer is not modified.
+     *
+     * @param utf8 the UTF-8 encoded XML
+     * @return a CoT Event that can either be valid or invalid.
+     * @throws UnsupportedMarkupException if the document uses markup that is
+     * not supported by this parser
+     */
+    CotEvent parse(final ByteBuffer utf8) throws UnsupportedMarkupException {
+        // UTF-8 never decodes to more chars than there are bytes
+        ensureCapacity(utf8.remaining());
+        if (_decoder == null) {
+            _decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        final CharBuffer out = CharBuffer.wrap(_buf);
+        _decoder.reset();
+        CoderResult result = _decoder.decode(utf8.duplicate(), out, true);
+        if (!result.isError())
+            result = _decoder.flush(out);
+        if (result.isError()) {
+            Log.e(TAG, "error decoding UTF-8 message: " + result);
+            _len = 0;
+        } else {
+            _len = out.position();
+        }
+        return parseBuffer();
+    }
+
+    private CotEvent parseBuffer() throws UnsupportedMarkupException {
+        _pos = 0;
+        _open.clear();
+        _detailStack.clear();
+        _text.setLength(0);
+        _finishedDetail = false;
+        _attrCount = 0;
+
+        editor = new CotEvent();
+        try {
+            if (_len == 0)
+                throw new MalformedXmlException("empty document", 0);
+            // byte order mark
+            if (_len > 0 && _buf[0] == '\uFEFF')
+                _pos++;
+            parseDocument();
+        } catch (MalformedXmlException | CotIllegalException
+                | RuntimeException e) {
+            Log.v(TAG, "Bad message encountered: "
+                    + new String(_buf, 0, _len));
+            Log.e(TAG, "error: ", e);
+        } finally {
+            release();
+        }
+        final CotEvent retval = editor;
+        editor = null;
+        return retval;
+    }
+
+    private void parseDocument() throws MalformedXmlException,
+            UnsupportedMarkupException, CotIllegalException {
+        boolean rootSeen = false;
+        while (_pos < _len) {
+            if (_buf[_pos] != '<') {
+                readText();
+            } else if (startsWith("<?")) {
+                skipPast("?>");
+            } else if (startsWith("<!--")) {
+                skipPast("-->");
+            } else if (startsWith("<![CDATA[")) {
+                readCData();
+            } else if (startsWith("<!")) {
+                throw new UnsupportedMarkupException(
+                        "document type declarations are not supported");
+            } else if (startsWith("</")) {
+                readEndTag();
+                if (_open.isEmpty())
+                    return;
+            } else {
+                if (rootSeen && _open.isEmpty())
+                    throw new MalformedXmlException("multiple root elements",
+                            _pos);
+                rootSeen = true;
+                readStartTag();
+                if (_open.isEmpty())
+                    return;
+            }
+        }
+        if (!_open.isEmpty())
+            throw new MalformedXmlException("unexpected end of document",
+                    _pos);
+    }
+
+    /**************************************************************************/
+    // Markup
+
+    private void readStartTag() throws MalformedXmlException,
+            CotIllegalException {
+        _pos++; // '<'
+        final String name = readName();
+        _attrCount = 0;
+        boolean empty = false;
+        while (true) {
+            skipWhitespace();
+            if (_pos >= _len)
+                throw new MalformedXmlException("unterminated start tag",
+                        _pos);
+            final char c = _buf[_pos];
+            if (c == '>') {
+                _pos++;
+                break;
+            } else if (c == '/') {
+                if (_pos + 1 >= _len || _buf[_pos + 1] != '>')
+                    throw new MalformedXmlException("expected '>'", _pos);
+                _pos += 2;
+                empty = true;
+                break;
+            }
+            final String attrName = readName();
+            skipWhitespace();
+            if (_pos >= _len || _buf[_pos] != '=')
+                throw new MalformedXmlException("expected '='", _pos);
+            _pos++;
+            skipWhitespace();
+            addAttribute(attrName, readAttributeValue());
+        }
+
+        _open.add(name);
+        startElement(name);
+        if (empty)
+            endElement();
+    }
+
+    private void readEndTag() throws MalformedXmlException {
+        _pos += 2; // "</"
+        final String name = readName();
+        skipWhitespace();
+        if (_pos >= _len || _buf[_pos] != '>')
+            throw new MalformedXmlException("expected '>'", _pos);
+        _pos++;
+        if (_open.isEmpty()
+                || !_open.get(_open.size() - 1).equals(name))
+            throw new MalformedXmlException("mismatched end tag " + name,
+                    _pos);
+        endElement();
+    }
+
+    private void readText() throws MalformedXmlException {
+        final boolean capture = !_detailStack.isEmpty();
+        int start = _pos;
+        while (_pos < _len) {
+            final char c = _buf[_pos];
+            if (c == '<') {
+                break;
+            } else if (c == '&') {
+                if (capture)
+                    _text.append(_buf, start, _pos - start);
+                readReference(capture ? _text : null);
+                start = _pos;
+            } else if (c == '\r') {
+                // line ending normalization
+                if (capture) {
+                    _text.append(_buf, start, _pos - start);
+                    _text.append('\n');
+                }
+                _pos++;
+                if (_pos < _len && _buf[_pos] == '\n')
+                    _pos++;
+                start = _pos;
+            } else {
+                _pos++;
+            }
+        }
+        if (capture)
+            _text.append(_buf, start, _pos - start);
+    }
+
+    private void readCData() throws MalformedXmlException {
+        _pos += 9; // "<![CDATA["
+        final int start = _pos;
+        final int end = indexOf("]]>");
+        if (end < 0)
+            throw new MalformedXmlException("unterminated CDATA section",
+                    start);
+        if (!_detailStack.isEmpty())
+            _text.append(_buf, start, end - start);
+        _pos = end + 3;
+    }
+
+    private void startElement(final String name) throws CotIllegalException {
+        final int depth = _detailStack.size();
+        if (name.equals("event") && depth == 0) {
+            editor.setType(_stringOrThrow("type", "event: missing type"));
+            editor.setVersion(_stringOrFallback("version", "2.0"));
+            editor.setUID(_stringOrThrow("uid", "event: missing uid"));
+            editor.setTime(_timeOrDefault("time",
+                    "event: illegal or missing time"));
+            editor.setStart(_timeOrDefault("start",
+                    "event: illegal or missing start"));
+            editor.setStale(_timeOrDefault("stale",
+                    "event: illegal or missing stale"));
+            editor.setHow(_stringOrFallback("how", ""));
+            editor.setOpex(_stringOrFallback("opex", null));
+            editor.setQos(_stringOrFallback("qos", null));
+            editor.setAccess(_stringOrFallback("access", null));
+            editor.setPoint(CotPoint.ZERO);
+            editor.setDetail(null);
+        } else if (name.equals("point") && depth == 0) {
+            double lat = _doubleOrThrow("lat",
+                    "point: illegal or missing lat");
+            double lon = _doubleOrThrow("lon",
+                    "point: illegal or missing lon");
+            double hae = _doubleOrFallback("hae", CotPoint.UNKNOWN);
+            double le = _doubleOrFallback("le", CotPoint.UNKNOWN);
+            double ce = _doubleOrFallback("ce", CotPoint.UNKNOWN);
+
+            // some systems are starting to spit out Double.NaN incorrectly
+            // for those values that are unknown correctly parse them
+            if (Double.isNaN(hae))
+                hae = CotPoint.UNKNOWN;
+            if (Double.isNaN(le))
+                le = CotPoint.UNKNOWN;
+            if (Double.isNaN(ce))
+                ce = CotPoint.UNKNOWN;
+
+            editor.setPoint(new CotPoint(lat, lon, hae, ce, le));
+        } else if (name.equals("detail") && depth == 0 && !_finishedDetail) {
+            editor.setDetail(_pushDetail(name));
+        } else if (depth > 0) {
+            // inside of detail tag just get DOM'ed out
+            _pushDetail(name);
+        }
+    }
+
+    private void endElement() {
+        _open.remove(_open.size() - 1);
+        // every element opened within the root detail tag is a detail
+        final int depth = _detailStack.size();
+        if (depth == 0)
+            return;
+
+        final CotDetail detail = _detailStack.remove(depth - 1);
+        final int mark = _textMarks[depth - 1];
+        if (_text.length() > mark) {
+            if (!isWhitespace(_text, mark))
+                detail.setInnerText(_text.substring(mark));
+            _text.setLength(mark);
+        }
+        if (depth == 1)
+            _finishedDetail = true;
+    }
+
+    private CotDetail _pushDetail(final String name) {
+        final CotDetail detail = new CotDetail(name);
+        for (int i = 0; i < _attrCount; ++i)
+            detail.setAttribute(_attrNames[i], _attrValues[i]);
+
+        final int depth = _detailStack.size();
+        if (depth > 0)
+            _detailStack.get(depth - 1).addChild(detail);
+
+        if (depth == _textMarks.length) {
+            int[] marks = new int[depth * 2];
+            System.arraycopy(_textMarks, 0, marks, 0, depth);
+            _textMarks = marks;
+        }
+        _textMarks[depth] = _text.length();
+        _detailStack.add(detail);
+        return detail;
+    }
+
+    /**************************************************************************/
+    // Lexical
+
+    private String readName() throws MalformedXmlException {
+        final int start = _pos;
+        while (_pos < _len) {
+            final char c = _buf[_pos];
+            if (c == '>' || c == '/' || c == '=' || c <= ' ')
+                break;
+            _pos++;
+        }
+        final int length = _pos - start;
+        if (length == 0)
+            throw new MalformedXmlException("expected name", start);
+
+        int hash = 0;
+        for (int i = start; i < _pos; i++)
+            hash = 31 * hash + _buf[i];
+        final int slot = hash & (NAME_CACHE_SIZE - 1);
+        final String cached = _nameCache[slot];
+        if (cached != null && regionEquals(cached, start, length))
+            return cached;
+        final String name = new String(_buf, start, length);
+        _nameCache[slot] = name;
+        return name;
+    }
+
+    private String readAttributeValue() throws MalformedXmlException {
+        if (_pos >= _len)
+            throw new MalformedXmlException("expected attribute value", _pos);
+        final char quote = _buf[_pos];
+        if (quote != '\'' && quote != '"')
+            throw new MalformedXmlException("expected quote", _pos);
+        _pos++;
+
+        final int start = _pos;
+        boolean simple = true;
+        while (_pos < _len) {
+            final char c = _buf[_pos];
+            if (c == quote)
+                break;
+            if (c == '&' || c == '\t' || c == '\n' || c == '\r')
+                simple = false;
+            else if (c == '<')
+                throw new MalformedXmlException("'<' in attribute value",
+                        _pos);
+            _pos++;
+        }
+        if (_pos >= _len)
+            throw new MalformedXmlException("unterminated attribute value",
+                    start);
+        final int end = _pos;
+        _pos++; // closing quote
+
+        if (simple)
+            return new String(_buf, start, end - start);
+
+        // attribute value normalization per XML 1.0 section 3.3.3
+        _scratch.setLength(0);
+        _pos = start;
+        while (_pos < end) {
+            final char c = _buf[_pos];
+            if (c == '&') {
+                readReference(_scratch);
+            } else if (c == '\r') {
+                _scratch.append(' ');
+                _pos++;
+                if (_pos < end && _buf[_pos] == '\n')
+                    _pos++;
+            } else {
+                _scratch.append(c == '\t' || c == '\n' ? ' ' : c);
+                _pos++;
+            }
+        }
+        _pos = end + 1;
+        return _scratch.toString();
+    }
+
+    /**
+     * Reads a character or predefined entity reference starting at the
+     * current position, appending the replacement text to <code>dst</code>
+     * if non-<code>null</code>.
+     */
+    private void readReference(final StringBuilder dst)
+            throws MalformedXmlException {
+        final int start = _pos;
+        int semi = -1;
+        for (int i = _pos + 1; i < _len && i < _pos + 12; i++) {
+            if (_buf[i] == ';') {
+                semi = i;
+                break;
+            }
+        }
+        if (semi < 0)
+            throw new MalformedXmlException("unterminated reference", start);
+        _pos = semi + 1;
+
+        final int nameStart = start + 1;
+        final int nameLen = semi - nameStart;
+        if (nameLen > 1 && _buf[nameStart] == '#') {
+            int cp = 0;
+            int radix = 10;
+            int i = nameStart + 1;
+            if (_buf[i] == 'x') {
+                radix = 16;
+                i++;
+            }
+            if (i == semi)
+                throw new MalformedXmlException("bad character reference",
+                        start);
+            for (; i < semi; i++) {
+                final int digit = Character.digit(_buf[i], radix);
+                if (digit < 0)
+                    throw new MalformedXmlException(
+                            "bad character reference", start);
+                cp = cp * radix + digit;
+                if (cp > Character.MAX_CODE_POINT)
+                    throw new MalformedXmlException(
+                            "bad character reference", start);
+            }
+            if (dst != null)
+                dst.appendCodePoint(cp);
+            return;
+        }
+
+        final char c;
+        if (regionEquals("amp", nameStart, nameLen))
+            c = '&';
+        else if (regionEquals("lt", nameStart, nameLen))
+            c = '<';
+        else if (regionEquals("gt", nameStart, nameLen))
+            c = '>';
+        else if (regionEquals("quot", nameStart, nameLen))
+            c = '"';
+        else if (regionEquals("apos", nameStart, nameLen))
+            c = '\'';
+        else
+            throw new MalformedXmlException("undeclared entity", start);
+        if (dst != null)
+            dst.append(c);
+    }
+
+    private void skipWhitespace() {
+        while (_pos < _len && _buf[_pos] <= ' ')
+            _pos++;
+    }
+
+    private void skipPast(final String s) throws MalformedXmlException {
+        final int end = indexOf(s);
+        if (end < 0)
+            throw new MalformedXmlException("expected " + s, _pos);
+        _pos = end + s.length();
+    }
+
+    private int indexOf(final String s) {
+        final int last = _len - s.length();
+        for (int i = _pos; i <= last; i++) {
+            if (regionEquals(s, i, s.length()))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean startsWith(final String s) {
+        return _pos + s.length() <= _len
+                && regionEquals(s, _pos, s.length());
+    }
+
+    private boolean regionEquals(final String s, final int off,
+            final int len) {
+        if (s.length() != len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (_buf[off + i] != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(final CharSequence s,
+            final int start) {
+        for (int i = start; i < s.length(); ++i) {
+            if (!Character.isWhitespace(s.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**************************************************************************/
+    // Buffers
+
+    private void ensureCapacity(final int len) {
+        if (_buf.length < len)
+            _buf = new char[Math.max(len, _buf.length * 2)];
+    }
+
+    private void release() {
+        if (_buf.length > MAX_RETAINED_BUFFER)
+            _buf = new char[4096];
+        if (_text.length() > MAX_RETAINED_BUFFER) {
+            _text.setLength(0);
+            _text.trimToSize();
+        }
+        if (_scratch.length() > MAX_RETAINED_BUFFER) {
+            _scratch.setLength(0);
+            _scratch.trimToSize();
+        }
+        _detailStack.clear();
+        _open.clear();
+        for (int i = 0; i < _attrCount; i++) {
+            _attrNames[i] = null;
+            _attrValues[i] = null;
+        }
+        _attrCount = 0;
+    }
+
+    /**************************************************************************/
+    // Attributes
+
+    private void addAttribute(final String name, final String value) {
+        if (_attrCount == _attrNames.length) {
+            final int size = _attrCount * 2;
+            String[] names = new String[size];
+            String[] values = new String[size];
+            System.arraycopy(_attrNames, 0, names, 0, _attrCount);
+            System.arraycopy(_attrValues, 0, values, 0, _attrCount);
+            _attrNames = names;
+            _attrValues = values;
+        }
+        _attrNames[_attrCount] = name;
+        _attrValues[_attrCount] = value;
+        _attrCount++;
+    }
+
+    private String _attr(final String name) {
+        for (int i = 0; i < _attrCount; i++) {
+            if (_attrNames[i].equals(name))
+                return _attrValues[i];
+        }
+        return null;
+    }
+
+    private CoordinatedTime _timeOrDefault(final String name,
+            final String msg) {
+        final String value = _attr(name);
+        if (value != null) {
+            final long millis = parseCotTime(value);
+            if (millis != Long.MIN_VALUE)
+                return new CoordinatedTime(millis);
+        }
+        try {
+            return CoordinatedTime.fromCot(value);
+        } catch (Exception ex) {
+            Log.e(TAG, "_timeOrDefault" + msg);
+            return new CoordinatedTime();
+        }
+    }
+
+    private String _stringOrThrow(final String name, final String msg)
+            throws CotIllegalException {
+        final String value = _attr(name);
+        if (value == null)
+            throw new CotIllegalException(msg);
+        return value;
+    }
+
+    private String _stringOrFallback(final String name,
+            final String fallback) {
+        final String value = _attr(name);
+        return (value != null) ? value : fallback;
+    }
+
+    private double _doubleOrThrow(final String name, final String msg)
+            throws CotIllegalException {
+        try {
+            return Double.parseDouble(_attr(name));
+        } catch (Exception ex) {
+            throw new CotIllegalException(msg);
+        }
+    }
+
+    private double _doubleOrFallback(final String name,
+            final double fallback) {
+        try {
+            return Double.parseDouble(_attr(name));
+        } catch (Exception ex) {
+            return fallback;
+        }
+    }
+
+    /**************************************************************************/
+    // Time
+
+    /**
+     * Parses a strictly formatted CoT time, <code>yyyy-MM-ddTHH:mm:ss[.S*]Z</code>
+     * without taking any locks or allocating. Anything else, including
+     * out of range fields, is left to {@link CoordinatedTime#fromCot(String)}.
+     *
+     * @param s the time string
+     * @return the epoch milliseconds or <code>Long.MIN_VALUE</code> if the
+     * string is not in the strict form
+     */
+    static long parseCotTime(final String s) {
+        final int len = s.length();
+        if (len < 20 || s.charAt(len - 1) != 'Z'
+                || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || s.charAt(10) != 'T' || s.charAt(13) != ':'
+                || s.charAt(16) != ':')
+            return Long.MIN_VALUE;
+
+        final int y = digits(s, 0, 4);
+        final int m = digits(s, 5, 2);
+        final int d = digits(s, 8, 2);
+        final int h = digits(s, 11, 2);
+        final int mm = digits(s, 14, 2);
+        final int sec = digits(s, 17, 2);
+        if (y < 0 || m < 1 || m > 12 || d < 1 || d > daysInMonth(y, m)
+                || h < 0 || h > 23 || mm < 0 || mm > 59 || sec < 0
+                || sec > 59)
+            return Long.MIN_VALUE;
+
+        int ms = 0;
+        if (len > 20) {
+            if (s.charAt(19) != '.' || len == 21)
+                return Long.MIN_VALUE;
+            // only millisecond precision is retained
+            for (int i = 20; i < len - 1; i++) {
+                final int digit = s.charAt(i) - '0';
+                if (digit < 0 || digit > 9)
+                    return Long.MIN_VALUE;
+                if (i < 23)
+                    ms = ms * 10 + digit;
+            }
+            for (int i = len - 1; i < 23; i++)
+                ms *= 10;
+        }
+
+        final long days = daysFromCivil(y, m, d);
+        return ((days * 24L + h) * 60L + mm) * 60000L + sec * 1000L + ms;
+    }
+
+    private static int digits(final String s, final int off, final int n) {
+        int v = 0;
+        for (int i = off; i < off + n; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            v = v * 10 + digit;
+        }
+        return v;
+    }
+
+    private static int daysInMonth(final int y, final int m) {
+        switch (m) {
+            case 2:
+                return ((y % 4 == 0 && y % 100 != 0) || y % 400 == 0) ? 29
+                        : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the number of days since 1970-01-01 for the proleptic
+     * Gregorian date
+     */
+    private static long daysFromCivil(int y, final int m, final int d) {
+        if (m <= 2)
+            y--;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = (int) (y - era * 400);
+        final int doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468L;
+    }
+}
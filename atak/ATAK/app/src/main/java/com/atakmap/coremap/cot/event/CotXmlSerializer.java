@@ -0,0 +1,366 @@
+package com.atakmap.coremap.cot.event;
+
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes a {@link CotEvent} as UTF-8 encoded XML directly into a
+ * reusable, per thread buffer. The output is identical to
+ * {@link CotEvent#buildXml(Appendable)}.
+ *
+ * Unlike building the XML through a <code>StringBuilder</code>, no
+ * intermediate Strings are created for escaped text or timestamps. The
+ * serialized form of each {@link CotDetail} subtree is retained once it has
+ * been serialized twice without modification, so that repeatedly sent
+ * events (self SA, rebroadcasts) only pay for the parts that changed.
+ */
+public final class CotXmlSerializer {
+
+    private static final String XML_HEADER = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?><event";
+
+    /** the largest buffer that is retained between invocations */
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    /** end of the year 9999, the last time representable as yyyy */
+    private static final long MAX_FORMATTED_TIME = 253402300800000L;
+
+    private static final ThreadLocal<Output> output = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output();
+        }
+    };
+
+    private CotXmlSerializer() {
+    }
+
+    /**
+     * Serialize the event into the calling thread's buffer.
+     *
+     * @param event the event
+     * @return a buffer containing the UTF-8 encoded XML, between position
+     * and limit. The buffer is only valid until the next call to any
+     * method of this class on the same thread and must not be retained.
+     */
+    public static ByteBuffer serialize(final CotEvent event) {
+        final Output out = output.get();
+        out.reset();
+        writeEvent(out, event);
+        return out.view();
+    }
+
+    /**
+     * @param event the event
+     * @return the UTF-8 encoded XML
+     */
+    public static byte[] toByteArray(final CotEvent event) {
+        final Output out = output.get();
+        out.reset();
+        writeEvent(out, event);
+        final byte[] retval = new byte[out.len];
+        System.arraycopy(out.buf, 0, retval, 0, out.len);
+        return retval;
+    }
+
+    /**
+     * @param event the event
+     * @return the XML
+     */
+    public static String toXml(final CotEvent event) {
+        final Output out = output.get();
+        out.reset();
+        writeEvent(out, event);
+        return new String(out.buf, 0, out.len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the UTF-8 encoded XML to a stream.
+     *
+     * @param event the event
+     * @param os the stream
+     */
+    public static void write(final CotEvent event, final OutputStream os)
+            throws IOException {
+        final Output out = output.get();
+        out.reset();
+        writeEvent(out, event);
+        os.write(out.buf, 0, out.len);
+    }
+
+    private static void writeEvent(final Output out, final CotEvent event) {
+        out.writeAscii(XML_HEADER);
+        final String vers = event.getVersion();
+        if (vers != null && !vers.equals("")) {
+            out.writeAscii(" version='");
+            out.write(vers, false);
+            out.writeByte('\'');
+        }
+        out.writeAscii(" uid='");
+        out.write(event.getUID(), true);
+        out.writeAscii("' type='");
+        out.write(event.getType(), false);
+        out.writeAscii("' time='");
+        out.writeTime(event.getTime());
+        out.writeAscii("' start='");
+        out.writeTime(event.getStart());
+        out.writeAscii("' stale='");
+        out.writeTime(event.getStale());
+        out.writeAscii("' how='");
+        out.write(event.getHow(), false);
+        out.writeByte('\'');
+        writeOptional(out, " opex='", event.getOpex());
+        writeOptional(out, " qos='", event.getQos());
+        writeOptional(out, " access='", event.getAccess());
+        out.writeByte('>');
+        final CotPoint point = event.getCotPoint();
+        if (point != null)
+            point.buildUtf8(out);
+        final CotDetail detail = event.getDetail();
+        if (detail != null)
+            detail.buildUtf8(out);
+        out.writeAscii("</event>");
+    }
+
+    private static void writeOptional(final Output out, final String attr,
+            final String value) {
+        if (value == null)
+            return;
+        out.writeAscii(attr);
+        out.write(value, false);
+        out.writeByte('\'');
+    }
+
+    /**
+     * The retained serialization of a {@link CotDetail}. A form is current
+     * if the detail has not been modified since it was created and the
+     * forms of all of its children are still current.
+     */
+    static final class Form {
+        final int modCount;
+        final Form[] children;
+        /** only populated once the detail was serialized twice unchanged */
+        final byte[] utf8;
+
+        Form(final int modCount, final Form[] children, final byte[] utf8) {
+            this.modCount = modCount;
+            this.children = children;
+            this.utf8 = utf8;
+        }
+    }
+
+    /**
+     * Growable UTF-8 output buffer.
+     */
+    static final class Output {
+        byte[] buf = new byte[1024];
+        int len;
+        private ByteBuffer view;
+
+        void reset() {
+            if (buf.length > MAX_RETAINED_BUFFER) {
+                buf = new byte[1024];
+                view = null;
+            }
+            len = 0;
+        }
+
+        ByteBuffer view() {
+            if (view == null || view.array() != buf)
+                view = ByteBuffer.wrap(buf);
+            view.clear();
+            view.limit(len);
+            return view;
+        }
+
+        private void ensureCapacity(final int n) {
+            if (len + n <= buf.length)
+                return;
+            final byte[] grown = new byte[Math.max(buf.length * 2, len + n)];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+
+        void writeByte(final char c) {
+            ensureCapacity(1);
+            buf[len++] = (byte) c;
+        }
+
+        void write(final byte[] b) {
+            ensureCapacity(b.length);
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        byte[] copy(final int from) {
+            final byte[] retval = new byte[len - from];
+            System.arraycopy(buf, from, retval, 0, retval.length);
+            return retval;
+        }
+
+        /**
+         * Writes a string known to only contain ASCII characters.
+         */
+        void writeAscii(final String s) {
+            final int n = s.length();
+            ensureCapacity(n);
+            for (int i = 0; i < n; i++)
+                buf[len++] = (byte) s.charAt(i);
+        }
+
+        /**
+         * Writes a string, optionally escaped as
+         * {@link CotEvent#escapeXmlText(String)} does. <code>null</code> is
+         * written as an empty string when escaping and as "null" otherwise,
+         * matching the behavior of the <code>Appendable</code> based
+         * serialization.
+         */
+        void write(final String s, final boolean escape) {
+            if (s == null) {
+                if (!escape)
+                    writeAscii("null");
+                return;
+            }
+            final int n = s.length();
+            // worst case is an escaped quote or apostrophe for every
+            // character
+            ensureCapacity(n * 6);
+            for (int i = 0; i < n; i++) {
+                final char c = s.charAt(i);
+                if (c < 0x80) {
+                    if (escape) {
+                        switch (c) {
+                            case '&':
+                                writeEntity("&amp;");
+                                continue;
+                            case '<':
+                                writeEntity("&lt;");
+                                continue;
+                            case '>':
+                                writeEntity("&gt;");
+                                continue;
+                            case '"':
+                                writeEntity("&quot;");
+                                continue;
+                            case '\'':
+                                writeEntity("&apos;");
+                                continue;
+                            case '\n':
+                                writeEntity("&#10;");
+                                continue;
+                            default:
+                                break;
+                        }
+                    }
+                    buf[len++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[len++] = (byte) (0xC0 | (c >> 6));
+                    buf[len++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[len++] = (byte) (0xF0 | (cp >> 18));
+                    buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[len++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, replaced like String.getBytes
+                    buf[len++] = (byte) '?';
+                } else {
+                    buf[len++] = (byte) (0xE0 | (c >> 12));
+                    buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[len++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void writeEntity(final String entity) {
+            // capacity was reserved by the caller
+            for (int i = 0; i < entity.length(); i++)
+                buf[len++] = (byte) entity.charAt(i);
+        }
+
+        void writeDouble(final double v) {
+            // whole numbers, e.g. unknown values, are formatted without
+            // going through Double.toString
+            if (v == Math.rint(v) && Math.abs(v) < 1e7
+                    && !(v == 0d && Double.doubleToRawLongBits(v) != 0L)) {
+                writeLong((long) v);
+                writeAscii(".0");
+            } else {
+                writeAscii(Double.toString(v));
+            }
+        }
+
+        private void writeLong(long v) {
+            ensureCapacity(20);
+            if (v < 0) {
+                buf[len++] = '-';
+                v = -v;
+            }
+            final int start = len;
+            do {
+                buf[len++] = (byte) ('0' + (v % 10));
+                v /= 10;
+            } while (v != 0);
+            // reverse the digits
+            for (int i = start, j = len - 1; i < j; i++, j--) {
+                final byte t = buf[i];
+                buf[i] = buf[j];
+                buf[j] = t;
+            }
+        }
+
+        private void writeDigits(final int v, final int n) {
+            for (int i = n - 1, d = v; i >= 0; i--, d /= 10)
+                buf[len + i] = (byte) ('0' + (d % 10));
+            len += n;
+        }
+
+        /**
+         * Writes the time as <code>yyyy-MM-dd'T'HH:mm:ss.SSS'Z'</code>,
+         * identical to {@link CoordinatedTime#toString()}.
+         */
+        void writeTime(final CoordinatedTime time) {
+            final long millis = time.getMilliseconds();
+            if (millis < 0L || millis >= MAX_FORMATTED_TIME) {
+                writeAscii(time.toString());
+                return;
+            }
+
+            final long days = millis / 86400000L;
+            final int msOfDay = (int) (millis % 86400000L);
+
+            // civil from days, see CotPullParser.daysFromCivil
+            final long z = days + 719468L;
+            final long era = z / 146097L;
+            final long doe = z - era * 146097L;
+            final long yoe = (doe - doe / 1460L + doe / 36524L - doe / 146096L)
+                    / 365L;
+            final long doy = doe - (365L * yoe + yoe / 4L - yoe / 100L);
+            final long mp = (5L * doy + 2L) / 153L;
+            final int d = (int) (doy - (153L * mp + 2L) / 5L + 1L);
+            final int m = (int) (mp < 10L ? mp + 3L : mp - 9L);
+            final int y = (int) (yoe + era * 400L + (m <= 2 ? 1L : 0L));
+
+            ensureCapacity(24);
+            writeDigits(y, 4);
+            buf[len++] = '-';
+            writeDigits(m, 2);
+            buf[len++] = '-';
+            writeDigits(d, 2);
+            buf[len++] = 'T';
+            writeDigits(msOfDay / 3600000, 2);
+            buf[len++] = ':';
+            writeDigits((msOfDay / 60000) % 60, 2);
+            buf[len++] = ':';
+            writeDigits((msOfDay / 1000) % 60, 2);
+            buf[len++] = '.';
+            writeDigits(msOfDay % 1000, 3);
+            buf[len++] = 'Z';
+        }
+    }
+}
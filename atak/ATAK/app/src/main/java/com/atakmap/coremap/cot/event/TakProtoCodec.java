@@ -0,0 +1,743 @@
+package com.atakmap.coremap.cot.event;
+
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes and decodes {@link CotEvent} instances as TAK Protocol Version 1
+ * payloads, the <code>TakMessage</code> protocol buffer defined under
+ * <code>takproto/</code>.
+ *
+ * The well known detail elements (<code>contact</code>,
+ * <code>__group</code>, <code>precisionlocation</code>,
+ * <code>status</code>, <code>takv</code> and <code>track</code>) are
+ * carried in their strongly typed messages; everything else is serialized
+ * into the <code>xmlDetail</code> fallback. Following the rules in
+ * <code>detail.proto</code>, an element is only converted when it appears
+ * exactly once and every attribute maps onto the message. This codec is
+ * additionally strict about values, so that an element is only converted
+ * when decoding will reproduce it exactly; anything else is left in
+ * <code>xmlDetail</code>.
+ *
+ * The payload does not include the mesh or streaming TAK protocol header.
+ * The message is written directly from the event without any intermediate
+ * XML and all methods are thread safe.
+ */
+public final class TakProtoCodec {
+
+    public static final String TAG = "TakProtoCodec";
+
+    /** the TAK protocol version of the payloads produced by this codec */
+    public static final int PROTOCOL_VERSION = 1;
+
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_FIXED64 = 1;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRETYPE_FIXED32 = 5;
+
+    // TakMessage
+    private static final int TAKMESSAGE_COTEVENT = 2;
+
+    // CotEvent
+    private static final int COTEVENT_TYPE = 1;
+    private static final int COTEVENT_ACCESS = 2;
+    private static final int COTEVENT_QOS = 3;
+    private static final int COTEVENT_OPEX = 4;
+    private static final int COTEVENT_UID = 5;
+    private static final int COTEVENT_SEND_TIME = 6;
+    private static final int COTEVENT_START_TIME = 7;
+    private static final int COTEVENT_STALE_TIME = 8;
+    private static final int COTEVENT_HOW = 9;
+    private static final int COTEVENT_LAT = 10;
+    private static final int COTEVENT_LON = 11;
+    private static final int COTEVENT_HAE = 12;
+    private static final int COTEVENT_CE = 13;
+    private static final int COTEVENT_LE = 14;
+    private static final int COTEVENT_DETAIL = 15;
+
+    // Detail; the strongly typed elements are numbered from 2 in the order
+    // of ELEMENTS
+    private static final int DETAIL_XML = 1;
+
+    private static final int CONTACT = 0;
+    private static final int GROUP = 1;
+    private static final int PRECISION_LOCATION = 2;
+    private static final int STATUS = 3;
+    private static final int TAKV = 4;
+    private static final int TRACK = 5;
+
+    private static final String[] ELEMENTS = {
+            "contact",
+            "__group",
+            "precisionlocation",
+            "status",
+            "takv",
+            "track",
+    };
+
+    /**
+     * Attributes of each strongly typed element, in field order. Every
+     * attribute is required except for the contact endpoint.
+     */
+    private static final String[][] ATTRIBUTES = {
+            {
+                    "endpoint", "callsign"
+            },
+            {
+                    "name", "role"
+            },
+            {
+                    "geopointsrc", "altsrc"
+            },
+            {
+                    "battery"
+            },
+            {
+                    "device", "platform", "os", "version"
+            },
+            {
+                    "speed", "course"
+            },
+    };
+
+    private static final ThreadLocal<Writer> writer = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    private TakProtoCodec() {
+    }
+
+    /**************************************************************************/
+    // Encode
+
+    /**
+     * Encode an event as a <code>TakMessage</code>.
+     *
+     * @param event a valid event
+     * @return the serialized <code>TakMessage</code>
+     * @throws IllegalArgumentException if the event is not valid
+     */
+    public static byte[] encode(final CotEvent event) {
+        if (event == null || !event.isValid())
+            throw new IllegalArgumentException("event is not valid");
+
+        final Writer w = writer.get();
+        w.reset();
+        final int mark = w.beginMessage(TAKMESSAGE_COTEVENT);
+        writeEvent(w, event);
+        w.endMessage(mark);
+        return w.toByteArray();
+    }
+
+    private static void writeEvent(final Writer w, final CotEvent event) {
+        w.writeString(COTEVENT_TYPE, event.getType());
+        w.writeString(COTEVENT_ACCESS, event.getAccess());
+        w.writeString(COTEVENT_QOS, event.getQos());
+        w.writeString(COTEVENT_OPEX, event.getOpex());
+        w.writeString(COTEVENT_UID, event.getUID());
+        w.writeUInt64(COTEVENT_SEND_TIME, event.getTime().getMilliseconds());
+        w.writeUInt64(COTEVENT_START_TIME,
+                event.getStart().getMilliseconds());
+        w.writeUInt64(COTEVENT_STALE_TIME,
+                event.getStale().getMilliseconds());
+        w.writeString(COTEVENT_HOW, event.getHow());
+
+        final CotPoint point = event.getCotPoint();
+        w.writeDouble(COTEVENT_LAT, point.getLat());
+        w.writeDouble(COTEVENT_LON, point.getLon());
+        w.writeDouble(COTEVENT_HAE, point.getHae());
+        w.writeDouble(COTEVENT_CE, point.getCe());
+        w.writeDouble(COTEVENT_LE, point.getLe());
+
+        final CotDetail detail = event.getDetail();
+        if (detail != null) {
+            final int mark = w.beginMessage(COTEVENT_DETAIL);
+            writeDetail(w, detail);
+            w.endMessage(mark);
+        }
+    }
+
+    private static void writeDetail(final Writer w, final CotDetail detail) {
+        final List<CotDetail> children = detail.getChildren();
+
+        // locate the elements that may be converted
+        final CotDetail[] typed = new CotDetail[ELEMENTS.length];
+        final boolean[] repeated = new boolean[ELEMENTS.length];
+        for (CotDetail child : children) {
+            final int idx = indexOfElement(child.getElementName());
+            if (idx < 0)
+                continue;
+            if (typed[idx] != null)
+                repeated[idx] = true;
+            typed[idx] = child;
+        }
+        for (int i = 0; i < typed.length; i++) {
+            if (repeated[i] || typed[i] != null && !isConvertible(i, typed[i]))
+                typed[i] = null;
+        }
+
+        // everything that was not converted goes out as XML
+        StringBuilder xml = null;
+        for (CotDetail child : children) {
+            final int idx = indexOfElement(child.getElementName());
+            if (idx >= 0 && typed[idx] == child)
+                continue;
+            if (xml == null)
+                xml = new StringBuilder();
+            child.buildXml(xml);
+        }
+        if (xml != null)
+            w.writeString(DETAIL_XML, xml.toString());
+
+        for (int i = 0; i < typed.length; i++) {
+            if (typed[i] == null)
+                continue;
+            final int mark = w.beginMessage(i + 2);
+            final String[] attrs = ATTRIBUTES[i];
+            for (int j = 0; j < attrs.length; j++) {
+                final String value = typed[i].getAttribute(attrs[j]);
+                switch (i) {
+                    case STATUS:
+                        w.writeUInt64(j + 1, Integer.parseInt(value));
+                        break;
+                    case TRACK:
+                        w.writeDouble(j + 1, Double.parseDouble(value));
+                        break;
+                    default:
+                        w.writeString(j + 1, value);
+                        break;
+                }
+            }
+            w.endMessage(mark);
+        }
+    }
+
+    private static int indexOfElement(final String name) {
+        for (int i = 0; i < ELEMENTS.length; i++)
+            if (ELEMENTS[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns <code>true</code> if the element can be carried in its typed
+     * message and decoding will produce an identical element.
+     */
+    private static boolean isConvertible(final int idx,
+            final CotDetail element) {
+        if (element.childCount() > 0 || element.getInnerText() != null)
+            return false;
+
+        final String[] attrs = ATTRIBUTES[idx];
+        int present = 0;
+        for (String attr : attrs) {
+            final String value = element.getAttribute(attr);
+            if (value == null) {
+                // contact endpoint is optional
+                if (idx == CONTACT && attr.equals("endpoint"))
+                    continue;
+                return false;
+            }
+            present++;
+            switch (idx) {
+                case CONTACT:
+                    // an empty endpoint is dropped on decode
+                    if (attr.equals("endpoint") && value.isEmpty())
+                        return false;
+                    break;
+                case STATUS:
+                    try {
+                        final int battery = Integer.parseInt(value);
+                        if (battery < 0
+                                || !Integer.toString(battery).equals(value))
+                            return false;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                    break;
+                case TRACK:
+                    try {
+                        if (!Double.toString(Double.parseDouble(value))
+                                .equals(value))
+                            return false;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return element.getAttributeCount() == present;
+    }
+
+    /**************************************************************************/
+    // Decode
+
+    /**
+     * Decode a <code>TakMessage</code>.
+     *
+     * @param payload the serialized <code>TakMessage</code>
+     * @return the event or <code>null</code> if the message does not carry
+     * an event (e.g. a control only message)
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    public static CotEvent decode(final byte[] payload) {
+        return decode(payload, 0, payload.length);
+    }
+
+    /**
+     * Decode a <code>TakMessage</code>.
+     *
+     * @param payload the buffer containing the message
+     * @param off the offset of the message in the buffer
+     * @param len the length of the message, in bytes
+     * @return the event or <code>null</code> if the message does not carry
+     * an event (e.g. a control only message)
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    public static CotEvent decode(final byte[] payload, final int off,
+            final int len) {
+        if (off < 0 || len < 0 || off + len > payload.length)
+            throw new IndexOutOfBoundsException();
+
+        final Reader r = new Reader(payload, off, off + len);
+        CotEvent event = null;
+        while (r.hasRemaining()) {
+            final int tag = r.readTag();
+            if (tag == key(TAKMESSAGE_COTEVENT, WIRETYPE_LENGTH_DELIMITED)) {
+                final int limit = r.pushLimit();
+                event = readEvent(r);
+                r.popLimit(limit);
+            } else {
+                r.skip(tag);
+            }
+        }
+        return event;
+    }
+
+    private static CotEvent readEvent(final Reader r) {
+        String type = "";
+        String access = null;
+        String qos = null;
+        String opex = null;
+        String uid = "";
+        long time = 0L;
+        long start = 0L;
+        long stale = 0L;
+        String how = "";
+        double lat = 0d;
+        double lon = 0d;
+        double hae = 0d;
+        double ce = 0d;
+        double le = 0d;
+        CotDetail detail = null;
+
+        while (r.hasRemaining()) {
+            final int tag = r.readTag();
+            switch (tag) {
+                case (COTEVENT_TYPE << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    type = r.readString();
+                    break;
+                case (COTEVENT_ACCESS << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    access = emptyToNull(r.readString());
+                    break;
+                case (COTEVENT_QOS << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    qos = emptyToNull(r.readString());
+                    break;
+                case (COTEVENT_OPEX << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    opex = emptyToNull(r.readString());
+                    break;
+                case (COTEVENT_UID << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    uid = r.readString();
+                    break;
+                case (COTEVENT_SEND_TIME << 3) | WIRETYPE_VARINT:
+                    time = r.readVarint();
+                    break;
+                case (COTEVENT_START_TIME << 3) | WIRETYPE_VARINT:
+                    start = r.readVarint();
+                    break;
+                case (COTEVENT_STALE_TIME << 3) | WIRETYPE_VARINT:
+                    stale = r.readVarint();
+                    break;
+                case (COTEVENT_HOW << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    how = r.readString();
+                    break;
+                case (COTEVENT_LAT << 3) | WIRETYPE_FIXED64:
+                    lat = r.readDouble();
+                    break;
+                case (COTEVENT_LON << 3) | WIRETYPE_FIXED64:
+                    lon = r.readDouble();
+                    break;
+                case (COTEVENT_HAE << 3) | WIRETYPE_FIXED64:
+                    hae = r.readDouble();
+                    break;
+                case (COTEVENT_CE << 3) | WIRETYPE_FIXED64:
+                    ce = r.readDouble();
+                    break;
+                case (COTEVENT_LE << 3) | WIRETYPE_FIXED64:
+                    le = r.readDouble();
+                    break;
+                case (COTEVENT_DETAIL << 3) | WIRETYPE_LENGTH_DELIMITED:
+                    final int limit = r.pushLimit();
+                    detail = readDetail(r);
+                    r.popLimit(limit);
+                    break;
+                default:
+                    r.skip(tag);
+                    break;
+            }
+        }
+
+        // like the XML parser, a message missing required fields produces
+        // an invalid event rather than an error
+        return new CotEvent(uid, type, CotEvent.VERSION_2_0,
+                new CotPoint(lat, lon, hae, ce, le),
+                new CoordinatedTime(time), new CoordinatedTime(start),
+                new CoordinatedTime(stale), how, detail, opex, qos, access);
+    }
+
+    private static CotDetail readDetail(final Reader r) {
+        String xml = null;
+        final CotDetail[] typed = new CotDetail[ELEMENTS.length];
+        while (r.hasRemaining()) {
+            final int tag = r.readTag();
+            final int field = tag >>> 3;
+            if (tag == key(DETAIL_XML, WIRETYPE_LENGTH_DELIMITED)) {
+                xml = r.readString();
+            } else if (field >= 2 && field < 2 + ELEMENTS.length
+                    && (tag & 0x7) == WIRETYPE_LENGTH_DELIMITED) {
+                final int limit = r.pushLimit();
+                typed[field - 2] = readElement(r, field - 2);
+                r.popLimit(limit);
+            } else {
+                r.skip(tag);
+            }
+        }
+
+        CotDetail detail = null;
+        if (xml != null && !xml.isEmpty())
+            detail = CotEvent.parseDetail("<detail>" + xml + "</detail>");
+        if (detail == null)
+            detail = new CotDetail();
+
+        // data in xmlDetail takes precedence over the equivalent message
+        for (int i = 0; i < typed.length; i++) {
+            if (typed[i] != null && detail.getChild(ELEMENTS[i]) == null)
+                detail.addChild(typed[i]);
+        }
+        return detail;
+    }
+
+    private static CotDetail readElement(final Reader r, final int idx) {
+        final String[] attrs = ATTRIBUTES[idx];
+        final String[] values = new String[attrs.length];
+        while (r.hasRemaining()) {
+            final int tag = r.readTag();
+            final int field = tag >>> 3;
+            if (field < 1 || field > attrs.length) {
+                r.skip(tag);
+                continue;
+            }
+            final int wireType = tag & 0x7;
+            if (idx == STATUS && wireType == WIRETYPE_VARINT) {
+                // uint32, clamped as the native implementation does
+                values[field - 1] = Long.toString(
+                        Math.min(r.readVarint() & 0xFFFFFFFFL,
+                                Integer.MAX_VALUE));
+            } else if (idx == TRACK && wireType == WIRETYPE_FIXED64) {
+                values[field - 1] = Double.toString(r.readDouble());
+            } else if (idx != STATUS && idx != TRACK
+                    && wireType == WIRETYPE_LENGTH_DELIMITED) {
+                values[field - 1] = r.readString();
+            } else {
+                r.skip(tag);
+            }
+        }
+
+        final CotDetail element = new CotDetail(ELEMENTS[idx]);
+        for (int i = 0; i < attrs.length; i++) {
+            String value = values[i];
+            if (value == null) {
+                // proto3 omits default values
+                value = (idx == STATUS) ? "0"
+                        : (idx == TRACK) ? Double.toString(0d) : "";
+            }
+            if (idx == CONTACT && i == 0 && value.isEmpty())
+                continue;
+            element.setAttribute(attrs[i], value);
+        }
+        return element;
+    }
+
+    private static String emptyToNull(final String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    private static int key(final int field, final int wireType) {
+        return (field << 3) | wireType;
+    }
+
+    /**************************************************************************/
+    // Wire format
+
+    /**
+     * Protocol buffer writer over a growable array. Nested messages are
+     * written in place, reserving a single byte for the length and shifting
+     * the content if the length turns out to need more.
+     */
+    private static final class Writer {
+        private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+        private byte[] buf = new byte[1024];
+        private int len;
+
+        void reset() {
+            if (buf.length > MAX_RETAINED_BUFFER)
+                buf = new byte[1024];
+            len = 0;
+        }
+
+        byte[] toByteArray() {
+            final byte[] retval = new byte[len];
+            System.arraycopy(buf, 0, retval, 0, len);
+            return retval;
+        }
+
+        private void ensureCapacity(final int n) {
+            if (len + n <= buf.length)
+                return;
+            final byte[] grown = new byte[Math.max(buf.length * 2, len + n)];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+
+        private void writeTag(final int field, final int wireType) {
+            writeVarint(key(field, wireType));
+        }
+
+        private void writeVarint(long v) {
+            ensureCapacity(10);
+            while ((v & ~0x7FL) != 0L) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        void writeUInt64(final int field, final long v) {
+            if (v == 0L)
+                return;
+            writeTag(field, WIRETYPE_VARINT);
+            writeVarint(v);
+        }
+
+        void writeDouble(final int field, final double v) {
+            long bits = Double.doubleToRawLongBits(v);
+            if (bits == 0L)
+                return;
+            writeTag(field, WIRETYPE_FIXED64);
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++) {
+                buf[len++] = (byte) bits;
+                bits >>>= 8;
+            }
+        }
+
+        void writeString(final int field, final String s) {
+            if (s == null || s.isEmpty())
+                return;
+            writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+            final int n = utf8Length(s);
+            writeVarint(n);
+            ensureCapacity(n);
+            final int slen = s.length();
+            for (int i = 0; i < slen; i++) {
+                final char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[len++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[len++] = (byte) (0xC0 | (c >> 6));
+                    buf[len++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < slen
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[len++] = (byte) (0xF0 | (cp >> 18));
+                    buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[len++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, replaced like String.getBytes
+                    buf[len++] = (byte) '?';
+                } else {
+                    buf[len++] = (byte) (0xE0 | (c >> 12));
+                    buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[len++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private static int utf8Length(final String s) {
+            final int slen = s.length();
+            int n = 0;
+            for (int i = 0; i < slen; i++) {
+                final char c = s.charAt(i);
+                if (c < 0x80) {
+                    n += 1;
+                } else if (c < 0x800) {
+                    n += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < slen
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    n += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    n += 1;
+                } else {
+                    n += 3;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * @return the mark to be passed to {@link #endMessage(int)}
+         */
+        int beginMessage(final int field) {
+            writeTag(field, WIRETYPE_LENGTH_DELIMITED);
+            ensureCapacity(1);
+            return len++;
+        }
+
+        void endMessage(final int mark) {
+            final int size = len - mark - 1;
+            int n = 1;
+            for (int v = size >>> 7; v != 0; v >>>= 7)
+                n++;
+            if (n > 1) {
+                ensureCapacity(n - 1);
+                System.arraycopy(buf, mark + 1, buf, mark + n, size);
+                len += n - 1;
+            }
+            int v = size;
+            int i = mark;
+            while ((v & ~0x7F) != 0) {
+                buf[i++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[i] = (byte) v;
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+        private int limit;
+
+        Reader(final byte[] buf, final int pos, final int limit) {
+            this.buf = buf;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        boolean hasRemaining() {
+            return pos < limit;
+        }
+
+        int readTag() {
+            final long tag = readVarint();
+            if ((tag >>> 3) == 0L || tag > Integer.MAX_VALUE)
+                throw malformed("invalid tag");
+            return (int) tag;
+        }
+
+        long readVarint() {
+            long v = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= limit)
+                    throw malformed("truncated varint");
+                final byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw malformed("varint too long");
+        }
+
+        double readDouble() {
+            if (limit - pos < 8)
+                throw malformed("truncated fixed64");
+            long bits = 0L;
+            for (int i = 7; i >= 0; i--)
+                bits = (bits << 8) | (buf[pos + i] & 0xFFL);
+            pos += 8;
+            return Double.longBitsToDouble(bits);
+        }
+
+        private int readLength() {
+            final long n = readVarint();
+            if (n < 0L || n > limit - pos)
+                throw malformed("truncated length delimited field");
+            return (int) n;
+        }
+
+        String readString() {
+            final int n = readLength();
+            final String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+
+        /**
+         * Reads the length of an embedded message and restricts reading to
+         * it.
+         *
+         * @return the previous limit, to be passed to
+         * {@link #popLimit(int)}
+         */
+        int pushLimit() {
+            final int n = readLength();
+            final int old = limit;
+            limit = pos + n;
+            return old;
+        }
+
+        void popLimit(final int old) {
+            pos = limit;
+            limit = old;
+        }
+
+        void skip(final int tag) {
+            switch (tag & 0x7) {
+                case WIRETYPE_VARINT:
+                    readVarint();
+                    break;
+                case WIRETYPE_FIXED64:
+                    if (limit - pos < 8)
+                        throw malformed("truncated fixed64");
+                    pos += 8;
+                    break;
+                case WIRETYPE_LENGTH_DELIMITED:
+                    final int n = readLength();
+                    pos += n;
+                    break;
+                case WIRETYPE_FIXED32:
+                    if (limit - pos < 4)
+                        throw malformed("truncated fixed32");
+                    pos += 4;
+                    break;
+                default:
+                    throw malformed("unsupported wire type " + (tag & 0x7));
+            }
+        }
+
+        private IllegalArgumentException malformed(final String msg) {
+            return new IllegalArgumentException(
+                    "malformed TAK protocol message: " + msg);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 
 package com.atakmap.spatial.file;
 
+import com.atakmap.app.DeveloperOptions;
 import com.atakmap.app.R;
 import com.atakmap.coremap.filesystem.FileSystemUtils;
 import com.atakmap.coremap.io.IOProviderFactory;
 import com.atakmap.map.layer.feature.DataSourceFeatureDataStore;
+import com.atakmap.map.layer.feature.kml.KMLFeatureDataSource;
 
 import java.io.File;
 import java.util.HashSet;
@@ -57,6 +59,20 @@ public class KmlFileSpatialDb extends OgrSpatialDb {
         return PROCESS_REJECT;
     }
 
+    /**
+     * KML and KMZ files are parsed by the OGR driver. Set the developer
+     * option "kml-streaming-ingest" to 1 to parse them with the streaming
+     * {@link KMLFeatureDataSource} instead, which does not load large files
+     * into memory but splits a Folder whose placemarks are interrupted by a
+     * nested Folder into several overlays of the same name.
+     */
+    @Override
+    protected String getProviderHint(File file) {
+        if (DeveloperOptions.getIntOption("kml-streaming-ingest", 0) == 0)
+            return super.getProviderHint(file);
+        return KMLFeatureDataSource.PROVIDER_NAME;
+    }
+
     @Override
     public String getFileMimeType() {
         return KML_FILE_MIME_TYPE;
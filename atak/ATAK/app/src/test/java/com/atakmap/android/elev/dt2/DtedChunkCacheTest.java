@@ -0,0 +1,171 @@
+
+package com.atakmap.android.elev.dt2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class DtedChunkCacheTest {
+
+    private static final int COLUMNS = 5;
+    private static final int ROWS = 7;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Writes a DTED cell whose post at column <code>c</code> and southern
+     * index <code>s</code> has elevation <code>(c * 100) + s + offset</code>.
+     */
+    private static File writeCell(File file, int offset) throws IOException {
+        final int dataRecSize = 8 + (ROWS * 2) + 4;
+        final ByteBuffer buf = ByteBuffer
+                .allocate(3428 + (COLUMNS * dataRecSize));
+        buf.order(ByteOrder.BIG_ENDIAN);
+        buf.position(47);
+        buf.put(String.format("%04d%04d", COLUMNS, ROWS)
+                .getBytes(StandardCharsets.US_ASCII));
+        buf.position(3428);
+        for (int c = 0; c < COLUMNS; c++) {
+            buf.put(new byte[8]);
+            for (int s = 0; s < ROWS; s++)
+                buf.putShort((short) ((c * 100) + s + offset));
+            buf.put(new byte[4]);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buf.array());
+        }
+        return file;
+    }
+
+    private File createCell() throws IOException {
+        return writeCell(new File(temp.newFolder("dted"), "n10.dt2"), 0);
+    }
+
+    @Test
+    public void posts_are_addressed_north_to_south() throws IOException {
+        DtedChunkCache cache = new DtedChunkCache(2, 1024L * 1024L, 4);
+        DtedChunkCache.Cell cell = cache.getCell(createCell());
+        assertEquals(COLUMNS, cell.columns);
+        assertEquals(ROWS, cell.rows);
+        assertEquals(3, cell.numChunksX);
+        assertEquals(4, cell.numChunksY);
+
+        for (int c = 0; c < COLUMNS; c++)
+            for (int r = 0; r < ROWS; r++)
+                assertEquals((c * 100) + (ROWS - 1 - r),
+                        cache.getPost(cell, c, r), 0f);
+
+        // partial chunk at the south-east corner
+        DtedChunkCache.Chunk chunk = cache.getChunk(cell, 2, 3);
+        assertEquals(1, chunk.columns);
+        assertEquals(1, chunk.rows);
+        assertEquals(400f, chunk.getSample(0, 0), 0f);
+    }
+
+    @Test
+    public void height_is_interpolated() throws IOException {
+        DtedChunkCache cache = new DtedChunkCache(2, 1024L * 1024L, 4);
+        DtedChunkCache.Cell cell = cache.getCell(createCell());
+        // halfway between columns 0 and 1 at southern index 3
+        assertEquals(53f, cache.getHeight(cell, 10.5d, 20.125d), 1e-3f);
+        // south-west corner
+        assertEquals(0f, cache.getHeight(cell, 10d, 20d), 1e-3f);
+    }
+
+    @Test
+    public void chunks_are_cached_within_budget() throws IOException {
+        // 2x2 chunks are 16 bytes
+        DtedChunkCache cache = new DtedChunkCache(2, 32L, 4);
+        DtedChunkCache.Cell cell = cache.getCell(createCell());
+
+        DtedChunkCache.Chunk chunk = cache.getChunk(cell, 0, 0);
+        assertSame(chunk, cache.getChunk(cell, 0, 0));
+        DtedChunkCache.Statistics stats = cache.getStatistics();
+        assertEquals(1, stats.hits);
+        assertEquals(1, stats.misses);
+
+        cache.getChunk(cell, 1, 0);
+        cache.getChunk(cell, 0, 1);
+        stats = cache.getStatistics();
+        assertEquals(1, stats.evictions);
+        assertEquals(2, stats.chunks);
+        assertEquals(32L, stats.bytes);
+        assertNotSame(chunk, cache.getChunk(cell, 0, 0));
+    }
+
+    @Test
+    public void modified_cell_is_reopened() throws IOException {
+        DtedChunkCache cache = new DtedChunkCache(2, 1024L * 1024L, 4);
+        File file = createCell();
+        DtedChunkCache.Cell cell = cache.getCell(file);
+        assertSame(cell, cache.getCell(file));
+        assertEquals(6f, cache.getPost(cell, 0, 0), 0f);
+
+        writeCell(file, 1000);
+        assertTrue(file.setLastModified(file.lastModified() + 2000L));
+        DtedChunkCache.Cell reopened = cache.getCell(file);
+        assertNotSame(cell, reopened);
+        assertEquals(1006f, cache.getPost(reopened, 0, 0), 0f);
+        // chunks of the stale cell are discarded
+        assertEquals(1, cache.getStatistics().chunks);
+    }
+
+    @Test
+    public void chunks_outlive_open_cells() throws IOException {
+        DtedChunkCache cache = new DtedChunkCache(2, 1024L * 1024L, 1);
+        File dir = temp.newFolder("cells");
+        File first = writeCell(new File(dir, "n10.dt2"), 0);
+        File second = writeCell(new File(dir, "n11.dt2"), 1000);
+
+        DtedChunkCache.Chunk chunk = cache.getChunk(cache.getCell(first), 0,
+                0);
+        cache.getChunk(cache.getCell(second), 0, 0);
+        assertSame(chunk, cache.getChunk(cache.getCell(first), 0, 0));
+        assertEquals(2, cache.getStatistics().chunks);
+    }
+
+    @Test
+    public void posts_are_read_without_caching() throws IOException {
+        DtedChunkCache cache = new DtedChunkCache(2, 1024L * 1024L, 4);
+        DtedChunkCache.Cell cell = cache.getCell(createCell());
+        for (int c = 0; c < COLUMNS; c++)
+            for (int r = 0; r < ROWS; r++)
+                assertEquals(cache.getPost(cell, c, r),
+                        new DtedChunkCache(2, 1024L * 1024L, 4)
+                                .readPost(cell, c, r),
+                        0f);
+
+        DtedChunkCache cold = new DtedChunkCache(2, 1024L * 1024L, 4);
+        DtedChunkCache.Cell coldCell = cold.getCell(cell.file);
+        assertEquals(306f, cold.readPost(coldCell, 3, 0), 0f);
+        DtedChunkCache.Statistics stats = cold.getStatistics();
+        assertEquals(0, stats.chunks);
+        assertEquals(0L, stats.misses);
+
+        // served from the chunk once it is cached
+        cold.getChunk(coldCell, 1, 0);
+        assertEquals(306f, cold.readPost(coldCell, 3, 0), 0f);
+        assertEquals(1L, cold.getStatistics().hits);
+    }
+
+    @Test
+    public void null_posts_are_nan() throws IOException {
+        DtedChunkCache cache = new DtedChunkCache(2, 1024L * 1024L, 4);
+        File file = createCell();
+        // -1 offset makes the south-west post 0xFFFF
+        writeCell(file, -1);
+        DtedChunkCache.Cell cell = cache.getCell(file);
+        assertTrue(Float.isNaN(cache.getPost(cell, 0, ROWS - 1)));
+        assertTrue(Float.isNaN(cache.getHeight(cell, 10.1d, 20.1d)));
+    }
+}
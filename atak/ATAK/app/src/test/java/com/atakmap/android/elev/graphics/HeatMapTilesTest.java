@@ -0,0 +1,307 @@
+
+package com.atakmap.android.elev.graphics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HeatMapTilesTest {
+
+    private static double elevation(double lat, double lng) {
+        return (lat * 10d) + lng;
+    }
+
+    /**
+     * Fills each pixel of a tile with a linear function of its location and
+     * counts the tiles computed.
+     */
+    private static class LinearSource implements HeatMapTiles.Source {
+        final AtomicInteger queries = new AtomicInteger();
+
+        @Override
+        public void query(HeatMapParams tile, int level) {
+            queries.incrementAndGet();
+            final double north = tile.upperLeft.getLatitude();
+            final double west = tile.upperLeft.getLongitude();
+            final double dLat = (tile.lowerLeft.getLatitude() - north)
+                    / tile.ySampleResolution;
+            final double dLng = (tile.upperRight.getLongitude() - west)
+                    / tile.xSampleResolution;
+            for (int y = 0; y < tile.ySampleResolution; y++)
+                for (int x = 0; x < tile.xSampleResolution; x++)
+                    tile.elevationData[(y * tile.xSampleResolution)
+                            + x] = (float) elevation(north + (y * dLat),
+                                    west + (x * dLng));
+        }
+    }
+
+    private static HeatMapParams sample(HeatMapTiles tiles, int level,
+            double[] lats, double[] lngs, int[] coarse) {
+        HeatMapParams result = new HeatMapParams();
+        result.elevationData = new float[lats.length];
+        coarse[0] = tiles.sample(lats, lngs, lats.length, level, result);
+        return result;
+    }
+
+    @Test
+    public void level_matches_post_spacing() {
+        assertEquals(180d / 16d, HeatMapTiles.getPostSpacing(0), 0d);
+        assertEquals(5, HeatMapTiles.selectLevel(
+                HeatMapTiles.getPostSpacing(5)));
+        assertEquals(6, HeatMapTiles.selectLevel(
+                HeatMapTiles.getPostSpacing(5) * 0.99d));
+        assertEquals(HeatMapTiles.MAX_LEVEL, HeatMapTiles.selectLevel(0d));
+
+        // the whole world at level 10 is far more tiles than allowed
+        final int level = HeatMapTiles.limitLevel(-90d, -180d, 90d, 180d,
+                10);
+        assertTrue(level < 10);
+        final double span = HeatMapTiles.getTileSpan(level);
+        assertTrue((360d / span)
+                * (180d / span) <= HeatMapTiles.MAX_TILES_PER_QUERY);
+        assertEquals(10, HeatMapTiles.limitLevel(34d, -117d, 34.01d, -116.99d,
+                10));
+    }
+
+    @Test
+    public void samples_are_interpolated_from_tiles() {
+        LinearSource source = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(source, 64, 2);
+        try {
+            assertTrue(tiles.compute(33.9d, -117.2d, 34.3d, -116.8d, 8, 5000L,
+                    new QuerySignal()));
+
+            final double[] lats = {
+                    33.95d, 34.0d, 34.123d, 34.25d
+            };
+            final double[] lngs = {
+                    -117.15d, -117d, -116.9d, -116.85d
+            };
+            final int[] coarse = new int[1];
+            HeatMapParams result = sample(tiles, 8, lats, lngs, coarse);
+            assertEquals(0, coarse[0]);
+            assertEquals(lats.length, result.numSamples);
+            for (int i = 0; i < lats.length; i++)
+                assertEquals(elevation(lats[i], lngs[i]),
+                        result.elevationData[i], 1e-2d);
+            assertEquals(elevation(lats[0], lngs[0]), result.minElev, 1e-2d);
+            assertEquals(elevation(lats[3], lngs[3]), result.maxElev, 1e-2d);
+        } finally {
+            tiles.dispose();
+        }
+    }
+
+    @Test
+    public void tiles_are_reused_when_panning() {
+        LinearSource source = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(source, 64, 2);
+        try {
+            final int level = 6;
+            final double span = HeatMapTiles.getTileSpan(level);
+            // 3x2 tiles
+            final double minLat = 90d - (10 * span) - (1.5d * span);
+            final double minLng = -180d + (20 * span) + (span / 2d);
+            assertTrue(tiles.compute(minLat, minLng, minLat + span,
+                    minLng + (2d * span), level, 5000L,
+                    new QuerySignal()));
+            assertEquals(6, source.queries.get());
+
+            // pan east by one tile, only the new column is computed
+            assertTrue(tiles.compute(minLat, minLng + span, minLat + span,
+                    minLng + (3d * span), level, 5000L,
+                    new QuerySignal()));
+            assertEquals(8, source.queries.get());
+            assertEquals(8, tiles.getTileCount());
+        } finally {
+            tiles.dispose();
+        }
+    }
+
+    @Test
+    public void coarser_tiles_stand_in_for_missing_tiles() {
+        LinearSource source = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(source, 64, 2);
+        try {
+            assertTrue(tiles.compute(10d, 20d, 10.5d, 20.5d, 4, 5000L,
+                    new QuerySignal()));
+
+            final double[] lats = {
+                    10.2d
+            };
+            final double[] lngs = {
+                    20.3d
+            };
+            final int[] coarse = new int[1];
+            HeatMapParams result = sample(tiles, 6, lats, lngs, coarse);
+            assertEquals(1, coarse[0]);
+            assertEquals(elevation(10.2d, 20.3d), result.elevationData[0],
+                    1e-2d);
+
+            // beyond the fallback levels nothing is available
+            result = sample(tiles, 4 + HeatMapTiles.MAX_FALLBACK_LEVELS + 1,
+                    lats, lngs, coarse);
+            assertEquals(0, coarse[0]);
+            assertEquals(0, result.numSamples);
+            assertTrue(Float.isNaN(result.elevationData[0]));
+        } finally {
+            tiles.dispose();
+        }
+    }
+
+    @Test
+    public void columns_wrap_across_antimeridian() {
+        LinearSource source = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(source, 64, 2);
+        try {
+            assertTrue(tiles.compute(-1d, 179d, 1d, 181d, 5, 5000L,
+                    new QuerySignal()));
+
+            final double[] lats = {
+                    0.5d, 0.5d
+            };
+            final double[] lngs = {
+                    180.5d, -179.5d
+            };
+            final int[] coarse = new int[1];
+            HeatMapParams result = sample(tiles, 5, lats, lngs, coarse);
+            assertEquals(2, result.numSamples);
+            assertEquals(elevation(0.5d, -179.5d), result.elevationData[0],
+                    1e-2d);
+            assertEquals(result.elevationData[1], result.elevationData[0],
+                    0f);
+        } finally {
+            tiles.dispose();
+        }
+    }
+
+    @Test
+    public void incomplete_tiles_are_available_to_later_queries()
+            throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final LinearSource linear = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(new HeatMapTiles.Source() {
+            @Override
+            public void query(HeatMapParams tile, int level) {
+                started.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException ignored) {
+                }
+                linear.query(tile, level);
+            }
+        }, 64, 1);
+        try {
+            assertFalse(tiles.compute(10.1d, 20.1d, 10.2d, 20.2d, 4, 50L,
+                    new QuerySignal()));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(0, tiles.getTileCount());
+
+            // the tile continues to be computed after the deadline
+            proceed.countDown();
+            assertTrue(tiles.compute(10.1d, 20.1d, 10.2d, 20.2d, 4, 5000L,
+                    new QuerySignal()));
+            assertEquals(1, tiles.getTileCount());
+            assertEquals(1, linear.queries.get());
+        } finally {
+            tiles.dispose();
+        }
+    }
+
+    @Test
+    public void canceled_query_cancels_tiles() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch canceled = new CountDownLatch(1);
+        final LinearSource linear = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(new HeatMapTiles.Source() {
+            private boolean first = true;
+
+            @Override
+            public void query(HeatMapParams tile, int level) {
+                if (!first) {
+                    linear.query(tile, level);
+                    return;
+                }
+                first = false;
+                tile.querySignal.setOnCancelListener(
+                        new QuerySignal.OnCancelListener() {
+                            @Override
+                            public void onCancel() {
+                                canceled.countDown();
+                            }
+                        });
+                started.countDown();
+                try {
+                    canceled.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, 64, 1);
+        try {
+            final QuerySignal signal = new QuerySignal();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        started.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                    signal.cancel();
+                }
+            }).start();
+            assertFalse(tiles.compute(10.1d, 20.1d, 10.2d, 20.2d, 4, 5000L,
+                    signal));
+            assertTrue(canceled.await(5, TimeUnit.SECONDS));
+
+            // the single worker only starts the next tile once the canceled
+            // tile has finished
+            assertTrue(tiles.compute(-10.2d, -20.2d, -10.1d, -20.1d, 4,
+                    5000L, new QuerySignal()));
+            assertEquals(1, linear.queries.get());
+
+            // canceled tiles are not retained
+            assertEquals(1, tiles.getTileCount());
+            final int[] coarse = new int[1];
+            HeatMapParams result = sample(tiles, 4, new double[] {
+                    10.15d
+            }, new double[] {
+                    20.15d
+            }, coarse);
+            assertEquals(0, result.numSamples);
+        } finally {
+            tiles.dispose();
+        }
+    }
+
+    @Test
+    public void southern_tiles_keep_post_spacing() {
+        LinearSource source = new LinearSource();
+        HeatMapTiles tiles = new HeatMapTiles(source, 64, 2);
+        try {
+            final int level = 3;
+            final double span = HeatMapTiles.getTileSpan(level);
+            assertTrue(tiles.compute(-90d, 10d, -90d + (span / 2d), 11d,
+                    level, 5000L, new QuerySignal()));
+
+            final double[] lats = {
+                    -90d + (span / 2d), -89.9d, -90d
+            };
+            final double[] lngs = {
+                    10.5d, 10.5d, 10.5d
+            };
+            final int[] coarse = new int[1];
+            HeatMapParams result = sample(tiles, level, lats, lngs, coarse);
+            assertEquals(0, coarse[0]);
+            assertEquals(lats.length, result.numSamples);
+            for (int i = 0; i < lats.length; i++)
+                assertEquals(elevation(lats[i], lngs[i]),
+                        result.elevationData[i], 1e-2d);
+        } finally {
+            tiles.dispose();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.atakmap.android.geofence.monitor;
+
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreparedPolygonTests {
+    @Test
+    public void concave_polygon_contains() {
+        // U shape opening to the north
+        final PreparedPolygon polygon = new PreparedPolygon(new GeoPoint[] {
+                new GeoPoint(35.0, -79.0),
+                new GeoPoint(35.0, -78.0),
+                new GeoPoint(36.0, -78.0),
+                new GeoPoint(36.0, -78.25),
+                new GeoPoint(35.25, -78.25),
+                new GeoPoint(35.25, -78.75),
+                new GeoPoint(36.0, -78.75),
+                new GeoPoint(36.0, -79.0),
+        });
+
+        assertTrue(polygon.contains(new GeoPoint(35.1, -78.5)));
+        assertTrue(polygon.contains(new GeoPoint(35.5, -78.1)));
+        assertTrue(polygon.contains(new GeoPoint(35.5, -78.9)));
+        // inside the notch
+        assertFalse(polygon.contains(new GeoPoint(35.5, -78.5)));
+        // outside the bounds
+        assertFalse(polygon.contains(new GeoPoint(34.9, -78.5)));
+        assertFalse(polygon.contains(new GeoPoint(35.5, -77.9)));
+    }
+
+    @Test
+    public void polygon_crossing_idl_contains() {
+        final PreparedPolygon polygon = new PreparedPolygon(new GeoPoint[] {
+                new GeoPoint(-10.0, 179.0),
+                new GeoPoint(-10.0, -179.0),
+                new GeoPoint(10.0, -179.0),
+                new GeoPoint(10.0, 179.0),
+        });
+
+        assertTrue(polygon.contains(new GeoPoint(0.0, 179.5)));
+        assertTrue(polygon.contains(new GeoPoint(0.0, -179.5)));
+        assertFalse(polygon.contains(new GeoPoint(0.0, 0.0)));
+        assertFalse(polygon.contains(new GeoPoint(0.0, -178.5)));
+    }
+}
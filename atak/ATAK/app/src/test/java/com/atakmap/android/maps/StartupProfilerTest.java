@@ -0,0 +1,50 @@
+package com.atakmap.android.maps;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StartupProfilerTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void report_lists_timeline_and_critical_path() {
+        StartupProfiler p = new StartupProfiler();
+        p.start();
+        final long t = System.nanoTime();
+        p.record("Location", StartupProfiler.INSTANTIATE, "main", t,
+                t + 2 * MS);
+        p.record("Location", StartupProfiler.CREATE, "main", t + 2 * MS,
+                t + 10 * MS);
+        p.record("Comms", StartupProfiler.INSTANTIATE, "main", t + 10 * MS,
+                t + 15 * MS);
+        p.record("Comms", StartupProfiler.CREATE, "main", t + 15 * MS,
+                t + 40 * MS);
+
+        List<StartupProfiler.Span> spans = p.getSpans();
+        assertEquals(4, spans.size());
+        assertEquals("Comms", spans.get(spans.size() - 1).name);
+
+        String report = p.getReport();
+        assertTrue(report, report.contains("2 components"));
+        assertTrue(report, report.contains(
+                "critical path: 40.0 ms (instantiate 7.0 ms, onCreate 33.0 ms)"));
+        // slowest contributor first
+        assertTrue(report, report.indexOf("      30.0  Comms") < report
+                .indexOf("      10.0  Location"));
+    }
+
+    @Test
+    public void spans_after_finish_are_ignored() {
+        StartupProfiler p = new StartupProfiler();
+        p.start();
+        p.record("A", StartupProfiler.CREATE, System.nanoTime());
+        assertTrue(p.finish());
+        assertFalse(p.finish());
+        p.record("B", StartupProfiler.CREATE, System.nanoTime());
+        assertEquals(1, p.getSpans().size());
+    }
+}
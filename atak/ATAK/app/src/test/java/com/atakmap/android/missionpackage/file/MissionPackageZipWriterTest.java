@@ -0,0 +1,271 @@
+
+package com.atakmap.android.missionpackage.file;
+
+import android.os.Environment;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({
+        Environment.class, android.util.Log.class
+})
+public class MissionPackageZipWriterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Environment.class);
+        PowerMockito.mockStatic(android.util.Log.class);
+    }
+
+    /**
+     * @return data that deflates well
+     */
+    private static byte[] text(int length) {
+        byte[] line = "<point lat='34.0' lon='-117.0' hae='0'/>\n"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = line[i % line.length];
+        return data;
+    }
+
+    /**
+     * @return data that does not deflate
+     */
+    private static byte[] noise(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private File file(String name, byte[] data) throws IOException {
+        return file(temp.getRoot(), name, data);
+    }
+
+    private static File file(File dir, String name, byte[] data)
+            throws IOException {
+        File f = new File(dir, name);
+        try (OutputStream out = new FileOutputStream(f)) {
+            out.write(data);
+        }
+        return f;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = in.read(buffer)) > 0)
+            out.write(buffer, 0, len);
+        return out.toByteArray();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    @Test
+    public void package_round_trips_through_java_zip() throws Exception {
+        final Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("MANIFEST/manifest.xml", text(300));
+        expected.put("files/track.kml", text(200 * 1024));
+        expected.put("files/photo.jpg", noise(150 * 1024));
+        expected.put("files/noise.bin", noise(70 * 1024));
+        expected.put("files/copied.cot", text(100 * 1024));
+        expected.put("files/été.txt", text(10));
+
+        final File zip = new File(temp.getRoot(), "package.zip");
+        final File tmpDir = new File(temp.getRoot(), "parts");
+        final File source = file("track.kml",
+                expected.get("files/track.kml"));
+        try (MissionPackageZipWriter writer = new MissionPackageZipWriter(
+                new FileOutputStream(zip), tmpDir, 2)) {
+            writer.setComment("round trip");
+            writer.putEntry("MANIFEST/manifest.xml",
+                    expected.get("MANIFEST/manifest.xml"));
+            writer.putFile("files/track.kml", source, false);
+            writer.putFile("files/photo.jpg",
+                    file("photo.jpg", expected.get("files/photo.jpg")),
+                    true);
+            writer.putFile("files/noise.bin",
+                    file("noise.bin", expected.get("files/noise.bin")),
+                    true);
+            writer.putStream("files/copied.cot", new ByteArrayInputStream(
+                    expected.get("files/copied.cot")));
+            writer.putEntry("files/été.txt",
+                    expected.get("files/été.txt"));
+            writer.finish();
+            assertTrue(writer.getFailed().isEmpty());
+        }
+
+        // part files and sources marked for deletion are removed
+        assertFalse(tmpDir.exists());
+        assertTrue(source.exists());
+        assertFalse(new File(temp.getRoot(), "photo.jpg").exists());
+        assertFalse(new File(temp.getRoot(), "noise.bin").exists());
+
+        // central directory
+        try (ZipFile zf = new ZipFile(zip)) {
+            assertEquals(expected.size(), zf.size());
+            assertEquals("round trip", zf.getComment());
+
+            Enumeration<? extends ZipEntry> entries = zf.entries();
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipEntry entry = entries.nextElement();
+                assertEquals(e.getKey(), entry.getName());
+                assertEquals(e.getValue().length, entry.getSize());
+                assertEquals(crc(e.getValue()), entry.getCrc());
+                try (InputStream in = zf.getInputStream(entry)) {
+                    assertArrayEquals(e.getKey(), e.getValue(), read(in));
+                }
+            }
+            assertFalse(entries.hasMoreElements());
+
+            // compressible content is deflated, the rest is stored
+            assertEquals(ZipEntry.DEFLATED,
+                    zf.getEntry("files/track.kml").getMethod());
+            assertEquals(ZipEntry.DEFLATED,
+                    zf.getEntry("files/copied.cot").getMethod());
+            assertTrue(zf.getEntry("files/track.kml")
+                    .getCompressedSize() < 200 * 1024);
+            assertEquals(ZipEntry.STORED,
+                    zf.getEntry("files/photo.jpg").getMethod());
+            assertEquals(ZipEntry.STORED,
+                    zf.getEntry("files/noise.bin").getMethod());
+            assertEquals(ZipEntry.STORED,
+                    zf.getEntry("files/été.txt").getMethod());
+        }
+
+        // local headers carry the sizes and CRC, no data descriptors
+        try (ZipInputStream zis = new ZipInputStream(
+                new FileInputStream(zip))) {
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                ZipEntry entry = zis.getNextEntry();
+                assertNotNull(entry);
+                assertEquals(e.getKey(), entry.getName());
+                assertEquals(e.getValue().length, entry.getSize());
+                assertEquals(crc(e.getValue()), entry.getCrc());
+                assertArrayEquals(e.getKey(), e.getValue(), read(zis));
+            }
+            assertNull(zis.getNextEntry());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(zip, "r")) {
+            byte[] header = new byte[8];
+            long offset = 0;
+            for (byte[] data : expected.values()) {
+                raf.seek(offset);
+                raf.readFully(header);
+                assertEquals(0x04034b50, le32(header, 0));
+                // bit 3, sizes and CRC follow the data
+                assertEquals(0, le16(header, 6) & 0x0008);
+
+                byte[] rest = new byte[22];
+                raf.readFully(rest);
+                long compressed = le32(rest, 10) & 0xFFFFFFFFL;
+                int nameLength = le16(rest, 18);
+                int extraLength = le16(rest, 20);
+                offset += 30 + nameLength + extraLength + compressed;
+                assertTrue(compressed <= data.length);
+            }
+
+            // the central directory immediately follows the last entry
+            raf.seek(offset);
+            raf.readFully(header, 0, 4);
+            assertEquals(0x02014b50, le32(header, 0));
+
+            // end of central directory record
+            byte[] comment = "round trip".getBytes(StandardCharsets.UTF_8);
+            byte[] end = new byte[22];
+            raf.seek(raf.length() - comment.length - end.length);
+            raf.readFully(end);
+            assertEquals(0x06054b50, le32(end, 0));
+            assertEquals(expected.size(), le16(end, 8));
+            assertEquals(expected.size(), le16(end, 10));
+            assertEquals(offset, le32(end, 16) & 0xFFFFFFFFL);
+            assertEquals(raf.length() - comment.length - end.length - offset,
+                    le32(end, 12) & 0xFFFFFFFFL);
+        }
+    }
+
+    @Test
+    public void closed_without_finish_removes_parts() throws Exception {
+        final File zip = new File(temp.getRoot(), "package.zip");
+        final File tmpDir = new File(temp.getRoot(), "parts");
+        try (MissionPackageZipWriter writer = new MissionPackageZipWriter(
+                new FileOutputStream(zip), tmpDir, 1)) {
+            writer.putStream("files/copied.cot",
+                    new ByteArrayInputStream(text(100 * 1024)));
+            assertTrue(tmpDir.exists());
+        }
+        assertFalse(tmpDir.exists());
+    }
+
+    @Test
+    public void stale_staging_removed() throws Exception {
+        final File files = temp.newFolder("files");
+        final File stale = StagedZipFile.getStagingDir(
+                files.getAbsolutePath(), "stale");
+        final File recent = StagedZipFile.getStagingDir(
+                files.getAbsolutePath(), "recent");
+        final File other = new File(files, "other");
+        for (File dir : Arrays.asList(stale, recent, other)) {
+            assertTrue(dir.mkdirs());
+            file(dir, "0", text(10));
+        }
+
+        final long now = System.currentTimeMillis();
+        final long age = StagedZipFile.STALE_STAGING_AGE_MILLIS;
+        for (File dir : Arrays.asList(stale, other)) {
+            assertTrue(new File(dir, "0").setLastModified(now - 2 * age));
+            assertTrue(dir.setLastModified(now - 2 * age));
+        }
+
+        assertEquals(1, StagedZipFile.pruneStaging(files, age, now));
+        assertFalse(stale.exists());
+        assertTrue(recent.exists());
+        // only staging directories are removed
+        assertTrue(other.exists());
+    }
+
+    private static int le16(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int le32(byte[] b, int off) {
+        return le16(b, off) | (le16(b, off + 2) << 16);
+    }
+}
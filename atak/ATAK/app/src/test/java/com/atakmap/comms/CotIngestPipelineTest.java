@@ -0,0 +1,275 @@
+package com.atakmap.comms;
+
+import com.atakmap.coremap.cot.event.CotEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CotIngestPipelineTest {
+
+    private static String event(String uid, String type, int second) {
+        final String time = "2021-05-04T15:12:"
+                + (second < 10 ? "0" : "") + second + ".000Z";
+        return "<event version='2.0' uid='" + uid + "' type='" + type
+                + "' time='" + time + "' start='" + time
+                + "' stale='2021-05-04T16:00:00.000Z' how='m-g'>"
+                + "<point lat='1' lon='" + second + "' hae='0' ce='0' le='0'/>"
+                + "</event>";
+    }
+
+    private static final class RecordingSink
+            implements CotIngestPipeline.Sink {
+        final List<CotEvent> events = new ArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Semaphore applied = new Semaphore(0);
+
+        @Override
+        public void apply(CotEvent event, String rxEndpointId) {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            synchronized (events) {
+                events.add(event);
+            }
+            applied.release();
+        }
+
+        void await(int count) throws InterruptedException {
+            assertTrue(applied.tryAcquire(count, 5, TimeUnit.SECONDS));
+        }
+
+        List<String> uids() {
+            final List<String> uids = new ArrayList<>();
+            synchronized (events) {
+                for (CotEvent e : events)
+                    uids.add(e.getUID());
+            }
+            return uids;
+        }
+    }
+
+    /**
+     * Counts down as events are parsed
+     */
+    private static final class ParseCounter
+            implements CotIngestPipeline.ParseListener {
+        final CountDownLatch latch;
+
+        ParseCounter(int count) {
+            latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onParsed(CotEvent event, String rxEndpointId) {
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void test_coalesce_by_uid() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        ParseCounter parsed = new ParseCounter(13);
+        CotIngestPipeline p = new CotIngestPipeline(1, 64,
+                CotIngestPipeline.DropPolicy.DROP_NEWEST, sink, parsed);
+        try {
+            // hold the apply thread on the first event
+            p.submit(event("first", "a-f-G", 0), null);
+            assertTrue(sink.started.await(5, TimeUnit.SECONDS));
+
+            p.submit(event("chat-1", "b-t-f", 1), null);
+            for (int i = 1; i <= 10; i++)
+                p.submit(event("track", "a-h-G", i), null);
+            p.submit(event("chat-2", "b-t-f", 1), null);
+            parsed.await();
+
+            sink.release.countDown();
+            sink.await(4);
+
+            // the surviving update keeps the place of the newest arrival
+            assertEquals("first", sink.events.get(0).getUID());
+            assertEquals("chat-1", sink.events.get(1).getUID());
+            assertEquals("track", sink.events.get(2).getUID());
+            assertEquals(10d, sink.events.get(2).getCotPoint().getLon(), 0d);
+            assertEquals("chat-2", sink.events.get(3).getUID());
+            assertEquals(9, p.getStatistics().coalesced);
+        } finally {
+            p.dispose();
+        }
+    }
+
+    @Test
+    public void test_update_not_applied_ahead_of_delete() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        // with a single worker, every message has been queued for apply
+        // once the trailing marker has been parsed
+        ParseCounter parsed = new ParseCounter(5);
+        CotIngestPipeline p = new CotIngestPipeline(1, 64,
+                CotIngestPipeline.DropPolicy.DROP_NEWEST, sink, parsed);
+        try {
+            p.submit(event("first", "a-f-G", 0), null);
+            assertTrue(sink.started.await(5, TimeUnit.SECONDS));
+
+            p.submit(event("track", "a-h-G", 1), null);
+            p.submit(event("delete", "t-x-d-d", 2), null);
+            p.submit(event("track", "a-h-G", 3), null);
+            p.submit(event("marker", "b-t-f", 4), null);
+            parsed.await();
+
+            sink.release.countDown();
+            sink.await(4);
+
+            assertEquals(Arrays.asList("first", "delete", "track", "marker"),
+                    sink.uids());
+            assertEquals(3d, sink.events.get(2).getCotPoint().getLon(), 0d);
+            assertEquals(1, p.getStatistics().coalesced);
+        } finally {
+            p.dispose();
+        }
+    }
+
+    @Test
+    public void test_applied_in_arrival_order() throws Exception {
+        final CountDownLatch secondParsed = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink();
+        sink.release.countDown();
+        // the first message finishes parsing only after the second one
+        CotIngestPipeline p = new CotIngestPipeline(2, 64,
+                CotIngestPipeline.DropPolicy.DROP_NEWEST, sink,
+                new CotIngestPipeline.ParseListener() {
+                    @Override
+                    public void onParsed(CotEvent event,
+                            String rxEndpointId) {
+                        if (event.getUID().equals("chat-1")) {
+                            secondParsed.countDown();
+                        } else if (event.getUID().equals("chat-0")) {
+                            try {
+                                secondParsed.await(5, TimeUnit.SECONDS);
+                            } catch (InterruptedException ignored) {
+                            }
+                        }
+                    }
+                });
+        try {
+            for (int i = 0; i < 50; i++)
+                p.submit(event("chat-" + i, "b-t-f", 1), null);
+            sink.await(50);
+
+            final List<String> uids = sink.uids();
+            for (int i = 0; i < 50; i++)
+                assertEquals("chat-" + i, uids.get(i));
+        } finally {
+            p.dispose();
+        }
+    }
+
+    @Test
+    public void test_stale_updates_discarded() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.release.countDown();
+        CotIngestPipeline p = new CotIngestPipeline(2, 64,
+                CotIngestPipeline.DropPolicy.DROP_NEWEST, sink, null);
+        try {
+            p.submit(event("track", "a-h-G", 30), null);
+            sink.await(1);
+            // replayed history
+            for (int i = 0; i < 30; i++)
+                p.submit(event("track", "a-h-G", i), null);
+            // applied in order, so the history has been processed once the
+            // marker has been applied
+            p.submit(event("marker", "b-t-f", 0), null);
+            sink.await(1);
+
+            assertEquals(Arrays.asList("track", "marker"), sink.uids());
+            assertEquals(30, p.getStatistics().stale);
+        } finally {
+            p.dispose();
+        }
+    }
+
+    @Test
+    public void test_drop_newest() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        CotIngestPipeline p = new CotIngestPipeline(1, 2,
+                CotIngestPipeline.DropPolicy.DROP_NEWEST, sink, null);
+        try {
+            p.submit(event("first", "a-f-G", 0), null);
+            assertTrue(sink.started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 20; i++)
+                p.submit(event("chat-" + i, "b-t-f", 1), null);
+            sink.release.countDown();
+
+            CotIngestPipeline.Statistics stats = p.getStatistics();
+            assertEquals(21, stats.received);
+            assertTrue(stats.dropped > 0);
+            sink.await((int) (stats.received - stats.dropped));
+
+            // the messages that were accepted are applied in order
+            final List<String> uids = sink.uids();
+            assertEquals("first", uids.get(0));
+            for (int i = 1; i < uids.size(); i++)
+                assertEquals("chat-" + (i - 1), uids.get(i));
+        } finally {
+            p.dispose();
+        }
+    }
+
+    @Test
+    public void test_drop_oldest() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        CotIngestPipeline p = new CotIngestPipeline(1, 2,
+                CotIngestPipeline.DropPolicy.DROP_OLDEST, sink, null);
+        try {
+            p.submit(event("first", "a-f-G", 0), null);
+            assertTrue(sink.started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 20; i++)
+                assertTrue(p.submit(event("chat-" + i, "b-t-f", 1), null));
+            sink.release.countDown();
+
+            CotIngestPipeline.Statistics stats = p.getStatistics();
+            assertTrue(stats.dropped > 0);
+            sink.await((int) (stats.received - stats.dropped));
+
+            // the newest message always survives
+            final List<String> uids = sink.uids();
+            assertEquals("chat-19", uids.get(uids.size() - 1));
+        } finally {
+            p.dispose();
+        }
+    }
+
+    @Test
+    public void test_submit_and_wait_does_not_drop() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.release.countDown();
+        CotIngestPipeline p = new CotIngestPipeline(2, 2,
+                CotIngestPipeline.DropPolicy.DROP_NEWEST, sink, null);
+        try {
+            for (int i = 0; i < 100; i++)
+                assertTrue(p.submitAndWait(event("chat-" + i, "b-t-f", 1),
+                        null));
+            sink.await(100);
+
+            assertEquals(0, p.getStatistics().dropped);
+            final List<String> uids = sink.uids();
+            for (int i = 0; i < 100; i++)
+                assertEquals("chat-" + i, uids.get(i));
+        } finally {
+            p.dispose();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.atakmap.comms;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeferredCotBacklogTest {
+
+    private static String event(String uid, String type, int second) {
+        final String time = "2021-05-04T15:12:"
+                + (second < 10 ? "0" : "") + second + ".000Z";
+        return "<event version='2.0' uid='" + uid + "' type='" + type
+                + "' time='" + time + "' start='" + time
+                + "' stale='2021-05-04T16:00:00.000Z' how='m-g'>"
+                + "<point lat='1' lon='" + second + "' hae='0' ce='0' le='0'/>"
+                + "</event>";
+    }
+
+    private static final class RecordingSink
+            implements DeferredCotBacklog.Sink {
+        final List<String> messages = new ArrayList<>();
+        final List<String> endpoints = new ArrayList<>();
+
+        @Override
+        public void replay(String message, String rxEndpointId) {
+            messages.add(message);
+            endpoints.add(rxEndpointId);
+        }
+    }
+
+    @Test
+    public void uid_and_type_are_read_from_raw_message() {
+        assertEquals("ANDROID-1", DeferredCotBacklog.getCoalescableUid(
+                event("ANDROID-1", "a-f-G-U-C", 1)));
+        assertEquals("x", DeferredCotBacklog.getCoalescableUid(
+                "<?xml version=\"1.0\"?><event type=\"a-h-G\" uid=\"x\">"
+                        + "<detail uid='y'/></event>"));
+        assertNull(DeferredCotBacklog.getCoalescableUid(
+                event("chat-1", "b-t-f", 1)));
+        assertNull(DeferredCotBacklog.getCoalescableUid("not cot"));
+    }
+
+    @Test
+    public void atoms_are_coalesced_at_newest_arrival() {
+        DeferredCotBacklog backlog = new DeferredCotBacklog(1024 * 1024, 0,
+                null);
+        backlog.add(event("a", "a-f-G", 1), "ep1");
+        backlog.add(event("chat", "b-t-f", 2), null);
+        backlog.add(event("a", "a-f-G", 3), "ep2");
+        assertEquals(2, backlog.size());
+
+        RecordingSink sink = new RecordingSink();
+        backlog.drain(sink);
+        assertEquals(2, sink.messages.size());
+        // the newest update replays after the intervening message
+        assertEquals(event("chat", "b-t-f", 2), sink.messages.get(0));
+        assertNull(sink.endpoints.get(0));
+        assertEquals(event("a", "a-f-G", 3), sink.messages.get(1));
+        assertEquals("ep2", sink.endpoints.get(1));
+
+        DeferredCotBacklog.Statistics stats = backlog.getStatistics();
+        assertEquals(3, stats.received);
+        assertEquals(1, stats.coalesced);
+        assertEquals(2, stats.replayed);
+        assertEquals(0, stats.pending);
+        assertTrue(stats.drainMillis >= 0);
+    }
+
+    @Test
+    public void overflow_is_spilled_and_replayed_in_order() throws Exception {
+        File dir = Files.createTempDirectory("backlog").toFile();
+        try {
+            // room for a single message in memory
+            DeferredCotBacklog backlog = new DeferredCotBacklog(1024,
+                    1024 * 1024, dir);
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String msg = event("chat-" + i, "b-t-f", i % 60);
+                assertTrue(backlog.add(msg, "ep" + i));
+                expected.add(msg);
+            }
+            // coalesced with a spilled message
+            backlog.add(event("track", "a-f-G", 1), null);
+            backlog.add(event("track", "a-f-G", 2), null);
+            expected.add(event("track", "a-f-G", 2));
+
+            DeferredCotBacklog.Statistics stats = backlog.getStatistics();
+            assertTrue(stats.spilled > 0);
+            assertTrue(stats.memoryBytes <= 1024);
+            assertEquals(0, stats.dropped);
+            assertEquals(51, stats.pending);
+
+            RecordingSink sink = new RecordingSink();
+            backlog.drain(sink);
+            assertEquals(expected, sink.messages);
+            assertEquals("ep49", sink.endpoints.get(49));
+
+            // the spill file is removed once replayed
+            String[] remaining = dir.list();
+            assertNotNull(remaining);
+            assertEquals(0, remaining.length);
+        } finally {
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void coalesced_atom_follows_spilled_messages() throws Exception {
+        File dir = Files.createTempDirectory("backlog").toFile();
+        try {
+            DeferredCotBacklog backlog = new DeferredCotBacklog(1024,
+                    1024 * 1024, dir);
+            // held in memory, then superseded once spilling has started
+            backlog.add(event("track", "a-f-G", 1), null);
+            backlog.add(event("delete", "t-x-d-d", 2), null);
+            backlog.add(event("track", "a-f-G", 3), null);
+            assertEquals(2, backlog.size());
+
+            RecordingSink sink = new RecordingSink();
+            backlog.drain(sink);
+            assertEquals(2, sink.messages.size());
+            assertEquals(event("delete", "t-x-d-d", 2), sink.messages.get(0));
+            assertEquals(event("track", "a-f-G", 3), sink.messages.get(1));
+            assertEquals(1, backlog.getStatistics().coalesced);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null)
+                for (File f : files)
+                    f.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void superseded_atom_is_kept_when_update_is_dropped() {
+        DeferredCotBacklog backlog = new DeferredCotBacklog(700, 0, null);
+        backlog.add(event("track", "a-f-G", 1), null);
+        // no room for the larger update
+        backlog.add(event("track", "a-f-G", 2).replace("</event>",
+                "<detail><remarks>" + new String(new char[512])
+                        .replace('\0', 'x') + "</remarks></detail></event>"),
+                null);
+        assertEquals(1, backlog.getStatistics().dropped);
+
+        RecordingSink sink = new RecordingSink();
+        backlog.drain(sink);
+        assertEquals(1, sink.messages.size());
+        assertEquals(event("track", "a-f-G", 1), sink.messages.get(0));
+    }
+
+    @Test
+    public void empty_backlog_is_closed() {
+        DeferredCotBacklog backlog = new DeferredCotBacklog(1024 * 1024, 0,
+                null);
+        assertTrue(backlog.closeIfEmpty());
+        assertFalse(backlog.add(event("a", "a-f-G", 1), null));
+
+        backlog = new DeferredCotBacklog(1024 * 1024, 0, null);
+        backlog.add(event("a", "a-f-G", 1), null);
+        assertFalse(backlog.closeIfEmpty());
+        RecordingSink sink = new RecordingSink();
+        backlog.drain(sink);
+        assertEquals(1, sink.messages.size());
+    }
+
+    @Test
+    public void overflow_is_dropped_without_spill() {
+        DeferredCotBacklog backlog = new DeferredCotBacklog(1024, 0, null);
+        for (int i = 0; i < 10; i++)
+            backlog.add(event("chat-" + i, "b-t-f", i), null);
+        DeferredCotBacklog.Statistics stats = backlog.getStatistics();
+        assertTrue(stats.dropped > 0);
+        assertEquals(10, stats.pending + stats.dropped);
+    }
+
+    @Test
+    public void messages_are_declined_once_drained() {
+        DeferredCotBacklog backlog = new DeferredCotBacklog(1024 * 1024, 0,
+                null);
+        backlog.drain(new RecordingSink());
+        assertFalse(backlog.add(event("a", "a-f-G", 1), null));
+    }
+}
@@ -0,0 +1,98 @@
+package com.atakmap.comms;
+
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SelfSARateControllerTest {
+
+    private static final GeoPoint ORIGIN = new GeoPoint(35d, -78d);
+
+    @Test
+    public void first_report_is_sent() {
+        SelfSARateController c = new SelfSARateController();
+        assertTrue(c.shouldSend(false, ORIGIN, 0d, Double.NaN, 0L, 3000));
+        assertTrue(c.shouldSend(true, null, 0d, Double.NaN, 0L, 3000));
+    }
+
+    @Test
+    public void unchanged_report_is_suppressed_and_counted_once_per_interval() {
+        SelfSARateController c = new SelfSARateController();
+        c.onSent(false, ORIGIN, 0d, Double.NaN);
+
+        // checked once per second, rate of 3 seconds
+        for (long t = 3000; t < 12000; t += 1000)
+            assertFalse(c.shouldSend(false, ORIGIN, 0d, Double.NaN, t, 3000));
+
+        assertEquals(1, c.getSentCount(false));
+        assertEquals(3, c.getSuppressedCount(false));
+        assertEquals(0, c.getSuppressedCount(true));
+    }
+
+    @Test
+    public void movement_past_threshold_is_sent() {
+        SelfSARateController c = new SelfSARateController();
+        c.onSent(true, ORIGIN, 1d, 0d);
+
+        // ~5.5m north
+        assertFalse(c.shouldSend(true, new GeoPoint(35.00005d, -78d), 1d, 0d,
+                1000L, 1000));
+        // ~11m north
+        assertTrue(c.shouldSend(true, new GeoPoint(35.0001d, -78d), 1d, 0d,
+                2000L, 1000));
+
+        c.setDistanceThreshold(20d);
+        assertFalse(c.shouldSend(true, new GeoPoint(35.0001d, -78d), 1d, 0d,
+                3000L, 1000));
+    }
+
+    @Test
+    public void course_change_while_moving() {
+        SelfSARateController c = new SelfSARateController();
+        c.onSent(false, ORIGIN, 5d, 350d);
+        c.onSent(true, ORIGIN, 5d, 350d);
+
+        assertFalse(c.hasCourseChanged(5d, 10d));
+        assertTrue(c.hasCourseChanged(5d, 30d));
+        // too slow for the course to be meaningful
+        assertFalse(c.hasCourseChanged(0.1d, 90d));
+        assertFalse(c.hasCourseChanged(5d, Double.NaN));
+        assertTrue(c.shouldSend(false, ORIGIN, 5d, 90d, 1000L, 1000));
+    }
+
+    @Test
+    public void suppression_disabled() {
+        SelfSARateController c = new SelfSARateController();
+        c.setSuppressUnchanged(false);
+        c.onSent(false, ORIGIN, 0d, Double.NaN);
+        assertTrue(c.shouldSend(false, ORIGIN, 0d, Double.NaN, 3000L, 3000));
+        assertEquals(0, c.getSuppressedCount(false));
+    }
+
+    @Test
+    public void congestion_factor_follows_inbound_rate() {
+        SelfSARateController c = new SelfSARateController();
+        assertEquals(1d, c.getCongestionFactor(0L), 0d);
+
+        // 100 messages per second for a minute
+        long t = 0;
+        for (int i = 0; i < 6000; i++) {
+            t += 10;
+            c.onMessageReceived(t);
+        }
+        assertEquals(100d, c.getInboundRate(t), 5d);
+        assertEquals(SelfSARateController.MAX_CONGESTION_FACTOR,
+                c.getCongestionFactor(t), 0d);
+
+        // quiet for a minute
+        assertEquals(1d, c.getCongestionFactor(t + 60000L), 0d);
+    }
+
+    @Test
+    public void distance_wraps_antimeridian() {
+        assertEquals(111319.5d,
+                SelfSARateController.distance(0d, 179.5d, 0d, -179.5d), 1d);
+    }
+}
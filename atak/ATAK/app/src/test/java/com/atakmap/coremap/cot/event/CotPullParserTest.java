@@ -0,0 +1,159 @@
+package com.atakmap.coremap.cot.event;
+
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CotPullParserTest {
+
+    private static final String SAMPLE = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>"
+            + "<event version='2.0' uid='ANDROID-1234' type='a-f-G-U-C' "
+            + "time='2021-05-04T15:12:07.123Z' start='2021-05-04T15:12:07.123Z' "
+            + "stale='2021-05-04T15:18:22.5Z' how='h-e'>"
+            + "<point lat='42.1' lon='-71.2' hae='12.5' ce='9999999.0' le='NaN'/>"
+            + "<detail><contact callsign='A &amp; B' endpoint='*:-1:stcp'/>"
+            + "<__group name=\"Cyan\" role='Team Member'></__group>"
+            + "<remarks source='x'>line one&#10;line &lt;two&gt;</remarks>"
+            + "<!-- comment --><link uid='u1'><nested a='1'/></link>"
+            + "<status><![CDATA[<raw>]]></status>"
+            + "</detail></event>";
+
+    @Test
+    public void test_parse_string() {
+        verifySample(CotEvent.parse(SAMPLE));
+    }
+
+    @Test
+    public void test_parse_utf8() {
+        byte[] utf8 = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[utf8.length + 4];
+        System.arraycopy(utf8, 0, padded, 2, utf8.length);
+        verifySample(CotEvent.parse(padded, 2, utf8.length));
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(utf8.length);
+        buf.put(utf8);
+        buf.flip();
+        verifySample(CotEvent.parse(buf));
+        assertEquals(0, buf.position());
+    }
+
+    @Test
+    public void test_parse_multibyte() {
+        String xml = SAMPLE.replace("A &amp; B", "\u00e9\u4e2d\ud83d\ude00");
+        CotEvent e = CotEvent.parse(xml.getBytes(StandardCharsets.UTF_8), 0,
+                xml.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals("\u00e9\u4e2d\ud83d\ude00",
+                e.findDetail("contact").getAttribute("callsign"));
+    }
+
+    @Test
+    public void test_round_trip() {
+        CotEvent e = CotEvent.parse(SAMPLE);
+        CotEvent e2 = CotEvent.parse(e.toString());
+        assertEquals(e.toString(), e2.toString());
+    }
+
+    @Test
+    public void test_missing_uid_is_invalid() {
+        CotEvent e = CotEvent.parse(SAMPLE.replace("uid='ANDROID-1234' ", ""));
+        assertNotNull(e);
+        assertFalse(e.isValid());
+    }
+
+    @Test
+    public void test_malformed() {
+        // like the SAX handler, whatever was parsed before the error is kept
+        CotEvent e = CotEvent.parse("<event uid='a' type='b'><point lat=");
+        assertNotNull(e);
+        assertEquals("a", e.getUID());
+        assertNull(e.getDetail());
+
+        e = CotEvent.parse((String) null);
+        assertNotNull(e);
+        assertFalse(e.isValid());
+
+        e = CotEvent.parse("not xml");
+        assertNotNull(e);
+        assertFalse(e.isValid());
+
+        e = CotEvent.parse(SAMPLE.replace("</link>", "</lnk>"));
+        assertNull(e.getDetail().getChild("status"));
+    }
+
+    @Test
+    public void test_parse_cot_time() {
+        assertEquals(0L, CotPullParser.parseCotTime("1970-01-01T00:00:00Z"));
+        assertEquals(1620141127123L,
+                CotPullParser.parseCotTime("2021-05-04T15:12:07.123Z"));
+        assertEquals(1620141127123L,
+                CotPullParser.parseCotTime("2021-05-04T15:12:07.1234Z"));
+        assertEquals(1620141127100L,
+                CotPullParser.parseCotTime("2021-05-04T15:12:07.1Z"));
+        assertEquals(951782400000L,
+                CotPullParser.parseCotTime("2000-02-29T00:00:00.00Z"));
+        assertEquals(Long.MIN_VALUE,
+                CotPullParser.parseCotTime("2001-02-29T00:00:00.00Z"));
+        assertEquals(Long.MIN_VALUE,
+                CotPullParser.parseCotTime("2021-05-04T15:12:07+05:00"));
+        assertEquals(Long.MIN_VALUE,
+                CotPullParser.parseCotTime("2021-05-04 15:12:07Z"));
+    }
+
+    @Test
+    public void test_concurrent_parse() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CotEvent>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String xml = SAMPLE.replace("ANDROID-1234",
+                        "uid-" + i);
+                results.add(pool.submit(() -> CotEvent.parse(xml)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                CotEvent e = results.get(i).get();
+                assertEquals("uid-" + i, e.getUID());
+                verifySample(e);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void verifySample(CotEvent e) {
+        assertTrue(e.isValid());
+        assertEquals("a-f-G-U-C", e.getType());
+        assertEquals("h-e", e.getHow());
+        assertEquals(new CoordinatedTime(1620141127123L).getMilliseconds(),
+                e.getTime().getMilliseconds());
+        assertEquals(1620141502500L, e.getStale().getMilliseconds());
+
+        CotPoint p = e.getCotPoint();
+        assertEquals(42.1, p.getLat(), 0d);
+        assertEquals(-71.2, p.getLon(), 0d);
+        assertEquals(12.5, p.getHae(), 0d);
+        assertEquals(CotPoint.UNKNOWN, p.getLe(), 0d);
+
+        CotDetail detail = e.getDetail();
+        assertNotNull(detail);
+        assertEquals(5, detail.childCount());
+        assertEquals("A & B",
+                detail.getChild("contact").getAttribute("callsign"));
+        assertEquals("Cyan", detail.getChild("__group").getAttribute("name"));
+        assertNull(detail.getChild("__group").getInnerText());
+        assertEquals("line one\nline <two>",
+                detail.getChild("remarks").getInnerText());
+        assertEquals("1", detail.getChild("link").getChild("nested")
+                .getAttribute("a"));
+        assertEquals("<raw>", detail.getChild("status").getInnerText());
+    }
+}
@@ -0,0 +1,147 @@
+package com.atakmap.coremap.cot.event;
+
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CotXmlSerializerTest {
+
+    private static final String SAMPLE = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>"
+            + "<event version='2.0' uid='ANDROID-&apos;1234' type='a-f-G-U-C' "
+            + "time='2021-05-04T15:12:07.123Z' start='2021-05-04T15:12:07.123Z' "
+            + "stale='2021-05-04T15:18:22.5Z' how='h-e' access='Undefined'>"
+            + "<point lat='42.1' lon='-71.2' hae='12.5' ce='9999999.0' le='NaN'/>"
+            + "<detail><contact callsign='A &amp; B \u00e9\u4e2d\ud83d\ude00' endpoint='*:-1:stcp'/>"
+            + "<__group name=\"Cyan\" role='Team Member'></__group>"
+            + "<remarks source='x'>line one&#10;line &lt;two&gt;</remarks>"
+            + "<link uid='u1'><nested a='1'/></link>"
+            + "<track course='271.53' speed='0.0'/>"
+            + "</detail></event>";
+
+    private static String buildXml(CotEvent e) {
+        StringBuilder sb = new StringBuilder();
+        e.buildXml(sb);
+        return sb.toString();
+    }
+
+    @Test
+    public void test_matches_build_xml() throws IOException {
+        CotEvent e = CotEvent.parse(SAMPLE);
+        String expected = buildXml(e);
+        byte[] utf8 = expected.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(expected, CotXmlSerializer.toXml(e));
+        assertArrayEquals(utf8, CotXmlSerializer.toByteArray(e));
+
+        ByteBuffer buf = CotXmlSerializer.serialize(e);
+        byte[] b = new byte[buf.remaining()];
+        buf.get(b);
+        assertArrayEquals(utf8, b);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        CotXmlSerializer.write(e, os);
+        assertArrayEquals(utf8, os.toByteArray());
+    }
+
+    @Test
+    public void test_point_values() {
+        Random r = new Random(7);
+        CotEvent e = CotEvent.parse(SAMPLE);
+        for (int i = 0; i < 2000; i++) {
+            e.setPoint(new CotPoint(r.nextDouble() * 180 - 90,
+                    r.nextDouble() * 360 - 180,
+                    (i % 3 == 0) ? Math.round(r.nextDouble() * 100)
+                            : r.nextDouble() * 10000 - 500,
+                    (i % 2 == 0) ? CotPoint.UNKNOWN : r.nextDouble() * 50,
+                    (i % 5 == 0) ? -0d : r.nextDouble()));
+            assertEquals(buildXml(e), CotXmlSerializer.toXml(e));
+        }
+    }
+
+    @Test
+    public void test_time_format() {
+        Random r = new Random(11);
+        long[] times = {
+                0L, 1L, 951782400000L, 1620141127123L, 4102444799999L,
+                253402300799999L, 253402300800000L, -1L
+        };
+        for (long t : times)
+            assertTime(t);
+        for (int i = 0; i < 2000; i++)
+            assertTime((long) (r.nextDouble() * 4102444800000L));
+    }
+
+    private static void assertTime(long t) {
+        CotEvent e = CotEvent.parse(SAMPLE);
+        e.setTime(new CoordinatedTime(t));
+        String xml = CotXmlSerializer.toXml(e);
+        assertTrue(String.valueOf(t), xml.contains(
+                " time='" + new CoordinatedTime(t).toString() + "'"));
+    }
+
+    @Test
+    public void test_escaped_quotes() {
+        // every character escapes to a six byte entity
+        StringBuilder quotes = new StringBuilder();
+        for (int i = 0; i < 65536; i++)
+            quotes.append((i % 2 == 0) ? '\'' : '"');
+        CotEvent e = CotEvent.parse(SAMPLE);
+        e.getDetail().getChild("contact").setAttribute("callsign",
+                quotes.toString());
+        e.getDetail().getChild("remarks").setInnerText(quotes.toString());
+        assertEquals(buildXml(e), CotXmlSerializer.toXml(e));
+        assertEquals(buildXml(e), e.toString());
+    }
+
+    @Test
+    public void test_cached_subtree_modified() {
+        CotEvent e = CotEvent.parse(SAMPLE);
+        String xml = buildXml(e);
+        for (int i = 0; i < 4; i++)
+            assertEquals(xml, CotXmlSerializer.toXml(e));
+
+        // modify a nested tag
+        CotDetail nested = e.getDetail().getChild("link").getChild("nested");
+        nested.setAttribute("b", "2");
+        assertEquals(buildXml(e), CotXmlSerializer.toXml(e));
+        assertTrue(CotXmlSerializer.toXml(e).contains("b='2'"));
+
+        for (int i = 0; i < 4; i++)
+            CotXmlSerializer.toXml(e);
+        e.getDetail().getChild("remarks").setInnerText("changed");
+        assertTrue(CotXmlSerializer.toXml(e).contains(">changed<"));
+
+        for (int i = 0; i < 4; i++)
+            CotXmlSerializer.toXml(e);
+        e.getDetail().removeChild(e.getDetail().getChild("track"));
+        assertFalse(CotXmlSerializer.toXml(e).contains("<track"));
+        assertEquals(buildXml(e), CotXmlSerializer.toXml(e));
+    }
+
+    @Test
+    public void test_shared_subtree() {
+        // a tag shared by several events, as self SA does with takv
+        CotDetail shared = new CotDetail("takv");
+        shared.setAttribute("version", "1");
+        CotEvent a = CotEvent.parse(SAMPLE);
+        CotEvent b = CotEvent.parse(SAMPLE.replace("u1", "u2"));
+        a.getDetail().addChild(shared);
+        b.getDetail().addChild(shared);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(buildXml(a), CotXmlSerializer.toXml(a));
+            assertEquals(buildXml(b), CotXmlSerializer.toXml(b));
+        }
+        shared.setAttribute("version", "2");
+        assertEquals(buildXml(a), CotXmlSerializer.toXml(a));
+        assertEquals(buildXml(b), CotXmlSerializer.toXml(b));
+        assertTrue(CotXmlSerializer.toXml(b).contains("version='2'"));
+    }
+}
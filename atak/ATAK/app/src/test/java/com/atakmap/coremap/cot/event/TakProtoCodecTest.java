@@ -0,0 +1,245 @@
+package com.atakmap.coremap.cot.event;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TakProtoCodecTest {
+
+    private static final String SA = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>"
+            + "<event version='2.0' uid='ANDROID-1234' type='a-f-G-U-C' "
+            + "time='2021-05-04T15:12:07.123Z' start='2021-05-04T15:12:07.123Z' "
+            + "stale='2021-05-04T15:18:22.5Z' how='h-e' access='Undefined'>"
+            + "<point lat='42.1' lon='-71.2' hae='12.5' ce='9999999.0' le='NaN'/>"
+            + "<detail><takv os='30' version='4.5.0' device='PIXEL' platform='ATAK-CIV'/>"
+            + "<contact endpoint='*:-1:stcp' callsign='J\u00e9r\u00f4me'/>"
+            + "<uid Droid='J\u00e9r\u00f4me'/>"
+            + "<precisionlocation altsrc='DTED0' geopointsrc='GPS'/>"
+            + "<__group role='Team Member' name='Cyan'/>"
+            + "<status battery='87'/>"
+            + "<track course='271.5' speed='0.0'/>"
+            + "</detail></event>";
+
+    @Test
+    public void test_round_trip_sa() {
+        CotEvent event = CotEvent.parse(SA);
+        byte[] payload = TakProtoCodec.encode(event);
+        assertRoundTrip(event, TakProtoCodec.decode(payload));
+
+        // only <uid> needs the XML fallback
+        String raw = new String(payload, StandardCharsets.ISO_8859_1);
+        assertTrue(raw.contains("<uid "));
+        for (String name : new String[] {
+                "status", "track", "precisionlocation", "__group", "contact",
+                "takv"
+        })
+            assertFalse(name, raw.contains("<" + name));
+    }
+
+    @Test
+    public void test_round_trip_examples() throws IOException {
+        File[] files = examples();
+        for (File f : files) {
+            CotEvent event = CotEvent.parse(read(f));
+            assertTrue(f.getName(), event.isValid());
+            byte[] payload = TakProtoCodec.encode(event);
+            assertRoundTrip(event, TakProtoCodec.decode(payload));
+        }
+    }
+
+    @Test
+    public void test_fallback_to_xml() {
+        // repeated, partial, extended or lossy elements are not converted
+        String xml = SA.replace("<status battery='87'/>",
+                "<status battery='087'/>")
+                .replace("<track course='271.5' speed='0.0'/>",
+                        "<track course='271.5' speed='0'/>")
+                .replace("<precisionlocation altsrc='DTED0' geopointsrc='GPS'/>",
+                        "<precisionlocation altsrc='DTED0'/>")
+                .replace("<__group role='Team Member' name='Cyan'/>",
+                        "<__group role='Team Member' name='Cyan' x='1'/>")
+                .replace("<takv ", "<takv><a/></takv><takv ")
+                .replace("endpoint='*:-1:stcp'", "endpoint=''");
+        CotEvent event = CotEvent.parse(xml);
+        byte[] payload = TakProtoCodec.encode(event);
+        assertRoundTrip(event, TakProtoCodec.decode(payload));
+
+        String raw = new String(payload, StandardCharsets.ISO_8859_1);
+        for (String name : new String[] {
+                "status", "track", "precisionlocation", "__group", "contact"
+        })
+            assertTrue(name, raw.contains("<" + name + " "));
+        assertEquals(2, count(raw, "<takv"));
+    }
+
+    @Test
+    public void test_optional_fields() {
+        CotEvent event = CotEvent.parse(SA.replace(" access='Undefined'", "")
+                .replace("<detail>", "<detail><contact callsign='x'/>")
+                .replace("<contact endpoint='*:-1:stcp' callsign='J\u00e9r\u00f4me'/>",
+                        ""));
+        CotEvent decoded = TakProtoCodec.decode(TakProtoCodec.encode(event));
+        assertNull(decoded.getAccess());
+        assertNull(decoded.getOpex());
+        assertNull(decoded.getDetail().getChild("contact")
+                .getAttribute("endpoint"));
+        assertRoundTrip(event, decoded);
+
+        // empty detail is retained, missing detail is not invented
+        event.setDetail(new CotDetail());
+        decoded = TakProtoCodec.decode(TakProtoCodec.encode(event));
+        assertNotNull(decoded.getDetail());
+        assertEquals(0, decoded.getDetail().childCount());
+        event.setDetail(null);
+        decoded = TakProtoCodec.decode(TakProtoCodec.encode(event));
+        assertNull(decoded.getDetail());
+    }
+
+    @Test
+    public void test_unknown_fields_skipped() {
+        byte[] payload = TakProtoCodec.encode(CotEvent.parse(SA));
+        // TakControl { minProtoVersion: 1, maxProtoVersion: 1 }, then an
+        // unknown fixed32 field
+        byte[] prefix = {
+                0x0a, 0x04, 0x08, 0x01, 0x10, 0x01, 0x1d, 1, 2, 3, 4
+        };
+        byte[] msg = new byte[prefix.length + payload.length + 2];
+        System.arraycopy(prefix, 0, msg, 1, prefix.length);
+        System.arraycopy(payload, 0, msg, 1 + prefix.length, payload.length);
+        assertRoundTrip(CotEvent.parse(SA),
+                TakProtoCodec.decode(msg, 1, msg.length - 2));
+
+        // control only message
+        assertNull(TakProtoCodec.decode(Arrays.copyOf(prefix, 6)));
+    }
+
+    @Test
+    public void test_malformed() {
+        byte[] payload = TakProtoCodec.encode(CotEvent.parse(SA));
+        for (int len : new int[] {
+                1, 2, payload.length / 2, payload.length - 1
+        }) {
+            try {
+                TakProtoCodec.decode(payload, 0, len);
+                fail("truncated at " + len);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_encode_invalid() {
+        TakProtoCodec.encode(new CotEvent());
+    }
+
+    @Test
+    public void test_smaller_than_xml() throws IOException {
+        List<CotEvent> events = new ArrayList<>();
+        events.add(CotEvent.parse(SA));
+        for (File f : examples())
+            events.add(CotEvent.parse(read(f)));
+
+        for (CotEvent e : events) {
+            int x = e.toString().getBytes(StandardCharsets.UTF_8).length;
+            int p = TakProtoCodec.encode(e).length;
+            assertTrue(e.getUID(), p < x);
+        }
+    }
+
+    private static void assertRoundTrip(CotEvent expected, CotEvent actual) {
+        assertNotNull(actual);
+        assertEquals(expected.isValid(), actual.isValid());
+        assertEquals(expected.getUID(), actual.getUID());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getHow(), actual.getHow());
+        assertEquals(expected.getAccess(), actual.getAccess());
+        assertEquals(expected.getQos(), actual.getQos());
+        assertEquals(expected.getOpex(), actual.getOpex());
+        assertEquals(expected.getTime().getMilliseconds(),
+                actual.getTime().getMilliseconds());
+        assertEquals(expected.getStart().getMilliseconds(),
+                actual.getStart().getMilliseconds());
+        assertEquals(expected.getStale().getMilliseconds(),
+                actual.getStale().getMilliseconds());
+
+        CotPoint p = expected.getCotPoint();
+        CotPoint p2 = actual.getCotPoint();
+        assertEquals(p.getLat(), p2.getLat(), 0d);
+        assertEquals(p.getLon(), p2.getLon(), 0d);
+        assertEquals(p.getHae(), p2.getHae(), 0d);
+        assertEquals(p.getCe(), p2.getCe(), 0d);
+        assertEquals(p.getLe(), p2.getLe(), 0d);
+
+        // the order of the detail elements is not preserved
+        if (expected.getDetail() == null)
+            assertNull(actual.getDetail());
+        else
+            assertEquals(canonical(expected.getDetail()),
+                    canonical(actual.getDetail()));
+    }
+
+    private static String canonical(CotDetail d) {
+        StringBuilder sb = new StringBuilder("<");
+        sb.append(d.getElementName());
+        List<String> attrs = new ArrayList<>();
+        for (CotAttribute a : d.getAttributes())
+            attrs.add(a.getName() + "='" + a.getValue() + "'");
+        Collections.sort(attrs);
+        for (String a : attrs)
+            sb.append(' ').append(a);
+        sb.append('>');
+        if (d.getInnerText() != null)
+            sb.append(d.getInnerText());
+        List<String> children = new ArrayList<>();
+        for (CotDetail c : d.getChildren())
+            children.add(canonical(c));
+        Collections.sort(children);
+        for (String c : children)
+            sb.append(c);
+        return sb.append("</>").toString();
+    }
+
+    private static int count(String s, String token) {
+        int n = 0;
+        for (int i = s.indexOf(token); i >= 0; i = s.indexOf(token, i + 1))
+            n++;
+        return n;
+    }
+
+    private static File[] examples() {
+        File dir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+        while (dir != null && !new File(dir, "takcot/examples").isDirectory())
+            dir = dir.getParentFile();
+        Assume.assumeTrue("takcot/examples not found", dir != null);
+        File[] files = new File(dir, "takcot/examples")
+                .listFiles((d, name) -> name.endsWith(".cot"));
+        assertNotNull(files);
+        assertTrue(files.length > 0);
+        return files;
+    }
+
+    private static String read(File f) throws IOException {
+        try (InputStream is = new FileInputStream(f)) {
+            byte[] b = new byte[(int) f.length()];
+            int off = 0;
+            while (off < b.length) {
+                int n = is.read(b, off, b.length - off);
+                if (n < 0)
+                    break;
+                off += n;
+            }
+            return new String(b, 0, off, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+
+package com.atakmap.map.layer.raster.tilematrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void limit_grows_while_latency_is_steady() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 1,
+                8);
+        long t = 0L;
+        for (int i = 0; i < 200; i++) {
+            t += 10L * MILLIS;
+            limit.onSample(100L * MILLIS, 1024L, true, limit.getLimit(), t);
+        }
+        assertEquals(8, limit.getLimit());
+    }
+
+    @Test
+    public void limit_backs_off_as_latency_rises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1,
+                8);
+        long t = 0L;
+        for (int i = 0; i < 20; i++) {
+            t += 10L * MILLIS;
+            limit.onSample(100L * MILLIS, 1024L, true, limit.getLimit(), t);
+        }
+        assertEquals(8, limit.getLimit());
+
+        // requests queue at the host
+        for (int i = 0; i < 20; i++) {
+            t += 10L * MILLIS;
+            limit.onSample(1000L * MILLIS, 1024L, true, limit.getLimit(), t);
+        }
+        assertTrue(limit.getLimit() < 8);
+    }
+
+    @Test
+    public void failures_halve_the_limit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1,
+                8);
+        limit.onSample(0L, 0L, false, 8, MILLIS);
+        assertEquals(4, limit.getLimit());
+        for (int i = 0; i < 10; i++)
+            limit.onSample(0L, 0L, false, 1, MILLIS);
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    public void limit_does_not_grow_when_unused() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1,
+                8);
+        long t = 0L;
+        for (int i = 0; i < 100; i++) {
+            t += 10L * MILLIS;
+            limit.onSample(100L * MILLIS, 1024L, true, 1, t);
+        }
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void throughput_is_observed() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 1,
+                8);
+        long t = 1L;
+        // 10 KB every 100 ms
+        for (int i = 0; i < 50; i++) {
+            t += 100L * MILLIS;
+            limit.onSample(100L * MILLIS, 10240L, true, 1, t);
+        }
+        assertEquals(102400d, limit.getBytesPerSecond(), 10240d);
+    }
+}
@@ -0,0 +1,80 @@
+
+package com.atakmap.map.layer.raster.tilematrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferedTileWriterTest {
+
+    private static MockTileContainer createContainer() {
+        return new MockTileContainer("test", 3857,
+                new TileMatrix.ZoomLevel[0], 0d, 0d, null, false);
+    }
+
+    @Test
+    public void tiles_are_committed_in_batches() {
+        MockTileContainer container = createContainer();
+        BufferedTileWriter writer = new BufferedTileWriter(container, 10,
+                60000L, 1024L * 1024L);
+        try {
+            for (int i = 0; i < 100; i++)
+                writer.setTile(5, i, 0, new byte[] {
+                        (byte) i
+                }, 1000L + i);
+            writer.flush();
+
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(new byte[] {
+                        (byte) i
+                }, container.getTileData(5, i, 0, null));
+                assertEquals(1000L + i, container.getTileExpiration(5, i, 0));
+            }
+
+            BufferedTileWriter.Statistics stats = writer.getStatistics();
+            assertEquals(100, stats.written);
+            assertEquals(0, stats.failed);
+            assertEquals(0, stats.pending);
+            assertTrue(stats.batches <= 10);
+            assertTrue(stats.tilesPerSecond > 0d);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void flush_commits_partial_batch() {
+        MockTileContainer container = createContainer();
+        BufferedTileWriter writer = new BufferedTileWriter(container, 1000,
+                60000L, 1024L * 1024L);
+        try {
+            writer.setTile(1, 1, 1, new byte[1], 0L);
+            writer.flush();
+            assertNotNull(container.getTileData(1, 1, 1, null));
+            assertEquals(1, writer.getStatistics().batches);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void close_commits_buffered_tiles() {
+        MockTileContainer container = createContainer();
+        // buffer limit smaller than a single tile
+        BufferedTileWriter writer = new BufferedTileWriter(container, 1000,
+                60000L, 16L);
+        for (int i = 0; i < 10; i++)
+            writer.setTile(2, i, i, new byte[64], 0L);
+        writer.close();
+
+        for (int i = 0; i < 10; i++)
+            assertNotNull(container.getTileData(2, i, i, null));
+        assertEquals(10, writer.getStatistics().written);
+
+        try {
+            writer.setTile(2, 0, 0, new byte[1], 0L);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
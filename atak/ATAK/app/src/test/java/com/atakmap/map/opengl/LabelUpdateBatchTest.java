@@ -0,0 +1,114 @@
+
+package com.atakmap.map.opengl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LabelUpdateBatchTest {
+
+    private static int opAt(LabelUpdateBatch batch, int offset) {
+        return batch.getBuffer().getInt(offset);
+    }
+
+    @Test
+    public void records_are_encoded() {
+        LabelUpdateBatch batch = new LabelUpdateBatch();
+        batch.putInt(LabelUpdateBatch.OP_COLOR, 7, 0xFF00FF00);
+        batch.putText(7, "abcde");
+
+        final ByteBuffer buf = batch.getBuffer();
+        assertEquals(LabelUpdateBatch.OP_COLOR, buf.getInt(0));
+        assertEquals(7, buf.getInt(4));
+        assertEquals(4, buf.getInt(8));
+        assertEquals(0xFF00FF00, buf.getInt(12));
+
+        // text payload is length prefixed and padded to 4 bytes
+        final int text = LabelUpdateBatch.HEADER_SIZE + 4;
+        assertEquals(LabelUpdateBatch.OP_TEXT, buf.getInt(text));
+        assertEquals(7, buf.getInt(text + 4));
+        assertEquals(12, buf.getInt(text + 8));
+        assertEquals(5, buf.getInt(text + 12));
+        byte[] utf8 = new byte[5];
+        for (int i = 0; i < utf8.length; i++)
+            utf8[i] = buf.get(text + 16 + i);
+        assertEquals("abcde", new String(utf8, StandardCharsets.UTF_8));
+
+        assertEquals(text + LabelUpdateBatch.HEADER_SIZE + 12, batch.size());
+        assertEquals(2, batch.getRecordCount());
+    }
+
+    @Test
+    public void superseded_updates_are_coalesced() {
+        LabelUpdateBatch batch = new LabelUpdateBatch();
+        batch.putPoint(1, 2, 10d, 20d, 0d);
+        batch.putInt(LabelUpdateBatch.OP_COLOR, 1, 1);
+        batch.putPoint(1, 2, 11d, 21d, 0d);
+        batch.putInt(LabelUpdateBatch.OP_COLOR, 2, 2);
+
+        final int first = 0;
+        final int color = first + LabelUpdateBatch.HEADER_SIZE + 28;
+        final int second = color + LabelUpdateBatch.HEADER_SIZE + 4;
+        assertEquals(LabelUpdateBatch.OP_NOP, opAt(batch, first));
+        assertEquals(LabelUpdateBatch.OP_COLOR, opAt(batch, color));
+        assertEquals(LabelUpdateBatch.OP_POINT, opAt(batch, second));
+        assertEquals(1, batch.getCoalescedCount());
+    }
+
+    @Test
+    public void pending_values_are_found() {
+        LabelUpdateBatch batch = new LabelUpdateBatch();
+        assertEquals(-1, batch.find(LabelUpdateBatch.OP_HINTS, 4));
+        batch.putInt(LabelUpdateBatch.OP_HINTS, 4, 0x1);
+        batch.putInt(LabelUpdateBatch.OP_COLOR, 4, 0x2);
+        batch.putInt(LabelUpdateBatch.OP_HINTS, 4, 0x3);
+
+        final int hints = batch.find(LabelUpdateBatch.OP_HINTS, 4);
+        assertEquals(0x3, batch.getBuffer().getInt(hints));
+        assertEquals(-1, batch.find(LabelUpdateBatch.OP_HINTS, 5));
+
+        // a removal discards pending values
+        batch.remove(4);
+        assertEquals(-1, batch.find(LabelUpdateBatch.OP_HINTS, 4));
+        batch.reset();
+        assertEquals(-1, batch.find(LabelUpdateBatch.OP_COLOR, 4));
+    }
+
+    @Test
+    public void updates_are_not_coalesced_across_remove() {
+        LabelUpdateBatch batch = new LabelUpdateBatch();
+        batch.putBoolean(LabelUpdateBatch.OP_VISIBLE, 3, true);
+        batch.remove(3);
+        batch.putBoolean(LabelUpdateBatch.OP_VISIBLE, 3, false);
+
+        assertEquals(LabelUpdateBatch.OP_VISIBLE, opAt(batch, 0));
+        assertEquals(LabelUpdateBatch.OP_REMOVE,
+                opAt(batch, LabelUpdateBatch.HEADER_SIZE + 4));
+        assertEquals(0, batch.getCoalescedCount());
+        assertEquals(3, batch.getRecordCount());
+    }
+
+    @Test
+    public void buffer_grows_and_resets() {
+        LabelUpdateBatch batch = new LabelUpdateBatch(16);
+        for (int i = 0; i < 100; i++)
+            batch.putDoubles(LabelUpdateBatch.OP_DESIRED_OFFSET, i, i, i, i);
+        assertEquals(100 * (LabelUpdateBatch.HEADER_SIZE + 24), batch.size());
+        for (int i = 0; i < 100; i++) {
+            final int offset = i * (LabelUpdateBatch.HEADER_SIZE + 24);
+            assertEquals(i, batch.getBuffer().getInt(offset + 4));
+            assertEquals((double) i, batch.getBuffer()
+                    .getDouble(offset + LabelUpdateBatch.HEADER_SIZE), 0d);
+        }
+
+        batch.reset();
+        assertTrue(batch.isEmpty());
+        assertEquals(0, batch.getRecordCount());
+        batch.putInt(LabelUpdateBatch.OP_HINTS, 0, 1);
+        assertEquals(0, batch.getCoalescedCount());
+    }
+}
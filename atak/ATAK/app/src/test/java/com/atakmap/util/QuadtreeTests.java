@@ -9,6 +9,7 @@ import org.junit.Test;
 import java.util.ArrayList;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class QuadtreeTests {
@@ -96,4 +97,51 @@ public class QuadtreeTests {
         assertEquals(1, g3.size());
         assertTrue(g3.contains(p));
     }
+
+    @Test
+    public void remove_after_aggregate() {
+        Quadtree<GeoPoint> spatialIndex = new Quadtree<>(
+                new Quadtree.Function<GeoPoint>() {
+                    @Override
+                    public void getBounds(GeoPoint object, PointD min,
+                            PointD max) {
+                        min.x = object.getLongitude();
+                        min.y = object.getLatitude();
+                        max.x = object.getLongitude();
+                        max.y = object.getLatitude();
+                    }
+                }, 4, -180d, -90d, 180d, 90d);
+
+        ArrayList<GeoPoint> points = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            GeoPoint p = GeoPoint.createMutable();
+            p.set(-80d + (i * 2.5d), -170d + (i * 5d));
+            points.add(p);
+            spatialIndex.add(p);
+        }
+        assertEquals(64, spatialIndex.size());
+
+        // drain the tree so that nodes are repeatedly aggregated
+        for (int i = 0; i < 60; i++)
+            assertTrue(spatialIndex.remove(points.get(i)));
+        assertEquals(4, spatialIndex.size());
+
+        // moving the survivors must not leave stale entries behind
+        for (int i = 60; i < 64; i++) {
+            points.get(i).set(10d, 10d + i);
+            assertTrue(spatialIndex.refresh(points.get(i)));
+        }
+        ArrayList<GeoPoint> hits = new ArrayList<>();
+        spatialIndex.get(60d, 0d, 80d, 20d, hits);
+        assertEquals(4, hits.size());
+
+        for (int i = 60; i < 64; i++)
+            assertTrue(spatialIndex.remove(points.get(i)));
+        assertFalse(spatialIndex.remove(points.get(60)));
+        assertEquals(0, spatialIndex.size());
+
+        hits.clear();
+        spatialIndex.get(-180d, -90d, 180d, 90d, hits);
+        assertTrue(hits.isEmpty());
+    }
 }
@@ -0,0 +1,79 @@
+package com.atakmap.coremap.cot.event;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+
+/**
+ * Compares encoding and decoding a self SA event as TAK protocol against
+ * XML.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CotEventCodecBenchmark {
+
+    private static final String SA = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>"
+            + "<event version='2.0' uid='ANDROID-1234' type='a-f-G-U-C' "
+            + "time='2021-05-04T15:12:07.123Z' start='2021-05-04T15:12:07.123Z' "
+            + "stale='2021-05-04T15:18:22.5Z' how='h-e' access='Undefined'>"
+            + "<point lat='42.1' lon='-71.2' hae='12.5' ce='9999999.0' le='NaN'/>"
+            + "<detail><takv os='30' version='4.5.0' device='PIXEL' platform='ATAK-CIV'/>"
+            + "<contact endpoint='*:-1:stcp' callsign='JENNIFER'/>"
+            + "<uid Droid='JENNIFER'/>"
+            + "<precisionlocation altsrc='DTED0' geopointsrc='GPS'/>"
+            + "<__group role='Team Member' name='Cyan'/>"
+            + "<status battery='87'/>"
+            + "<track course='271.5' speed='0.0'/>"
+            + "</detail></event>";
+
+    private CotEvent event;
+    private byte[] xml;
+    private byte[] proto;
+
+    @Setup
+    public void setup() {
+        EngineLibrary.initialize();
+
+        xml = SA.getBytes(StandardCharsets.UTF_8);
+        event = CotEvent.parse(SA);
+        if (!event.isValid())
+            throw new IllegalStateException("Invalid benchmark event");
+        proto = TakProtoCodec.encode(event);
+    }
+
+    @Benchmark
+    public byte[] encodeXml() {
+        return CotXmlSerializer.toByteArray(event);
+    }
+
+    @Benchmark
+    public byte[] encodeProto() {
+        return TakProtoCodec.encode(event);
+    }
+
+    @Benchmark
+    public CotEvent decodeXml() {
+        return CotEvent.parse(xml, 0, xml.length);
+    }
+
+    @Benchmark
+    public CotEvent decodeProto() {
+        return TakProtoCodec.decode(proto);
+    }
+}
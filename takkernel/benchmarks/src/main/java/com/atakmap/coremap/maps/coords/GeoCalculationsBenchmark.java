@@ -0,0 +1,69 @@
+package com.atakmap.coremap.maps.coords;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoCalculationsBenchmark {
+
+    private static final int NUM_POINTS = 1024;
+
+    private GeoPoint[] points;
+    private int idx;
+
+    @Setup
+    public void setup() {
+        EngineLibrary.initialize();
+
+        // points within a few hundred kilometers, typical of map content
+        final Random r = new Random(1234);
+        points = new GeoPoint[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++)
+            points[i] = new GeoPoint(35d + r.nextDouble() * 4d,
+                    -79d + r.nextDouble() * 4d);
+    }
+
+    private GeoPoint next() {
+        idx = (idx + 1) & (NUM_POINTS - 1);
+        return points[idx];
+    }
+
+    @Benchmark
+    public double distanceTo() {
+        return GeoCalculations.distanceTo(next(), next());
+    }
+
+    @Benchmark
+    public double bearingTo() {
+        return GeoCalculations.bearingTo(next(), next());
+    }
+
+    @Benchmark
+    public GeoPoint pointAtDistance() {
+        final GeoPoint p = next();
+        return GeoCalculations.pointAtDistance(p, idx % 360, 1000d + idx);
+    }
+
+    @Benchmark
+    public GeoPoint midPoint() {
+        return GeoCalculations.midPoint(next(), next());
+    }
+}
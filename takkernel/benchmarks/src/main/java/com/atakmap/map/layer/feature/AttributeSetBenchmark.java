@@ -0,0 +1,82 @@
+package com.atakmap.map.layer.feature;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeSetBenchmark {
+
+    private AttributeSet attrs;
+
+    @Setup
+    public void setup() {
+        EngineLibrary.initialize();
+
+        // similar to the attributes of an imported KML/shapefile feature
+        attrs = new AttributeSet();
+        attrs.setAttribute("id", 42);
+        attrs.setAttribute("timestamp", 1620141127123L);
+        attrs.setAttribute("speed", 12.5d);
+        attrs.setAttribute("name", "Checkpoint Alpha");
+        attrs.setAttribute("description", "Rally point for second squad");
+        attrs.setAttribute("tags", new String[] {"rally", "checkpoint"});
+        final AttributeSet nested = new AttributeSet();
+        nested.setAttribute("color", 0xFF00FF00);
+        attrs.setAttribute("style", nested);
+    }
+
+    @TearDown
+    public void tearDown() {
+        attrs.dispose();
+    }
+
+    @Benchmark
+    public int getInt() {
+        return attrs.getIntAttribute("id");
+    }
+
+    @Benchmark
+    public String getString() {
+        return attrs.getStringAttribute("name");
+    }
+
+    @Benchmark
+    public double getDouble() {
+        return attrs.getDoubleAttribute("speed");
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return attrs.containsAttribute("description");
+    }
+
+    @Benchmark
+    public Class<?> getType() {
+        return attrs.getAttributeType("tags");
+    }
+
+    @Benchmark
+    public AttributeSet copy() {
+        final AttributeSet copy = new AttributeSet(attrs);
+        copy.dispose();
+        return copy;
+    }
+}
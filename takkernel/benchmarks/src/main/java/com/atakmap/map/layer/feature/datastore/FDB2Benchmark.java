@@ -0,0 +1,157 @@
+package com.atakmap.map.layer.feature.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+import com.atakmap.map.layer.feature.AttributeSet;
+import com.atakmap.map.layer.feature.DataStoreException;
+import com.atakmap.map.layer.feature.Feature;
+import com.atakmap.map.layer.feature.FeatureCursor;
+import com.atakmap.map.layer.feature.FeatureDataStore2;
+import com.atakmap.map.layer.feature.geometry.Envelope;
+import com.atakmap.map.layer.feature.geometry.GeometryFactory;
+import com.atakmap.map.layer.feature.geometry.LineString;
+import com.atakmap.map.layer.feature.style.BasicStrokeStyle;
+
+/**
+ * Feature queries against an on-disk {@link FeatureSetDatabase2}. The fixture
+ * is generated into a temporary file once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FDB2Benchmark {
+
+    private static final int NUM_QUERIES = 64;
+    private static final int POINTS_PER_FEATURE = 8;
+
+    /** number of features in the fixture */
+    @Param({"10000", "100000"})
+    public int size;
+
+    private File dbFile;
+    private FeatureSetDatabase2 db;
+    private Envelope[] queries;
+    private int idx;
+    private int fid;
+
+    @Setup
+    public void setup() throws IOException, DataStoreException {
+        EngineLibrary.initialize();
+
+        dbFile = File.createTempFile("fdb2-benchmark", ".sqlite");
+        if (!dbFile.delete())
+            throw new IOException("Failed to prepare " + dbFile);
+
+        final Random r = new Random(1234);
+        final FeatureSetDatabase2.Builder builder = new FeatureSetDatabase2.Builder(
+                dbFile);
+        try {
+            builder.beginBulkInsertion();
+            builder.insertFeatureSet(1L, "benchmark", "benchmark", "tracks");
+            for (int i = 0; i < size; i++) {
+                final double x = r.nextDouble() * 10d - 80d;
+                final double y = r.nextDouble() * 10d + 30d;
+                final LineString ls = new LineString(2);
+                for (int j = 0; j < POINTS_PER_FEATURE; j++)
+                    ls.addPoint(x + j * 0.001d, y + r.nextDouble() * 0.001d);
+
+                final AttributeSet attrs = new AttributeSet();
+                attrs.setAttribute("id", i);
+                attrs.setAttribute("name", "feature-" + i);
+                attrs.setAttribute("speed", r.nextDouble() * 30d);
+
+                builder.insertFeature(1L, "feature-" + i, ls,
+                        new BasicStrokeStyle(0xFF000000 | r.nextInt(), 2f),
+                        attrs);
+            }
+            builder.endBulkInsertion(true);
+            builder.createIndices();
+        } catch (DataStoreException e) {
+            builder.close();
+            throw e;
+        }
+        db = builder.build();
+
+        // windows returning on the order of 1% of the features
+        queries = new Envelope[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            final double x = r.nextDouble() * 9d - 80d;
+            final double y = r.nextDouble() * 9d + 30d;
+            queries[i] = new Envelope(x, y, 0d, x + 1d, y + 1d, 0d);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (db != null)
+            db.dispose();
+        if (dbFile != null)
+            dbFile.delete();
+    }
+
+    private FeatureDataStore2.FeatureQueryParameters nextQuery() {
+        idx = (idx + 1) % NUM_QUERIES;
+        final FeatureDataStore2.FeatureQueryParameters params = new FeatureDataStore2.FeatureQueryParameters();
+        params.spatialFilter = GeometryFactory.fromEnvelope(queries[idx]);
+        return params;
+    }
+
+    @Benchmark
+    public int querySpatial() throws DataStoreException {
+        int count = 0;
+        FeatureCursor result = null;
+        try {
+            result = db.queryFeatures(nextQuery());
+            while (result.moveToNext()) {
+                final Feature f = result.get();
+                if (f.getGeometry() != null)
+                    count++;
+            }
+        } finally {
+            if (result != null)
+                result.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int querySpatialCount() throws DataStoreException {
+        return db.queryFeaturesCount(nextQuery());
+    }
+
+    @Benchmark
+    public Feature queryById() throws DataStoreException {
+        fid = (fid % size) + 1;
+        final FeatureDataStore2.FeatureQueryParameters params = new FeatureDataStore2.FeatureQueryParameters();
+        params.ids = Collections.singleton(Long.valueOf(fid));
+        FeatureCursor result = null;
+        try {
+            result = db.queryFeatures(params);
+            return result.moveToNext() ? result.get() : null;
+        } finally {
+            if (result != null)
+                result.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.atakmap.map.layer.feature.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+import com.atakmap.map.layer.feature.AttributeSet;
+import com.atakmap.map.layer.feature.DataStoreException;
+import com.atakmap.map.layer.feature.FeatureCursor;
+import com.atakmap.map.layer.feature.FeatureDataStore2;
+import com.atakmap.map.layer.feature.geometry.Envelope;
+import com.atakmap.map.layer.feature.geometry.GeometryFactory;
+import com.atakmap.map.layer.feature.geometry.Point;
+
+/**
+ * Parallel spatial queries against a shared on-disk
+ * {@link FeatureSetDatabase2}. Compare the single threaded score against the
+ * multi-threaded scores to observe reader contention on the store. The
+ * <code>mixed</code> group adds a writer toggling feature visibility while the
+ * readers query.
+ *
+ * <P>The fixture is generated into a temporary file once per trial; the
+ * larger sizes take some time to build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FDB2ContentionBenchmark {
+
+    private static final int FSID = 1;
+
+    /** number of features in the fixture */
+    @Param({"1000000", "4000000"})
+    public int size;
+
+    private File dbFile;
+    private FeatureSetDatabase2 db;
+
+    @State(Scope.Thread)
+    public static class Queries {
+        private static final int NUM_QUERIES = 256;
+
+        private Envelope[] queries;
+        private int idx;
+
+        @Setup
+        public void setup() {
+            final Random r = new Random(Thread.currentThread().getId());
+
+            // windows returning on the order of 0.01% of the features
+            queries = new Envelope[NUM_QUERIES];
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                final double x = r.nextDouble() * 9.9d - 80d;
+                final double y = r.nextDouble() * 9.9d + 30d;
+                queries[i] = new Envelope(x, y, 0d, x + 0.1d, y + 0.1d, 0d);
+            }
+        }
+
+        FeatureDataStore2.FeatureQueryParameters next() {
+            idx = (idx + 1) % NUM_QUERIES;
+            final FeatureDataStore2.FeatureQueryParameters params = new FeatureDataStore2.FeatureQueryParameters();
+            params.spatialFilter = GeometryFactory.fromEnvelope(queries[idx]);
+            params.visibleOnly = true;
+            params.ignoredFeatureProperties = FeatureDataStore2.PROPERTY_FEATURE_STYLE;
+            return params;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private long fid;
+    }
+
+    @Setup
+    public void setup() throws IOException, DataStoreException {
+        EngineLibrary.initialize();
+
+        dbFile = File.createTempFile("fdb2-contention", ".sqlite");
+        if (!dbFile.delete())
+            throw new IOException("Failed to prepare " + dbFile);
+
+        final Random r = new Random(1234);
+        final FeatureSetDatabase2.Builder builder = new FeatureSetDatabase2.Builder(
+                dbFile);
+        try {
+            builder.beginBulkInsertion();
+            builder.insertFeatureSet(FSID, "benchmark", "benchmark", "points");
+            for (int i = 0; i < size; i++) {
+                final AttributeSet attrs = new AttributeSet();
+                attrs.setAttribute("id", i);
+
+                builder.insertFeature(FSID, "feature-" + i,
+                        new Point(r.nextDouble() * 10d - 80d,
+                                r.nextDouble() * 10d + 30d),
+                        null, attrs);
+            }
+            builder.endBulkInsertion(true);
+            builder.createIndices();
+        } catch (DataStoreException e) {
+            builder.close();
+            throw e;
+        }
+        db = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (db != null)
+            db.dispose();
+        if (dbFile != null)
+            dbFile.delete();
+    }
+
+    private int query(Queries queries) throws DataStoreException {
+        int count = 0;
+        FeatureCursor result = null;
+        try {
+            result = db.queryFeatures(queries.next());
+            while (result.moveToNext()) {
+                if (result.getRawGeometry() != null)
+                    count++;
+            }
+        } finally {
+            if (result != null)
+                result.close();
+        }
+        return count;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int querySpatial1(Queries queries) throws DataStoreException {
+        return query(queries);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int querySpatial4(Queries queries) throws DataStoreException {
+        return query(queries);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int querySpatial8(Queries queries) throws DataStoreException {
+        return query(queries);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int querySpatialCount4(Queries queries) throws DataStoreException {
+        return db.queryFeaturesCount(queries.next());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public int mixedQuery(Queries queries) throws DataStoreException {
+        return query(queries);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedSetVisible(Writer writer) throws DataStoreException {
+        writer.fid = (writer.fid % size) + 1;
+        db.setFeatureVisible(writer.fid, (writer.fid & 1) == 0);
+    }
+}
@@ -0,0 +1,145 @@
+package com.atakmap.map.layer.feature.kml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+import com.atakmap.map.layer.feature.FeatureDataSourceContentFactory;
+import com.atakmap.map.layer.feature.PersistentDataSourceFeatureDataStore2;
+import com.atakmap.map.layer.feature.ogr.OgrFeatureDataSource;
+
+/**
+ * Ingest of a large synthetic KML file into a
+ * {@link PersistentDataSourceFeatureDataStore2}, as done by the overlay
+ * import. <code>ogr</code> parses the file with the OGR provider and
+ * <code>streaming</code> with {@link KMLFeatureDataSource}.
+ *
+ * <P>Run with <code>-prof gc</code> to compare allocation. The fixture is
+ * generated once per trial; every invocation writes a new database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KMLIngestBenchmark {
+
+    private static final int POINTS_PER_FEATURE = 16;
+
+    /** number of placemarks in the fixture */
+    @Param({"10000", "100000"})
+    public int size;
+
+    private File kmlFile;
+    private File dbFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        EngineLibrary.initialize();
+        FeatureDataSourceContentFactory.register(new OgrFeatureDataSource(), 1);
+        FeatureDataSourceContentFactory.register(new KMLFeatureDataSource(), 0);
+
+        kmlFile = File.createTempFile("kml-ingest", ".kml");
+        final Random r = new Random(1234);
+        try(Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(kmlFile), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document><name>benchmark</name>\n");
+            out.write("<Style id=\"line\"><LineStyle><color>ff0000ff</color><width>2</width></LineStyle></Style>\n");
+            out.write("<Style id=\"area\"><LineStyle><color>ffffffff</color></LineStyle><PolyStyle><color>7f00ff00</color></PolyStyle></Style>\n");
+            for(int folder = 0; folder < 10; folder++) {
+                out.write("<Folder><name>folder-" + folder + "</name>\n");
+                for(int i = folder; i < size; i += 10) {
+                    final double x = r.nextDouble() * 10d - 80d;
+                    final double y = r.nextDouble() * 10d + 30d;
+
+                    out.write("<Placemark><name>feature-" + i + "</name>");
+                    out.write("<ExtendedData><Data name=\"id\"><value>" + i + "</value></Data></ExtendedData>");
+                    switch(i % 3) {
+                        case 0 :
+                            out.write("<Point><coordinates>" + x + "," + y + ",0</coordinates></Point>");
+                            break;
+                        case 1 :
+                            out.write("<styleUrl>#line</styleUrl><LineString><coordinates>");
+                            for(int j = 0; j < POINTS_PER_FEATURE; j++)
+                                out.write((x + j * 0.001d) + "," + (y + r.nextDouble() * 0.001d) + ",0 ");
+                            out.write("</coordinates></LineString>");
+                            break;
+                        default :
+                            out.write("<styleUrl>#area</styleUrl><Polygon><outerBoundaryIs><LinearRing><coordinates>");
+                            for(int j = 0; j < POINTS_PER_FEATURE; j++) {
+                                final double theta = 2d * Math.PI * j / POINTS_PER_FEATURE;
+                                out.write((x + Math.cos(theta) * 0.01d) + "," + (y + Math.sin(theta) * 0.01d) + ",0 ");
+                            }
+                            out.write(x + 0.01d + "," + y + ",0");
+                            out.write("</coordinates></LinearRing></outerBoundaryIs></Polygon>");
+                            break;
+                    }
+                    out.write("</Placemark>\n");
+                }
+                out.write("</Folder>\n");
+            }
+            out.write("</Document></kml>\n");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if(kmlFile != null)
+            kmlFile.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void createDatabase() throws IOException {
+        dbFile = File.createTempFile("kml-ingest", ".sqlite");
+        if(!dbFile.delete())
+            throw new IOException("Failed to prepare " + dbFile);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDatabase() {
+        if(dbFile != null)
+            dbFile.delete();
+    }
+
+    @Benchmark
+    public boolean ogr() throws IOException {
+        final PersistentDataSourceFeatureDataStore2 db = new PersistentDataSourceFeatureDataStore2(dbFile);
+        try {
+            return db.add(kmlFile, "ogr");
+        } finally {
+            db.dispose();
+        }
+    }
+
+    @Benchmark
+    public boolean streaming() throws IOException {
+        final PersistentDataSourceFeatureDataStore2 db = new PersistentDataSourceFeatureDataStore2(dbFile);
+        try {
+            return db.add(kmlFile, KMLFeatureDataSource.PROVIDER_NAME);
+        } finally {
+            db.dispose();
+        }
+    }
+}
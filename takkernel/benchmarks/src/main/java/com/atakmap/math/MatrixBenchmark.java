@@ -0,0 +1,81 @@
+package com.atakmap.math;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.map.EngineLibrary;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+    private Matrix a;
+    private Matrix b;
+    private Matrix scratch;
+    private final PointD src = new PointD(12.5d, -7.25d, 3d);
+    private final PointD dst = new PointD(0d, 0d, 0d);
+    private final double[] values = new double[16];
+
+    @Setup
+    public void setup() {
+        EngineLibrary.initialize();
+
+        // model-view like transforms
+        a = Matrix.getIdentity();
+        a.translate(100d, -50d, 10d);
+        a.rotate(Math.toRadians(30d), 0d, 0d, 1d);
+        a.scale(2d, 2d, 1d);
+
+        b = Matrix.getIdentity();
+        b.rotate(Math.toRadians(-12d), 1d, 0d, 0d);
+        b.translate(-3d, 4d, 5d);
+
+        scratch = Matrix.getIdentity();
+    }
+
+    @TearDown
+    public void tearDown() {
+        a.dispose();
+        b.dispose();
+        scratch.dispose();
+    }
+
+    @Benchmark
+    public Matrix concatenate() {
+        scratch.set(a);
+        scratch.concatenate(b);
+        return scratch;
+    }
+
+    @Benchmark
+    public PointD transform() {
+        return a.transform(src, dst);
+    }
+
+    @Benchmark
+    public boolean inverse() {
+        scratch.set(a);
+        return scratch.inverse();
+    }
+
+    @Benchmark
+    public double[] get() {
+        a.get(values);
+        return values;
+    }
+}
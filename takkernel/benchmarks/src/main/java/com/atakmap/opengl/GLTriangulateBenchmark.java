@@ -0,0 +1,64 @@
+package com.atakmap.opengl;
+
+import java.nio.DoubleBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GLTriangulateBenchmark {
+
+    /** number of polygon vertices */
+    @Param({"16", "64", "256"})
+    public int numVerts;
+
+    private DoubleBuffer convex;
+    private DoubleBuffer concave;
+    private ShortBuffer indices;
+
+    @Setup
+    public void setup() {
+        convex = DoubleBuffer.allocate(numVerts * 2);
+        concave = DoubleBuffer.allocate(numVerts * 2);
+        for (int i = 0; i < numVerts; i++) {
+            final double theta = 2d * Math.PI * i / numVerts;
+            convex.put(Math.cos(theta)).put(Math.sin(theta));
+
+            // star, alternating inner and outer radius, requires ear clipping
+            final double radius = (i % 2 == 0) ? 1d : 0.5d;
+            concave.put(radius * Math.cos(theta))
+                    .put(radius * Math.sin(theta));
+        }
+        convex.flip();
+        concave.flip();
+        indices = ShortBuffer.allocate((numVerts - 2) * 3);
+    }
+
+    @Benchmark
+    public int triangulateConvex() {
+        indices.clear();
+        return GLTriangulate.triangulate(convex, numVerts, indices);
+    }
+
+    @Benchmark
+    public int triangulateConcave() {
+        indices.clear();
+        return GLTriangulate.triangulate(concave, numVerts, indices);
+    }
+}
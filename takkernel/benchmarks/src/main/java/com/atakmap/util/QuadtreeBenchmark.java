@@ -0,0 +1,99 @@
+package com.atakmap.util;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atakmap.math.PointD;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadtreeBenchmark {
+
+    private static final int NUM_QUERIES = 256;
+
+    /** number of objects in the tree */
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private double[][] objects;
+    private double[][] queries;
+    private Quadtree<double[]> tree;
+    private final ArrayList<double[]> result = new ArrayList<>();
+    private int idx;
+
+    private static final Quadtree.Function<double[]> BOUNDS = new Quadtree.Function<double[]>() {
+        @Override
+        public void getBounds(double[] object, PointD min, PointD max) {
+            min.x = object[0];
+            min.y = object[1];
+            max.x = object[2];
+            max.y = object[3];
+        }
+    };
+
+    @Setup
+    public void setup() {
+        final Random r = new Random(1234);
+
+        // small extents, such as map items
+        objects = new double[size][];
+        for (int i = 0; i < size; i++) {
+            final double x = r.nextDouble() * 360d - 180d;
+            final double y = r.nextDouble() * 180d - 90d;
+            objects[i] = new double[] {
+                    x, y,
+                    Math.min(x + r.nextDouble() * 0.1d, 180d),
+                    Math.min(y + r.nextDouble() * 0.1d, 90d)
+            };
+        }
+
+        // viewport sized windows
+        queries = new double[NUM_QUERIES][];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            final double x = r.nextDouble() * 350d - 180d;
+            final double y = r.nextDouble() * 170d - 90d;
+            queries[i] = new double[] {x, y, x + 10d, y + 10d};
+        }
+
+        tree = build();
+    }
+
+    private Quadtree<double[]> build() {
+        final Quadtree<double[]> retval = new Quadtree<>(BOUNDS, -180d, -90d,
+                180d, 90d);
+        for (double[] o : objects)
+            retval.add(o);
+        return retval;
+    }
+
+    @Benchmark
+    public Quadtree<double[]> insert() {
+        return build();
+    }
+
+    @Benchmark
+    public int query() {
+        idx = (idx + 1) % NUM_QUERIES;
+        final double[] q = queries[idx];
+        result.clear();
+        tree.get(q[0], q[1], q[2], q[3], result);
+        return result.size();
+    }
+}
@@ -0,0 +1,54 @@
+
+package com.atakmap.coremap.filesystem;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import com.atakmap.coremap.log.Log;
+
+import java.io.File;
+
+/**
+ * Hard link support for the local filesystem. Links bypass any registered
+ * {@link com.atakmap.coremap.io.IOProvider}; callers should only use them when
+ * the default provider is in use.
+ */
+public final class HardLinks {
+
+    private static final String TAG = "HardLinks";
+
+    private HardLinks() {
+    }
+
+    /**
+     * Create a hard link to an existing file
+     *
+     * @param existing the existing file
+     * @param link the path of the new link, which must not exist and must be
+     *            on the same filesystem as <code>existing</code>
+     * @return true if the link was created
+     */
+    public static boolean link(File existing, File link) {
+        try {
+            Os.link(existing.getAbsolutePath(), link.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            Log.w(TAG, "Failed to link " + link + " to " + existing + ", "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param f a file
+     * @return the number of hard links to the file, or <code>-1</code> if the
+     *         count is not available
+     */
+    public static int getLinkCount(File f) {
+        try {
+            return (int) Os.lstat(f.getAbsolutePath()).st_nlink;
+        } catch (ErrnoException e) {
+            return -1;
+        }
+    }
+}
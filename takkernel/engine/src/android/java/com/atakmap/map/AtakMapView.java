@@ -29,6 +29,7 @@ import com.atakmap.map.layer.Layer;
 import com.atakmap.map.layer.Layers;
 import com.atakmap.map.layer.feature.FeatureDataSourceContentFactory;
 import com.atakmap.map.layer.feature.falconview.FalconViewFeatureDataSource;
+import com.atakmap.map.layer.feature.kml.KMLFeatureDataSource;
 import com.atakmap.map.layer.feature.ogr.OgrFeatureDataSource;
 import com.atakmap.map.layer.raster.gpkg.GeoPackageMosaicDatabase;
 import com.atakmap.map.layer.raster.mbtiles.MBTilesMosaicDatabase;
@@ -416,6 +417,7 @@ public class AtakMapView extends ViewGroup {
         FeatureDataSourceContentFactory.register(new FalconViewFeatureDataSource(), 2);
         FeatureDataSourceContentFactory.register(new OgrFeatureDataSource(), 1);
         FeatureDataSourceContentFactory.register(new MvtFeatureDataSource(), 2);
+        FeatureDataSourceContentFactory.register(new KMLFeatureDataSource(), 0);
 
         // MosaicDatabaseSpi
         MosaicDatabaseFactory2.register(NativeImageryMosaicDatabase2.SPI);
@@ -0,0 +1,58 @@
+
+package com.atakmap.coremap.filesystem;
+
+import com.atakmap.coremap.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+
+/**
+ * Hard link support for the local filesystem. Links bypass any registered
+ * {@link com.atakmap.coremap.io.IOProvider}; callers should only use them when
+ * the default provider is in use.
+ */
+public final class HardLinks {
+
+    private static final String TAG = "HardLinks";
+
+    private HardLinks() {
+    }
+
+    /**
+     * Create a hard link to an existing file
+     *
+     * @param existing the existing file
+     * @param link the path of the new link, which must not exist and must be
+     *            on the same filesystem as <code>existing</code>
+     * @return true if the link was created
+     */
+    public static boolean link(File existing, File link) {
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.w(TAG, "Failed to link " + link + " to " + existing + ", "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param f a file
+     * @return the number of hard links to the file, or <code>-1</code> if the
+     *         count is not available
+     */
+    public static int getLinkCount(File f) {
+        try {
+            Object count = Files.getAttribute(f.toPath(), "unix:nlink",
+                    LinkOption.NOFOLLOW_LINKS);
+            return (count instanceof Number) ? ((Number) count).intValue()
+                    : -1;
+        } catch (IOException | UnsupportedOperationException
+                | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -59,7 +59,10 @@ uint32_t GLLabelManager::addLabel(GLLabel& label) NOTHROWS {
 
 void GLLabelManager::removeLabel(const uint32_t id) NOTHROWS {
     Lock lock(mutex_);
+    removeLabelNoSync(id);
+}
 
+void GLLabelManager::removeLabelNoSync(const uint32_t id) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -73,7 +76,10 @@ void GLLabelManager::removeLabel(const uint32_t id) NOTHROWS {
 
 void GLLabelManager::setGeometry(const uint32_t id, const TAK::Engine::Feature::Geometry2& geometry) NOTHROWS {
     Lock lock(mutex_);
+    setGeometryNoSync(id, geometry);
+}
 
+void GLLabelManager::setGeometryNoSync(const uint32_t id, const TAK::Engine::Feature::Geometry2& geometry) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -84,7 +90,10 @@ void GLLabelManager::setGeometry(const uint32_t id, const TAK::Engine::Feature::
 
 void GLLabelManager::setAltitudeMode(const uint32_t id, const TAK::Engine::Feature::AltitudeMode altitude_mode) NOTHROWS {
     Lock lock(mutex_);
+    setAltitudeModeNoSync(id, altitude_mode);
+}
 
+void GLLabelManager::setAltitudeModeNoSync(const uint32_t id, const TAK::Engine::Feature::AltitudeMode altitude_mode) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -95,7 +104,10 @@ void GLLabelManager::setAltitudeMode(const uint32_t id, const TAK::Engine::Featu
 
 void GLLabelManager::setText(const uint32_t id, TAK::Engine::Port::String text) NOTHROWS {
     Lock lock(mutex_);
+    setTextNoSync(id, text);
+}
 
+void GLLabelManager::setTextNoSync(const uint32_t id, TAK::Engine::Port::String text) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -106,7 +118,10 @@ void GLLabelManager::setText(const uint32_t id, TAK::Engine::Port::String text)
 
 void GLLabelManager::setTextFormat(const uint32_t id, const TextFormatParams* fmt) NOTHROWS {
     Lock lock(mutex_);
+    setTextFormatNoSync(id, fmt);
+}
 
+void GLLabelManager::setTextFormatNoSync(const uint32_t id, const TextFormatParams* fmt) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -124,7 +139,10 @@ void GLLabelManager::setTextFormat(const uint32_t id, const TextFormatParams* fm
 
 void GLLabelManager::setVisible(const uint32_t id, bool visible) NOTHROWS {
     Lock lock(mutex_);
+    setVisibleNoSync(id, visible);
+}
 
+void GLLabelManager::setVisibleNoSync(const uint32_t id, bool visible) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -150,7 +168,10 @@ void GLLabelManager::setAlwaysRender(const uint32_t id, bool always_render) NOTH
 
 void GLLabelManager::setMaxDrawResolution(const uint32_t id, double max_draw_resolution) NOTHROWS {
     Lock lock(mutex_);
+    setMaxDrawResolutionNoSync(id, max_draw_resolution);
+}
 
+void GLLabelManager::setMaxDrawResolutionNoSync(const uint32_t id, double max_draw_resolution) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -161,7 +182,10 @@ void GLLabelManager::setMaxDrawResolution(const uint32_t id, double max_draw_res
 
 void GLLabelManager::setAlignment(const uint32_t id, TextAlignment alignment) NOTHROWS {
     Lock lock(mutex_);
+    setAlignmentNoSync(id, alignment);
+}
 
+void GLLabelManager::setAlignmentNoSync(const uint32_t id, TextAlignment alignment) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -171,7 +195,10 @@ void GLLabelManager::setAlignment(const uint32_t id, TextAlignment alignment) NO
 
 void GLLabelManager::setVerticalAlignment(const uint32_t id, VerticalAlignment vertical_alignment) NOTHROWS {
     Lock lock(mutex_);
+    setVerticalAlignmentNoSync(id, vertical_alignment);
+}
 
+void GLLabelManager::setVerticalAlignmentNoSync(const uint32_t id, VerticalAlignment vertical_alignment) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -181,7 +208,10 @@ void GLLabelManager::setVerticalAlignment(const uint32_t id, VerticalAlignment v
 
 void GLLabelManager::setDesiredOffset(const uint32_t id, const TAK::Engine::Math::Point2<double>& desired_offset) NOTHROWS {
     Lock lock(mutex_);
+    setDesiredOffsetNoSync(id, desired_offset);
+}
 
+void GLLabelManager::setDesiredOffsetNoSync(const uint32_t id, const TAK::Engine::Math::Point2<double>& desired_offset) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -191,7 +221,10 @@ void GLLabelManager::setDesiredOffset(const uint32_t id, const TAK::Engine::Math
 
 void GLLabelManager::setColor(const uint32_t id, int color) NOTHROWS {
     Lock lock(mutex_);
+    setColorNoSync(id, color);
+}
 
+void GLLabelManager::setColorNoSync(const uint32_t id, int color) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -201,7 +234,10 @@ void GLLabelManager::setColor(const uint32_t id, int color) NOTHROWS {
 
 void GLLabelManager::setBackColor(const uint32_t id, int color) NOTHROWS {
     Lock lock(mutex_);
+    setBackColorNoSync(id, color);
+}
 
+void GLLabelManager::setBackColorNoSync(const uint32_t id, int color) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -211,7 +247,10 @@ void GLLabelManager::setBackColor(const uint32_t id, int color) NOTHROWS {
 
 void GLLabelManager::setFill(const uint32_t id, bool fill) NOTHROWS {
     Lock lock(mutex_);
+    setFillNoSync(id, fill);
+}
 
+void GLLabelManager::setFillNoSync(const uint32_t id, bool fill) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -221,7 +260,10 @@ void GLLabelManager::setFill(const uint32_t id, bool fill) NOTHROWS {
 
 void GLLabelManager::setRotation(const uint32_t id, const float rotation, const bool absolute) NOTHROWS {
     Lock lock(mutex_);
+    setRotationNoSync(id, rotation, absolute);
+}
 
+void GLLabelManager::setRotationNoSync(const uint32_t id, const float rotation, const bool absolute) NOTHROWS {
     if (map_idx_ <= id) return;
 
     draw_version_ = -1;
@@ -256,7 +298,10 @@ void GLLabelManager::getSize(const uint32_t id, atakmap::math::Rectangle<double>
 
 void GLLabelManager::setPriority(const uint32_t id, const Priority priority) NOTHROWS {
     Lock lock(mutex_);
+    setPriorityNoSync(id, priority);
+}
 
+void GLLabelManager::setPriorityNoSync(const uint32_t id, const Priority priority) NOTHROWS {
     for (auto it = label_priorities_.begin(); it != label_priorities_.end(); it++) {
         if (it->first == priority) continue;
 
@@ -270,6 +315,11 @@ void GLLabelManager::setPriority(const uint32_t id, const Priority priority) NOT
 }
 
 void GLLabelManager::setHints(const uint32_t id, const unsigned int hints) NOTHROWS
+{
+    setHintsNoSync(id, hints);
+}
+
+void GLLabelManager::setHintsNoSync(const uint32_t id, const unsigned int hints) NOTHROWS
 {
     if (map_idx_ <= id) return;
 
@@ -543,3 +593,88 @@ GLText2* GLLabelManager::getDefaultText() NOTHROWS {
     }
     return defaultText;
 }
+
+GLLabelManager::Transaction::Transaction(GLLabelManager &owner) NOTHROWS :
+    owner_(owner),
+    lock_(owner.mutex_)
+{}
+
+void GLLabelManager::Transaction::removeLabel(const uint32_t id) NOTHROWS
+{
+    owner_.removeLabelNoSync(id);
+}
+
+void GLLabelManager::Transaction::setGeometry(const uint32_t id, const TAK::Engine::Feature::Geometry2& geometry) NOTHROWS
+{
+    owner_.setGeometryNoSync(id, geometry);
+}
+
+void GLLabelManager::Transaction::setAltitudeMode(const uint32_t id, const TAK::Engine::Feature::AltitudeMode altitude_mode) NOTHROWS
+{
+    owner_.setAltitudeModeNoSync(id, altitude_mode);
+}
+
+void GLLabelManager::Transaction::setText(const uint32_t id, TAK::Engine::Port::String text) NOTHROWS
+{
+    owner_.setTextNoSync(id, text);
+}
+
+void GLLabelManager::Transaction::setTextFormat(const uint32_t id, const TextFormatParams* fmt) NOTHROWS
+{
+    owner_.setTextFormatNoSync(id, fmt);
+}
+
+void GLLabelManager::Transaction::setVisible(const uint32_t id, bool visible) NOTHROWS
+{
+    owner_.setVisibleNoSync(id, visible);
+}
+
+void GLLabelManager::Transaction::setMaxDrawResolution(const uint32_t id, double max_draw_resolution) NOTHROWS
+{
+    owner_.setMaxDrawResolutionNoSync(id, max_draw_resolution);
+}
+
+void GLLabelManager::Transaction::setAlignment(const uint32_t id, TextAlignment alignment) NOTHROWS
+{
+    owner_.setAlignmentNoSync(id, alignment);
+}
+
+void GLLabelManager::Transaction::setVerticalAlignment(const uint32_t id, VerticalAlignment vertical_alignment) NOTHROWS
+{
+    owner_.setVerticalAlignmentNoSync(id, vertical_alignment);
+}
+
+void GLLabelManager::Transaction::setDesiredOffset(const uint32_t id, const TAK::Engine::Math::Point2<double>& desired_offset) NOTHROWS
+{
+    owner_.setDesiredOffsetNoSync(id, desired_offset);
+}
+
+void GLLabelManager::Transaction::setColor(const uint32_t id, int color) NOTHROWS
+{
+    owner_.setColorNoSync(id, color);
+}
+
+void GLLabelManager::Transaction::setBackColor(const uint32_t id, int color) NOTHROWS
+{
+    owner_.setBackColorNoSync(id, color);
+}
+
+void GLLabelManager::Transaction::setFill(const uint32_t id, bool fill) NOTHROWS
+{
+    owner_.setFillNoSync(id, fill);
+}
+
+void GLLabelManager::Transaction::setRotation(const uint32_t id, const float rotation, const bool absolute) NOTHROWS
+{
+    owner_.setRotationNoSync(id, rotation, absolute);
+}
+
+void GLLabelManager::Transaction::setPriority(const uint32_t id, const Priority priority) NOTHROWS
+{
+    owner_.setPriorityNoSync(id, priority);
+}
+
+void GLLabelManager::Transaction::setHints(const uint32_t id, const unsigned int hints) NOTHROWS
+{
+    owner_.setHintsNoSync(id, hints);
+}
@@ -10,6 +10,7 @@
 #include "renderer/GLRenderBatch2.h"
 #include "renderer/GLRenderContext.h"
 #include "renderer/GLTextureAtlas2.h"
+#include "thread/Lock.h"
 #include "thread/Mutex.h"
 
 #include <vector>
@@ -32,6 +33,39 @@ namespace TAK
 #else
                     static const uint32_t NO_ID = UINT32_MAX;
 #endif
+                public:
+                    /**
+                     * Applies a sequence of label updates while holding the
+                     * label lock. The lock is acquired on construction and
+                     * released on destruction.
+                     */
+                    class ENGINE_API Transaction
+                    {
+                    public:
+                        Transaction(GLLabelManager &owner) NOTHROWS;
+                    private:
+                        Transaction(const Transaction &) NOTHROWS;
+                    public:
+                        void removeLabel(const uint32_t id) NOTHROWS;
+                        void setGeometry(const uint32_t id, const TAK::Engine::Feature::Geometry2& geometry) NOTHROWS;
+                        void setAltitudeMode(const uint32_t id, const TAK::Engine::Feature::AltitudeMode altitude_mode) NOTHROWS;
+                        void setText(const uint32_t id, const TAK::Engine::Port::String text) NOTHROWS;
+                        void setTextFormat(const uint32_t id, const TextFormatParams* fmt) NOTHROWS;
+                        void setVisible(const uint32_t id, const bool visible) NOTHROWS;
+                        void setMaxDrawResolution(const uint32_t id, const double max_draw_resolution) NOTHROWS;
+                        void setAlignment(const uint32_t id, const TextAlignment alignment) NOTHROWS;
+                        void setVerticalAlignment(const uint32_t id, const VerticalAlignment alignment) NOTHROWS;
+                        void setDesiredOffset(const uint32_t id, const Math::Point2<double>& desired_offset) NOTHROWS;
+                        void setColor(const uint32_t id, const int color) NOTHROWS;
+                        void setBackColor(const uint32_t id, const int color) NOTHROWS;
+                        void setFill(const uint32_t id, const bool fill) NOTHROWS;
+                        void setRotation(const uint32_t id, const float rotation, const bool absolute) NOTHROWS;
+                        void setPriority(const uint32_t id, const Priority priority) NOTHROWS;
+                        void setHints(const uint32_t id, const unsigned int hints) NOTHROWS;
+                    private:
+                        GLLabelManager &owner_;
+                        Thread::Lock lock_;
+                    };
                 public:
                     GLLabelManager();
                     virtual ~GLLabelManager();
@@ -65,6 +99,22 @@ namespace TAK
                     void start() NOTHROWS override;
                     void stop() NOTHROWS override;
                 private:
+                    void removeLabelNoSync(const uint32_t id) NOTHROWS;
+                    void setGeometryNoSync(const uint32_t id, const TAK::Engine::Feature::Geometry2& geometry) NOTHROWS;
+                    void setAltitudeModeNoSync(const uint32_t id, const TAK::Engine::Feature::AltitudeMode altitude_mode) NOTHROWS;
+                    void setTextNoSync(const uint32_t id, const TAK::Engine::Port::String text) NOTHROWS;
+                    void setTextFormatNoSync(const uint32_t id, const TextFormatParams* fmt) NOTHROWS;
+                    void setVisibleNoSync(const uint32_t id, const bool visible) NOTHROWS;
+                    void setMaxDrawResolutionNoSync(const uint32_t id, const double max_draw_resolution) NOTHROWS;
+                    void setAlignmentNoSync(const uint32_t id, const TextAlignment alignment) NOTHROWS;
+                    void setVerticalAlignmentNoSync(const uint32_t id, const VerticalAlignment alignment) NOTHROWS;
+                    void setDesiredOffsetNoSync(const uint32_t id, const Math::Point2<double>& desired_offset) NOTHROWS;
+                    void setColorNoSync(const uint32_t id, const int color) NOTHROWS;
+                    void setBackColorNoSync(const uint32_t id, const int color) NOTHROWS;
+                    void setFillNoSync(const uint32_t id, const bool fill) NOTHROWS;
+                    void setRotationNoSync(const uint32_t id, const float rotation, const bool absolute) NOTHROWS;
+                    void setPriorityNoSync(const uint32_t id, const Priority priority) NOTHROWS;
+                    void setHintsNoSync(const uint32_t id, const unsigned int hints) NOTHROWS;
                     void draw(const GLGlobeBase& view, const Priority priority,
                               std::vector<GLLabel::LabelPlacement>& label_placements, int render_pass, std::vector<uint32_t> &renderedLabels) NOTHROWS;
                 private:
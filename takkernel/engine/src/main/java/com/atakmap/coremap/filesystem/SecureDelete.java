@@ -54,6 +54,11 @@ public class SecureDelete {
         if (file.isDirectory() || fileLength == 0)
             return file.delete();
 
+        // Data is still referenced by other hard links, overwriting it would
+        // destroy their contents
+        if (HardLinks.getLinkCount(file) > 1)
+            return file.delete();
+
         String filePath = file.getAbsolutePath();
         try {
             // Open file output stream
@@ -0,0 +1,445 @@
+package com.atakmap.map.elevation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.atakmap.coremap.log.Log;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+import com.atakmap.coremap.maps.coords.GeoPointMetaData;
+import com.atakmap.interop.Pointer;
+import com.atakmap.map.layer.feature.geometry.Envelope;
+import com.atakmap.map.layer.feature.geometry.Geometry;
+import com.atakmap.map.layer.feature.geometry.GeometryFactory;
+import com.atakmap.util.Disposable;
+
+/**
+ * A reusable context for repeated point elevation lookups, such as sampling
+ * along a route or filling in altitudes for a batch of points.
+ *
+ * <P>Each call to
+ * {@link ElevationManager#getElevation(double, double, ElevationManager.QueryParameters, GeoPointMetaData)}
+ * creates and adapts native query parameters and runs a full source query
+ * for the single point. The context instead keeps the native query
+ * parameters for its lifetime and queries the sources once per cell of a
+ * fixed grid. The chunks returned for a cell are retained in a least
+ * recently used cache, so that subsequent lookups that fall in the same
+ * cell only sample the already loaded chunks. Results are identical to
+ * those of <code>ElevationManager</code>; the chunk with the highest
+ * priority under the query order that contains the point and has a value
+ * wins.
+ *
+ * <P>The cache is cleared when an elevation source is attached, detached or
+ * reports that its content has changed. The context must be disposed when
+ * no longer needed to release the cached chunks.
+ */
+public final class ElevationQueryContext implements Disposable {
+
+    private static final String TAG = "ElevationQueryContext";
+
+    /** default cell size, in degrees (approximately 1.7km at the equator) */
+    public static final double DEFAULT_CELL_SIZE = 1d / 64d;
+    public static final int DEFAULT_MAX_CHUNKS = 32;
+
+    /** maximum number of cells that are indexed */
+    private static final int MAX_CELLS = 512;
+
+    private final ElevationSource.QueryParameters params;
+    private final double cellSize;
+    private final int maxChunks;
+
+    private Pointer cparams;
+
+    private final LinkedHashMap<Long, Cell> cells;
+    private final LinkedHashMap<String, CachedChunk> chunks;
+
+    private final Map<ElevationSource, Boolean> observed = new IdentityHashMap<>();
+    private final SourceObserver observer = new SourceObserver();
+    private volatile boolean invalid;
+
+    /** the number of chunks referenced by the cell being queried */
+    private int pinned;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a new context with the default cell size and cache size.
+     *
+     * @param filter The filter, may be <code>null</code>. The spatial filter
+     *               is ignored.
+     */
+    public ElevationQueryContext(ElevationManager.QueryParameters filter) {
+        this(Adapter.adapt((filter != null) ? filter
+                : new ElevationManager.QueryParameters(), null),
+                DEFAULT_CELL_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Creates a new context with the default cell size and cache size.
+     *
+     * @param params The query parameters, may be <code>null</code>. The
+     *               spatial filter is ignored.
+     */
+    public ElevationQueryContext(ElevationSource.QueryParameters params) {
+        this(params, DEFAULT_CELL_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Creates a new context.
+     *
+     * @param params    The query parameters, may be <code>null</code>. The
+     *                  spatial filter is ignored.
+     * @param cellSize  The size of the cells that sources are queried for,
+     *                  in degrees
+     * @param maxChunks The maximum number of chunks retained in the cache
+     */
+    public ElevationQueryContext(ElevationSource.QueryParameters params,
+            double cellSize, int maxChunks) {
+        if (!(cellSize > 0d))
+            throw new IllegalArgumentException("cellSize must be positive");
+        if (maxChunks < 1)
+            throw new IllegalArgumentException("maxChunks must be positive");
+
+        this.params = copy(params);
+        this.cellSize = cellSize;
+        this.maxChunks = maxChunks;
+
+        this.cells = new LinkedHashMap<Long, Cell>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Cell> eldest) {
+                return size() > MAX_CELLS;
+            }
+        };
+        this.chunks = new LinkedHashMap<String, CachedChunk>(16, 0.75f,
+                true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, CachedChunk> eldest) {
+                // never evict chunks of the cell currently being queried
+                if (size() <= Math.max(ElevationQueryContext.this.maxChunks,
+                        pinned))
+                    return false;
+                eldest.getValue().dispose();
+                return true;
+            }
+        };
+
+        this.cparams = NativeElevationSource.QueryParameters_create();
+
+        ElevationSourceManager.addOnSourcesChangedListener(this.observer);
+        Collection<ElevationSource> sources = new ArrayList<>();
+        ElevationSourceManager.getSources(sources);
+        synchronized (this.observed) {
+            for (ElevationSource src : sources)
+                this.observe(src);
+        }
+    }
+
+    /**
+     * Returns the elevation, as meters HAE, at the specified location. A
+     * value of <code>Double.NaN</code> is returned if no elevation is
+     * available.
+     *
+     * @param point Geo point containing the latitude and longitude to query
+     *
+     * @return  The elevation value at the specified location, in meters HAE,
+     *          or <code>Double.NaN</code> if not available.
+     */
+    public double getElevation(GeoPoint point) {
+        return getElevation(point.getLatitude(), point.getLongitude(), null);
+    }
+
+    /**
+     * Returns the elevation, as meters HAE, at the specified location. A
+     * value of <code>Double.NaN</code> is returned if no elevation is
+     * available.
+     *
+     * @param latitude  The latitude
+     * @param longitude The longitude
+     * @param result A geopoint metadata container to store the result data
+     *               <code>null</code> if no additional metadata is desired.
+     *
+     * @return  The elevation value at the specified location, in meters HAE,
+     *          or <code>Double.NaN</code> if not available.
+     */
+    public synchronized double getElevation(double latitude, double longitude,
+            GeoPointMetaData result) {
+        if (this.cparams == null)
+            throw new IllegalStateException("context has been disposed");
+
+        if (this.invalid) {
+            this.invalid = false;
+            this.clear();
+        }
+
+        final Cell cell = this.getCell(latitude, longitude);
+
+        double hae = Double.NaN;
+        String type = null;
+        for (CachedChunk chunk : cell.chunks) {
+            if (!chunk.contains(latitude, longitude))
+                continue;
+            // mark as recently used
+            this.chunks.get(chunk.key);
+            hae = chunk.chunk.sample(latitude, longitude);
+            if (!Double.isNaN(hae)) {
+                type = chunk.type;
+                break;
+            }
+        }
+
+        if (result != null) {
+            if (!Double.isNaN(hae)) {
+                result.set(new GeoPoint(latitude, longitude, hae));
+                result.setAltitudeSource((type != null && type.length() > 0)
+                        ? type
+                        : GeoPointMetaData.UNKNOWN);
+            } else {
+                result.set(new GeoPoint(latitude, longitude))
+                        .setAltitudeSource(GeoPointMetaData.UNKNOWN);
+            }
+        }
+        return hae;
+    }
+
+    /**
+     * @return the number of lookups that were served from the cache
+     */
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of lookups that required the elevation sources to
+     *         be queried
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * @return the number of elevation chunks currently cached
+     */
+    public synchronized int getCachedChunkCount() {
+        return this.chunks.size();
+    }
+
+    public synchronized void resetStatistics() {
+        this.hits = 0L;
+        this.misses = 0L;
+    }
+
+    /**
+     * Discards all cached chunks. Subsequent lookups will query the
+     * elevation sources again.
+     */
+    public synchronized void invalidate() {
+        this.clear();
+    }
+
+    @Override
+    public void dispose() {
+        ElevationSourceManager.removeOnSourcesChangedListener(this.observer);
+        synchronized (this.observed) {
+            for (ElevationSource src : this.observed.keySet())
+                src.removeOnContentChangedListener(this.observer);
+            this.observed.clear();
+        }
+        synchronized (this) {
+            this.clear();
+            if (this.cparams != null) {
+                NativeElevationSource.QueryParameters_destruct(this.cparams);
+                this.cparams = null;
+            }
+        }
+    }
+
+    /*************************************************************************/
+
+    private Cell getCell(double latitude, double longitude) {
+        final int row = (int) Math.floor(latitude / this.cellSize);
+        final int col = (int) Math.floor(longitude / this.cellSize);
+        final Long key = Long.valueOf(((long) row << 32) | (col & 0xFFFFFFFFL));
+
+        Cell cell = this.cells.get(key);
+        if (cell != null && cell.isValid()) {
+            this.hits++;
+            return cell;
+        }
+
+        this.misses++;
+        cell = this.query(row * this.cellSize, col * this.cellSize,
+                (row + 1) * this.cellSize, (col + 1) * this.cellSize);
+        // failed queries are not retained
+        if (cell != null)
+            this.cells.put(key, cell);
+        else
+            cell = Cell.EMPTY;
+        return cell;
+    }
+
+    private Cell query(double south, double west, double north, double east) {
+        this.params.spatialFilter = GeometryFactory.fromEnvelope(
+                new Envelope(west, south, 0d, east, north, 0d));
+        NativeElevationSource.QueryParameters_adapt(this.params,
+                this.cparams.raw);
+
+        final ArrayList<CachedChunk> result = new ArrayList<>();
+        ElevationSource.Cursor cursor = null;
+        try {
+            final Pointer cursorPtr = ElevationManager
+                    .queryElevationSources(this.cparams.raw);
+            if (cursorPtr == null)
+                return null;
+            cursor = new NativeElevationSourceCursor(cursorPtr, null);
+            while (cursor.moveToNext()) {
+                this.pinned = result.size() + 1;
+                final String uri = cursor.getUri();
+                final String key = cursor.getType() + '@' + uri;
+                CachedChunk chunk = this.chunks.get(key);
+                if (chunk == null) {
+                    final ElevationChunk c = cursor.get();
+                    if (c == null)
+                        continue;
+                    chunk = new CachedChunk(key, c, cursor.getBounds());
+                    this.chunks.put(key, chunk);
+                }
+                result.add(chunk);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to query elevation sources", e);
+            return null;
+        } finally {
+            this.pinned = 0;
+            if (cursor != null)
+                cursor.close();
+        }
+
+        return new Cell(result.toArray(new CachedChunk[0]));
+    }
+
+    private void clear() {
+        for (CachedChunk chunk : this.chunks.values())
+            chunk.dispose();
+        this.chunks.clear();
+        this.cells.clear();
+    }
+
+    private void observe(ElevationSource src) {
+        if (this.observed.put(src, Boolean.TRUE) == null)
+            src.addOnContentChangedListener(this.observer);
+    }
+
+    private static ElevationSource.QueryParameters copy(
+            ElevationSource.QueryParameters other) {
+        final ElevationSource.QueryParameters retval = new ElevationSource.QueryParameters();
+        if (other != null) {
+            retval.maxResolution = other.maxResolution;
+            retval.minResolution = other.minResolution;
+            retval.targetResolution = other.targetResolution;
+            retval.types = other.types;
+            retval.authoritative = other.authoritative;
+            retval.minCE = other.minCE;
+            retval.minLE = other.minLE;
+            retval.order = other.order;
+            retval.flags = other.flags;
+        }
+        return retval;
+    }
+
+    /*************************************************************************/
+
+    private static final class CachedChunk {
+        final String key;
+        final ElevationChunk chunk;
+        final String type;
+        final double minX;
+        final double minY;
+        final double maxX;
+        final double maxY;
+        boolean disposed;
+
+        CachedChunk(String key, ElevationChunk chunk, Geometry bounds) {
+            this.key = key;
+            this.chunk = chunk;
+            this.type = chunk.getType();
+            if (bounds != null) {
+                final Envelope mbb = bounds.getEnvelope();
+                this.minX = mbb.minX;
+                this.minY = mbb.minY;
+                this.maxX = mbb.maxX;
+                this.maxY = mbb.maxY;
+            } else {
+                // no bounds, sample to determine coverage
+                this.minX = -180d;
+                this.minY = -90d;
+                this.maxX = 180d;
+                this.maxY = 90d;
+            }
+        }
+
+        boolean contains(double latitude, double longitude) {
+            return latitude >= this.minY && latitude <= this.maxY
+                    && longitude >= this.minX && longitude <= this.maxX;
+        }
+
+        void dispose() {
+            if (this.disposed)
+                return;
+            this.disposed = true;
+            this.chunk.dispose();
+        }
+    }
+
+    private static final class Cell {
+        static final Cell EMPTY = new Cell(new CachedChunk[0]);
+
+        /** the chunks intersecting the cell, in query order */
+        final CachedChunk[] chunks;
+
+        Cell(CachedChunk[] chunks) {
+            this.chunks = chunks;
+        }
+
+        /**
+         * @return <code>false</code> if any of the chunks has since been
+         *         evicted from the cache
+         */
+        boolean isValid() {
+            for (CachedChunk chunk : this.chunks)
+                if (chunk.disposed)
+                    return false;
+            return true;
+        }
+    }
+
+    private final class SourceObserver implements
+            ElevationSourceManager.OnSourcesChangedListener,
+            ElevationSource.OnContentChangedListener {
+
+        @Override
+        public void onSourceAttached(ElevationSource src) {
+            synchronized (observed) {
+                observe(src);
+            }
+            invalid = true;
+        }
+
+        @Override
+        public void onSourceDetached(ElevationSource src) {
+            synchronized (observed) {
+                if (observed.remove(src) != null)
+                    src.removeOnContentChangedListener(this);
+            }
+            invalid = true;
+        }
+
+        @Override
+        public void onContentChanged(ElevationSource source) {
+            invalid = true;
+        }
+    }
+}
@@ -16,11 +16,18 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.util.Pair;
 
 import com.atakmap.content.BindArgument;
 import com.atakmap.content.WhereClauseBuilder;
+import com.atakmap.coremap.concurrent.NamedThreadFactory;
+import com.atakmap.coremap.io.DatabaseInformation;
 import com.atakmap.coremap.io.IOProviderFactory;
 import com.atakmap.coremap.log.Log;
 import com.atakmap.database.CursorIface;
@@ -81,12 +88,62 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
     
     private final static int DATABASE_VERSION = 4;
 
+    /**
+     * The maximum number of read-only connections opened against a file
+     * backed database to service concurrent queries.
+     */
+    private final static int MAX_READERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The maximum number of distinct simplification tolerances for which
+     * simplified geometry is cached.
+     */
+    private final static int MAX_SIMPLIFY_LEVELS = 32;
+    /**
+     * Geometries whose encoded size is smaller than this many bytes are
+     * simplified on demand rather than cached.
+     */
+    private final static int SIMPLIFY_CACHE_MIN_GEOMETRY_SIZE = 4096;
+    /**
+     * The number of features simplified per transaction when populating the
+     * cache.
+     */
+    private final static int SIMPLIFY_CACHE_CHUNK_SIZE = 16;
+
+    /** populates the simplified geometry caches for all databases */
+    private final static ExecutorService simplifyWorker = new ThreadPoolExecutor(0, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("FDB2-simplify"));
+
     final String databaseFile;
 
     final boolean spatialIndexEnabled;
 
     DatabaseIface database;
 
+    /**
+     * Read-only connections servicing queries concurrently with the primary
+     * connection. <code>null</code> if the database is in-memory or
+     * write-ahead logging could not be enabled.
+     */
+    private final ReaderPool readers;
+
+    private static class SimplifyLevel {
+        /**
+         * The ID in <code>simplify_levels</code>; <code>-1</code> until the
+         * level is registered when the cache is first populated
+         */
+        long id = -1L;
+        double tolerance;
+        /**
+         * The value of <code>total_changes()</code> on the primary connection
+         * when the cache was last brought up to date
+         */
+        long changes = -1L;
+        boolean pending;
+    }
+
+    /** simplified geometry cache levels, keyed by tolerance */
+    final Map<Double, SimplifyLevel> simplifyLevels;
+
     private static class FeatureSetDefn {
         boolean visible;
         int visibleVersion;
@@ -150,6 +207,16 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
             }
 
         }
+
+        this.simplifyLevels = new HashMap<Double, SimplifyLevel>();
+        this.createSimplifyCacheNoSync();
+
+        // with write-ahead logging, readers observe the last committed state
+        // and do not block, nor are blocked by, the writer
+        if(dbFile != null && enableWriteAheadLogging(this.database))
+            this.readers = new ReaderPool(dbFile, MAX_READERS);
+        else
+            this.readers = null;
         
         this.idToAttrSchema = new HashMap<Long, AttributeSpec>();
         this.keyToAttrSchema = new HashMap<String, AttributeSpec>();
@@ -161,6 +228,219 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
         this.refreshImpl();
     }
     
+    private static boolean enableWriteAheadLogging(DatabaseIface database) {
+        CursorIface result = null;
+        try {
+            result = database.query("PRAGMA journal_mode = WAL", null);
+            return result.moveToNext() && "wal".equalsIgnoreCase(result.getString(0));
+        } catch(Throwable t) {
+            Log.w(ABS_TAG, "Failed to enable write-ahead logging", t);
+            return false;
+        } finally {
+            if(result != null)
+                result.close();
+        }
+    }
+
+    /**
+     * Creates, if necessary, the tables backing the simplified geometry cache
+     * and loads the cache levels. Cached geometry is keyed on feature ID,
+     * level and feature version; rows for a feature are dropped when its
+     * geometry is updated.
+     */
+    private void createSimplifyCacheNoSync() {
+        this.database.execute("CREATE TABLE IF NOT EXISTS simplify_levels" +
+                              "    (id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                              "     tolerance REAL UNIQUE)",
+                              null);
+        this.database.execute("CREATE TABLE IF NOT EXISTS features_simplified" +
+                              "    (fid INTEGER," +
+                              "     level INTEGER," +
+                              "     version INTEGER," +
+                              "     geometry BLOB," +
+                              "     PRIMARY KEY (fid, level))",
+                              null);
+        this.database.execute("CREATE TRIGGER IF NOT EXISTS features_simplified_geometry_update AFTER UPDATE OF geometry ON features " +
+                              "BEGIN " +
+                              "DELETE FROM features_simplified WHERE fid = OLD.fid; " +
+                              "END;", null);
+
+        CursorIface result = null;
+        try {
+            result = this.database.query("SELECT id, tolerance FROM simplify_levels", null);
+            while(result.moveToNext()) {
+                SimplifyLevel level = new SimplifyLevel();
+                level.id = result.getLong(0);
+                level.tolerance = result.getDouble(1);
+                this.simplifyLevels.put(Double.valueOf(level.tolerance), level);
+            }
+        } finally {
+            if(result != null)
+                result.close();
+        }
+    }
+
+    /**
+     * Returns the cache level for the specified tolerance, creating a new
+     * level if necessary, and schedules population of the level if the
+     * database has been modified since it was last populated. Returns
+     * <code>null</code> if the maximum number of levels has been reached.
+     *
+     * <P>Invoked on the query path, so the database is not modified here; a
+     * new level is registered by {@link #populateSimplifyCache(SimplifyLevel)}
+     * while holding the modify lock.
+     */
+    private SimplifyLevel getSimplifyLevelNoSync(double tolerance) {
+        SimplifyLevel level = this.simplifyLevels.get(Double.valueOf(tolerance));
+        if(level == null) {
+            if(this.simplifyLevels.size() >= MAX_SIMPLIFY_LEVELS)
+                return null;
+
+            level = new SimplifyLevel();
+            level.tolerance = tolerance;
+            this.simplifyLevels.put(Double.valueOf(tolerance), level);
+        }
+
+        if(!level.pending && level.changes != this.totalChangesNoSync()) {
+            level.pending = true;
+
+            final SimplifyLevel populate = level;
+            simplifyWorker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    populateSimplifyCache(populate);
+                }
+            });
+        }
+
+        return level;
+    }
+
+    /**
+     * Blocks until the simplified geometry caches scheduled for population
+     * so far have been populated.
+     */
+    static void awaitSimplifyCache() throws InterruptedException, ExecutionException {
+        // the worker is a single thread, serving tasks in order
+        simplifyWorker.submit(new Runnable() {
+            @Override
+            public void run() {}
+        }).get();
+    }
+
+    private long totalChangesNoSync() {
+        CursorIface result = null;
+        try {
+            result = this.database.query("SELECT total_changes()", null);
+            return result.moveToNext() ? result.getLong(0) : 0L;
+        } finally {
+            if(result != null)
+                result.close();
+        }
+    }
+
+    /**
+     * Simplifies all large geometries that do not have a current entry for
+     * the specified level. Work is performed in small chunks, each holding
+     * the modify lock and the lock on this instance only briefly, so queries
+     * and modifications may proceed while the cache is populated; queries
+     * simplify on demand until a feature has been cached.
+     */
+    private void populateSimplifyCache(SimplifyLevel level) {
+        try {
+            long lastFid = 0L;
+            boolean done = false;
+            while(!done) {
+                this.internalAcquireModifyLock(false);
+                try {
+                    synchronized(this) {
+                        if(this.database == null)
+                            return;
+                        if(level.id < 0L) {
+                            StatementIface stmt = null;
+                            try {
+                                stmt = this.database.compileStatement("INSERT INTO simplify_levels (tolerance) VALUES (?)");
+                                stmt.bind(1, level.tolerance);
+                                stmt.execute();
+                            } finally {
+                                if(stmt != null)
+                                    stmt.close();
+                            }
+                            level.id = Databases.lastInsertRowId(this.database);
+                        }
+                        if(lastFid == 0L) {
+                            // purge entries for deleted features
+                            StatementIface stmt = null;
+                            try {
+                                stmt = this.database.compileStatement("DELETE FROM features_simplified WHERE level = ? AND NOT EXISTS (SELECT 1 FROM features WHERE features.fid = features_simplified.fid)");
+                                stmt.bind(1, level.id);
+                                stmt.execute();
+                            } finally {
+                                if(stmt != null)
+                                    stmt.close();
+                            }
+                        }
+
+                        LinkedList<Long> fids = new LinkedList<Long>();
+                        CursorIface result = null;
+                        try {
+                            result = BindArgument.query(this.database,
+                                    "SELECT features.fid FROM features" +
+                                    " LEFT JOIN features_simplified ON features_simplified.fid = features.fid AND features_simplified.level = ?" +
+                                    " WHERE features.fid > ? AND length(features.geometry) >= ?" +
+                                    " AND (features_simplified.fid IS NULL OR features_simplified.version != features.version)" +
+                                    " ORDER BY features.fid LIMIT ?",
+                                    new BindArgument[] {
+                                        new BindArgument(level.id),
+                                        new BindArgument(lastFid),
+                                        new BindArgument(SIMPLIFY_CACHE_MIN_GEOMETRY_SIZE),
+                                        new BindArgument(SIMPLIFY_CACHE_CHUNK_SIZE),
+                                    });
+                            while(result.moveToNext())
+                                fids.add(Long.valueOf(result.getLong(0)));
+                        } finally {
+                            if(result != null)
+                                result.close();
+                        }
+
+                        if(fids.isEmpty()) {
+                            level.changes = this.totalChangesNoSync();
+                            done = true;
+                            continue;
+                        }
+
+                        this.database.beginTransaction();
+                        StatementIface stmt = null;
+                        try {
+                            stmt = this.database.compileStatement("INSERT OR REPLACE INTO features_simplified (fid, level, version, geometry) SELECT fid, ?, version, SimplifyPreserveTopology(geometry, ?) FROM features WHERE fid = ?");
+                            for(Long fid : fids) {
+                                stmt.bind(1, level.id);
+                                stmt.bind(2, level.tolerance);
+                                stmt.bind(3, fid.longValue());
+                                stmt.execute();
+                                stmt.clearBindings();
+                            }
+                            this.database.setTransactionSuccessful();
+                        } finally {
+                            if(stmt != null)
+                                stmt.close();
+                            this.database.endTransaction();
+                        }
+                        lastFid = fids.getLast().longValue();
+                    }
+                } finally {
+                    this.releaseModifyLock();
+                }
+            }
+        } catch(Throwable t) {
+            Log.w(ABS_TAG, "Failed to populate simplified geometry cache for " + this.databaseFile, t);
+        } finally {
+            synchronized(this) {
+                level.pending = false;
+            }
+        }
+    }
+
     private void buildTables(boolean indices) {
         CursorIface result;
 
@@ -379,7 +659,7 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
         }
     }
     
-    private void validateAttributeSchema() {
+    private synchronized void validateAttributeSchema() {
         if(this.attrSchemaDirty) {
             CursorIface result = null;
             try {
@@ -635,9 +915,8 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
     }
 
     @Override
-    public synchronized FeatureCursor queryFeatures(FeatureQueryParameters params) throws DataStoreException {
-        if(this.database == null)
-            throw new DataStoreException("Datastore is closed");
+    public FeatureCursor queryFeatures(FeatureQueryParameters params) throws DataStoreException {
+        final boolean concurrent = this.isConcurrentReadAllowed();
 
         final int ignoredFields = (params == null) ? 0 : params.ignoredFeatureProperties;
 
@@ -677,8 +956,16 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
 
 
 
+        // a lone simplification may be served from the simplified geometry
+        // cache, falling back on simplifying on demand if the feature has not
+        // been cached at the requested level
+        double simplifyTolerance = Double.NaN;
         if(!MathUtils.hasBits(ignoredFields, PROPERTY_FEATURE_GEOMETRY)) {
-            if(params != null && params.spatialOps != null) {
+            if(params != null && params.spatialOps != null && params.spatialOps.size() == 1 && params.spatialOps.iterator().next() instanceof FeatureQueryParameters.SpatialOp.Simplify) {
+                simplifyTolerance = ((FeatureQueryParameters.SpatialOp.Simplify)params.spatialOps.iterator().next()).distance;
+                sql.append(", COALESCE(features_simplified.geometry, SimplifyPreserveTopology(features.geometry, ?))");
+                args.add(new BindArgument(simplifyTolerance));
+            } else if(params != null && params.spatialOps != null) {
                 StringBuilder geomStr = new StringBuilder("features.geometry");            
                 for(FeatureQueryParameters.SpatialOp op : params.spatialOps) {
                     if(op instanceof FeatureQueryParameters.SpatialOp.Simplify) {
@@ -714,186 +1001,48 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
             sql.append(" LEFT JOIN styles ON features.style_id = styles.id");
         if(!MathUtils.hasBits(ignoredFields, PROPERTY_FEATURE_ATTRIBUTES))
             sql.append(" LEFT JOIN attributes ON features.attribs_id = attributes.id");
-        
-        if(params == null) {
-            CursorIface result = null;
-            try {
-                result = BindArgument.query(this.database, sql.toString(), args.isEmpty() ? null : args);
-
-                final FeatureCursor retval = 
-                       new FeatureCursorImpl(result,
-                                             idCol,
-                                             fsidCol,
-                                             versionCol,
-                                             nameCol,
-                                             geomCol,
-                                             styleCol,
-                                             attribsCol,
-                                             altitudeModeCol,
-                                             extrudeCol);
-                result = null;
-                return retval;
-            } finally {
-                if(result != null)
-                    result.close();
-            }
-        }
-        
-        Collection<FeatureSetDefn> fsNoCheck = this.filterNoSync(params, true);
-        if(fsNoCheck.isEmpty())
-            return new MultiplexingFeatureCursor(Collections.<FeatureCursor>emptySet(), null);
-
-        Collection<FeatureSetDefn> fsCheck = new LinkedList<FeatureSetDefn>();
-        if(params.visibleOnly) {
-            this.validateInfo();
-            
-            Iterator<FeatureSetDefn> iter = fsNoCheck.iterator();
-            FeatureSetDefn defn;
-            while(iter.hasNext()) {
-                defn = iter.next();
-                if(defn.visibleCheck) {
-                    iter.remove();
-                    fsCheck.add(defn);
-                }
-            }
-        }
-        if(params.featureSetFilter != null && (!Double.isNaN(params.featureSetFilter.minResolution) || !Double.isNaN(params.featureSetFilter.maxResolution))) {
-            this.validateInfo();
-            
-            Iterator<FeatureSetDefn> iter = fsNoCheck.iterator();
-            FeatureSetDefn defn;
-            while(iter.hasNext()) {
-                defn = iter.next();
-                if(defn.lodCheck) {
-                    iter.remove();
-                    fsCheck.add(defn);
-                }
-            }
-        }
-        
-        LinkedList<FeatureCursor> retval = new LinkedList<FeatureCursor>();
-        if(fsCheck != null) {
-            for(FeatureSetDefn fs : fsCheck) {
-                StringBuilder subsql = new StringBuilder();
-                LinkedList<BindArgument> subargs = new LinkedList<BindArgument>();
-                WhereClauseBuilder where = new WhereClauseBuilder();
-                
-                if(!this.buildParamsWhereClauseCheck(params, fs, where))
-                    continue;
-                
-                subsql.append(sql);
-                subargs.addAll(args);
-
-                final String select = where.getSelection();
-                if(select != null) {
-                    subsql.append(" WHERE ");
-                    subsql.append(select);
-                    subargs.addAll(where.getBindArgs());
-                }
+        if(!Double.isNaN(simplifyTolerance))
+            sql.append(" LEFT JOIN features_simplified ON features_simplified.fid = features.fid AND features_simplified.version = features.version AND features_simplified.level = ?");
 
-                if(params.order != null) {
-                    boolean first = true;
-                    StringBuilder orderSql = new StringBuilder();
-                    for(FeatureQueryParameters.Order order : params.order)
-                        first = !appendOrder(order, orderSql, subargs, first);
-                    if(!first) {
-                        subsql.append(" ORDER BY ");
-                        subsql.append(orderSql);
-                    }
-                }
+        // build the statements while holding the lock; they are executed
+        // against a reader connection outside of the lock
+        LinkedList<Pair<String, Collection<BindArgument>>> queries = new LinkedList<Pair<String, Collection<BindArgument>>>();
+        synchronized(this) {
+            if(this.database == null)
+                throw new DataStoreException("Datastore is closed");
 
-                if(params.limit > 0) {
-                    subsql.append(" LIMIT ?");
-                    subargs.add(new BindArgument(params.limit));
-                    
-                    if(fsCheck.size() == 1 && fsNoCheck.isEmpty() && params.offset > 0) {
-                        subsql.append(" OFFSET ?");
-                        subargs.add(new BindArgument(params.offset));
-                    }
-                }
-                
-                CursorIface result = null;
-                try {
-                    result = BindArgument.query(this.database, subsql.toString(), subargs.isEmpty() ? null : subargs);
-
-                    retval.add(new FeatureCursorImpl(result,
-                                                     idCol,
-                                                     fsidCol,
-                                                     versionCol,
-                                                     nameCol,
-                                                     geomCol,
-                                                     styleCol,
-                                                     attribsCol,
-                                                     altitudeModeCol,
-                                                     extrudeCol));
-                    result = null;
-                } finally {
-                    if(result != null)
-                        result.close();
-                }
+            if(!Double.isNaN(simplifyTolerance)) {
+                final SimplifyLevel level = this.getSimplifyLevelNoSync(simplifyTolerance);
+                args.add(new BindArgument((level != null) ? level.id : -1L));
             }
-        }
-
-        if(!fsNoCheck.isEmpty()) {
-            do {
-                StringBuilder subsql = new StringBuilder();
-                LinkedList<BindArgument> subargs = new LinkedList<BindArgument>();
-                WhereClauseBuilder where = new WhereClauseBuilder();
-                
-                if(!this.buildParamsWhereClauseNoCheck(params, (fsNoCheck.size() == this.featureSets.size()) ? null : fsNoCheck, where))
-                    continue;
-                
-                subsql.append(sql);
-                subargs.addAll(args);
-
-                final String select = where.getSelection();
-                if(select != null) {
-                    subsql.append(" WHERE ");
-                    subsql.append(select);
-                    subargs.addAll(where.getBindArgs());
-                }
 
-                if(params.order != null) {
-                    boolean first = true;
-                    StringBuilder orderSql = new StringBuilder();
-                    for(FeatureQueryParameters.Order order : params.order)
-                        first = !appendOrder(order, orderSql, subargs, first);
-                    if(!first) {
-                        subsql.append(" ORDER BY ");
-                        subsql.append(orderSql);
-                    }
-                }
+            if(params == null)
+                queries.add(Pair.<String, Collection<BindArgument>>create(sql.toString(), args.isEmpty() ? null : args));
+            else
+                this.buildFeatureQueriesNoSync(params, sql, args, false, queries);
+        }
 
-                if(params.limit > 0) {
-                    subsql.append(" LIMIT ?");
-                    subargs.add(new BindArgument(params.limit));
-                    
-                    if(fsCheck.isEmpty() && params.offset > 0) {
-                        subsql.append(" OFFSET ?");
-                        subargs.add(new BindArgument(params.offset));
-                    }
-                }
-                
-                CursorIface result = null;
-                try {
-                    result = BindArgument.query(this.database, subsql.toString(), subargs.isEmpty() ? null : subargs);
-
-                    retval.add(new FeatureCursorImpl(result,
-                                                     idCol,
-                                                     fsidCol,
-                                                     versionCol,
-                                                     nameCol,
-                                                     geomCol,
-                                                     styleCol,
-                                                     attribsCol,
-                                                     altitudeModeCol,
-                                                     extrudeCol));
-                    result = null;
-                } finally {
-                    if(result != null)
-                        result.close();
-                }
-            } while(false);
+        LinkedList<FeatureCursor> retval = new LinkedList<FeatureCursor>();
+        boolean opened = false;
+        try {
+            for(Pair<String, Collection<BindArgument>> query : queries) {
+                retval.add(new FeatureCursorImpl(this.query(query.first, query.second, concurrent),
+                                                 idCol,
+                                                 fsidCol,
+                                                 versionCol,
+                                                 nameCol,
+                                                 geomCol,
+                                                 styleCol,
+                                                 attribsCol,
+                                                 altitudeModeCol,
+                                                 extrudeCol));
+            }
+            opened = true;
+        } finally {
+            if(!opened) {
+                for(FeatureCursor cursor : retval)
+                    cursor.close();
+            }
         }
         
         if(retval.size() == 1) {
@@ -914,27 +1063,69 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
 
     @Override
     public int queryFeaturesCount(FeatureQueryParameters params) throws DataStoreException {
-        if(params == null) {
+        final boolean concurrent = this.isConcurrentReadAllowed();
+
+        LinkedList<Pair<String, Collection<BindArgument>>> queries = new LinkedList<Pair<String, Collection<BindArgument>>>();
+        synchronized(this) {
+            if(this.database == null)
+                throw new DataStoreException("Datastore is closed");
+
+            if(params == null) {
+                queries.add(Pair.<String, Collection<BindArgument>>create("SELECT Count(1) FROM features", null));
+            } else {
+                StringBuilder sql = new StringBuilder();
+                sql.append("SELECT ");
+                if(params.limit > 0)
+                    sql.append("1");
+                else
+                    sql.append("Count(1)");
+                sql.append(" FROM features");
+
+                if(!this.buildFeatureQueriesNoSync(params, sql, Collections.<BindArgument>emptySet(), true, queries))
+                    queries = null;
+            }
+        }
+
+        if(queries == null)
+            return Utils.queryFeaturesCount(this, params);
+
+        int retval = 0;
+        for(Pair<String, Collection<BindArgument>> query : queries) {
             CursorIface result = null;
             try {
-                result = this.database.query("SELECT Count(1) FROM features", null);
-                if(!result.moveToNext())
-                    return 0;
-                return result.getInt(0);
+                result = this.query(query.first, query.second, concurrent);
+                if(result.moveToNext())
+                    retval += result.getInt(0);
             } finally {
                 if(result != null)
                     result.close();
             }
         }
 
-        Collection<FeatureSetDefn> fsNoCheck;
-        synchronized(this) {
-            fsNoCheck = this.filterNoSync(params, true);
-        }
-        if(fsNoCheck.isEmpty())
-            return 0;
+        return retval;
+    }
 
-        LinkedList<BindArgument> args = new LinkedList<BindArgument>();
+    /**
+     * Builds the statements that service the specified feature query. A
+     * statement is emitted for each feature set that requires per-feature
+     * visibility or LOD checks and one statement is emitted for all remaining
+     * feature sets. Must be invoked while holding the lock on this instance.
+     *
+     * @param params    The query parameters
+     * @param sql       The <code>SELECT ... FROM</code> portion of the
+     *                  statement
+     * @param args      The bind arguments for <code>sql</code>
+     * @param count     If <code>true</code>, limited statements are wrapped to
+     *                  return the row count
+     * @param queries   Returns the statements and their bind arguments
+     *
+     * @return  <code>false</code> if a count was requested, but the count
+     *          cannot be computed from the individual statements
+     */
+    private boolean buildFeatureQueriesNoSync(FeatureQueryParameters params, CharSequence sql, Collection<BindArgument> args, boolean count, Collection<Pair<String, Collection<BindArgument>>> queries) throws DataStoreException {
+        Collection<FeatureSetDefn> fsNoCheck = this.filterNoSync(params, true);
+        if(fsNoCheck.isEmpty())
+            return true;
 
         Collection<FeatureSetDefn> fsCheck = new LinkedList<FeatureSetDefn>();
         if(params.visibleOnly) {
@@ -963,134 +1154,122 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
                 }
             }
         }
-        
-        if((params.limit > 0 && params.offset > 0) &&
+
+        if(count &&
+           (params.limit > 0 && params.offset > 0) &&
            (fsCheck.size() > 1 ||
                    (!fsCheck.isEmpty() && !fsNoCheck.isEmpty()))) {
-            
-            return Utils.queryFeaturesCount(this, params);
+
+            return false;
         }
 
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ");
-        if(params.limit > 0)
-            sql.append("1");
-        else
-            sql.append("Count(1)");
-        sql.append(" FROM features");
+        for(FeatureSetDefn fs : fsCheck) {
+            WhereClauseBuilder where = new WhereClauseBuilder();
+            if(!this.buildParamsWhereClauseCheck(params, fs, where))
+                continue;
 
-        int retval = 0;
-        if(fsCheck != null) {
-            for(FeatureSetDefn fs : fsCheck) {
-                StringBuilder subsql = new StringBuilder();
-                LinkedList<BindArgument> subargs = new LinkedList<BindArgument>();
-                WhereClauseBuilder where = new WhereClauseBuilder();
-                
-                if(!this.buildParamsWhereClauseCheck(params, fs, where))
-                    continue;
-                
-                subsql.append(sql);
-                subargs.addAll(args);
-
-                final String select = where.getSelection();
-                if(select != null) {
-                    subsql.append(" WHERE ");
-                    subsql.append(select);
-                    subargs.addAll(where.getBindArgs());
-                }
+            queries.add(buildFeatureQuery(params,
+                                          sql,
+                                          args,
+                                          where,
+                                          (fsCheck.size() == 1 && fsNoCheck.isEmpty()),
+                                          count));
+        }
 
-                if(params.order != null) {
-                    boolean first = true;
-                    StringBuilder orderSql = new StringBuilder();
-                    for(FeatureQueryParameters.Order order : params.order)
-                        first = !appendOrder(order, orderSql, subargs, first);
-                    if(!first) {
-                        subsql.append(" ORDER BY ");
-                        subsql.append(orderSql);
-                    }
-                }
+        if(!fsNoCheck.isEmpty()) {
+            WhereClauseBuilder where = new WhereClauseBuilder();
+            if(this.buildParamsWhereClauseNoCheck(params, (fsNoCheck.size() == this.featureSets.size()) ? null : fsNoCheck, where))
+                queries.add(buildFeatureQuery(params, sql, args, where, fsCheck.isEmpty(), count));
+        }
 
-                if(params.limit > 0) {
-                    subsql.append(" LIMIT ?");
-                    subargs.add(new BindArgument(params.limit));
-                    
-                    if(fsCheck.size() == 1 && fsNoCheck.isEmpty() && params.offset > 0) {
-                        subsql.append(" OFFSET ?");
-                        subargs.add(new BindArgument(params.offset));
-                    }
-                    
-                    subsql.insert(0, "SELECT Count(1) FROM (");
-                    subsql.append(")");
-                }
-                
-                CursorIface result = null;
-                try {
-                    result = BindArgument.query(this.database, subsql.toString(), subargs.isEmpty() ? null : subargs);
-                    if(result.moveToNext())
-                        retval += result.getInt(0);
-                } finally {
-                    if(result != null)
-                        result.close();
-                }
+        return true;
+    }
+
+    private static Pair<String, Collection<BindArgument>> buildFeatureQuery(FeatureQueryParameters params, CharSequence sql, Collection<BindArgument> args, WhereClauseBuilder where, boolean applyOffset, boolean count) {
+        StringBuilder subsql = new StringBuilder();
+        LinkedList<BindArgument> subargs = new LinkedList<BindArgument>();
+
+        subsql.append(sql);
+        subargs.addAll(args);
+
+        final String select = where.getSelection();
+        if(select != null) {
+            subsql.append(" WHERE ");
+            subsql.append(select);
+            subargs.addAll(where.getBindArgs());
+        }
+
+        if(params.order != null) {
+            boolean first = true;
+            StringBuilder orderSql = new StringBuilder();
+            for(FeatureQueryParameters.Order order : params.order)
+                first = !appendOrder(order, orderSql, subargs, first);
+            if(!first) {
+                subsql.append(" ORDER BY ");
+                subsql.append(orderSql);
             }
         }
 
-        if(!fsNoCheck.isEmpty()) {
-            do {
-                StringBuilder subsql = new StringBuilder();
-                LinkedList<BindArgument> subargs = new LinkedList<BindArgument>();
-                WhereClauseBuilder where = new WhereClauseBuilder();
-                
-                if(!this.buildParamsWhereClauseNoCheck(params, (fsNoCheck.size() == this.featureSets.size()) ? null : fsNoCheck, where))
-                    continue;
-                
-                subsql.append(sql);
-                subargs.addAll(args);
-
-                final String select = where.getSelection();
-                if(select != null) {
-                    subsql.append(" WHERE ");
-                    subsql.append(select);
-                    subargs.addAll(where.getBindArgs());
-                }
+        if(params.limit > 0) {
+            subsql.append(" LIMIT ?");
+            subargs.add(new BindArgument(params.limit));
+            
+            if(applyOffset && params.offset > 0) {
+                subsql.append(" OFFSET ?");
+                subargs.add(new BindArgument(params.offset));
+            }
 
-                if(params.order != null) {
-                    boolean first = true;
-                    StringBuilder orderSql = new StringBuilder();
-                    for(FeatureQueryParameters.Order order : params.order)
-                        first = !appendOrder(order, orderSql, subargs, first);
-                    if(!first) {
-                        subsql.append(" ORDER BY ");
-                        subsql.append(orderSql);
-                    }
-                }
+            if(count) {
+                subsql.insert(0, "SELECT Count(1) FROM (");
+                subsql.append(")");
+            }
+        }
 
-                if(params.limit > 0) {
-                    subsql.append(" LIMIT ?");
-                    subargs.add(new BindArgument(params.limit));
-                    
-                    if(fsCheck.isEmpty() && params.offset > 0) {
-                        subsql.append(" OFFSET ?");
-                        subargs.add(new BindArgument(params.offset));
-                    }
-                    
-                    subsql.insert(0, "SELECT Count(1) FROM (");
-                    subsql.append(")");
-                }
-                
-                CursorIface result = null;
-                try {
-                    result = BindArgument.query(this.database, subsql.toString(), subargs.isEmpty() ? null : subargs);
-                    if(result.moveToNext())
-                        retval += result.getInt(0);
-                } finally {
+        return Pair.<String, Collection<BindArgument>>create(subsql.toString(), subargs.isEmpty() ? null : subargs);
+    }
+
+    /**
+     * Returns <code>true</code> if queries issued by the current thread may
+     * be serviced by a pooled reader connection. The thread holding the
+     * modify lock always reads through the primary connection so that it
+     * observes its own uncommitted changes.
+     */
+    private boolean isConcurrentReadAllowed() {
+        return (this.readers != null) && !this.holdsModifyLock();
+    }
+
+    /**
+     * Executes the specified query. If <code>concurrent</code> is
+     * <code>true</code> and a reader connection is available, the query is
+     * executed against the reader and the connection is returned to the pool
+     * when the cursor is closed; otherwise the query is executed against the
+     * primary connection.
+     */
+    private CursorIface query(String sql, Collection<BindArgument> args, boolean concurrent) throws DataStoreException {
+        final DatabaseIface reader = concurrent ? this.readers.acquire() : null;
+        if(reader != null) {
+            CursorIface result = null;
+            boolean leased = false;
+            try {
+                result = BindArgument.query(reader, sql, args);
+                final CursorIface retval = new ReaderCursor(result, this.readers, reader);
+                leased = true;
+                return retval;
+            } finally {
+                // the connection was not handed off to a cursor
+                if(!leased) {
                     if(result != null)
                         result.close();
+                    this.readers.release(reader);
                 }
-            } while(false);
+            }
         }
 
-        return retval;
+        synchronized(this) {
+            if(this.database == null)
+                throw new DataStoreException("Datastore is closed");
+            return BindArgument.query(this.database, sql, args);
+        }
     }
     
     private FeatureSet getFeatureSetImpl(FeatureSetDefn defn) {
@@ -1221,8 +1400,8 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
 
 
     @Override
-    public synchronized FeatureSetCursor queryFeatureSets(FeatureSetQueryParameters params) throws DataStoreException {
-        Collection<FeatureSetDefn> retval = this.filterNoSync(params, false);
+    public FeatureSetCursor queryFeatureSets(FeatureSetQueryParameters params) throws DataStoreException {
+        Collection<FeatureSetDefn> retval = this.filter(params);
         Map<String, FeatureSetDefn> sorted = new TreeMap<String, FeatureSetDefn>(StringIgnoreCaseComparator.INSTANCE);
         for(FeatureSetDefn fs : retval)
             sorted.put(fs.name, fs);
@@ -1230,8 +1409,31 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
     }
 
     @Override
-    public synchronized int queryFeatureSetsCount(FeatureSetQueryParameters params) throws DataStoreException {
-        return this.filterNoSync(params, false).size();
+    public int queryFeatureSetsCount(FeatureSetQueryParameters params) throws DataStoreException {
+        return this.filter(params).size();
+    }
+
+    /**
+     * Equivalent to {@link #filterNoSync(FeatureSetQueryParameters, boolean)}
+     * with hard visibility checks, however the per-feature visibility queries
+     * are executed without holding the lock on this instance.
+     */
+    private Collection<FeatureSetDefn> filter(FeatureSetQueryParameters params) throws DataStoreException {
+        Collection<FeatureSetDefn> retval;
+        Collection<FeatureSetDefn> fsCheck = new LinkedList<FeatureSetDefn>();
+        synchronized(this) {
+            retval = this.filterNoSync(params, true);
+            if(params != null && params.visibleOnly) {
+                for(FeatureSetDefn fs : retval)
+                    if(fs.visibleCheck)
+                        fsCheck.add(fs);
+            }
+        }
+
+        for(FeatureSetDefn fs : fsCheck)
+            if(!this.isFeatureSetVisibleImpl(fs.fsid))
+                retval.remove(fs);
+        return retval;
     }
 
     private boolean isFeatureVisibleImpl(long fid) throws DataStoreException {
@@ -1243,14 +1445,16 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
         return (this.queryFeaturesCount(params)>0);
     }
 
-    private synchronized boolean isFeatureSetVisibleImpl(long fsid) throws DataStoreException {
-        FeatureSetDefn featureSet = this.featureSets.get(Long.valueOf(fsid));
-        if(featureSet == null)
-            return false;
+    private boolean isFeatureSetVisibleImpl(long fsid) throws DataStoreException {
+        synchronized(this) {
+            FeatureSetDefn featureSet = this.featureSets.get(Long.valueOf(fsid));
+            if(featureSet == null)
+                return false;
 
-        this.validateInfo();
-        if(!featureSet.visibleCheck)
-            return featureSet.visible;
+            this.validateInfo();
+            if(!featureSet.visibleCheck)
+                return featureSet.visible;
+        }
         
         FeatureQueryParameters params = new FeatureQueryParameters();
         params.featureSetFilter = new FeatureSetQueryParameters();
@@ -1325,6 +1529,9 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
 
     @Override
     public synchronized void dispose() {
+        // connections currently leased to cursors are closed on release
+        if(this.readers != null)
+            this.readers.close();
         if(this.database != null) {
             this.database.close();
             this.database = null;
@@ -1772,6 +1979,7 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
         // delete features first in single statement to avoid the trigger
         this.database.execute("DELETE FROM features", null);
         this.database.execute("DELETE FROM featuresets", null);
+        this.database.execute("DELETE FROM features_simplified", null);
         return true;
     }
 
@@ -3119,6 +3327,110 @@ abstract class FDB2 extends AbstractFeatureDataStore3 {
 
     }
 
+    /**************************************************************************/
+    // ReaderPool
+
+    /**
+     * Pool of read-only connections to a database in write-ahead logging mode.
+     * Connections are opened lazily, up to the specified limit. When all
+     * connections are leased, {@link #acquire()} returns <code>null</code> and
+     * the caller is expected to fall back on the primary connection.
+     */
+    private final static class ReaderPool {
+        private final File file;
+        private final int limit;
+        private final LinkedList<DatabaseIface> idle;
+        private int open;
+        private boolean closed;
+
+        ReaderPool(File file, int limit) {
+            this.file = file;
+            this.limit = limit;
+            this.idle = new LinkedList<DatabaseIface>();
+            this.open = 0;
+            this.closed = false;
+        }
+
+        DatabaseIface acquire() {
+            synchronized(this) {
+                if(this.closed)
+                    return null;
+                if(!this.idle.isEmpty())
+                    return this.idle.removeFirst();
+                if(this.open >= this.limit)
+                    return null;
+                // reserve the slot; the connection is opened outside of the
+                // lock
+                this.open++;
+            }
+
+            DatabaseIface retval = null;
+            try {
+                retval = IOProviderFactory.createDatabase(this.file, DatabaseInformation.OPTION_READONLY);
+            } catch(Throwable t) {
+                Log.w(ABS_TAG, "Failed to open reader for " + this.file, t);
+            }
+            if(retval == null) {
+                synchronized(this) {
+                    this.open--;
+                }
+            }
+            return retval;
+        }
+
+        void release(DatabaseIface reader) {
+            synchronized(this) {
+                if(!this.closed) {
+                    this.idle.addLast(reader);
+                    return;
+                }
+                this.open--;
+            }
+            reader.close();
+        }
+
+        void close() {
+            LinkedList<DatabaseIface> readers;
+            synchronized(this) {
+                if(this.closed)
+                    return;
+                this.closed = true;
+                readers = new LinkedList<DatabaseIface>(this.idle);
+                this.idle.clear();
+                this.open -= readers.size();
+            }
+            for(DatabaseIface reader : readers)
+                reader.close();
+        }
+    }
+
+    /**
+     * Returns the leased reader connection to its pool when closed.
+     */
+    private final static class ReaderCursor extends CursorWrapper {
+        private final ReaderPool pool;
+        private DatabaseIface reader;
+
+        ReaderCursor(CursorIface filter, ReaderPool pool, DatabaseIface reader) {
+            super(filter);
+
+            this.pool = pool;
+            this.reader = reader;
+        }
+
+        @Override
+        public void close() {
+            try {
+                super.close();
+            } finally {
+                if(this.reader != null) {
+                    this.pool.release(this.reader);
+                    this.reader = null;
+                }
+            }
+        }
+    }
+
     /**************************************************************************/
     // FeatureSetCursorImpl
 
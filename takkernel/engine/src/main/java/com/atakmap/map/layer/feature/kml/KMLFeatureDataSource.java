@@ -0,0 +1,174 @@
+package com.atakmap.map.layer.feature.kml;
+
+import com.atakmap.coremap.locale.LocaleUtil;
+import com.atakmap.coremap.log.Log;
+import com.atakmap.map.layer.feature.FeatureDataSource;
+import com.atakmap.map.layer.feature.FeatureDefinition3;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link FeatureDataSource} for KML and KMZ files backed by
+ * {@link KMLFeatureReader}. Placemarks are handed to the data store one at a
+ * time as they are parsed, so importing a file never holds the whole document
+ * in memory.
+ *
+ * <P>The content exposes one feature set per run of consecutive placemarks
+ * sharing the same Document/Folder path. A container whose placemarks are
+ * interrupted by a nested container therefore produces more than one feature
+ * set with the same name; the reader does not look ahead or buffer to merge
+ * them.
+ */
+public final class KMLFeatureDataSource implements FeatureDataSource {
+
+    private static final String TAG = "KMLFeatureDataSource";
+
+    public static final String PROVIDER_NAME = "kml-streaming";
+
+    /** feature set type, matches the type reported by the OGR KML driver */
+    public static final String CONTENT_TYPE = "kml";
+
+    @Override
+    public Content parse(File file) throws IOException {
+        final String name = file.getName().toLowerCase(LocaleUtil.getCurrent());
+        if(!name.endsWith(".kml") && !name.endsWith(".kmz"))
+            return null;
+        return new KMLContent(new KMLFeatureReader(file), file.getName());
+    }
+
+    @Override
+    public String getName() {
+        return PROVIDER_NAME;
+    }
+
+    @Override
+    public int parseVersion() {
+        return 1;
+    }
+
+    /**************************************************************************/
+
+    private static final class KMLContent implements Content {
+        private final KMLFeatureReader reader;
+        private final String defaultName;
+
+        /** path of the current feature set, <code>null</code> before the first */
+        private String setPath;
+        /** placemark read ahead of the feature pointer */
+        private FeatureDefinition3 next;
+        private String nextPath;
+        private FeatureDefinition3 current;
+        private boolean done;
+
+        KMLContent(KMLFeatureReader reader, String defaultName) {
+            this.reader = reader;
+            this.defaultName = defaultName;
+        }
+
+        @Override
+        public String getType() {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public String getProvider() {
+            return PROVIDER_NAME;
+        }
+
+        @Override
+        public boolean moveToNext(ContentPointer pointer) {
+            switch(pointer) {
+                case FEATURE_SET:
+                    return this.moveToNextFeatureSet();
+                case FEATURE:
+                    return this.moveToNextFeature();
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+        private boolean moveToNextFeatureSet() {
+            this.current = null;
+            // skip any placemarks remaining in the current set
+            while(true) {
+                if(this.next == null && !this.readAhead())
+                    return false;
+                if(this.setPath == null || !this.nextPath.equals(this.setPath))
+                    break;
+                this.next = null;
+            }
+            this.setPath = this.nextPath;
+            return true;
+        }
+
+        private boolean moveToNextFeature() {
+            this.current = null;
+            if(this.setPath == null)
+                return false;
+            if(this.next == null && !this.readAhead())
+                return false;
+            // the next placemark starts a new feature set
+            if(!this.nextPath.equals(this.setPath))
+                return false;
+            this.current = this.next;
+            this.next = null;
+            return true;
+        }
+
+        private boolean readAhead() {
+            if(this.done)
+                return false;
+            try {
+                if(this.reader.moveToNext()) {
+                    this.next = this.reader.get();
+                    this.nextPath = this.reader.getPath();
+                    return true;
+                }
+            } catch(IOException e) {
+                // the placemarks read so far are retained
+                Log.w(TAG, "Failed to read placemark", e);
+            }
+            this.done = true;
+            return false;
+        }
+
+        @Override
+        public FeatureDefinition get() {
+            if(this.current == null)
+                return null;
+            final FeatureDefinition retval = new FeatureDefinition();
+            retval.name = this.current.getName();
+            retval.rawGeom = this.current.getRawGeometry();
+            retval.geomCoding = this.current.getGeomCoding();
+            retval.rawStyle = this.current.getRawStyle();
+            retval.styleCoding = this.current.getStyleCoding();
+            retval.attributes = this.current.getAttributes();
+            return retval;
+        }
+
+        @Override
+        public String getFeatureSetName() {
+            if(this.setPath == null || this.setPath.isEmpty())
+                return this.defaultName;
+            return this.setPath;
+        }
+
+        @Override
+        public double getMinResolution() {
+            return Double.MAX_VALUE;
+        }
+
+        @Override
+        public double getMaxResolution() {
+            return 0d;
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.reader.close();
+            } catch(IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,953 @@
+package com.atakmap.map.layer.feature.kml;
+
+import android.util.Xml;
+
+import com.atakmap.coremap.io.IOProviderFactory;
+import com.atakmap.coremap.locale.LocaleUtil;
+import com.atakmap.coremap.log.Log;
+import com.atakmap.map.layer.feature.AttributeSet;
+import com.atakmap.map.layer.feature.Feature;
+import com.atakmap.map.layer.feature.FeatureDataStore2;
+import com.atakmap.map.layer.feature.FeatureDefinition3;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streaming reader for KML and KMZ files. Placemarks are parsed one at a time
+ * with a pull parser and returned as feature definitions with WKB geometry and
+ * OGR style strings, so the document is never held in memory as an object
+ * graph. Memory use is bounded by the largest single placemark plus the shared
+ * styles declared by the document.
+ *
+ * <P>Shared styles are resolved against the <code>Style</code> and
+ * <code>StyleMap</code> elements seen so far; a placemark referencing a style
+ * declared after it, or in another document, is returned without a style.
+ * <code>NetworkLink</code> and overlay elements are skipped.
+ */
+public final class KMLFeatureReader implements Closeable {
+
+    private static final String TAG = "KMLFeatureReader";
+
+    private final InputStream stream;
+    private final CountingInputStream counter;
+    private final long length;
+    private final String baseUri;
+    private final XmlPullParser parser;
+
+    private final Map<String, String> styles = new HashMap<>();
+    private final Map<String, String> styleMaps = new HashMap<>();
+
+    /** names of the open Document and Folder elements */
+    private final ArrayList<String> containers = new ArrayList<>();
+    /** parser depths of the open Document and Folder elements */
+    private final ArrayList<Integer> containerDepths = new ArrayList<>();
+
+    private final CoordinateParser coords = new CoordinateParser();
+
+    private Placemark current;
+    private String documentName;
+
+    /**
+     * Opens the specified KML or KMZ file. The root document of a KMZ is the
+     * first <code>.kml</code> entry in the archive.
+     *
+     * @param file  A KML or KMZ file
+     *
+     * @throws IOException  If the file cannot be opened, or a KMZ does not
+     *                      contain a KML document
+     */
+    public KMLFeatureReader(File file) throws IOException {
+        this(new CountingInputStream(IOProviderFactory.getInputStream(file)), file);
+    }
+
+    private KMLFeatureReader(CountingInputStream counter, File file) throws IOException {
+        this(open(counter, file), counter, IOProviderFactory.length(file), getBaseUri(file));
+    }
+
+    /**
+     * Creates a reader over a KML document.
+     *
+     * @param stream    The KML document, the reader takes ownership of the
+     *                  stream
+     * @param length    The length of the stream in bytes, used for progress
+     *                  reporting; <code>-1</code> if not known
+     * @param baseUri   The prefix used to resolve relative icon references,
+     *                  may be <code>null</code>
+     *
+     * @throws IOException  If the parser cannot be created
+     */
+    public KMLFeatureReader(InputStream stream, long length, String baseUri) throws IOException {
+        this(new CountingInputStream(stream), length, baseUri);
+    }
+
+    private KMLFeatureReader(CountingInputStream stream, long length, String baseUri) throws IOException {
+        this(stream, stream, length, baseUri);
+    }
+
+    private KMLFeatureReader(InputStream stream, CountingInputStream counter, long length, String baseUri) throws IOException {
+        this.stream = stream;
+        this.counter = counter;
+        this.length = length;
+        this.baseUri = baseUri;
+
+        try {
+            this.parser = Xml.newPullParser();
+            this.parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            this.parser.setInput(this.stream, null);
+        } catch(XmlPullParserException e) {
+            this.stream.close();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Advances to the next placemark with a supported geometry.
+     *
+     * @return  <code>true</code> if a placemark was read, <code>false</code>
+     *          at the end of the document
+     *
+     * @throws IOException  If an I/O or parse error occurs
+     */
+    public boolean moveToNext() throws IOException {
+        this.current = null;
+        try {
+            int eventType;
+            while((eventType=this.parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if(eventType == XmlPullParser.END_TAG) {
+                    final String tag = localName(this.parser);
+                    if((tag.equals("Document") || tag.equals("Folder")) && !this.containers.isEmpty()) {
+                        this.containers.remove(this.containers.size()-1);
+                        this.containerDepths.remove(this.containerDepths.size()-1);
+                    }
+                    continue;
+                } else if(eventType != XmlPullParser.START_TAG) {
+                    continue;
+                }
+
+                final String tag = localName(this.parser);
+                switch(tag) {
+                    case "Document" :
+                    case "Folder" :
+                        this.containers.add(null);
+                        this.containerDepths.add(this.parser.getDepth());
+                        break;
+                    case "name" :
+                        if(!this.containerDepths.isEmpty() && this.parser.getDepth() == this.containerDepths.get(this.containerDepths.size()-1)+1) {
+                            final String name = this.parser.nextText().trim();
+                            this.containers.set(this.containers.size()-1, name);
+                            if(this.documentName == null)
+                                this.documentName = name;
+                        }
+                        break;
+                    case "Style" :
+                    {
+                        final String id = this.parser.getAttributeValue(null, "id");
+                        final String style = this.parseStyle();
+                        if(id != null)
+                            this.styles.put("#" + id, style);
+                        break;
+                    }
+                    case "StyleMap" :
+                        this.parseStyleMap();
+                        break;
+                    case "Placemark" :
+                        this.current = this.parsePlacemark();
+                        if(this.current != null)
+                            return true;
+                        break;
+                    case "NetworkLink" :
+                    case "GroundOverlay" :
+                    case "ScreenOverlay" :
+                    case "PhotoOverlay" :
+                    case "Schema" :
+                        skip(this.parser);
+                        break;
+                    default :
+                        break;
+                }
+            }
+            return false;
+        } catch(XmlPullParserException | RuntimeException e) {
+            throw new IOException("Failed to parse KML", e);
+        }
+    }
+
+    /**
+     * Returns the current placemark. The returned definition is not modified
+     * by subsequent calls to {@link #moveToNext()} and may be retained.
+     *
+     * @return  The current placemark
+     */
+    public FeatureDefinition3 get() {
+        return this.current;
+    }
+
+    /**
+     * Returns the path of the Document and Folder names containing the
+     * current placemark, separated by <code>/</code>. Unnamed containers are
+     * omitted.
+     *
+     * @return  The path of the current placemark, may be empty
+     */
+    public String getPath() {
+        return (this.current != null) ? this.current.path : null;
+    }
+
+    /**
+     * Returns the name of the outermost named container, if one has been
+     * read.
+     *
+     * @return  The document name or <code>null</code>
+     */
+    public String getDocumentName() {
+        return this.documentName;
+    }
+
+    /**
+     * Returns the number of bytes consumed from the underlying file. For a
+     * KMZ this is measured against the compressed archive.
+     *
+     * @return  The number of bytes read
+     */
+    public long getBytesRead() {
+        return this.counter.count;
+    }
+
+    /**
+     * @return  The length of the underlying file, or <code>-1</code> if
+     *          unknown
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.stream.close();
+    }
+
+    /**************************************************************************/
+
+    private Placemark parsePlacemark() throws XmlPullParserException, IOException {
+        final int depth = this.parser.getDepth();
+
+        Placemark retval = new Placemark();
+        String styleUrl = null;
+        String inlineStyle = null;
+        Geom geom = null;
+        AttributeSet attributes = null;
+
+        int eventType;
+        while((eventType=this.parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.END_TAG && this.parser.getDepth() == depth)
+                break;
+            if(eventType != XmlPullParser.START_TAG)
+                continue;
+
+            final String tag = localName(this.parser);
+            switch(tag) {
+                case "name" :
+                    retval.name = this.parser.nextText().trim();
+                    break;
+                case "description" :
+                    if(attributes == null)
+                        attributes = new AttributeSet();
+                    attributes.setAttribute("description", this.parser.nextText());
+                    break;
+                case "styleUrl" :
+                    styleUrl = this.parser.nextText().trim();
+                    break;
+                case "Style" :
+                    inlineStyle = this.parseStyle();
+                    break;
+                case "StyleMap" :
+                    skip(this.parser);
+                    break;
+                case "Data" :
+                {
+                    final String name = this.parser.getAttributeValue(null, "name");
+                    final String value = this.parseDataValue();
+                    if(name != null && value != null) {
+                        if(attributes == null)
+                            attributes = new AttributeSet();
+                        attributes.setAttribute(name, value);
+                    }
+                    break;
+                }
+                case "SimpleData" :
+                {
+                    final String name = this.parser.getAttributeValue(null, "name");
+                    final String value = this.parser.nextText();
+                    if(name != null) {
+                        if(attributes == null)
+                            attributes = new AttributeSet();
+                        attributes.setAttribute(name, value);
+                    }
+                    break;
+                }
+                case "Point" :
+                case "LineString" :
+                case "LinearRing" :
+                case "Polygon" :
+                case "MultiGeometry" :
+                    geom = this.parseGeometry(tag, retval);
+                    break;
+                default :
+                    break;
+            }
+        }
+
+        if(geom == null) {
+            Log.d(TAG, "Skipping placemark without supported geometry: " + retval.name);
+            return null;
+        }
+
+        final int dimension = geom.hasZ() ? 3 : 2;
+        final ByteBuffer wkb = ByteBuffer.wrap(new byte[geom.wkbSize(dimension)]);
+        wkb.order(ByteOrder.LITTLE_ENDIAN);
+        geom.write(wkb, dimension);
+        retval.wkb = wkb.array();
+
+        retval.style = (inlineStyle != null) ? inlineStyle : this.resolveStyle(styleUrl);
+        retval.attributes = attributes;
+        retval.path = this.getContainerPath();
+        return retval;
+    }
+
+    private Geom parseGeometry(String tag, Placemark placemark) throws XmlPullParserException, IOException {
+        final int depth = this.parser.getDepth();
+
+        final ArrayList<Geom> children = new ArrayList<>();
+        Coords coords = null;
+        boolean outerBoundary = false;
+
+        int eventType;
+        while((eventType=this.parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.END_TAG && this.parser.getDepth() == depth)
+                break;
+            if(eventType != XmlPullParser.START_TAG)
+                continue;
+
+            final String child = localName(this.parser);
+            switch(child) {
+                case "coordinates" :
+                    coords = this.coords.parse(this.parser.nextText());
+                    if(tag.equals("Polygon") && coords != null) {
+                        // the exterior ring is written first
+                        if(outerBoundary)
+                            children.add(0, coords);
+                        else
+                            children.add(coords);
+                    }
+                    break;
+                case "outerBoundaryIs" :
+                    outerBoundary = true;
+                    break;
+                case "innerBoundaryIs" :
+                    outerBoundary = false;
+                    break;
+                case "altitudeMode" :
+                    placemark.altitudeMode = parseAltitudeMode(this.parser.nextText().trim());
+                    break;
+                case "extrude" :
+                    if(this.parser.nextText().trim().equals("1"))
+                        placemark.extrude = -1d;
+                    break;
+                case "Point" :
+                case "LineString" :
+                case "LinearRing" :
+                case "Polygon" :
+                case "MultiGeometry" :
+                    if(tag.equals("MultiGeometry")) {
+                        final Geom g = this.parseGeometry(child, placemark);
+                        if(g != null)
+                            children.add(g);
+                    } else if(tag.equals("Polygon") && child.equals("LinearRing")) {
+                        // boundary ring, coordinates are handled above
+                    } else {
+                        skip(this.parser);
+                    }
+                    break;
+                default :
+                    break;
+            }
+        }
+
+        switch(tag) {
+            case "Point" :
+                return (coords != null) ? new Geom(Geom.POINT, coords) : null;
+            case "LineString" :
+                return (coords != null && coords.count >= 2) ? new Geom(Geom.LINESTRING, coords) : null;
+            case "LinearRing" :
+                return (coords != null && coords.count >= 2) ? new Geom(Geom.LINESTRING, coords) : null;
+            case "Polygon" :
+                return (!children.isEmpty() && ((Coords)children.get(0)).count >= 3) ? new Geom(Geom.POLYGON, children) : null;
+            case "MultiGeometry" :
+                return (!children.isEmpty()) ? new Geom(Geom.COLLECTION, children) : null;
+            default :
+                return null;
+        }
+    }
+
+    /**
+     * Parses a <code>Style</code> element into an OGR style string.
+     */
+    private String parseStyle() throws XmlPullParserException, IOException {
+        final int depth = this.parser.getDepth();
+
+        String section = null;
+        String iconColor = null;
+        String iconHref = null;
+        String lineColor = null;
+        String lineWidth = null;
+        String polyColor = null;
+        boolean fill = true;
+        boolean outline = true;
+        boolean hasLine = false;
+        boolean hasPoly = false;
+
+        int eventType;
+        while((eventType=this.parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.END_TAG && this.parser.getDepth() == depth)
+                break;
+            if(eventType != XmlPullParser.START_TAG)
+                continue;
+
+            final String tag = localName(this.parser);
+            switch(tag) {
+                case "IconStyle" :
+                case "LineStyle" :
+                case "PolyStyle" :
+                    section = tag;
+                    hasLine |= tag.equals("LineStyle");
+                    hasPoly |= tag.equals("PolyStyle");
+                    break;
+                case "LabelStyle" :
+                case "BalloonStyle" :
+                case "ListStyle" :
+                    skip(this.parser);
+                    break;
+                case "color" :
+                {
+                    final String color = this.parser.nextText().trim();
+                    if("IconStyle".equals(section))
+                        iconColor = color;
+                    else if("LineStyle".equals(section))
+                        lineColor = color;
+                    else if("PolyStyle".equals(section))
+                        polyColor = color;
+                    break;
+                }
+                case "href" :
+                    if("IconStyle".equals(section))
+                        iconHref = this.parser.nextText().trim();
+                    break;
+                case "width" :
+                    if("LineStyle".equals(section))
+                        lineWidth = this.parser.nextText().trim();
+                    break;
+                case "fill" :
+                    fill = !this.parser.nextText().trim().equals("0");
+                    break;
+                case "outline" :
+                    outline = !this.parser.nextText().trim().equals("0");
+                    break;
+                default :
+                    break;
+            }
+        }
+
+        StringBuilder ogr = new StringBuilder();
+        if(iconHref != null && !iconHref.isEmpty()) {
+            ogr.append("SYMBOL(id:");
+            ogr.append(this.resolveHref(iconHref));
+            ogr.append(",c:#");
+            ogr.append(toRGBA(iconColor));
+            ogr.append(")");
+        }
+        if(hasLine || (hasPoly && outline)) {
+            if(ogr.length() > 0)
+                ogr.append(";");
+            ogr.append("PEN(c:#");
+            ogr.append(toRGBA(lineColor));
+            ogr.append(",w:");
+            ogr.append(parseWidth(lineWidth));
+            ogr.append("px)");
+        }
+        if(hasPoly && fill) {
+            if(ogr.length() > 0)
+                ogr.append(";");
+            ogr.append("BRUSH(fc:#");
+            ogr.append(toRGBA(polyColor));
+            ogr.append(")");
+        }
+        return (ogr.length() > 0) ? ogr.toString() : null;
+    }
+
+    private void parseStyleMap() throws XmlPullParserException, IOException {
+        final String id = this.parser.getAttributeValue(null, "id");
+        final int depth = this.parser.getDepth();
+
+        String key = null;
+        int eventType;
+        while((eventType=this.parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.END_TAG && this.parser.getDepth() == depth)
+                break;
+            if(eventType != XmlPullParser.START_TAG)
+                continue;
+
+            final String tag = localName(this.parser);
+            if(tag.equals("key")) {
+                key = this.parser.nextText().trim();
+            } else if(tag.equals("styleUrl")) {
+                final String url = this.parser.nextText().trim();
+                if(id != null && "normal".equals(key))
+                    this.styleMaps.put("#" + id, url);
+            } else if(tag.equals("Style")) {
+                final String style = this.parseStyle();
+                if(id != null && "normal".equals(key) && style != null) {
+                    // inline pair style, register under a synthetic URL
+                    final String url = "#" + id + "#normal";
+                    this.styles.put(url, style);
+                    this.styleMaps.put("#" + id, url);
+                }
+            }
+        }
+    }
+
+    private String parseDataValue() throws XmlPullParserException, IOException {
+        final int depth = this.parser.getDepth();
+
+        String value = null;
+        int eventType;
+        while((eventType=this.parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.END_TAG && this.parser.getDepth() == depth)
+                break;
+            if(eventType == XmlPullParser.START_TAG && localName(this.parser).equals("value"))
+                value = this.parser.nextText();
+        }
+        return value;
+    }
+
+    private String resolveStyle(String styleUrl) {
+        if(styleUrl == null)
+            return null;
+        final String mapped = this.styleMaps.get(styleUrl);
+        if(mapped != null)
+            styleUrl = mapped;
+        return this.styles.get(styleUrl);
+    }
+
+    private String resolveHref(String href) {
+        if(this.baseUri == null || href.indexOf(':') > 0 || href.startsWith("/"))
+            return href;
+        return this.baseUri + href;
+    }
+
+    private String getContainerPath() {
+        StringBuilder path = new StringBuilder();
+        for(String name : this.containers) {
+            if(name == null || name.isEmpty())
+                continue;
+            if(path.length() > 0)
+                path.append('/');
+            path.append(name);
+        }
+        return path.toString();
+    }
+
+    /**************************************************************************/
+
+    private static InputStream open(InputStream stream, File file) throws IOException {
+        final String name = file.getName().toLowerCase(LocaleUtil.getCurrent());
+        if(!name.endsWith(".kmz"))
+            return stream;
+
+        final ZipInputStream zip = new ZipInputStream(stream);
+        try {
+            ZipEntry entry;
+            while((entry=zip.getNextEntry()) != null) {
+                if(!entry.isDirectory() && entry.getName().toLowerCase(LocaleUtil.getCurrent()).endsWith(".kml"))
+                    return zip;
+            }
+        } catch(IOException e) {
+            zip.close();
+            throw e;
+        }
+        zip.close();
+        throw new IOException("No KML document found in " + file.getName());
+    }
+
+    private static String getBaseUri(File file) {
+        final File absolute = file.getAbsoluteFile();
+        if(file.getName().toLowerCase(LocaleUtil.getCurrent()).endsWith(".kmz"))
+            return "arc:" + absolute.getPath() + "!/";
+        final File parent = absolute.getParentFile();
+        return (parent != null) ? parent.getPath() + File.separator : null;
+    }
+
+    private static String localName(XmlPullParser parser) {
+        final String name = parser.getName();
+        final int idx = name.indexOf(':');
+        return (idx < 0) ? name : name.substring(idx+1);
+    }
+
+    private static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        final int depth = parser.getDepth();
+        int eventType;
+        while((eventType=parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)
+                break;
+        }
+    }
+
+    private static Feature.AltitudeMode parseAltitudeMode(String mode) {
+        switch(mode) {
+            case "absolute" :
+                return Feature.AltitudeMode.Absolute;
+            case "relativeToGround" :
+            case "relativeToSeaFloor" :
+                return Feature.AltitudeMode.Relative;
+            default :
+                return Feature.AltitudeMode.ClampToGround;
+        }
+    }
+
+    private static int parseWidth(String width) {
+        if(width == null)
+            return 1;
+        try {
+            return Math.max(1, (int)Math.ceil(Double.parseDouble(width)));
+        } catch(NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Converts a KML <code>aabbggrr</code> color to the OGR
+     * <code>rrggbbaa</code> representation. Missing or malformed colors are
+     * opaque white, the KML default.
+     */
+    static String toRGBA(String abgr) {
+        if(abgr == null || abgr.length() != 8)
+            return "FFFFFFFF";
+        for(int i = 0; i < 8; i++) {
+            if(Character.digit(abgr.charAt(i), 16) < 0)
+                return "FFFFFFFF";
+        }
+        return (abgr.substring(6, 8) + abgr.substring(4, 6) + abgr.substring(2, 4) + abgr.substring(0, 2)).toUpperCase(LocaleUtil.getCurrent());
+    }
+
+    /**************************************************************************/
+
+    /**
+     * Parsed placemark.
+     */
+    static final class Placemark implements FeatureDefinition3 {
+        String name;
+        byte[] wkb;
+        String style;
+        AttributeSet attributes;
+        Feature.AltitudeMode altitudeMode = Feature.AltitudeMode.ClampToGround;
+        double extrude = 0d;
+        String path;
+
+        @Override
+        public Object getRawGeometry() {
+            return this.wkb;
+        }
+
+        @Override
+        public int getGeomCoding() {
+            return GEOM_WKB;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public int getStyleCoding() {
+            return STYLE_OGR;
+        }
+
+        @Override
+        public Object getRawStyle() {
+            return this.style;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return this.attributes;
+        }
+
+        @Override
+        public Feature get() {
+            return new Feature(this);
+        }
+
+        @Override
+        public long getTimestamp() {
+            return FeatureDataStore2.TIMESTAMP_NONE;
+        }
+
+        @Override
+        public Feature.AltitudeMode getAltitudeMode() {
+            return this.altitudeMode;
+        }
+
+        @Override
+        public double getExtrude() {
+            return this.extrude;
+        }
+    }
+
+    /**
+     * Geometry parsed from the document, retained only until it is encoded
+     * as WKB.
+     */
+    static class Geom {
+        static final int POINT = 1;
+        static final int LINESTRING = 2;
+        static final int POLYGON = 3;
+        static final int COLLECTION = 7;
+
+        final int type;
+        final Coords coords;
+        final List<Geom> children;
+
+        Geom(int type, Coords coords) {
+            this.type = type;
+            this.coords = coords;
+            this.children = null;
+        }
+
+        Geom(int type, List<Geom> children) {
+            this.type = type;
+            this.coords = null;
+            this.children = children;
+        }
+
+        boolean hasZ() {
+            if(this.coords != null)
+                return this.coords.hasZ;
+            for(Geom child : this.children)
+                if(child.hasZ())
+                    return true;
+            return false;
+        }
+
+        int wkbSize(int dimension) {
+            switch(this.type) {
+                case POINT :
+                    return 5 + 8*dimension;
+                case LINESTRING :
+                    return 9 + this.coords.count*8*dimension;
+                default :
+                {
+                    int size = 9;
+                    for(Geom child : this.children)
+                        size += (this.type == POLYGON) ? ((Coords)child).ringSize(dimension) : child.wkbSize(dimension);
+                    return size;
+                }
+            }
+        }
+
+        void write(ByteBuffer wkb, int dimension) {
+            wkb.put((byte)0x01);
+            wkb.putInt(this.type + ((dimension == 3) ? 1000 : 0));
+            switch(this.type) {
+                case POINT :
+                    this.coords.write(wkb, dimension, 1);
+                    break;
+                case LINESTRING :
+                    wkb.putInt(this.coords.count);
+                    this.coords.write(wkb, dimension, this.coords.count);
+                    break;
+                case POLYGON :
+                    wkb.putInt(this.children.size());
+                    for(Geom ring : this.children) {
+                        final Coords c = (Coords)ring;
+                        wkb.putInt(c.ringCount());
+                        c.write(wkb, dimension, c.count);
+                        if(c.ringCount() > c.count)
+                            c.write(wkb, dimension, 1);
+                    }
+                    break;
+                default :
+                    wkb.putInt(this.children.size());
+                    for(Geom child : this.children)
+                        child.write(wkb, dimension);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Coordinate tuples, always stored as x,y,z.
+     */
+    static final class Coords extends Geom {
+        final double[] xyz;
+        final int count;
+        final boolean hasZ;
+
+        Coords(double[] xyz, int count, boolean hasZ) {
+            super(LINESTRING, (Coords)null);
+            this.xyz = xyz;
+            this.count = count;
+            this.hasZ = hasZ;
+        }
+
+        @Override
+        boolean hasZ() {
+            return this.hasZ;
+        }
+
+        /** number of points when written as a closed ring */
+        int ringCount() {
+            final boolean closed = this.count > 1 &&
+                                   this.xyz[0] == this.xyz[(this.count-1)*3] &&
+                                   this.xyz[1] == this.xyz[(this.count-1)*3+1];
+            return closed ? this.count : this.count+1;
+        }
+
+        int ringSize(int dimension) {
+            return 4 + this.ringCount()*8*dimension;
+        }
+
+        void write(ByteBuffer wkb, int dimension, int n) {
+            for(int i = 0; i < n; i++) {
+                wkb.putDouble(this.xyz[i*3]);
+                wkb.putDouble(this.xyz[i*3+1]);
+                if(dimension == 3)
+                    wkb.putDouble(this.xyz[i*3+2]);
+            }
+        }
+    }
+
+    /**
+     * Parses the text content of a <code>coordinates</code> element. Tuples
+     * are separated by whitespace and their components by commas; whitespace
+     * adjacent to a comma is tolerated.
+     */
+    static final class CoordinateParser {
+        private double[] scratch = new double[3*64];
+
+        Coords parse(String text) {
+            int count = 0;
+            boolean hasZ = false;
+
+            final double[] tuple = new double[3];
+            int component = 0;
+            int start = -1;
+            boolean pendingComma = false;
+
+            final int len = text.length();
+            for(int i = 0; i <= len; i++) {
+                final char c = (i < len) ? text.charAt(i) : ' ';
+                final boolean ws = Character.isWhitespace(c);
+                if(c != ',' && !ws) {
+                    if(start < 0) {
+                        if(component > 0 && !pendingComma) {
+                            // a new tuple begins
+                            count = this.append(tuple, component, count);
+                            hasZ |= (component > 2);
+                            component = 0;
+                        }
+                        start = i;
+                        pendingComma = false;
+                    }
+                    continue;
+                }
+
+                if(start >= 0) {
+                    if(component < 3)
+                        tuple[component] = Double.parseDouble(text.substring(start, i));
+                    component++;
+                    start = -1;
+                }
+                if(c == ',')
+                    pendingComma = true;
+            }
+            if(component > 0) {
+                count = this.append(tuple, component, count);
+                hasZ |= (component > 2);
+            }
+
+            if(count == 0)
+                return null;
+            final double[] xyz = new double[count*3];
+            System.arraycopy(this.scratch, 0, xyz, 0, count*3);
+            return new Coords(xyz, count, hasZ);
+        }
+
+        private int append(double[] tuple, int component, int count) {
+            if(component < 2)
+                return count;
+            if((count+1)*3 > this.scratch.length) {
+                final double[] grown = new double[this.scratch.length*2];
+                System.arraycopy(this.scratch, 0, grown, 0, count*3);
+                this.scratch = grown;
+            }
+            this.scratch[count*3] = tuple[0];
+            this.scratch[count*3+1] = tuple[1];
+            this.scratch[count*3+2] = (component > 2) ? tuple[2] : 0d;
+            return count+1;
+        }
+    }
+
+    /**
+     * Tracks the number of bytes read from the underlying file.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if(b >= 0)
+                this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if(n > 0)
+                this.count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -13,6 +13,10 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import com.atakmap.annotations.DeprecatedApi;
 import com.atakmap.coremap.log.Log;
@@ -37,6 +41,7 @@ import com.atakmap.map.layer.control.TimeSpanControl;
 import com.atakmap.map.layer.feature.Adapters;
 import com.atakmap.map.layer.feature.AttributeSet;
 import com.atakmap.map.layer.feature.DataStoreException;
+import com.atakmap.map.layer.feature.Feature;
 import com.atakmap.map.layer.feature.FeatureCursor;
 import com.atakmap.map.layer.feature.FeatureDataStore2;
 import com.atakmap.map.layer.feature.FeatureDataStore2.FeatureSetQueryParameters;
@@ -110,6 +115,17 @@ public class GLBatchGeometryFeatureDataStoreRenderer extends
 
     private final static String TAG = "GLBatchGeometryFeatureDataStoreRenderer";
 
+    /** maximum number of rows read from the cursor per decode batch */
+    private final static int DECODE_BATCH_SIZE = 512;
+    /** number of rows below which a decode task is not split further */
+    private final static int DECODE_TASK_SIZE = 64;
+
+    /**
+     * Decodes feature geometry headers, geometry collections and styles in
+     * parallel for all renderer instances.
+     */
+    private final static ForkJoinPool decodePool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()-1));
+
     private Map<Integer, Statistics> queryStats = new HashMap<Integer, Statistics>();
     private Collection<GLBatchGeometryRenderer> renderList;
 
@@ -329,7 +345,10 @@ public class GLBatchGeometryFeatureDataStoreRenderer extends
 
         final int lod = OSMUtils.mapnikTileLevel(state.drawMapResolution);
         
-        double simplifyFactor = (state.drawMapResolution/111111d) * 2;
+        // simplify against the nominal resolution of the LOD so that the
+        // tolerance is stable within a level; this allows the datastore to
+        // serve previously simplified geometry from its cache
+        double simplifyFactor = (OSMUtils.mapnikTileResolution(lod)/111111d) * 2;
         
         if(this.checkQueryThreadAbort())
             return;
@@ -347,224 +366,43 @@ public class GLBatchGeometryFeatureDataStoreRenderer extends
         }
 
         try {        
-            Map<String, Style> styleMap = new HashMap<String, Style>();
+            final Map<String, Style> styleMap = new ConcurrentHashMap<String, Style>();
             boolean invalidate = false;
 
-            Long featureId;
-            ByteBuffer blob;
-            Geometry geom;
-            Style style;
-            
             long s = System.currentTimeMillis();
 
             FeatureCursor cursor = null;
+            DecodeBatch pending = null;
             try {
                 cursor = this.dataStore.queryFeatures(params);
-                while (cursor.moveToNext()) {
-                    if(this.checkQueryThreadAbort())
-                        break;
 
-                    featureId = cursor.getId();
-                    final long version = cursor.getVersion();
-
-                    GLBatchGeometry glitem = this.glSpatialItems.get(featureId);
-                    if (glitem != null) {
-                        // XXX - this isn't perfect as it doesn't take into
-                        // account the point scale factor, however
-                        // performance is probably more important than
-                        // the small amount of detail we may end up
-                        // losing
-
-                        // if we've already simplified the geometry at the
-                        // current level of detail, just go with what we have.
-                        //
-                        // also make sure to verify if the version is the same otherwise
-                        // go through the complete initialization
-                        if (glitem.lod == lod  && glitem.version == version) {
-                            glitem.setClampToGroundAtNadir(this.nadirClampControl.enabled);
-                            glitem.setLollipopsVisible(this.lollipopControl.enabled);
-                            result.add(glitem);
-                            continue;
-                        }
+                // rows are read from the cursor on the query thread in
+                // batches. each batch is decoded on the worker pool while the
+                // next batch is read, and the results are merged in cursor
+                // order
+                boolean more;
+                do {
+                    DecodeBatch batch = new DecodeBatch(styleMap);
+                    more = this.readBatch(cursor, lod, batch.records);
+                    batch.decode();
+
+                    final DecodeBatch previous = pending;
+                    pending = batch;
+                    if(previous != null) {
+                        previous.join();
+                        invalidate |= this.mergeBatch(previous, lod, result);
                     }
+                } while(more && !this.checkQueryThreadAbort());
 
-                    final int type;
-                    boolean useBlobGeom = false;
-                    blob = null;
-                    geom = null;
-
-                    if(cursor.getGeomCoding() == FeatureDefinition.GEOM_SPATIALITE_BLOB) {
-                        byte[] rawGeom = (byte[])cursor.getRawGeometry();
-                        if (rawGeom == null)
-                            continue;
-    
-                        blob = ByteBuffer.wrap(rawGeom);
-                        if ((blob.get() & 0xFF) != 0x00) // marker byte
-                            continue;
-                        // endian
-                        switch (blob.get() & 0xFF) {
-                            case 0x00:
-                                blob.order(ByteOrder.BIG_ENDIAN);
-                                break;
-                            case 0x01:
-                                blob.order(ByteOrder.LITTLE_ENDIAN);
-                                break;
-                            default:
-                                continue;
-                        }
-                        // skip the SRID and MBR
-                        blob.position(blob.position() + 36);
-                        if ((blob.get() & 0xFF) != 0x7C) // marker byte
-                            // XXX - drop through and process as Geometry class
-                            continue;
-                        
-                        type = blob.getInt();
-                        if(type%1000 != 7) {
-                            useBlobGeom = true;
-                        } else {
-                            geom = GeometryFactory.parseSpatiaLiteBlob(rawGeom);
-                            if(geom == null)
-                                continue;
-                         }
-                    } else {
-                        if(cursor.getGeomCoding() == FeatureDefinition.GEOM_ATAK_GEOMETRY)
-                            geom = (Geometry)cursor.getRawGeometry();
-                        else
-                            geom = cursor.get().getGeometry();
-
-                        if(geom instanceof Point) {
-                            type = 1;
-                        } else if(geom instanceof LineString) {
-                            type = 2;
-                        } else if(geom instanceof Polygon) {
-                            type = 3;
-                        } else if(geom instanceof GeometryCollection) {
-                            type = 7;
-                        } else if(geom == null) {
-                            continue;
-                        } else {
-                            throw new IllegalStateException("unknown geometry encountered");
-                        }
-                    }
-
-
-                    if (glitem == null) {
-                        switch (type % 1000) {
-                            case 1:
-                                glitem = new GLBatchPoint(this.renderContext);
-                                break;
-                            case 2:
-                                glitem = new GLBatchLineString(this.renderContext);
-                                break;
-                            case 3:
-                                // TODO: temp for debugging
-                                glitem = new GLBatchPolygon(this.renderContext);
-                                break;
-                            case 4:
-                                glitem = new GLBatchMultiPoint(this.renderContext);
-                                break;
-                            case 5:
-                                glitem = new GLBatchMultiLineString(this.renderContext);
-                                break;
-                            case 6:
-                                glitem = new GLBatchMultiPolygon(this.renderContext);
-                                break;
-                            case 7:
-                                glitem = new GLBatchGeometryCollection(this.renderContext);
-                                break;
-                            default:
-                                Log.d(TAG, "Geometry type not supported, skipping feature "
-                                        + featureId);
-                                continue;
-                        }
-
-                        if(this.checkQueryThreadAbort())
-                            break;
-
-                        glitem.init(featureId.longValue(), cursor.getName());
-
-
-
-                        this.glSpatialItems.put(featureId, glitem);
-                    }
-
-                    if(this.checkQueryThreadAbort())
-                        break;
-
-                    style = null;
-                    if(cursor.getStyleCoding() == FeatureDefinition.STYLE_OGR) {
-                        final String styleString = (String)cursor.getRawStyle();
-                        if (styleString != null) {
-                            style = styleMap.get(styleString);
-                            if (style == null) {
-                                style = FeatureStyleParser.parse2(styleString);
-                                if(style != null)
-                                    styleMap.put(styleString, style);
-                            }
-                        }
-                    } else if(cursor.getStyleCoding() == FeatureDefinition.STYLE_ATAK_STYLE) {
-                        style = (Style)cursor.getRawStyle();
-                    } else {
-                        style = cursor.get().getStyle();
-                    }
-                    if (style != null)
-                        glitem.setStyle(style);
-
-
-
-                    // XXX - geometry only needs to get set on GLBatchPoint once
-                    if(useBlobGeom) {
-                        glitem.setGeometry(blob, type, lod);
-                    } else {
-                        switch (type % 1000) {
-                            case 1:
-                                if(!(glitem instanceof GLBatchPoint))
-                                    continue;
-                                glitem.setGeometry(geom, lod);
-                                break;
-                            case 2:
-                                if(!(glitem instanceof GLBatchLineString))
-                                    continue;
-                                glitem.setGeometry(geom, lod);
-                                break;
-                            case 3:
-                                if(!(glitem instanceof GLBatchPolygon))
-                                    continue;
-                                glitem.setGeometry(geom, lod);
-                                break;
-                            case 4:
-                            case 5:
-                            case 6:
-                            case 7:
-                                if(!(glitem instanceof GLBatchGeometryCollection))
-                                    continue;
-                                glitem.setGeometry(geom, lod);
-                                break;
-                            default:
-                                throw new IllegalStateException("unknown type encountered");
-                        }
-                    }
-
-                    if (cursor instanceof FeatureDefinition3) {
-                        glitem.setAltitudeMode(((FeatureDefinition3) cursor).getAltitudeMode());
-                        glitem.setExtrude(((FeatureDefinition3) cursor).getExtrude());
-                    }
-
-                    glitem.setClampToGroundAtNadir(this.nadirClampControl.enabled);
-                    glitem.setLollipopsVisible(this.lollipopControl.enabled);
-
-                    glitem.version = version;
-                    // only add the result if it's visible
-                    result.add(glitem);
-
-                    // Since style may be updated asynchronously, we will likely
-                    // need to trigger a queued invalidation so the item is
-                    // redrawn properly
-                    invalidate = true;
+                if(!this.checkQueryThreadAbort()) {
+                    pending.join();
+                    invalidate |= this.mergeBatch(pending, lod, result);
                 }
             } catch(Exception e) {
                 Log.w(TAG, "Unexpected exception occurred during feature query on " + this.subject.getName(), e);
             } finally {
+                if(pending != null)
+                    pending.cancel();
                 if(cursor != null)
                     cursor.close();
             }
@@ -604,6 +442,194 @@ public class GLBatchGeometryFeatureDataStoreRenderer extends
         }
     }
 
+    /**
+     * Reads up to {@link #DECODE_BATCH_SIZE} rows from the cursor. Only
+     * the cursor access is performed here; decoding is deferred to
+     * {@link DecodeBatch#decode()}.
+     *
+     * @return  <code>true</code> if the cursor may contain more rows,
+     *          <code>false</code> if the cursor is exhausted or the query was
+     *          aborted
+     */
+    private boolean readBatch(FeatureCursor cursor, int lod, Collection<DecodeRecord> records) {
+        while(records.size() < DECODE_BATCH_SIZE) {
+            if(this.checkQueryThreadAbort() || !cursor.moveToNext())
+                return false;
+
+            DecodeRecord record = new DecodeRecord();
+            record.fid = cursor.getId();
+            record.version = cursor.getVersion();
+
+            record.glitem = this.glSpatialItems.get(Long.valueOf(record.fid));
+            if (record.glitem != null) {
+                // XXX - this isn't perfect as it doesn't take into
+                // account the point scale factor, however
+                // performance is probably more important than
+                // the small amount of detail we may end up
+                // losing
+
+                // if we've already simplified the geometry at the
+                // current level of detail, just go with what we have.
+                //
+                // also make sure to verify if the version is the same otherwise
+                // go through the complete initialization
+                if (record.glitem.lod == lod && record.glitem.version == record.version) {
+                    record.current = true;
+                    records.add(record);
+                    continue;
+                }
+            } else {
+                record.name = cursor.getName();
+            }
+
+            if(cursor.getGeomCoding() == FeatureDefinition.GEOM_SPATIALITE_BLOB) {
+                record.geomCoding = FeatureDefinition.GEOM_SPATIALITE_BLOB;
+                record.rawGeom = cursor.getRawGeometry();
+            } else {
+                record.geomCoding = FeatureDefinition.GEOM_ATAK_GEOMETRY;
+                if(cursor.getGeomCoding() == FeatureDefinition.GEOM_ATAK_GEOMETRY)
+                    record.rawGeom = cursor.getRawGeometry();
+                else
+                    record.rawGeom = cursor.get().getGeometry();
+            }
+            if(record.rawGeom == null)
+                continue;
+
+            if(cursor.getStyleCoding() == FeatureDefinition.STYLE_OGR) {
+                record.styleCoding = FeatureDefinition.STYLE_OGR;
+                record.rawStyle = cursor.getRawStyle();
+            } else {
+                record.styleCoding = FeatureDefinition.STYLE_ATAK_STYLE;
+                if(cursor.getStyleCoding() == FeatureDefinition.STYLE_ATAK_STYLE)
+                    record.rawStyle = cursor.getRawStyle();
+                else
+                    record.rawStyle = cursor.get().getStyle();
+            }
+
+            if (cursor instanceof FeatureDefinition3) {
+                record.altitudeMode = ((FeatureDefinition3) cursor).getAltitudeMode();
+                record.extrude = ((FeatureDefinition3) cursor).getExtrude();
+            }
+
+            records.add(record);
+        }
+        return true;
+    }
+
+    /**
+     * Creates or updates the renderables for the decoded batch and adds them
+     * to <code>result</code> in cursor order. Must be invoked on the query
+     * thread.
+     *
+     * @return  <code>true</code> if any renderable was updated
+     */
+    private boolean mergeBatch(DecodeBatch batch, int lod, Collection<GLBatchGeometry> result) {
+        boolean updated = false;
+        for(DecodeRecord record : batch.records) {
+            if(this.checkQueryThreadAbort())
+                break;
+
+            GLBatchGeometry glitem = record.glitem;
+            if(record.current) {
+                glitem.setClampToGroundAtNadir(this.nadirClampControl.enabled);
+                glitem.setLollipopsVisible(this.lollipopControl.enabled);
+                result.add(glitem);
+                continue;
+            }
+            if(!record.decoded)
+                continue;
+
+            if (glitem == null) {
+                switch (record.type % 1000) {
+                    case 1:
+                        glitem = new GLBatchPoint(this.renderContext);
+                        break;
+                    case 2:
+                        glitem = new GLBatchLineString(this.renderContext);
+                        break;
+                    case 3:
+                        // TODO: temp for debugging
+                        glitem = new GLBatchPolygon(this.renderContext);
+                        break;
+                    case 4:
+                        glitem = new GLBatchMultiPoint(this.renderContext);
+                        break;
+                    case 5:
+                        glitem = new GLBatchMultiLineString(this.renderContext);
+                        break;
+                    case 6:
+                        glitem = new GLBatchMultiPolygon(this.renderContext);
+                        break;
+                    case 7:
+                        glitem = new GLBatchGeometryCollection(this.renderContext);
+                        break;
+                    default:
+                        Log.d(TAG, "Geometry type not supported, skipping feature "
+                                + record.fid);
+                        continue;
+                }
+
+                glitem.init(record.fid, record.name);
+
+                this.glSpatialItems.put(Long.valueOf(record.fid), glitem);
+            }
+
+            if (record.style != null)
+                glitem.setStyle(record.style);
+
+            // XXX - geometry only needs to get set on GLBatchPoint once
+            if(record.blob != null) {
+                glitem.setGeometry(record.blob, record.type, lod);
+            } else {
+                switch (record.type % 1000) {
+                    case 1:
+                        if(!(glitem instanceof GLBatchPoint))
+                            continue;
+                        glitem.setGeometry(record.geom, lod);
+                        break;
+                    case 2:
+                        if(!(glitem instanceof GLBatchLineString))
+                            continue;
+                        glitem.setGeometry(record.geom, lod);
+                        break;
+                    case 3:
+                        if(!(glitem instanceof GLBatchPolygon))
+                            continue;
+                        glitem.setGeometry(record.geom, lod);
+                        break;
+                    case 4:
+                    case 5:
+                    case 6:
+                    case 7:
+                        if(!(glitem instanceof GLBatchGeometryCollection))
+                            continue;
+                        glitem.setGeometry(record.geom, lod);
+                        break;
+                    default:
+                        throw new IllegalStateException("unknown type encountered");
+                }
+            }
+
+            if (record.altitudeMode != null) {
+                glitem.setAltitudeMode(record.altitudeMode);
+                glitem.setExtrude(record.extrude);
+            }
+
+            glitem.setClampToGroundAtNadir(this.nadirClampControl.enabled);
+            glitem.setLollipopsVisible(this.lollipopControl.enabled);
+
+            glitem.version = record.version;
+            // only add the result if it's visible
+            result.add(glitem);
+
+            // Since style may be updated asynchronously, we will likely
+            // need to trigger a queued invalidation so the item is
+            // redrawn properly
+            updated = true;
+        }
+        return updated;
+    }
+
     @Override
     public void draw(GLMapView view, int renderPass) {
 
@@ -734,6 +760,175 @@ public class GLBatchGeometryFeatureDataStoreRenderer extends
         fids.addAll(glfids);
     }
 
+    /**************************************************************************/
+    // Parallel decode
+
+    /**
+     * A row read from the feature cursor. The geometry header and style are
+     * decoded on the worker pool; the renderable is created and updated on
+     * the query thread.
+     */
+    private final static class DecodeRecord {
+        long fid;
+        long version;
+        String name;
+        /** the existing renderable for the feature, if any */
+        GLBatchGeometry glitem;
+        /** if <code>true</code> the existing renderable may be used as is */
+        boolean current;
+
+        int geomCoding;
+        Object rawGeom;
+        int styleCoding;
+        Object rawStyle;
+        Feature.AltitudeMode altitudeMode;
+        double extrude;
+
+        // decode results
+        boolean decoded;
+        int type;
+        /** the SpatiaLite blob, positioned at the geometry data */
+        ByteBuffer blob;
+        Geometry geom;
+        Style style;
+
+        void decode(Map<String, Style> styleMap) {
+            if(this.geomCoding == FeatureDefinition.GEOM_SPATIALITE_BLOB) {
+                final byte[] rawGeom = (byte[])this.rawGeom;
+                final ByteBuffer blob = ByteBuffer.wrap(rawGeom);
+                if ((blob.get() & 0xFF) != 0x00) // marker byte
+                    return;
+                // endian
+                switch (blob.get() & 0xFF) {
+                    case 0x00:
+                        blob.order(ByteOrder.BIG_ENDIAN);
+                        break;
+                    case 0x01:
+                        blob.order(ByteOrder.LITTLE_ENDIAN);
+                        break;
+                    default:
+                        return;
+                }
+                // skip the SRID and MBR
+                blob.position(blob.position() + 36);
+                if ((blob.get() & 0xFF) != 0x7C) // marker byte
+                    // XXX - drop through and process as Geometry class
+                    return;
+
+                this.type = blob.getInt();
+                if(this.type%1000 != 7) {
+                    this.blob = blob;
+                } else {
+                    this.geom = GeometryFactory.parseSpatiaLiteBlob(rawGeom);
+                    if(this.geom == null)
+                        return;
+                }
+            } else {
+                this.geom = (Geometry)this.rawGeom;
+                if(this.geom instanceof Point) {
+                    this.type = 1;
+                } else if(this.geom instanceof LineString) {
+                    this.type = 2;
+                } else if(this.geom instanceof Polygon) {
+                    this.type = 3;
+                } else if(this.geom instanceof GeometryCollection) {
+                    this.type = 7;
+                } else {
+                    throw new IllegalStateException("unknown geometry encountered");
+                }
+            }
+
+            if(this.styleCoding == FeatureDefinition.STYLE_OGR) {
+                final String styleString = (String)this.rawStyle;
+                if (styleString != null) {
+                    this.style = styleMap.get(styleString);
+                    if (this.style == null) {
+                        this.style = FeatureStyleParser.parse2(styleString);
+                        if(this.style != null)
+                            styleMap.put(styleString, this.style);
+                    }
+                }
+            } else {
+                this.style = (Style)this.rawStyle;
+            }
+
+            // release the raw data; the blob retains the geometry bytes
+            this.rawGeom = null;
+            this.rawStyle = null;
+
+            this.decoded = true;
+        }
+    }
+
+    /**
+     * A batch of rows read from the cursor. Batches larger than
+     * {@link #DECODE_TASK_SIZE} are decoded on {@link #decodePool}; smaller
+     * batches are decoded on the calling thread.
+     */
+    private final static class DecodeBatch {
+        final ArrayList<DecodeRecord> records;
+        final Map<String, Style> styleMap;
+        volatile boolean cancelled;
+        ForkJoinTask<Void> task;
+
+        DecodeBatch(Map<String, Style> styleMap) {
+            this.records = new ArrayList<DecodeRecord>(DECODE_BATCH_SIZE);
+            this.styleMap = styleMap;
+            this.cancelled = false;
+        }
+
+        void decode() {
+            this.task = new DecodeTask(this, 0, this.records.size());
+            if(this.records.size() > DECODE_TASK_SIZE)
+                decodePool.execute(this.task);
+            else
+                this.task.invoke();
+        }
+
+        /** blocks until the batch is decoded */
+        void join() {
+            if(this.task != null)
+                this.task.join();
+        }
+
+        /** signals any outstanding decode to stop early */
+        void cancel() {
+            this.cancelled = true;
+        }
+    }
+
+    private final static class DecodeTask extends RecursiveAction {
+        private final DecodeBatch batch;
+        private final int off;
+        private final int len;
+
+        DecodeTask(DecodeBatch batch, int off, int len) {
+            this.batch = batch;
+            this.off = off;
+            this.len = len;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.len > DECODE_TASK_SIZE) {
+                final int split = this.len/2;
+                invokeAll(new DecodeTask(this.batch, this.off, split),
+                          new DecodeTask(this.batch, this.off+split, this.len-split));
+                return;
+            }
+
+            for(int i = 0; i < this.len; i++) {
+                // the query thread may not be polled from the pool; it marks
+                // the batch cancelled when the query is aborted
+                if(this.batch.cancelled)
+                    return;
+                final DecodeRecord record = this.batch.records.get(this.off+i);
+                if(!record.current)
+                    record.decode(this.batch.styleMap);
+            }
+        }
+    }
+
     private class ClampToGroundControlImpl implements ClampToGroundControl {
 
         private boolean enabled;
@@ -2,6 +2,7 @@ package com.atakmap.map.layer.raster.gpkg;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.Collection;
 
 import com.atakmap.coremap.io.IOProviderFactory;
 import com.atakmap.coremap.log.Log;
@@ -12,6 +13,7 @@ import android.graphics.Bitmap.CompressFormat;
 import android.graphics.Point;
 
 import com.atakmap.coremap.filesystem.FileSystemUtils;
+import com.atakmap.database.DatabaseIface;
 import com.atakmap.map.gpkg.GeoPackage;
 import com.atakmap.map.gpkg.TileTable;
 import com.atakmap.map.gpkg.TileTable.TileMatrixSet;
@@ -371,7 +373,46 @@ public class GeoPackageTileContainer implements TileContainer {
             throw new UnsupportedOperationException();
 
         this.gpkg.insertTile(tileTableName, level, x, y, data);
-        
+
+        if(expandBounds(level, x, y))
+            updateContentBounds();
+    }
+
+    @Override
+    public synchronized void setTiles(Collection<Tile> tiles) {
+        if(this.isReadOnly())
+            throw new UnsupportedOperationException();
+
+        final Envelope restore = (this.bounds != null) ? new Envelope(this.bounds) : null;
+        boolean boundsChanged = false;
+
+        final DatabaseIface database = this.gpkg.getDatabase();
+        database.beginTransaction();
+        try {
+            for(Tile tile : tiles) {
+                this.gpkg.insertTile(tileTableName, tile.level, tile.x, tile.y, tile.data);
+                boundsChanged |= expandBounds(tile.level, tile.x, tile.y);
+            }
+            // content bounds are only updated once per batch
+            if(boundsChanged)
+                updateContentBounds();
+            database.setTransactionSuccessful();
+            boundsChanged = false;
+        } finally {
+            database.endTransaction();
+            // the transaction was rolled back
+            if(boundsChanged)
+                this.bounds = restore;
+        }
+    }
+
+    /**
+     * Expands the bounds of the content to include the specified tile.
+     *
+     * @return  <code>true</code> if the bounds changed, <code>false</code>
+     *          if the bounds already contained the tile
+     */
+    private boolean expandBounds(int level, int x, int y) {
         Envelope tileBounds = Util.getTileBounds(this, level, x, y);
         if(this.bounds == null) {
             this.bounds = tileBounds;
@@ -385,9 +426,12 @@ public class GeoPackageTileContainer implements TileContainer {
             this.bounds.maxX = Math.max(tileBounds.maxX, this.bounds.maxX);
             this.bounds.maxY = Math.max(tileBounds.maxY, this.bounds.maxY);
         } else {
-            return;
+            return false;
         }
-        
+        return true;
+    }
+
+    private void updateContentBounds() {
         this.gpkg.updateContentBounds(tileTableName,
                                       this.bounds.minX, this.bounds.minY,
                                       this.bounds.maxX, this.bounds.maxY);
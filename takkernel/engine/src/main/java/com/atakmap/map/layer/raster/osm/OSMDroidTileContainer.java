@@ -306,7 +306,26 @@ public final class OSMDroidTileContainer implements TileContainer {
     public synchronized void setTile(int level, int x, int y, byte[] data, long expiration) {
         if(this.isReadOnly())
             throw new UnsupportedOperationException("TileContainer is read-only");
-        
+
+        setTileNoSync(level, x, y, data, expiration);
+    }
+
+    @Override
+    public synchronized void setTiles(Collection<Tile> tiles) {
+        if(this.isReadOnly())
+            throw new UnsupportedOperationException("TileContainer is read-only");
+
+        this.db.beginTransaction();
+        try {
+            for(Tile tile : tiles)
+                setTileNoSync(tile.level, tile.x, tile.y, tile.data, tile.expiration);
+            this.db.setTransactionSuccessful();
+        } finally {
+            this.db.endTransaction();
+        }
+    }
+
+    private void setTileNoSync(int level, int x, int y, byte[] data, long expiration) {
         PrecompiledStatements stmts = getPrecompiledStmts();
 
         final boolean update = hasTile(level, x, y);
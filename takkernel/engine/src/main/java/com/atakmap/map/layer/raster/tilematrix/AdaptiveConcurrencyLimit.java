@@ -0,0 +1,100 @@
+package com.atakmap.map.layer.raster.tilematrix;
+
+/**
+ * Estimates how many concurrent requests a remote host can service from the
+ * observed request latency. While latency stays near its long term baseline
+ * the limit grows by roughly its square root per sample; as requests start
+ * to queue at the host, latency rises and the limit is scaled back in
+ * proportion. Failed requests halve the limit.
+ *
+ * <P>Not thread-safe; callers are expected to synchronize externally.
+ */
+final class AdaptiveConcurrencyLimit {
+    /** latency may rise this far above the baseline before backing off */
+    final static double TOLERANCE = 1.5d;
+    /** weight of each sample in the smoothed limit */
+    final static double SMOOTHING = 0.2d;
+    /** weight of each sample in the long term latency baseline */
+    final static double BASELINE_WEIGHT = 0.02d;
+    /** the interval over which throughput is sampled, in nanoseconds */
+    final static long THROUGHPUT_WINDOW = 1000000000L;
+
+    final int minLimit;
+    final int maxLimit;
+
+    double limit;
+    double baselineLatency = Double.NaN;
+
+    long windowStart;
+    long windowBytes;
+    double bytesPerSecond;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        if(minLimit < 1 || maxLimit < minLimit)
+            throw new IllegalArgumentException();
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * @return the number of requests that may currently be in flight
+     */
+    int getLimit() {
+        return (int)limit;
+    }
+
+    /**
+     * @return the smoothed throughput, in bytes per second
+     */
+    double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param latency   The request latency, in nanoseconds
+     * @param bytes     The number of bytes transferred
+     * @param success   <code>true</code> if the request succeeded
+     * @param inFlight  The number of requests in flight, including this one,
+     *                  when it completed
+     * @param now       The current time, per {@link System#nanoTime()}
+     */
+    void onSample(long latency, long bytes, boolean success, int inFlight, long now) {
+        updateThroughput(bytes, now);
+
+        if(!success) {
+            limit = Math.max(minLimit, limit/2d);
+            return;
+        }
+        if(latency <= 0L)
+            return;
+
+        if(Double.isNaN(baselineLatency))
+            baselineLatency = latency;
+        else
+            baselineLatency += (latency-baselineLatency)*BASELINE_WEIGHT;
+
+        final double gradient = Math.max(0.5d, Math.min(TOLERANCE*baselineLatency/latency, 1d));
+        double newLimit = limit*gradient + Math.sqrt(limit);
+        // don't grow the limit while it isn't being used
+        if(newLimit > limit && inFlight < limit/2d)
+            return;
+        newLimit = limit*(1d-SMOOTHING) + newLimit*SMOOTHING;
+        limit = Math.max(minLimit, Math.min(newLimit, maxLimit));
+    }
+
+    private void updateThroughput(long bytes, long now) {
+        if(windowStart == 0L)
+            windowStart = now;
+        windowBytes += bytes;
+        final long elapsed = now-windowStart;
+        if(elapsed < THROUGHPUT_WINDOW)
+            return;
+        final double sample = windowBytes / (elapsed/1e9d);
+        bytesPerSecond = (bytesPerSecond == 0d) ? sample : (bytesPerSecond*0.7d + sample*0.3d);
+        windowStart = now;
+        windowBytes = 0L;
+    }
+}
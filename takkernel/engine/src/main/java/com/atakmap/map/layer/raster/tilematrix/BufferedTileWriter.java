@@ -0,0 +1,260 @@
+package com.atakmap.map.layer.raster.tilematrix;
+
+import com.atakmap.coremap.log.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Buffers tile writes to a {@link TileContainer} and commits them in large
+ * batches via {@link TileContainer#setTiles(java.util.Collection)} on a
+ * dedicated writer thread. Bulk caching is otherwise bound by the cost of
+ * committing each tile individually.
+ *
+ * <P>Buffered tiles are not visible through the container until they are
+ * committed. Once {@link #flush()} returns, every tile previously passed to
+ * {@link #setTile(int, int, int, byte[], long)} has been committed; an
+ * interrupted batch is rolled back in its entirety by the container.
+ *
+ * <P>Callers that write faster than the container can commit are blocked
+ * once the buffer limit is reached.
+ */
+public final class BufferedTileWriter {
+
+    private final static String TAG = "BufferedTileWriter";
+
+    public final static int DEFAULT_BATCH_SIZE = 256;
+    public final static long DEFAULT_MAX_DELAY = 2000L;
+    public final static long DEFAULT_BUFFER_LIMIT = 16L*1024L*1024L;
+
+    /**
+     * Snapshot of the writer statistics.
+     */
+    public final static class Statistics {
+        /** the number of tiles committed */
+        public final long written;
+        /** the number of tiles that could not be written */
+        public final long failed;
+        /** the number of batches committed */
+        public final long batches;
+        /** the number of tiles waiting to be committed */
+        public final int pending;
+        /** tiles committed per second since the first tile was received */
+        public final double tilesPerSecond;
+        /** tiles committed per second spent writing */
+        public final double writeTilesPerSecond;
+
+        Statistics(long written, long failed, long batches, int pending, double tilesPerSecond, double writeTilesPerSecond) {
+            this.written = written;
+            this.failed = failed;
+            this.batches = batches;
+            this.pending = pending;
+            this.tilesPerSecond = tilesPerSecond;
+            this.writeTilesPerSecond = writeTilesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "written=%d failed=%d batches=%d pending=%d rate=%.1f tiles/s write rate=%.1f tiles/s",
+                    written, failed, batches, pending, tilesPerSecond, writeTilesPerSecond);
+        }
+    }
+
+    private final TileContainer sink;
+    private final int batchSize;
+    private final long maxDelay;
+    private final long bufferLimit;
+    private final Thread writer;
+
+    private ArrayList<TileContainer.Tile> pending = new ArrayList<>();
+    private long pendingBytes;
+    private long received;
+    private long committed;
+    private long flushTarget;
+    private boolean closed;
+
+    private long written;
+    private long failed;
+    private long batches;
+    private long firstReceived;
+    private long lastCommitted;
+    private long writeNanos;
+
+    public BufferedTileWriter(TileContainer sink) {
+        this(sink, DEFAULT_BATCH_SIZE, DEFAULT_MAX_DELAY, DEFAULT_BUFFER_LIMIT);
+    }
+
+    /**
+     * Creates a new writer.
+     *
+     * @param sink          The container
+     * @param batchSize     The number of tiles committed per transaction
+     * @param maxDelay      The maximum time, in milliseconds, a tile is
+     *                      buffered before a partial batch is committed
+     * @param bufferLimit   The number of bytes of tile data that may be
+     *                      buffered before writes block
+     */
+    public BufferedTileWriter(TileContainer sink, int batchSize, long maxDelay, long bufferLimit) {
+        if(sink == null)
+            throw new IllegalArgumentException();
+        if(sink.isReadOnly())
+            throw new IllegalArgumentException();
+        if(batchSize < 1 || maxDelay < 0L || bufferLimit < 1L)
+            throw new IllegalArgumentException();
+
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.bufferLimit = bufferLimit;
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writerThread();
+            }
+        }, "BufferedTileWriter[" + sink.getName() + "]");
+        this.writer.setPriority(Thread.NORM_PRIORITY);
+        this.writer.start();
+    }
+
+    /**
+     * Buffers the data for the specified tile. Blocks if the buffer is full.
+     *
+     * @param level         The tile zoom level
+     * @param x             The tile column
+     * @param y             The tile row
+     * @param data          The tile data
+     * @param expiration    The expiration for the tile data, specified in
+     *                      epoch milliseconds
+     *
+     * @throws IllegalStateException    If the writer has been closed
+     */
+    public synchronized void setTile(int level, int x, int y, byte[] data, long expiration) {
+        while(!closed && pendingBytes >= bufferLimit) {
+            try {
+                this.wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if(closed)
+            throw new IllegalStateException("BufferedTileWriter is closed");
+
+        if(received == 0L)
+            firstReceived = System.nanoTime();
+        pending.add(new TileContainer.Tile(level, x, y, data, expiration));
+        pendingBytes += data.length;
+        received++;
+        if(pending.size() >= batchSize || pendingBytes >= bufferLimit)
+            this.notifyAll();
+    }
+
+    /**
+     * Commits all buffered tiles, blocking until complete.
+     */
+    public synchronized void flush() {
+        final long target = received;
+        if(target > flushTarget)
+            flushTarget = target;
+        this.notifyAll();
+        while(committed < target && writer.isAlive()) {
+            try {
+                this.wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Commits all buffered tiles and stops the writer thread. The container
+     * is not disposed.
+     */
+    public void close() {
+        synchronized(this) {
+            closed = true;
+            this.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the writer statistics
+     */
+    public synchronized Statistics getStatistics() {
+        final long elapsed = lastCommitted-firstReceived;
+        return new Statistics(written,
+                              failed,
+                              batches,
+                              (int)(received-committed),
+                              (written > 0L && elapsed > 0L) ? written / (elapsed/1e9d) : 0d,
+                              (written > 0L && writeNanos > 0L) ? written / (writeNanos/1e9d) : 0d);
+    }
+
+    private void writerThread() {
+        while(true) {
+            final ArrayList<TileContainer.Tile> batch;
+            synchronized(this) {
+                while(!closed && pending.isEmpty()) {
+                    try {
+                        this.wait();
+                    } catch(InterruptedException ignored) {}
+                }
+                if(pending.isEmpty())
+                    break;
+
+                // allow a partial batch to fill unless a flush is pending or
+                // the buffer is full
+                final long deadline = System.currentTimeMillis()+maxDelay;
+                while(!closed && pending.size() < batchSize && pendingBytes < bufferLimit && flushTarget <= committed) {
+                    final long remaining = deadline-System.currentTimeMillis();
+                    if(remaining <= 0L)
+                        break;
+                    try {
+                        this.wait(remaining);
+                    } catch(InterruptedException ignored) {}
+                }
+
+                batch = pending;
+                pending = new ArrayList<>(batchSize);
+                pendingBytes = 0L;
+                // wake any blocked producers
+                this.notifyAll();
+            }
+
+            final long start = System.nanoTime();
+            int batchFailed = 0;
+            try {
+                sink.setTiles(batch);
+            } catch(Throwable t) {
+                // the batch was rolled back, isolate the failed tile(s)
+                Log.w(TAG, "Failed to commit batch of " + batch.size() + " tiles to " + sink.getName() + ", retrying individually", t);
+                for(TileContainer.Tile tile : batch) {
+                    try {
+                        sink.setTile(tile.level, tile.x, tile.y, tile.data, tile.expiration);
+                    } catch(Throwable t2) {
+                        batchFailed++;
+                    }
+                }
+            }
+            final long end = System.nanoTime();
+
+            synchronized(this) {
+                committed += batch.size();
+                written += batch.size()-batchFailed;
+                failed += batchFailed;
+                batches++;
+                writeNanos += (end-start);
+                lastCommitted = end;
+                this.notifyAll();
+            }
+        }
+    }
+}
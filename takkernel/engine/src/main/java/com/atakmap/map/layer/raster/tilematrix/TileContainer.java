@@ -2,8 +2,29 @@ package com.atakmap.map.layer.raster.tilematrix;
 
 import android.graphics.Bitmap;
 
+import java.util.Collection;
+
 public interface TileContainer extends TileMatrix {
 
+    /**
+     * A tile to be written via {@link #setTiles(Collection)}.
+     */
+    public final static class Tile {
+        public final int level;
+        public final int x;
+        public final int y;
+        public final byte[] data;
+        public final long expiration;
+
+        public Tile(int level, int x, int y, byte[] data, long expiration) {
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.data = data;
+            this.expiration = expiration;
+        }
+    }
+
     /**
      * Returns <code>true</code> if the tile container is read-only.
      * 
@@ -44,6 +65,22 @@ public interface TileContainer extends TileMatrix {
      *                                          a serialized representation.
      */
     public void setTile(int level, int x, int y, Bitmap data, long expiration) throws TileEncodeException;
+    /**
+     * Sets the data for a batch of tiles in the container. Containers backed
+     * by a database write the batch in a single transaction; if an exception
+     * is raised, none of the tiles in the batch are written.
+     *
+     * <P>The default implementation invokes
+     * {@link #setTile(int, int, int, byte[], long)} for each tile.
+     *
+     * @param tiles The tiles
+     *
+     * @throws UnsupportedOperationException    If the container is read-only
+     */
+    public default void setTiles(Collection<Tile> tiles) {
+        for(Tile tile : tiles)
+            setTile(tile.level, tile.x, tile.y, tile.data, tile.expiration);
+    }
     /**
      * Returns <code>true</code> if expiration metadata is associated with tiles
      * in the container.
@@ -16,12 +16,42 @@ import com.atakmap.util.ReferenceCount;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves tiles from a local cache, downloading missing or expired tiles from
+ * the client in the background.
+ *
+ * <P>Pending downloads are kept in a heap ordered by distance from the
+ * location last passed to {@link TileCacheControl#prioritize(GeoPoint)}.
+ * The number of concurrent downloads adapts to the latency observed from
+ * the client, between {@link #MIN_CONCURRENCY} and {@link #MAX_CONCURRENCY}.
+ * Requests that have been queued longer than {@link #STALE_MILLIS} and have
+ * fallen well outside of the area of interest are dropped; they will be
+ * requested again if they come back into view.
+ */
 public final class TileProxy implements TileClient {
+    final static int MIN_CONCURRENCY = 1;
+    final static int INITIAL_CONCURRENCY = 3;
+    final static int MAX_CONCURRENCY = 8;
+
+    /** minimum time a request is queued before it may be dropped as stale */
+    final static long STALE_MILLIS = 10000L;
+    /**
+     * distance from the area of interest, in tile radii, past which a stale
+     * request is dropped
+     */
+    final static double STALE_RADII = 16d;
+
     final static Comparator<TileFetchTask> requestPriorityComparator = new Comparator<TileFetchTask>() {
         @Override
         public int compare(TileFetchTask a, TileFetchTask b) {
@@ -39,15 +69,28 @@ public final class TileProxy implements TileClient {
 
     int priority = 0;
 
-    ArrayList<TileFetchTask> downloadQueue = new ArrayList<>();
-
     PrioritizerImpl prioritizer = new PrioritizerImpl();
 
+    /** pending requests; aborted requests are removed lazily */
+    final PriorityQueue<TileFetchTask> downloadQueue = new PriorityQueue<>(64, prioritizer);
+    /** pending requests, by tile index */
+    final Map<Long, TileFetchTask> queuedRequests = new HashMap<>();
+    final AdaptiveConcurrencyLimit concurrency = new AdaptiveConcurrencyLimit(INITIAL_CONCURRENCY, MIN_CONCURRENCY, MAX_CONCURRENCY);
+    int inFlight;
+
+    long requested;
+    long completed;
+    long failed;
+    long staleDropped;
+    long aborted;
+    long totalBytes;
+    long totalLatency;
+
     public TileProxy(TileClient client, TileContainer cache) {
         this(client,
              cache,
              System.currentTimeMillis()-(24L*60L*60L*1000L), // 24 hours old
-             Executors.newFixedThreadPool(3, new NamedThreadFactory("TileProxy[" + client.getName() + "]")));
+             createExecutor(client.getName()));
     }
 
     TileProxy(TileClient client, TileContainer cache, long expiry, ExecutorService clientExecutor) {
@@ -67,6 +110,21 @@ public final class TileProxy implements TileClient {
         this.proj = ProjectionFactory.getProjection(client.getSRID());
     }
 
+    static ExecutorService createExecutor(String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_CONCURRENCY,
+                MAX_CONCURRENCY,
+                30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory("TileProxy[" + name + "]"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static long key(int zoom, int x, int y) {
+        return ((long)zoom<<58L) | (((long)x&0x1FFFFFFFL)<<29L) | ((long)y&0x1FFFFFFFL);
+    }
+
     /**
      * Requests that the client abort the download of the specified tile
      * @param zoom
@@ -75,34 +133,107 @@ public final class TileProxy implements TileClient {
      */
     public void abortTile(int zoom, int x, int y) {
         synchronized (downloadQueue) {
-            // XXX - we could also just mark the tile as aborted, however, that
-            //       would potentially lead to a situation where we're taking
-            //       up a lot of slots in the circular buffer with tiles that
-            //       will aren't downloadable
-            final int idx = findQueuedRequestIndexNoSync(zoom, x, y);
-            if(idx >= 0)
-                downloadQueue.remove(idx);
+            final TileFetchTask request = queuedRequests.remove(key(zoom, x, y));
+            if(request != null) {
+                // the entry is discarded when it reaches the top of the heap
+                request.cancel();
+                aborted++;
+            }
         }
     }
 
-    int findQueuedRequestIndexNoSync(int zoom, int x, int y) {
-        for(int i = downloadQueue.size()-1; i >= 0; i--) {
-            final TileFetchTask request = downloadQueue.get(i);
-            if(request.x == x && request.y == y && request.z == zoom) {
-                return i;
+    private void downloadTile(int zoom, int x, int y) {
+        synchronized(downloadQueue) {
+            final long key = key(zoom, x, y);
+            final TileFetchTask queued = queuedRequests.get(key);
+            if(queued != null) {
+                queued.lastRequested = System.currentTimeMillis();
+                return;
             }
+            final TileFetchTask request = new TileFetchTask(++priority, client, cache, x, y, zoom, expiry, listener);
+            prioritizer.update(request);
+            queuedRequests.put(key, request);
+            downloadQueue.add(request);
+            requested++;
+
+            // aborted entries accumulate in the heap between rebuilds
+            if(downloadQueue.size() > 2*queuedRequests.size()+64)
+                rebuildQueueNoSync();
         }
-        return -1;
+        schedule();
     }
 
-    private void downloadTile(int zoom, int x, int y) {
+    /**
+     * Dispatches queued requests until the concurrency limit is reached.
+     */
+    void schedule() {
+        final long now = System.currentTimeMillis();
         synchronized(downloadQueue) {
-            final int idx = findQueuedRequestIndexNoSync(zoom, x, y);
-            if(idx < 0) {
-                downloadQueue.add(new TileFetchTask(++priority, client, cache, x, y, zoom, expiry, listener));
-                clientExecutor.execute(new Downloader());
+            while(inFlight < concurrency.getLimit()) {
+                final TileFetchTask request = downloadQueue.poll();
+                if(request == null)
+                    break;
+                if(request.cancelled)
+                    continue;
+                queuedRequests.remove(key(request.z, request.x, request.y));
+                if(prioritizer.isStale(request, now)) {
+                    request.cancel();
+                    staleDropped++;
+                    continue;
+                }
+                inFlight++;
+                try {
+                    clientExecutor.execute(new Downloader(request));
+                } catch(RejectedExecutionException e) {
+                    // disposed
+                    inFlight--;
+                    request.cancel();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the heap from the pending requests, updating their priority
+     * and dropping any that have gone stale.
+     */
+    void rebuildQueueNoSync() {
+        final long now = System.currentTimeMillis();
+        ArrayList<TileFetchTask> pending = new ArrayList<>(queuedRequests.size());
+        for(TileFetchTask request : downloadQueue) {
+            if(request.cancelled)
+                continue;
+            prioritizer.update(request);
+            if(prioritizer.isStale(request, now)) {
+                queuedRequests.remove(key(request.z, request.x, request.y));
+                request.cancel();
+                staleDropped++;
+            } else {
+                pending.add(request);
             }
         }
+        downloadQueue.clear();
+        downloadQueue.addAll(pending);
+    }
+
+    /**
+     * @return the download statistics for the client
+     */
+    public Statistics getStatistics() {
+        synchronized(downloadQueue) {
+            return new Statistics(requested,
+                                  completed,
+                                  failed,
+                                  staleDropped,
+                                  aborted,
+                                  queuedRequests.size(),
+                                  inFlight,
+                                  concurrency.getLimit(),
+                                  totalBytes,
+                                  concurrency.getBytesPerSecond(),
+                                  (completed+failed) > 0L ? (totalLatency/1e6d)/(completed+failed) : 0d);
+        }
     }
 
     @Override
@@ -191,11 +322,10 @@ public final class TileProxy implements TileClient {
         clientExecutor.shutdownNow();
 
         synchronized(downloadQueue) {
-            for(int i = 0; i < downloadQueue.size(); i++) {
-                downloadQueue.get(i).cache.dereference();
-                downloadQueue.get(i).client.dereference();
-            }
+            for(TileFetchTask request : downloadQueue)
+                request.cancel();
             downloadQueue.clear();
+            queuedRequests.clear();
         }
 
         client.dereference();
@@ -214,16 +344,84 @@ public final class TileProxy implements TileClient {
         }
     }
 
+    /**
+     * Snapshot of the download statistics for a client.
+     */
+    public final static class Statistics {
+        /** the number of tiles requested for download */
+        public final long requested;
+        /** the number of downloads completed */
+        public final long completed;
+        /** the number of downloads that failed */
+        public final long failed;
+        /** the number of requests dropped after going stale */
+        public final long staleDropped;
+        /** the number of requests aborted before download */
+        public final long aborted;
+        /** the number of requests currently queued */
+        public final int queued;
+        /** the number of downloads currently in progress */
+        public final int inFlight;
+        /** the current concurrency limit */
+        public final int concurrency;
+        /** the total number of bytes downloaded */
+        public final long bytes;
+        /** the recently observed throughput, in bytes per second */
+        public final double bytesPerSecond;
+        /** the mean download latency, in milliseconds */
+        public final double meanLatency;
+
+        Statistics(long requested, long completed, long failed, long staleDropped, long aborted, int queued, int inFlight, int concurrency, long bytes, double bytesPerSecond, double meanLatency) {
+            this.requested = requested;
+            this.completed = completed;
+            this.failed = failed;
+            this.staleDropped = staleDropped;
+            this.aborted = aborted;
+            this.queued = queued;
+            this.inFlight = inFlight;
+            this.concurrency = concurrency;
+            this.bytes = bytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.meanLatency = meanLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "requested=%d completed=%d failed=%d stale=%d aborted=%d queued=%d inFlight=%d concurrency=%d bytes=%d throughput=%.1fKB/s latency=%.1fms",
+                    requested, completed, failed, staleDropped, aborted, queued, inFlight, concurrency, bytes, bytesPerSecond/1024d, meanLatency);
+        }
+    }
+
     final class Downloader implements Runnable {
+        final TileFetchTask task;
+
+        Downloader(TileFetchTask task) {
+            this.task = task;
+        }
+
         @Override
         public void run() {
-            TileFetchTask task;
-            synchronized (downloadQueue) {
-                if(downloadQueue.isEmpty())
-                    return;
-                task = downloadQueue.remove(downloadQueue.size()-1);
+            final long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                final long end = System.nanoTime();
+                synchronized (downloadQueue) {
+                    final boolean success = (task.error == null);
+                    // only downloads are representative of the client
+                    if(task.downloaded || !success)
+                        concurrency.onSample(end-start, task.bytes, success, inFlight, end);
+                    inFlight--;
+                    if(success)
+                        completed++;
+                    else
+                        failed++;
+                    totalBytes += task.bytes;
+                    totalLatency += (end-start);
+                }
+                schedule();
             }
-            task.run();
         }
     }
 
@@ -243,6 +441,20 @@ public final class TileProxy implements TileClient {
 
         int priority;
 
+        /** the last time the tile was requested */
+        long lastRequested;
+        /** <code>true</code> if the tile contains the area of interest */
+        boolean inView;
+        /** distance from the area of interest to the tile */
+        double distance;
+        /** <code>true</code> if the request was aborted or dropped */
+        boolean cancelled;
+
+        /** <code>true</code> if the tile was requested from the client */
+        boolean downloaded;
+        long bytes;
+        Throwable error;
+
         TileFetchTask(int priority, ReferenceCount<TileClient> client, ReferenceCount<TileContainer> cache, int x, int y, int z, long expiry, TileCacheControl.OnTileUpdateListener[] l) {
             this.priority = priority;
             this.client = client;
@@ -252,6 +464,7 @@ public final class TileProxy implements TileClient {
             this.z = z;
             this.expiry = expiry;
             this.callback = l;
+            this.lastRequested = System.currentTimeMillis();
 
             this.client.reference();
             this.cache.reference();
@@ -263,14 +476,30 @@ public final class TileProxy implements TileClient {
             radius = MathUtils.distance(centroidX, centroidY, centroidZ, bounds.maxX, bounds.maxY, bounds.maxZ);
         }
 
+        /**
+         * Releases the request without downloading. Must only be invoked on
+         * requests that have not been dispatched.
+         */
+        void cancel() {
+            if(cancelled)
+                return;
+            cancelled = true;
+            client.dereference();
+            cache.dereference();
+        }
+
         @Override
         public void run() {
             try {
                 final long expiration = cache.value.getTileExpiration(z, x, y);
                 // if the tile is considered expired, download
                 if(expiration < expiry) {
-                    byte[] data = client.value.getTileData(z, x, y, null);
+                    final Throwable[] err = new Throwable[1];
+                    downloaded = true;
+                    byte[] data = client.value.getTileData(z, x, y, err);
+                    error = err[0];
                     if (data != null) {
+                        bytes = data.length;
                         cache.value.setTile(z, x, y, data, System.currentTimeMillis());
                         // signal update
                         synchronized (callback) {
@@ -280,6 +509,7 @@ public final class TileProxy implements TileClient {
                     }
                 }
             } catch(Throwable t) {
+                error = t;
             } finally {
                 client.dereference();
                 cache.dereference();
@@ -291,44 +521,69 @@ public final class TileProxy implements TileClient {
 
         GeoPoint p;
         PointD xyz0 = new PointD(0d, 0d, 0d);
-        PointD xyz1 = new PointD(0d, 0d, 0d);
-        PointD xyz2 = new PointD(0d, 0d, 0d);
 
+        /**
+         * Orders requests by the priority computed on the most recent call
+         * to {@link #update(TileFetchTask)}; the request to be serviced
+         * first is ordered first. Tiles containing the area of interest come
+         * first, followed by the remaining tiles by distance. Lower
+         * resolution tiles are preferred, then the most recently requested.
+         */
         @Override
         public int compare(TileFetchTask a, TileFetchTask b) {
-            final double da = MathUtils.distance(a.centroidX, a.centroidY, a.centroidZ, xyz0.x, xyz0.y, xyz0.z);
-            final double db = MathUtils.distance(b.centroidX, b.centroidY, b.centroidZ, xyz0.x, xyz0.y, xyz0.z);
-            if(da <= a.radius && db <= b.radius)
-                return b.z-a.z;
-            else if(da <= a.radius)
-                return 1;
-            else if(db < b.radius)
-                return -1;
-            // both radii are greater
-            else if((da-a.radius) < (db-b.radius))
-                return 1;
-            else if((da-a.radius) > (db-b.radius))
+            if(a.inView != b.inView)
+                return a.inView ? -1 : 1;
+            else if(a.distance < b.distance)
                 return -1;
-            else if(a.z < b.z)
+            else if(a.distance > b.distance)
                 return 1;
-            else if(a.z > b.z)
-                return -1;
+            else if(a.z != b.z)
+                return a.z-b.z;
             else
-                return a.priority-b.priority;
+                return b.priority-a.priority;
         }
 
-        @Override
-        public void prioritize(GeoPoint p) {
-            this.p = (p != null) ? new GeoPoint(p) : null;
-            if(this.p != null) {
-                proj.forward(p, xyz0);
-                proj.forward(p, xyz1);
-                proj.forward(p, xyz2);
+        /**
+         * Updates the priority of the request for the current area of
+         * interest. Must be followed by a rebuild of the heap if the request
+         * is already queued.
+         */
+        void update(TileFetchTask request) {
+            if(p == null) {
+                request.inView = false;
+                request.distance = 0d;
+                return;
             }
+            final double d = MathUtils.distance(request.centroidX, request.centroidY, request.centroidZ, xyz0.x, xyz0.y, xyz0.z);
+            request.inView = (d <= request.radius);
+            request.distance = request.inView ? 0d : (d-request.radius);
+        }
+
+        /**
+         * @return <code>true</code> if the request has been waiting long
+         *         enough, and is far enough from the area of interest, that
+         *         it is unlikely to still be needed
+         */
+        boolean isStale(TileFetchTask request, long now) {
+            return (p != null) &&
+                   (now-request.lastRequested) > STALE_MILLIS &&
+                   request.distance > (STALE_RADII*request.radius);
+        }
 
-            if(this.p != null)
+        @Override
+        public void prioritize(GeoPoint p) {
+            if(p == null)
+                return;
             synchronized(downloadQueue) {
-                Collections.sort(downloadQueue, this);
+                final double x = xyz0.x;
+                final double y = xyz0.y;
+                final double z = xyz0.z;
+                final boolean reset = (this.p == null);
+                this.p = new GeoPoint(p);
+                proj.forward(p, xyz0);
+                // the heap is only rebuilt if the area of interest moved
+                if(reset || x != xyz0.x || y != xyz0.y || z != xyz0.z)
+                    rebuildQueueNoSync();
             }
         }
 
@@ -340,7 +595,7 @@ public final class TileProxy implements TileClient {
         @Override
         public boolean isQueued(int level, int x, int y) {
             synchronized(downloadQueue) {
-                return findQueuedRequestIndexNoSync(level, x, y) >= 0;
+                return queuedRequests.containsKey(key(level, x, y));
             }
         }
 
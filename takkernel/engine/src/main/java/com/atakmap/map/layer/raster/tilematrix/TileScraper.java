@@ -68,7 +68,14 @@ public final class TileScraper {
             downloader = new LegacyDownloader();
         
         
-        downloader.download(new ScrapeContext(client, sink, request));
+        final ScrapeContext context = new ScrapeContext(client, sink, request);
+        context.writer = new BufferedTileWriter(sink);
+        try {
+            downloader.download(context);
+        } finally {
+            context.writer.close();
+            Log.d(TAG, "Cached " + client.getName() + ": " + context.writer.getStatistics());
+        }
     }
 
     public static int estimateTileCount(TileClient client, CacheRequest request) {
@@ -119,7 +126,7 @@ public final class TileScraper {
                                                                err);
                     if(d != null) {
                         // valid entry in cache
-                        this.context.sink.setTile(this.tileZ, this.tileX, this.tileY, d, System.currentTimeMillis()+context.request.expirationOffset);
+                        this.context.writer.setTile(this.tileZ, this.tileX, this.tileY, d, System.currentTimeMillis()+context.request.expirationOffset);
                         success = true;
                         break;
                     } else if(err[0] == null) {
@@ -133,6 +140,8 @@ public final class TileScraper {
                 
                 // set the error if necessary
                 this.context.downloadError |= (err[0] != null); 
+            } catch(IllegalStateException e) {
+                // the request was cancelled and the writer closed
             } finally {
                 this.context.downloadComplete(success);
             }
@@ -142,6 +151,7 @@ public final class TileScraper {
     private static class ScrapeContext {
         public final TileMatrix client;
         public final TileContainer sink;
+        public BufferedTileWriter writer;
         public final CacheRequest request;
         public final String uri;
         public final int[] levels;
@@ -366,6 +376,15 @@ public final class TileScraper {
         protected void onLevelDownloadStart(ScrapeContext context) {
         }
 
+        /**
+         * Waits for all tile downloads that have been started to complete.
+         * Invoked before the downloaded tiles are committed.
+         *
+         * @param context   The current download context
+         */
+        protected void awaitDownloads(ScrapeContext context) {
+        }
+
         protected abstract void downloadTileImpl(ScrapeContext context,
                 int tileLevel, int tileX, int tileY);
 
@@ -471,6 +490,10 @@ public final class TileScraper {
                     }
                 }
                 
+                // commit all downloaded tiles before signaling completion
+                this.awaitDownloads(downloadContext);
+                downloadContext.writer.flush();
+
                 if(callback != null)
                     callback.onRequestComplete();
 
@@ -497,6 +520,7 @@ public final class TileScraper {
     private class MultiThreadDownloader extends Downloader {
         private ThreadPoolExecutor downloadService;
         private LinkedBlockingQueue<Runnable> queue;
+        private final AtomicInteger outstanding = new AtomicInteger(0);
 
         public MultiThreadDownloader(int numDownloadThreads) {
             if (numDownloadThreads <= 1)
@@ -512,10 +536,14 @@ public final class TileScraper {
                     DOWNLOAD_SERVICE_THREAD_FACTORY);
         }
 
-        private void flush(ScrapeContext downloadContext, boolean reportStatus) {
+        /**
+         * @param inProgress    If <code>true</code>, waits for downloads in
+         *                      progress as well as queued downloads
+         */
+        private void flush(ScrapeContext downloadContext, boolean reportStatus, boolean inProgress) {
 
-            // wait for queue to empty 
-            while (this.queue.size() > 0) {
+            // wait for queue to empty
+            while ((inProgress ? this.outstanding.get() : this.queue.size()) > 0) {
                 // check for cancel
                 if (request.canceled)
                     break;
@@ -533,7 +561,7 @@ public final class TileScraper {
 
         @Override
         protected void onDownloadExit(ScrapeContext context, int jobStatus) {
-            this.flush(context, false);
+            this.flush(context, false, true);
             if (!this.downloadService.isShutdown())
                 this.downloadService.shutdown();
         }
@@ -550,15 +578,31 @@ public final class TileScraper {
 
         @Override
         protected void onLevelDownloadComplete(ScrapeContext downloadContext) {
-            this.flush(downloadContext, true);
+            this.flush(downloadContext, true, false);
+        }
+
+        @Override
+        protected void awaitDownloads(ScrapeContext downloadContext) {
+            this.flush(downloadContext, true, true);
         }
 
         @Override
         protected void downloadTileImpl(ScrapeContext context, int tileLevel,
                 int tileX, int tileY) {
             // enqueue
-            downloadService.execute(new DownloadTask(context, tileLevel, tileX,
-                    tileY));
+            final DownloadTask task = new DownloadTask(context, tileLevel,
+                    tileX, tileY);
+            this.outstanding.incrementAndGet();
+            downloadService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        outstanding.decrementAndGet();
+                    }
+                }
+            });
         }
     }
 
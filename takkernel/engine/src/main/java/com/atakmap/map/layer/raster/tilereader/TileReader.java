@@ -60,6 +60,12 @@ public abstract class TileReader implements Controls {
         CANCELED,
     };
 
+    /**
+     * The maximum number of workers for the shared {@link AsynchronousIO}
+     * instance; leaves a core for the render and UI threads.
+     */
+    public final static int MASTER_IO_MAX_WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()-1));
+
     private static AsynchronousIO masterIOThread = null;
 
     protected final String uri;
@@ -888,9 +894,17 @@ public abstract class TileReader implements Controls {
         }
     }
 
+    /**
+     * Returns the shared {@link AsynchronousIO} instance. Requests from
+     * different readers sharing the instance may be serviced in parallel by
+     * up to {@link #MASTER_IO_MAX_WORKERS} workers; requests for any one
+     * reader are always serviced in series.
+     *
+     * @return  The shared {@link AsynchronousIO} instance
+     */
     public static synchronized AsynchronousIO getMasterIOThread() {
         if (masterIOThread == null)
-            masterIOThread = new TileReader.AsynchronousIO();
+            masterIOThread = new TileReader.AsynchronousIO(null, 0L, MASTER_IO_MAX_WORKERS);
         return masterIOThread;
     }
 
@@ -1148,25 +1162,104 @@ public abstract class TileReader implements Controls {
     } // AsynchronousReadRequestListener
 
     /**
-     * The asynchronous I/O thread for use by one or more
-     * <code>TileReader</code> instances. The same instance can be utilized by
-     * multiple <code>TileReader</code> objects to ensure data reading and
-     * delivery in series rather than in parallel. Forcing request servicing
-     * into series rather than in parallel can be advantageous in memory
-     * constrained environments when trying to render virtual mosaics from
-     * multiple files/tile readers onto a single canvas.
+     * The asynchronous I/O scheduler for use by one or more
+     * <code>TileReader</code> instances. Requests are serviced by a bounded
+     * pool of worker threads. Requests made by a single reader are always
+     * serviced in series, by one worker at a time, in the order defined by
+     * the reader's prioritizer; requests from different readers may be
+     * serviced in parallel, up to the maximum number of workers.
+     *
+     * <P>With a single worker (the default), the same instance can be
+     * utilized by multiple <code>TileReader</code> objects to ensure data
+     * reading and delivery in series rather than in parallel. Forcing request
+     * servicing into series rather than in parallel can be advantageous in
+     * memory constrained environments when trying to render virtual mosaics
+     * from multiple files/tile readers onto a single canvas.
+     *
+     * <P>Pending tile requests that are superseded by a request for the same
+     * tile from the same callback are canceled. When the state of a reader's
+     * prioritizer changes (e.g. the view moves), {@link #reprioritize(TileReader)}
+     * should be invoked so the pending requests are re-sorted before the next
+     * one is serviced.
      * 
      * @author Developer
      */
     public final static class AsynchronousIO {
+        /**
+         * Workers beyond the first exit after being idle for this many
+         * milliseconds
+         */
+        private final static long EXTRA_WORKER_MAX_IDLE = 30000L;
+
+        /**
+         * Snapshot of the scheduler counters
+         */
+        public final static class Statistics {
+            /** the number of tasks waiting to be serviced */
+            public final int pending;
+            /** the number of tasks currently being serviced */
+            public final int executing;
+            /** the number of live worker threads */
+            public final int workers;
+            /** total tasks serviced */
+            public final long serviced;
+            /** queued read requests discarded after being canceled */
+            public final long canceled;
+            /** queued read requests superseded by a request for the same tile */
+            public final long coalesced;
+            /** mean time, in milliseconds, serviced tasks spent queued */
+            public final double meanWaitMillis;
+            /** maximum time, in milliseconds, a serviced task spent queued */
+            public final long maxWaitMillis;
+            /** mean time, in milliseconds, spent servicing a task */
+            public final double meanServiceMillis;
+
+            Statistics(AsynchronousIO io) {
+                int pending = 0;
+                for(RequestQueue queue : io.tasks.values())
+                    pending += queue.size();
+                this.pending = pending;
+                this.executing = io.executing.size();
+                this.workers = io.numWorkers;
+                this.serviced = io.serviced;
+                this.canceled = io.canceled;
+                this.coalesced = io.coalesced;
+                this.meanWaitMillis = (io.serviced > 0L) ? (double)io.totalWaitMillis / (double)io.serviced : 0d;
+                this.maxWaitMillis = io.maxWaitMillis;
+                this.meanServiceMillis = (io.serviced > 0L) ? (double)io.totalServiceMillis / (double)io.serviced : 0d;
+            }
+
+            @Override
+            public String toString() {
+                return "Statistics {pending=" + pending + ",executing=" + executing
+                        + ",workers=" + workers + ",serviced=" + serviced
+                        + ",canceled=" + canceled + ",coalesced=" + coalesced
+                        + ",meanWaitMillis=" + meanWaitMillis
+                        + ",maxWaitMillis=" + maxWaitMillis
+                        + ",meanServiceMillis=" + meanServiceMillis + "}";
+            }
+        }
+
         private Map<TileReader, RequestQueue> tasks;
-        private Task executing;
+        /**
+         * The tasks currently being serviced, by reader. A reader is never
+         * serviced by more than one worker at a time.
+         */
+        private final Map<TileReader, Task> executing;
         private final Object syncOn;
         private boolean dead;
-        private boolean started;
+        private int maxWorkers;
+        private int numWorkers;
+        private int idleWorkers;
         private final long maxIdle;
 
-        private byte[] readBuffer;
+        // statistics, guarded by syncOn
+        private long serviced;
+        private long canceled;
+        private long coalesced;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+        private long totalServiceMillis;
 
         public AsynchronousIO() {
             this(null, 0L);
@@ -1181,33 +1274,93 @@ public abstract class TileReader implements Controls {
         }
 
         public AsynchronousIO(Object syncOn, long maxIdle) {
+            this(syncOn, maxIdle, 1);
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param syncOn        The object to synchronize on, if
+         *                      <code>null</code> the instance synchronizes on
+         *                      itself
+         * @param maxIdle       The number of milliseconds that the instance
+         *                      may remain idle before its workers exit, if
+         *                      <code>0L</code>, the workers never idle out
+         * @param maxWorkers    The maximum number of worker threads
+         */
+        public AsynchronousIO(Object syncOn, long maxIdle, int maxWorkers) {
             if (syncOn == null)
                 syncOn = this;
+            if (maxWorkers < 1)
+                throw new IllegalArgumentException();
             this.syncOn = syncOn;
             this.tasks = new HashMap<>();
+            this.executing = new HashMap<>();
             this.dead = true;
-            this.started = false;
+            this.maxWorkers = maxWorkers;
+            this.numWorkers = 0;
+            this.idleWorkers = 0;
             this.maxIdle = maxIdle;
-
-            this.readBuffer = null;
         }
 
         private byte[] getReadBuffer(int size) {
-            if (this.readBuffer == null || this.readBuffer.length < size)
-                this.readBuffer = new byte[size];
-            return this.readBuffer;
+            final Thread current = Thread.currentThread();
+            if (!(current instanceof Worker) || ((Worker)current).owner != this)
+                return new byte[size];
+            final Worker worker = (Worker)current;
+            if (worker.readBuffer == null || worker.readBuffer.length < size)
+                worker.readBuffer = new byte[size];
+            return worker.readBuffer;
         }
 
         /**
-         * Aborts all unserviced tasks and kills the thread. If a task is
-         * currently being serviced, it will complete before the thread exits.
-         * The thread may be restarted by queueing a new task.
+         * Sets the maximum number of worker threads. If the new maximum is
+         * less than the number of live workers, the excess workers will exit
+         * once they have finished servicing their current task.
+         *
+         * @param maxWorkers    The maximum number of worker threads
+         */
+        public void setMaxWorkers(int maxWorkers) {
+            if (maxWorkers < 1)
+                throw new IllegalArgumentException();
+            synchronized (this.syncOn) {
+                this.maxWorkers = maxWorkers;
+                this.syncOn.notifyAll();
+            }
+        }
+
+        /**
+         * Returns the maximum number of worker threads.
+         *
+         * @return  The maximum number of worker threads
+         */
+        public int getMaxWorkers() {
+            synchronized (this.syncOn) {
+                return this.maxWorkers;
+            }
+        }
+
+        /**
+         * Returns a snapshot of the queue depth and latency counters.
+         *
+         * @return  The current statistics
+         */
+        public Statistics getStatistics() {
+            synchronized (this.syncOn) {
+                return new Statistics(this);
+            }
+        }
+
+        /**
+         * Aborts all unserviced tasks and kills the workers. If a task is
+         * currently being serviced, it will complete before its worker exits.
+         * The workers may be restarted by queueing a new task.
          */
         public void release() {
             synchronized (this.syncOn) {
                 this.abortRequests(null);
                 this.dead = true;
-                this.syncOn.notify();
+                this.syncOn.notifyAll();
             }
         }
 
@@ -1219,41 +1372,62 @@ public abstract class TileReader implements Controls {
          */
         public void abortRequests(TileReader reader) {
             synchronized (this.syncOn) {
-                if(this.executing != null && executing.reader == reader) {
-                    if (this.executing.action instanceof Cancelable)
-                        ((Cancelable) this.executing.action).cancel();
-                }
+                final Task active = this.executing.get(reader);
+                if (active != null && active.action instanceof Cancelable)
+                    ((Cancelable) active.action).cancel();
 
                 if(reader != null) {
                     final RequestQueue queue = this.tasks.remove(reader);
-                    while (queue != null) {
-                        Task t = queue.get();
-                        if (t == null)
-                            break;
-                        if (t.action instanceof Cancelable)
-                            ((Cancelable) t.action).cancel();
-                    }
+                    if (queue != null)
+                        queue.cancelAll();
                 } else {
-                    for(Map.Entry<TileReader, RequestQueue> entry : tasks.entrySet()) {
-                        while (true) {
-                            Task t = entry.getValue().get();
-                            if (t == null)
-                                break;
-                            if (t.action instanceof Cancelable)
-                                ((Cancelable) t.action).cancel();
-                        }
-                    }
+                    for(RequestQueue queue : tasks.values())
+                        queue.cancelAll();
                     tasks.clear();
                 }
             }
         }
 
+        /**
+         * Sets the prioritizer for the pending read requests of the
+         * specified reader. The prioritizer sorts requests from low to high
+         * priority.
+         *
+         * <P>Sorting is performed while holding the prioritizer's monitor,
+         * so the prioritizer may safely mutate its state, e.g. the focus
+         * point, by synchronizing on itself.
+         *
+         * @param reader        The reader
+         * @param prioritizer   The prioritizer, may be <code>null</code>
+         */
         public void setReadRequestPrioritizer(TileReader reader, Comparator<ReadRequest> prioritizer) {
             synchronized(this.syncOn) {
                 RequestQueue queue = this.tasks.get(reader);
                 if(queue == null)
                     this.tasks.put(reader, queue=new RequestQueue());
                 queue.requestPrioritizer = prioritizer;
+                queue.sorted = false;
+            }
+        }
+
+        /**
+         * Instructs the scheduler that the relative priorities of the pending
+         * read requests for the specified reader have changed. The requests
+         * will be re-sorted before the next one is serviced.
+         *
+         * @param reader    The reader, if <code>null</code> the requests for
+         *                  all readers are re-sorted
+         */
+        public void reprioritize(TileReader reader) {
+            synchronized(this.syncOn) {
+                if(reader == null) {
+                    for(RequestQueue queue : this.tasks.values())
+                        queue.sorted = false;
+                } else {
+                    final RequestQueue queue = this.tasks.get(reader);
+                    if(queue != null)
+                        queue.sorted = false;
+                }
             }
         }
 
@@ -1262,42 +1436,59 @@ public abstract class TileReader implements Controls {
                 RequestQueue queue = this.tasks.get(reader);
                 if(queue == null)
                     this.tasks.put(reader, queue=new RequestQueue());
-                queue.enqueue(new Task(reader, r));
+                this.coalesced += queue.enqueue(new Task(reader, r));
                 this.syncOn.notify();
 
                 this.dead = false;
-                if (!this.started) {
-                    Thread t = new Thread() {
-                        @Override
-                        public void run() {
-                            AsynchronousIO.this.runImpl();
-                        }
-                    };
+                // start another worker if all are busy and this reader is not
+                // already being serviced
+                if (this.numWorkers == 0 ||
+                    (this.idleWorkers == 0 &&
+                     this.numWorkers < this.maxWorkers &&
+                     !this.executing.containsKey(reader))) {
+
+                    final Worker t = new Worker(this);
                     t.setPriority(Thread.MIN_PRIORITY);
-                    t.setName("tilereader-async-io-thread@" + Integer.toString(this.hashCode(), 16));
+                    t.setName("tilereader-async-io-thread@" + Integer.toString(this.hashCode(), 16) + "-" + this.numWorkers);
 
-                    this.started = true;
+                    this.numWorkers++;
                     t.start();
                 }
             }
         }
 
-        private void runImpl() {
-            Task task;
+        private void runImpl(Worker worker) {
+            Task task = null;
+            long serviceStart = 0L;
             while (true) {
                 synchronized (this.syncOn) {
-                    this.executing = null;
-                    if (this.dead) {
-                        this.started = false;
+                    if (task != null) {
+                        this.serviced++;
+                        this.totalServiceMillis += SystemClock.elapsedRealtime()-serviceStart;
+                        this.executing.remove(task.reader);
+                        // the reader is available to the other workers again
+                        final RequestQueue pending = this.tasks.get(task.reader);
+                        if (pending != null && pending.size() > 0 && this.idleWorkers > 0)
+                            this.syncOn.notifyAll();
+                        task = null;
+                    }
+                    if (this.dead || this.numWorkers > this.maxWorkers) {
+                        this.numWorkers--;
                         break;
                     }
 
-                    // iterate all request queues and select the oldest task.
+                    // iterate all request queues for readers that are not
+                    // already being serviced and select the oldest task.
                     // oldest task is used here to prevent starvation
                     RequestQueue rq = null;
                     int candidateId = Integer.MAX_VALUE;
-                    for(RequestQueue queue : tasks.values()) {
+                    for(Map.Entry<TileReader, RequestQueue> entry : tasks.entrySet()) {
+                        if(this.executing.containsKey(entry.getKey()))
+                            continue;
+                        final RequestQueue queue = entry.getValue();
                         final Task t = queue.peek();
+                        this.canceled += queue.pruned;
+                        queue.pruned = 0;
                         if(t == null)
                             continue;
                         if(t.id < candidateId) {
@@ -1308,21 +1499,38 @@ public abstract class TileReader implements Controls {
 
                     if (rq == null) {
                         final long startIdle = SystemClock.elapsedRealtime();
-                        this.readBuffer = null;
+                        final long idleLimit = (this.numWorkers > 1) ?
+                                ((this.maxIdle > 0L) ? Math.min(this.maxIdle, EXTRA_WORKER_MAX_IDLE) : EXTRA_WORKER_MAX_IDLE) :
+                                this.maxIdle;
+                        worker.readBuffer = null;
+                        this.idleWorkers++;
                         try {
-                            this.syncOn.wait(this.maxIdle);
+                            this.syncOn.wait(idleLimit);
                         } catch (InterruptedException ignored) {
+                        } finally {
+                            this.idleWorkers--;
                         }
                         final long stopIdle = SystemClock.elapsedRealtime();
-                        // check if the thread has idle'd out
-                        if(this.maxIdle > 0L && (stopIdle-startIdle) >= this.maxIdle)
+                        // check if the worker has idle'd out
+                        if(idleLimit > 0L && (stopIdle-startIdle) >= idleLimit) {
+                            if(this.numWorkers > 1) {
+                                this.numWorkers--;
+                                break;
+                            }
                             this.dead = true;
+                        }
                         // wake up and re-run the sync block
                         continue;
                     }
 
                     task = rq.get();
-                    this.executing = task;
+                    this.executing.put(task.reader, task);
+
+                    serviceStart = SystemClock.elapsedRealtime();
+                    final long wait = serviceStart-task.queued;
+                    this.totalWaitMillis += wait;
+                    if(wait > this.maxWaitMillis)
+                        this.maxWaitMillis = wait;
                 }
 
                 try {
@@ -1333,16 +1541,32 @@ public abstract class TileReader implements Controls {
             }
         }
 
+        final static class Worker extends Thread {
+            final AsynchronousIO owner;
+            byte[] readBuffer;
+
+            Worker(AsynchronousIO owner) {
+                this.owner = owner;
+            }
+
+            @Override
+            public void run() {
+                this.owner.runImpl(this);
+            }
+        }
+
         final static class Task {
             final static AtomicInteger idGenerator = new AtomicInteger(0);
             public final TileReader reader;
             public final Runnable action;
             public final int id;
+            public final long queued;
 
             public Task(TileReader reader, Runnable action) {
                 this.reader = reader;
                 this.action = action;
                 this.id = idGenerator.getAndIncrement();
+                this.queued = SystemClock.elapsedRealtime();
             }
         }
     } // AsynchronousIO
@@ -1352,33 +1576,109 @@ public abstract class TileReader implements Controls {
         // sort order for tasks is LO => HI priority
         ArrayList<AsynchronousIO.Task> tasks = new ArrayList<>(64);
         Comparator<ReadRequest> requestPrioritizer;
+        /** if <code>false</code>, the tasks must be sorted before dequeue */
+        boolean sorted = true;
+        /** the number of canceled read requests discarded since last checked */
+        int pruned = 0;
+
+        int size() {
+            return tasks.size();
+        }
 
         AsynchronousIO.Task peek() {
+            this.validate();
             if(tasks.isEmpty())
                 return null;
             return tasks.get(tasks.size()-1);
         }
 
         AsynchronousIO.Task get() {
+            this.validate();
             if(tasks.isEmpty())
                 return null;
             return tasks.remove(tasks.size()-1);
         }
 
-        void enqueue(AsynchronousIO.Task task) {
+        /**
+         * Removes and cancels all pending tasks.
+         */
+        void cancelAll() {
+            for(int i = tasks.size()-1; i >= 0; i--) {
+                final AsynchronousIO.Task t = tasks.get(i);
+                if (t.action instanceof Cancelable)
+                    ((Cancelable) t.action).cancel();
+            }
+            tasks.clear();
+        }
+
+        /**
+         * Enqueues the task. Any pending requests for the same tile from the
+         * same callback are canceled.
+         *
+         * @return  The number of pending requests that were canceled
+         */
+        int enqueue(AsynchronousIO.Task task) {
+            int retval = 0;
+            if(task.action instanceof ReadRequestTask) {
+                final ReadRequest request = ((ReadRequestTask)task.action).request;
+                for(int i = tasks.size()-1; request.level >= 0 && i >= 0; i--) {
+                    final AsynchronousIO.Task t = tasks.get(i);
+                    if(!(t.action instanceof ReadRequestTask))
+                        continue;
+                    final ReadRequest other = ((ReadRequestTask)t.action).request;
+                    if(other.callback == request.callback &&
+                       other.level == request.level &&
+                       other.tileColumn == request.tileColumn &&
+                       other.tileRow == request.tileRow &&
+                       !other.canceled) {
+
+                        tasks.remove(i);
+                        ((ReadRequestTask)t.action).cancel();
+                        retval++;
+                    }
+                }
+            }
             tasks.add(task);
-            Collections.sort(tasks, this);
+            this.sorted = false;
+            return retval;
+        }
+
+        private void validate() {
+            if(!this.sorted) {
+                // canceled requests are discarded before sorting as the flag
+                // may be toggled asynchronously
+                for(int i = tasks.size()-1; i >= 0; i--) {
+                    if(isCanceledRead(tasks.get(i))) {
+                        tasks.remove(i);
+                        this.pruned++;
+                    }
+                }
+                final Comparator<ReadRequest> prioritizer = this.requestPrioritizer;
+                if(prioritizer != null) {
+                    synchronized(prioritizer) {
+                        Collections.sort(tasks, this);
+                    }
+                } else {
+                    Collections.sort(tasks, this);
+                }
+                this.sorted = true;
+            }
             while(!tasks.isEmpty()) {
                 final int idx = tasks.size()-1;
-                final AsynchronousIO.Task t = tasks.get(idx);
-                if(t.action instanceof ReadRequestTask && ((ReadRequestTask)t.action).request.canceled)
+                if(isCanceledRead(tasks.get(idx))) {
                     tasks.remove(idx);
-                else
+                    this.pruned++;
+                } else {
                     break;
+                }
             }
         }
 
-                @Override
+        private static boolean isCanceledRead(AsynchronousIO.Task t) {
+            return (t.action instanceof ReadRequestTask) && ((ReadRequestTask)t.action).request.canceled;
+        }
+
+        @Override
         public int compare(AsynchronousIO.Task a, AsynchronousIO.Task b) {
             if(a == null && b == null)
                 return 0;
@@ -1397,12 +1697,6 @@ public abstract class TileReader implements Controls {
 
             final ReadRequest aRequest = ((ReadRequestTask)a.action).request;
             final ReadRequest bRequest = ((ReadRequestTask)b.action).request;
-            if(aRequest.canceled && bRequest.canceled)
-                return b.id-a.id;
-            else if(aRequest.canceled)
-                return 1;
-            else if(bRequest.canceled)
-                return -1;
             if(this.requestPrioritizer != null) {
                 final int c = this.requestPrioritizer.compare(aRequest, bRequest);
                 if(c != 0)
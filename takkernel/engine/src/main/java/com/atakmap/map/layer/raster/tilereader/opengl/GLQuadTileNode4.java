@@ -781,6 +781,8 @@ public class GLQuadTileNode4 implements
             view.scratch.geo.set(0d);
             this.core.imprecise.groundToImage(view.scratch.geo, view.scratch.pointD);
             this.core.requestPrioritizer.setFocus((long) view.scratch.pointD.x, (long) view.scratch.pointD.y, null, 0);
+            // re-sort the pending requests against the new focus
+            this.core.asyncio.reprioritize(this.core.tileReader);
 
             TileCacheControl ctrl = core.tileReader.getControl(TileCacheControl.class);
             if(ctrl != null)
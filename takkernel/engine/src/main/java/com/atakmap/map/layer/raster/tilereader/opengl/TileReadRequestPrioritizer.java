@@ -29,7 +29,11 @@ final class TileReadRequestPrioritizer implements Comparator<TileReader.ReadRequ
         levelPrioritizer = highToLowLevelPrioritization ? -1 : 1;
     }
 
-    void setFocus(double poiX, double poiY, RectD[] rois, int numRois) {
+    /**
+     * Updates the focus. Synchronized as the pending requests are sorted
+     * while holding this object's monitor.
+     */
+    synchronized void setFocus(double poiX, double poiY, RectD[] rois, int numRois) {
         this.poiX = poiX;
         this.poiY = poiY;
         if(this.rois == null || this.rois.length < numRois)
@@ -8,6 +8,17 @@ import com.atakmap.map.layer.feature.geometry.Geometry;
 import com.atakmap.map.layer.feature.geometry.Point;
 import com.atakmap.math.Rectangle;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Java binding for the native label manager.
+ *
+ * <P>Label property updates are not applied immediately. They are coalesced
+ * into a {@link LabelUpdateBatch} and applied with a single native call,
+ * via {@link #commit()}, at the start of each frame. Reads do not force a
+ * commit; {@link #getHints(int)} reflects pending updates and
+ * {@link #getSize(int, Rectangle)} reflects the most recently rendered frame.
+ */
 public class GLLabelManager {
     private final static int TEXT_ALIGNMENT_LEFT = 0;
     private final static int TEXT_ALIGNMENT_CENTER = 1;
@@ -25,6 +36,12 @@ public class GLLabelManager {
     private final static int ALTMODE_RELATIVE = 1;
     private final static int ALTMODE_ABSOLUTE = 2;
 
+    /**
+     * Pending updates are committed eagerly once they exceed this size, in
+     * bytes
+     */
+    private final static int MAX_PENDING_BYTES = 1024*1024;
+
     private static final String TAG = GLLabelManager.class.getSimpleName();
     private final static double DEFAULT_MIN_RENDER_SCALE = (1.0d / 100000.0d);
     private final static double ICON_SCALE = 1d;
@@ -68,6 +85,8 @@ public class GLLabelManager {
 
     Object owner;
 
+    final LabelUpdateBatch pending = new LabelUpdateBatch();
+
     GLLabelManager(long ptr, Object ownerRef) {
         pointer = ptr;
         owner = ownerRef;
@@ -94,7 +113,10 @@ public class GLLabelManager {
             default :
                 throw new IllegalArgumentException();
         }
-        setAlignment(pointer, id, align);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_ALIGNMENT, id, align);
+            onUpdate();
+        }
     }
 
     /**
@@ -117,7 +139,10 @@ public class GLLabelManager {
             default :
                 throw new IllegalArgumentException();
         }
-        setVerticalAlignment(pointer, id, align);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_VERTICAL_ALIGNMENT, id, align);
+            onUpdate();
+        }
     }
 
     /**
@@ -140,7 +165,10 @@ public class GLLabelManager {
             default :
                 throw new IllegalArgumentException();
         }
-        setAltitudeMode(pointer, id, altmode);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_ALTITUDE_MODE, id, altmode);
+            onUpdate();
+        }
     }
 
     /**
@@ -149,7 +177,7 @@ public class GLLabelManager {
      * @param desiredOffset the desired offset as described by a vector (x, y, z)
      */
     public void setDesiredOffset(int id, Point desiredOffset) {
-        setDesiredOffset(pointer, id, desiredOffset.getX(), desiredOffset.getY(), desiredOffset.getZ());
+        setDesiredOffset(id, desiredOffset.getX(), desiredOffset.getY(), desiredOffset.getZ());
     }
 
     /**
@@ -158,7 +186,18 @@ public class GLLabelManager {
      * @param geometry the geometry for a specific label
      */
     public void setGeometry(int id, Geometry geometry) {
-        setGeometry(pointer, id, Geometry_interop.getPointer(geometry));
+        synchronized(pending) {
+            if(geometry instanceof Point) {
+                // points are passed by value
+                final Point p = (Point)geometry;
+                pending.putPoint(id, p.getDimension(), p.getX(), p.getY(), p.getZ());
+            } else {
+                // other geometries are copied, the caller may dispose or
+                // modify the geometry before the update is committed
+                pending.putGeometry(id, geometry);
+            }
+            onUpdate();
+        }
     }
 
 
@@ -192,7 +231,10 @@ public class GLLabelManager {
             default :
                 throw new IllegalArgumentException();
         }
-        setPriority(pointer, id, pri);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_PRIORITY, id, pri);
+            onUpdate();
+        }
     }
 
     /**
@@ -201,7 +243,10 @@ public class GLLabelManager {
      * @param hints the hint mask for a specific label { HINT_* }
      */
     public void setHints(int id, int hints) {
-        setHints(pointer, id, hints);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_HINTS, id, hints);
+            onUpdate();
+        }
     }
 
     /**
@@ -210,6 +255,11 @@ public class GLLabelManager {
      * @return the currently set hint mask { HINT_* }
      */
     public int getHints(int id) {
+        synchronized(pending) {
+            final int hints = pending.find(LabelUpdateBatch.OP_HINTS, id);
+            if(hints >= 0)
+                return pending.getBuffer().getInt(hints);
+        }
         return getHints(pointer, id);
     }
 
@@ -230,6 +280,27 @@ public class GLLabelManager {
         return addLabel(pointer, label);
     }
 
+    /**
+     * Applies all pending label updates. Invoked at the start of each frame;
+     * may be invoked at other times to apply updates immediately.
+     */
+    public void commit() {
+        synchronized(pending) {
+            if(pending.isEmpty())
+                return;
+            commit(pointer, pending.getBuffer(), pending.size());
+            pending.reset();
+        }
+    }
+
+    /**
+     * Must be invoked while holding the lock on {@link #pending}.
+     */
+    private void onUpdate() {
+        if(pending.size() > MAX_PENDING_BYTES)
+            commit();
+    }
+
 
     /**
      * Sets the fill state for a label (filled or unfilled).
@@ -237,7 +308,10 @@ public class GLLabelManager {
      * @param fill true if the text will be filled or false if it just an outline
      */
     public void setFill(int id, boolean fill) {
-        setFill(pointer, id, fill);
+        synchronized(pending) {
+            pending.putBoolean(LabelUpdateBatch.OP_FILL, id, fill);
+            onUpdate();
+        }
     }
 
     /**
@@ -245,7 +319,10 @@ public class GLLabelManager {
      * @param id the id of the label.
      */
     public void removeLabel(int id) {
-        removeLabel(pointer, id);
+        synchronized(pending) {
+            pending.remove(id);
+            onUpdate();
+        }
     }
 
     /**
@@ -254,7 +331,10 @@ public class GLLabelManager {
      * @param text the text to replace the existing label with
      */
     public void setText(int id, String text) {
-        setText(pointer, id, text);
+        synchronized(pending) {
+            pending.putText(id, text);
+            onUpdate();
+        }
     }
 
     /**
@@ -265,7 +345,10 @@ public class GLLabelManager {
      * @param z the desired offset in the z direction
      */
     public void setDesiredOffset(int id, double x, double y, double z) {
-        setDesiredOffset(pointer, id, x, y, z);
+        synchronized(pending) {
+            pending.putDoubles(LabelUpdateBatch.OP_DESIRED_OFFSET, id, x, y, z);
+            onUpdate();
+        }
     }
 
     /**
@@ -274,7 +357,10 @@ public class GLLabelManager {
      * @param color the color of the text
      */
     public void setColor(int id, int color) {
-        setColor(pointer, id, color);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_COLOR, id, color);
+            onUpdate();
+        }
     }
 
     /**
@@ -283,7 +369,10 @@ public class GLLabelManager {
      * @param color the background color of the text
      */
     public void setBackgroundColor(int id, int color) {
-        setBackColor(pointer, id, color);
+        synchronized(pending) {
+            pending.putInt(LabelUpdateBatch.OP_BACK_COLOR, id, color);
+            onUpdate();
+        }
     }
 
     /**
@@ -293,11 +382,16 @@ public class GLLabelManager {
      */
     public void setMaxDrawResolution(int id, double maxDrawResolution)
     {
-        setMaxDrawResolution(pointer, id, maxDrawResolution);
+        synchronized(pending) {
+            pending.putDouble(LabelUpdateBatch.OP_MAX_DRAW_RESOLUTION, id, maxDrawResolution);
+            onUpdate();
+        }
     }
 
     /**
-     * Given an existing label id, set the size.   
+     * Given an existing label id, set the size. The size and position are
+     * those computed when the label was last rendered; pending updates are
+     * not committed.
      * @param id the id of the label.
      * @param sizeRect the preallocated allocated rectangle that is the size of the text fully
      * rendered
@@ -318,7 +412,10 @@ public class GLLabelManager {
      * @return if the rotation is absolute or relative to the curren rotation of the map
      */
     public void setRotation(int id, float rotation, boolean absolute) {
-        setRotation(pointer, id, rotation, absolute);
+        synchronized(pending) {
+            pending.putRotation(id, rotation, absolute);
+            onUpdate();
+        }
     }
 
     /**
@@ -332,7 +429,19 @@ public class GLLabelManager {
      * @param strikethrough the font style will be STRIKETHROUGH if set to true
      */ 
     public void setTextFormat(int id, String fontName, float size, boolean bold, boolean italic, boolean underline, boolean strikethrough) {
-        setTextFormat(pointer, id, fontName, size, bold, italic, underline, strikethrough);
+        int style = 0;
+        if(bold)
+            style |= LabelUpdateBatch.TEXT_FORMAT_BOLD;
+        if(italic)
+            style |= LabelUpdateBatch.TEXT_FORMAT_ITALIC;
+        if(underline)
+            style |= LabelUpdateBatch.TEXT_FORMAT_UNDERLINE;
+        if(strikethrough)
+            style |= LabelUpdateBatch.TEXT_FORMAT_STRIKETHROUGH;
+        synchronized(pending) {
+            pending.putTextFormat(id, fontName, size, style);
+            onUpdate();
+        }
     }
 
  
@@ -342,7 +451,10 @@ public class GLLabelManager {
      * @param visible true if the label is to be visible
      */
     public void setVisible(int id, boolean visible) {
-        setVisible(pointer, id, visible);
+        synchronized(pending) {
+            pending.putBoolean(LabelUpdateBatch.OP_VISIBLE, id, visible);
+            onUpdate();
+        }
     }
 
     public void setVisible(boolean visible)
@@ -379,6 +491,7 @@ public class GLLabelManager {
     static native void start(long pointer);
     static native void stop(long pointer);
     static native void draw(long pointer, long viewPtr, int renderPass);
+    static native void commit(long pointer, ByteBuffer updates, int length);
 
 
     // Not sure if these are needed but just in case the following accessor functions are provided to access
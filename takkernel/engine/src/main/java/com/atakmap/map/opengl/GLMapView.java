@@ -1476,6 +1476,9 @@ public class GLMapView implements
 
         internal.geo.set(0, 0, 0);
 
+        // apply label updates made since the last frame
+        _labelManager.commit();
+
         render(this.pointer.raw);
         sync();
         if(this.drawTilt > 0 && this.syncPass == RENDER_PASS_SURFACE)
@@ -1523,6 +1526,8 @@ public class GLMapView implements
 
         internal.geo.set(0, 0, 0);
 
+        _labelManager.commit();
+
         render(this.pointer.raw);
         sync();
         if(this.drawTilt > 0 && this.syncPass == RENDER_PASS_SURFACE)
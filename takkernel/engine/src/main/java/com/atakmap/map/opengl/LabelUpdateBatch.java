@@ -0,0 +1,245 @@
+package com.atakmap.map.opengl;
+
+import com.atakmap.map.layer.feature.geometry.Geometry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accumulates label property updates for {@link GLLabelManager} in a direct
+ * buffer so that they may be applied with a single native call.
+ *
+ * <P>Each update is encoded as a record, in native byte order:
+ * <pre>
+ *     int op
+ *     int label id
+ *     int payload size, in bytes (multiple of 4)
+ *     payload
+ * </pre>
+ * Only the most recent update to a given property of a given label is
+ * applied; the op of any superseded record is overwritten with
+ * {@link #OP_NOP}. Geometries are copied into the record as WKB, so the
+ * caller may modify or dispose a geometry once it has been queued.
+ *
+ * <P>Not thread-safe.
+ */
+final class LabelUpdateBatch {
+    final static int OP_NOP = 0;
+    final static int OP_REMOVE = 1;
+    final static int OP_TEXT = 2;
+    final static int OP_TEXT_FORMAT = 3;
+    final static int OP_COLOR = 4;
+    final static int OP_BACK_COLOR = 5;
+    final static int OP_FILL = 6;
+    final static int OP_VISIBLE = 7;
+    final static int OP_MAX_DRAW_RESOLUTION = 8;
+    final static int OP_ALIGNMENT = 9;
+    final static int OP_VERTICAL_ALIGNMENT = 10;
+    final static int OP_ALTITUDE_MODE = 11;
+    final static int OP_POINT = 12;
+    final static int OP_GEOMETRY = 13;
+    final static int OP_DESIRED_OFFSET = 14;
+    final static int OP_ROTATION = 15;
+    final static int OP_PRIORITY = 16;
+    final static int OP_HINTS = 17;
+    final static int NUM_OPS = 18;
+
+    final static int TEXT_FORMAT_BOLD = 0x01;
+    final static int TEXT_FORMAT_ITALIC = 0x02;
+    final static int TEXT_FORMAT_UNDERLINE = 0x04;
+    final static int TEXT_FORMAT_STRIKETHROUGH = 0x08;
+
+    final static int HEADER_SIZE = 12;
+
+    private final static int INITIAL_CAPACITY = 64*1024;
+
+    private ByteBuffer buffer;
+    /** offset of the most recent record for a label property */
+    private final Map<Long, Integer> records = new HashMap<>();
+
+    private int recordCount;
+    private int coalesced;
+
+    LabelUpdateBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    LabelUpdateBatch(int capacity) {
+        buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return the buffer; records occupy the range from zero to
+     *         {@link #size()}
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the number of bytes of encoded records
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    boolean isEmpty() {
+        return buffer.position() == 0;
+    }
+
+    /**
+     * @return the number of records written since the last reset, including
+     *         superseded records
+     */
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of records superseded since the last reset
+     */
+    int getCoalescedCount() {
+        return coalesced;
+    }
+
+    void reset() {
+        buffer.clear();
+        records.clear();
+        recordCount = 0;
+        coalesced = 0;
+    }
+
+    void remove(int id) {
+        // later updates to the label must not supersede those preceding the
+        // removal
+        for(int op = 0; op < NUM_OPS; op++)
+            records.remove(key(id, op));
+        begin(OP_REMOVE, id, 0);
+    }
+
+    void putInt(int op, int id, int value) {
+        begin(op, id, 4);
+        buffer.putInt(value);
+    }
+
+    void putBoolean(int op, int id, boolean value) {
+        putInt(op, id, value ? 1 : 0);
+    }
+
+    void putDouble(int op, int id, double value) {
+        begin(op, id, 8);
+        buffer.putDouble(value);
+    }
+
+    void putDoubles(int op, int id, double x, double y, double z) {
+        begin(op, id, 24);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+        buffer.putDouble(z);
+    }
+
+    void putText(int id, String text) {
+        final byte[] utf8 = (text != null) ? text.getBytes(StandardCharsets.UTF_8) : null;
+        begin(OP_TEXT, id, 4+padded(utf8));
+        putBytes(utf8);
+    }
+
+    void putTextFormat(int id, String fontName, float size, int style) {
+        final byte[] utf8 = (fontName != null) ? fontName.getBytes(StandardCharsets.UTF_8) : null;
+        begin(OP_TEXT_FORMAT, id, 12+padded(utf8));
+        buffer.putFloat(size);
+        buffer.putInt(style);
+        putBytes(utf8);
+    }
+
+    void putRotation(int id, float rotation, boolean absolute) {
+        begin(OP_ROTATION, id, 8);
+        buffer.putFloat(rotation);
+        buffer.putInt(absolute ? 1 : 0);
+    }
+
+    void putPoint(int id, int dimension, double x, double y, double z) {
+        begin(OP_POINT, id, 28);
+        buffer.putInt(dimension);
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+        buffer.putDouble(z);
+    }
+
+    /**
+     * Queues a copy of the geometry, encoded as WKB.
+     */
+    void putGeometry(int id, Geometry geometry) {
+        final int wkbSize = geometry.computeWkbSize();
+        begin(OP_GEOMETRY, id, 4+padded(wkbSize));
+        buffer.putInt(wkbSize);
+        geometry.toWkb(buffer);
+        for(int i = wkbSize; i < padded(wkbSize); i++)
+            buffer.put((byte)0);
+    }
+
+    /**
+     * @return the offset of the payload of the most recent pending update
+     *         to the property of the label, or <code>-1</code> if there is
+     *         none
+     */
+    int find(int op, int id) {
+        final Integer offset = records.get(key(id, op));
+        return (offset != null) ? offset+HEADER_SIZE : -1;
+    }
+
+    private void putBytes(byte[] utf8) {
+        if(utf8 == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(utf8.length);
+        buffer.put(utf8);
+        for(int i = utf8.length; i < padded(utf8); i++)
+            buffer.put((byte)0);
+    }
+
+    private void begin(int op, int id, int payload) {
+        // point and arbitrary geometry updates supersede one another
+        final int property = (op == OP_GEOMETRY) ? OP_POINT : op;
+        if(op != OP_REMOVE) {
+            final Integer superseded = records.put(key(id, property), buffer.position());
+            if(superseded != null) {
+                buffer.putInt(superseded, OP_NOP);
+                coalesced++;
+            }
+        }
+        ensureCapacity(HEADER_SIZE+payload);
+        buffer.putInt(op);
+        buffer.putInt(id);
+        buffer.putInt(payload);
+        recordCount++;
+    }
+
+    private void ensureCapacity(int length) {
+        if(buffer.remaining() >= length)
+            return;
+        int capacity = buffer.capacity()*2;
+        while(capacity-buffer.position() < length)
+            capacity *= 2;
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    private static int padded(byte[] utf8) {
+        return (utf8 != null) ? padded(utf8.length) : 0;
+    }
+
+    private static int padded(int length) {
+        return (length+3)&~3;
+    }
+
+    private static long key(int id, int op) {
+        return ((long)id<<8L) | op;
+    }
+}
@@ -184,8 +184,8 @@ public class Quadtree<T> {
             for(int i = 0; i < 4; i++) {
                 final double cnx = this.minX+((i%2)*halfWidth);
                 final double cxx = this.centerX+((i%2)*halfWidth);
-                final double cny = this.minY+((i/2f)*halfHeight);
-                final double cxy = this.centerY+((i/2f)*halfHeight);
+                final double cny = this.minY+((i/2)*halfHeight);
+                final double cxy = this.centerY+((i/2)*halfHeight);
                 
                 // if a child contains the object, add it to the child
                 if(cnx <= min.x &&
@@ -210,9 +210,14 @@ public class Quadtree<T> {
         for(int i = 0; i < 4; i++) {
             if(this.children[i] == null)
                 continue;
-            this.objects.addAll(this.children[i].objects);
+            for(T object : this.children[i].objects) {
+                this.objects.add(object);
+                this.root.objectToNode.put(object, this);
+            }
+            this.descendants -= this.children[i].objects.size();
             this.children[i] = null;
         }
+        this.numChildren = 0;
     }
 
     public void add(T object) {
@@ -237,8 +242,8 @@ public class Quadtree<T> {
             for(int i = 0; i < 4; i++) {
                 cnx = this.minX+((i%2)*halfWidth);
                 cxx = this.centerX+((i%2)*halfWidth);
-                cny = this.minY+((i/2f)*halfHeight);
-                cxy = this.centerY+((i/2f)*halfHeight);
+                cny = this.minY+((i/2)*halfHeight);
+                cxy = this.centerY+((i/2)*halfHeight);
                 
                 // if a child contains the object, add it to the child
                 if(cnx <= minX &&
@@ -332,14 +337,26 @@ public class Quadtree<T> {
         if(!node.removeImpl(object, !inNode))
             return false;
 
-        if(inNode)
+        // the removal may have aggregated the node into its parent
+        if(inNode && node.isAttached())
             node.add(object, objMin.x, objMin.y, objMax.x, objMax.y);
         else
             this.root.add(object, objMin.x, objMin.y, objMax.x, objMax.y);
         return true;
     }
+
+    private boolean isAttached() {
+        if(this.parent == null)
+            return true;
+        for(int i = 0; i < 4; i++)
+            if(this.parent.children[i] == this)
+                return this.parent.isAttached();
+        return false;
+    }
     
     public void clear() {
+        if(this.objectToNode != null)
+            this.objectToNode.clear();
         this.objects.clear();
         for(int i = 0; i < 4; i++)
             this.children[i] = null;
@@ -3,6 +3,9 @@
 #include <vector>
 
 #include <cmath>
+#include <cstring>
+#include <feature/GeometryFactory.h>
+#include <feature/Point2.h>
 #include <math/Point2.h>
 #include <math/Rectangle.h>
 
@@ -31,6 +34,164 @@ using namespace TAK::Engine::Feature;
 
 using namespace TAKEngineJNI::Interop;
 
+namespace
+{
+    template<class T>
+    T readUpdate(const uint8_t *&data) NOTHROWS
+    {
+        T value;
+        memcpy(&value, data, sizeof(T));
+        data += sizeof(T);
+        return value;
+    }
+
+    TAK::Engine::Port::String readUpdateString(const uint8_t *&data) NOTHROWS
+    {
+        const jint len = readUpdate<jint>(data);
+        if(len < 0)
+            return TAK::Engine::Port::String();
+        TAK::Engine::Port::String retval(reinterpret_cast<const char *>(data), len);
+        data += len;
+        return retval;
+    }
+
+    void applyUpdate(GLLabelManager::Transaction &glLabelManager, const jint op, const jint id, const uint8_t *payload) NOTHROWS
+    {
+        switch(op) {
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_REMOVE :
+                glLabelManager.removeLabel(id);
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_TEXT :
+            {
+                TAK::Engine::Port::String text = readUpdateString(payload);
+                glLabelManager.setText(id, text);
+                break;
+            }
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_TEXT_FORMAT :
+            {
+                const float size = readUpdate<float>(payload);
+                const jint style = readUpdate<jint>(payload);
+                TAK::Engine::Port::String fontName = readUpdateString(payload);
+                TextFormatParams format(fontName, size);
+                format.bold = !!(style&com_atakmap_map_opengl_LabelUpdateBatch_TEXT_FORMAT_BOLD);
+                format.italic = !!(style&com_atakmap_map_opengl_LabelUpdateBatch_TEXT_FORMAT_ITALIC);
+                format.underline = !!(style&com_atakmap_map_opengl_LabelUpdateBatch_TEXT_FORMAT_UNDERLINE);
+                format.strikethrough = !!(style&com_atakmap_map_opengl_LabelUpdateBatch_TEXT_FORMAT_STRIKETHROUGH);
+                glLabelManager.setTextFormat(id, &format);
+                break;
+            }
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_COLOR :
+                glLabelManager.setColor(id, readUpdate<jint>(payload));
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_BACK_COLOR :
+                glLabelManager.setBackColor(id, readUpdate<jint>(payload));
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_FILL :
+                glLabelManager.setFill(id, !!readUpdate<jint>(payload));
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_VISIBLE :
+                glLabelManager.setVisible(id, !!readUpdate<jint>(payload));
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_MAX_DRAW_RESOLUTION :
+                glLabelManager.setMaxDrawResolution(id, readUpdate<double>(payload));
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_ALIGNMENT :
+                switch(readUpdate<jint>(payload)) {
+                    case com_atakmap_map_opengl_GLLabelManager_TEXT_ALIGNMENT_LEFT :
+                        glLabelManager.setAlignment(id, TETA_Left);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_TEXT_ALIGNMENT_CENTER :
+                        glLabelManager.setAlignment(id, TETA_Center);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_TEXT_ALIGNMENT_RIGHT :
+                        glLabelManager.setAlignment(id, TETA_Right);
+                        break;
+                }
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_VERTICAL_ALIGNMENT :
+                switch(readUpdate<jint>(payload)) {
+                    case com_atakmap_map_opengl_GLLabelManager_VERTICAL_ALIGNMENT_TOP :
+                        glLabelManager.setVerticalAlignment(id, TEVA_Top);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_VERTICAL_ALIGNMENT_MIDDLE :
+                        glLabelManager.setVerticalAlignment(id, TEVA_Middle);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_VERTICAL_ALIGNMENT_BOTTOM :
+                        glLabelManager.setVerticalAlignment(id, TEVA_Bottom);
+                        break;
+                }
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_ALTITUDE_MODE :
+                switch(readUpdate<jint>(payload)) {
+                    case com_atakmap_map_opengl_GLLabelManager_ALTMODE_CLAMP_TO_GROUND :
+                        glLabelManager.setAltitudeMode(id, TEAM_ClampToGround);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_ALTMODE_RELATIVE :
+                        glLabelManager.setAltitudeMode(id, TEAM_Relative);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_ALTMODE_ABSOLUTE :
+                        glLabelManager.setAltitudeMode(id, TEAM_Absolute);
+                        break;
+                }
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_POINT :
+            {
+                const jint dimension = readUpdate<jint>(payload);
+                const double x = readUpdate<double>(payload);
+                const double y = readUpdate<double>(payload);
+                const double z = readUpdate<double>(payload);
+                if(dimension == 3)
+                    glLabelManager.setGeometry(id, TAK::Engine::Feature::Point2(x, y, z));
+                else
+                    glLabelManager.setGeometry(id, TAK::Engine::Feature::Point2(x, y));
+                break;
+            }
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_GEOMETRY :
+            {
+                const jint wkbLen = readUpdate<jint>(payload);
+                Geometry2Ptr geometry(NULL, NULL);
+                if(GeometryFactory_fromWkb(geometry, payload, wkbLen) == TE_Ok)
+                    glLabelManager.setGeometry(id, *geometry);
+                break;
+            }
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_DESIRED_OFFSET :
+            {
+                const double x = readUpdate<double>(payload);
+                const double y = readUpdate<double>(payload);
+                const double z = readUpdate<double>(payload);
+                glLabelManager.setDesiredOffset(id, TAK::Engine::Math::Point2<double>(x, y, z));
+                break;
+            }
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_ROTATION :
+            {
+                const float rotation = readUpdate<float>(payload);
+                const jint absolute = readUpdate<jint>(payload);
+                glLabelManager.setRotation(id, rotation, !!absolute);
+                break;
+            }
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_PRIORITY :
+                switch(readUpdate<jint>(payload)) {
+                    case com_atakmap_map_opengl_GLLabelManager_PRIORITY_HIGH :
+                        glLabelManager.setPriority(id, TEP_High);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_PRIORITY_STANDARD :
+                        glLabelManager.setPriority(id, TEP_Standard);
+                        break;
+                    case com_atakmap_map_opengl_GLLabelManager_PRIORITY_LOW :
+                        glLabelManager.setPriority(id, TEP_Low);
+                        break;
+                }
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_HINTS :
+                glLabelManager.setHints(id, readUpdate<jint>(payload));
+                break;
+            case com_atakmap_map_opengl_LabelUpdateBatch_OP_NOP :
+            default :
+                break;
+        }
+    }
+}
+
 JNIEXPORT void JNICALL Java_com_atakmap_map_opengl_GLLabelManager_resetFont
    (JNIEnv *env, jclass clazz, jlong ptr)
 {
@@ -468,6 +629,32 @@ JNIEXPORT void JNICALL Java_com_atakmap_map_opengl_GLLabelManager_draw
     }
 }
 
+JNIEXPORT void JNICALL Java_com_atakmap_map_opengl_GLLabelManager_commit
+        (JNIEnv *env, jclass clazz, jlong ptr, jobject mupdates, jint length)
+{
+    GLLabelManager *glLabelManager = JLONG_TO_INTPTR(GLLabelManager, ptr);
+    if (glLabelManager == NULL)
+        return;
+
+    const auto *updates = static_cast<const uint8_t *>(env->GetDirectBufferAddress(mupdates));
+    if (!updates)
+        return;
+
+    // acquire the label lock once for the entire batch
+    GLLabelManager::Transaction transaction(*glLabelManager);
+    const uint8_t *end = updates + length;
+    while ((end - updates) >= com_atakmap_map_opengl_LabelUpdateBatch_HEADER_SIZE)
+    {
+        const jint op = readUpdate<jint>(updates);
+        const jint id = readUpdate<jint>(updates);
+        const jint size = readUpdate<jint>(updates);
+        if (size < 0 || (end - updates) < size)
+            break;
+        applyUpdate(transaction, op, id, updates);
+        updates += size;
+    }
+}
+
 JNIEXPORT jint JNICALL Java_com_atakmap_map_opengl_GLLabelManager_getHintWeightedFloat
   (JNIEnv *env, jclass clazz)
 {